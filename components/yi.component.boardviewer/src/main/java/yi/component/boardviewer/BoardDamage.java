@@ -0,0 +1,152 @@
+package yi.component.boardviewer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import yi.core.go.Annotation;
+import yi.core.go.GameModel;
+import yi.core.go.GameNode;
+import yi.core.go.Stone;
+
+import java.util.BitSet;
+import java.util.Optional;
+
+/**
+ * Tracks the node drawn on the board to work out which intersections have to be repainted
+ * when another node is shown. These are the stones changed by the state deltas on the path
+ * between the two nodes, and the intersections marked by annotations and move markers on
+ * either node.
+ * <p/>
+ * Intersections are indexed by {@code x + y * boardWidth}.
+ */
+final class BoardDamage {
+
+    // Above this share of the intersections, the whole board is redrawn instead
+    private static final int MAX_DAMAGED_INTERSECTIONS_DIVISOR = 4;
+
+    private GameModel renderedModel = null;
+    private GameNode renderedNode = null;
+    private BitSet renderedMarks = new BitSet();
+
+    /**
+     * Records the node that the whole board has just been drawn for.
+     *
+     * @param model Game model drawn on the board.
+     * @param node Node drawn on the board, or {@code null} if the drawn node cannot be
+     *             compared against, such as when a preview node is drawn.
+     */
+    void reset(@NotNull GameModel model, @Nullable GameNode node) {
+        renderedModel = model;
+        renderedNode = node;
+        renderedMarks = node == null ? new BitSet() : getMarkedIntersections(model, node);
+    }
+
+    /**
+     * Computes the intersections to repaint to draw a new node, and records it as the
+     * node on the board.
+     *
+     * @param model Game model drawn on the board.
+     * @param node New node to draw.
+     * @return Intersections that have changed since the last drawn node, or empty if the
+     *         whole board should be redrawn.
+     */
+    Optional<BitSet> update(@NotNull GameModel model, @NotNull GameNode node) {
+        var lastModel = renderedModel;
+        var lastNode = renderedNode;
+        var lastMarks = renderedMarks;
+        reset(model, node);
+
+        // Edits on the same node are not recorded in a delta to compare against
+        if (lastNode == null || lastNode == node || lastModel != model) {
+            return Optional.empty();
+        }
+
+        var commonAncestor = lastNode.getLowestCommonAncestor(node);
+        if (commonAncestor == null) {
+            return Optional.empty();
+        }
+
+        int boardWidth = model.getBoardWidth();
+        int maxDamage = boardWidth * model.getBoardHeight() / MAX_DAMAGED_INTERSECTIONS_DIVISOR;
+        var damage = new BitSet();
+
+        if (!addStoneChanges(damage, lastNode, commonAncestor, boardWidth, maxDamage)
+                || !addStoneChanges(damage, node, commonAncestor, boardWidth, maxDamage)) {
+            return Optional.empty();
+        }
+
+        damage.or(lastMarks);
+        damage.or(renderedMarks);
+
+        if (damage.cardinality() > maxDamage) {
+            return Optional.empty();
+        }
+        return Optional.of(damage);
+    }
+
+    /*
+     * Adds the stones changed by every node from the given node up to, but excluding, the
+     * ancestor. Returns false if there are too many nodes on the way for a partial redraw.
+     */
+    private static boolean addStoneChanges(BitSet damage, GameNode node, GameNode ancestor,
+                                           int boardWidth, int maxDamage) {
+        int nodesVisited = 0;
+
+        for (var n = node; n != ancestor; n = n.getParent()) {
+            if (n == null || ++nodesVisited > maxDamage) {
+                return false;
+            }
+
+            for (Stone stone : n.getStoneEdits()) {
+                damage.set(stone.getX() + stone.getY() * boardWidth);
+            }
+            for (Stone capture : n.getCapturesThisTurn()) {
+                damage.set(capture.getX() + capture.getY() * boardWidth);
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * Intersections covered by annotations, the current move marker and next move markers
+     * drawn on the node.
+     */
+    private static BitSet getMarkedIntersections(GameModel model, GameNode node) {
+        var marks = new BitSet();
+        int boardWidth = model.getBoardWidth();
+
+        for (Annotation annotation : node.getAnnotations()) {
+            int startX = annotation.getX();
+            int startY = annotation.getY();
+            int endX = startX;
+            int endY = startY;
+
+            if (annotation instanceof Annotation.DirectionalAnnotation) {
+                var directional = (Annotation.DirectionalAnnotation) annotation;
+                endX = directional.getXEnd();
+                endY = directional.getYEnd();
+            }
+
+            for (int x = Math.min(startX, endX); x <= Math.max(startX, endX); ++x) {
+                for (int y = Math.min(startY, endY); y <= Math.max(startY, endY); ++y) {
+                    marks.set(x + y * boardWidth);
+                }
+            }
+        }
+
+        markPrimaryMove(marks, node, boardWidth);
+        // Variations left out by a lazy import have no markers until they are loaded
+        for (GameNode child : node.getLoadedChildNodes()) {
+            markPrimaryMove(marks, child, boardWidth);
+        }
+
+        return marks;
+    }
+
+    private static void markPrimaryMove(BitSet marks, GameNode node, int boardWidth) {
+        var primaryMove = node.getPrimaryMove();
+        if (primaryMove != null) {
+            marks.set(primaryMove.getX() + primaryMove.getY() * boardWidth);
+        }
+    }
+}
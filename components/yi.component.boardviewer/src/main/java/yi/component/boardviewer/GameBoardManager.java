@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import yi.component.boardviewer.editmodes.AbstractEditMode;
 import yi.component.boardviewer.editmodes.EditMode;
+import yi.component.shared.component.RenderMetrics;
 import yi.component.shared.property.*;
 import yi.core.go.GameModel;
 import yi.core.go.GameNode;
@@ -21,6 +22,7 @@ public final class GameBoardManager {
     public final GameBoardView view = new GameBoardView();
     public final GameBoardAudio audio = new GameBoardAudio();
     public final GameBoardModelEditor edit = new GameBoardModelEditor(this);
+    final RenderMetrics metrics = new RenderMetrics("Game board");
 
     private final Property<AbstractEditMode> editMode = new Property<>(EditMode.playMove());
     private final NullableProperty<GameNode> previewNode = new NullableProperty<>(null);
@@ -0,0 +1,41 @@
+package yi.component.boardviewer;
+
+import javafx.scene.canvas.GraphicsContext;
+import yi.component.shared.component.RenderMetricsOverlay;
+import yi.core.go.GameModel;
+
+/**
+ * Draws the render metrics of the game board over all other layers. Only shown when
+ * enabled through {@link GameBoardViewer#setShowRenderMetrics(boolean)}, and is
+ * transparent to mouse input so that {@link GameBoardInputCanvas} still receives it.
+ */
+final class GameBoardMetricsCanvas extends GameBoardCanvas {
+
+    private static final double OVERLAY_INSETS = 8d;
+
+    GameBoardMetricsCanvas(GameBoardManager manager) {
+        super(manager);
+
+        setMouseTransparent(true);
+        setVisible(false);
+    }
+
+    @Override
+    protected void renderImpl(GraphicsContext g, GameBoardManager manager) {
+        g.clearRect(0, 0, getWidth(), getHeight());
+
+        if (isVisible()) {
+            RenderMetricsOverlay.render(g, manager.metrics, OVERLAY_INSETS, OVERLAY_INSETS);
+        }
+    }
+
+    @Override
+    public void onGameModelSet(GameModel newModel, GameBoardManager manager) {
+
+    }
+
+    @Override
+    public void onGameUpdate(GameModel gameModel, GameBoardManager manager) {
+
+    }
+}
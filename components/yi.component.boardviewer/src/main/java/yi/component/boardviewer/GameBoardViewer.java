@@ -1,5 +1,6 @@
 package yi.component.boardviewer;
 
+import javafx.scene.canvas.Canvas;
 import javafx.scene.image.Image;
 import javafx.scene.input.TransferMode;
 import javafx.scene.layout.Pane;
@@ -11,6 +12,8 @@ import yi.component.shared.property.BooleanPropertyListener;
 import yi.component.shared.property.NullablePropertyListener;
 import yi.component.shared.audio.StoneAudioSet;
 import yi.component.shared.component.CanvasContainer;
+import yi.component.shared.component.RenderMetrics;
+import yi.component.shared.component.RenderScheduler;
 import yi.component.shared.component.YiComponent;
 import yi.core.go.EventListener;
 import yi.core.go.GameModel;
@@ -18,6 +21,7 @@ import yi.core.go.GameNode;
 import yi.core.go.NodeEvent;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Stack;
@@ -30,27 +34,44 @@ import java.util.function.Function;
 public final class GameBoardViewer implements YiComponent {
 
     private final CanvasContainer container;
+    private final GameBoardStaticCanvas staticCanvas;
     private final GameBoardInputCanvas inputCanvas;
+    private final GameBoardMetricsCanvas metricsCanvas;
     private final Stack<GameBoardCanvas> content = new Stack<>();
 
     private final GameBoardManager manager = new GameBoardManager();
 
+    private final RenderScheduler.RenderTask renderTask = RenderScheduler.createTask("Game board", this::renderPending);
+    private boolean fullRenderPending = false;
+    private boolean updatePending = false;
+
     public GameBoardViewer() {
+        staticCanvas = new GameBoardStaticCanvas(manager);
         inputCanvas = new GameBoardInputCanvas(manager);
+        content.push(staticCanvas);
         content.push(new GameBoardMainCanvas(manager));
         content.push(inputCanvas);
 
-        container = new CanvasContainer(content);
+        // Drawn after each frame has been measured, so it is not part of the content
+        metricsCanvas = new GameBoardMetricsCanvas(manager);
+        var layers = new ArrayList<Canvas>(content);
+        layers.add(metricsCanvas);
+
+        container = new CanvasContainer(layers);
 
         addRenderSignalHooks();
     }
 
     private void addRenderSignalHooks() {
         manager.addPreviewNodeChangeListener(newPreview -> renderAll());
-        manager.addShowCoordinateValueListener(newValue -> renderAll());
+        manager.addShowCoordinateValueListener(newValue -> {
+            staticCanvas.invalidate();
+            renderAll();
+        });
 
         container.addSizeUpdateListener(newSize -> {
             manager.setBoardCanvasSize(newSize.getWidth(), newSize.getHeight(), manager.getGameModel());
+            staticCanvas.invalidate();
             renderAll();
         });
     }
@@ -86,11 +107,47 @@ public final class GameBoardViewer implements YiComponent {
     }
 
     private void renderAll() {
-        if (manager.hasGameModel()) {
-            content.forEach(canvas -> canvas.render(manager));
+        fullRenderPending = true;
+        renderTask.request();
+    }
+
+    /*
+     * Runs once per pulse for all the renders and updates requested since the last one. A
+     * full render already draws everything that an update would. The render metrics are
+     * drawn last, and are the only layer drawn if nothing else was requested.
+     */
+    private void renderPending() {
+        if (!manager.hasGameModel()) {
+            return;
+        }
+
+        if (fullRenderPending || updatePending) {
+            long startTime = System.nanoTime();
+
+            if (fullRenderPending) {
+                content.forEach(canvas -> canvas.render(manager));
+            } else {
+                content.forEach(canvas -> canvas.onGameUpdate(manager.getGameModel(), this.manager));
+            }
+            fullRenderPending = false;
+            updatePending = false;
+
+            manager.metrics.recordFrame(System.nanoTime() - startTime);
+        }
+
+        if (metricsCanvas.isVisible()) {
+            metricsCanvas.render(manager);
         }
     }
 
+    /*
+     * Repaints the board layer after a change to the board theme.
+     */
+    private void renderBoardTheme() {
+        staticCanvas.invalidate();
+        renderAll();
+    }
+
     private final EventListener<NodeEvent> updateAllCanvas = (newCurrentNode) -> update();
 
     /**
@@ -135,7 +192,8 @@ public final class GameBoardViewer implements YiComponent {
      *
      */
     void update() {
-        content.forEach(canvas -> canvas.onGameUpdate(manager.getGameModel(), this.manager));
+        updatePending = true;
+        renderTask.request();
     }
 
     /**
@@ -153,6 +211,36 @@ public final class GameBoardViewer implements YiComponent {
      */
     public void setDebugMode(boolean debugMode) {
         this.manager.setDebugMode(debugMode);
+        renderBoardTheme();
+    }
+
+    /**
+     * Retrieves the render statistics of the game board, such as the time taken by each
+     * of its layers, the number of stones and annotations drawn, and the time taken by
+     * its recent frames.
+     *
+     * @return Render metrics of this game board.
+     */
+    public RenderMetrics getRenderMetrics() {
+        return manager.metrics;
+    }
+
+    /**
+     * Sets whether to draw the render metrics of the game board over its content.
+     *
+     * @param doShow {@code true} to draw the render metrics.
+     * @see #getRenderMetrics()
+     */
+    public void setShowRenderMetrics(boolean doShow) {
+        metricsCanvas.setVisible(doShow);
+        renderTask.request();
+    }
+
+    /**
+     * @return {@code true} if the game board is drawing its render metrics.
+     */
+    public boolean isShowingRenderMetrics() {
+        return metricsCanvas.isVisible();
     }
 
     /**
@@ -163,6 +251,7 @@ public final class GameBoardViewer implements YiComponent {
      */
     public void setBoardImage(@Nullable Image image) {
         manager.view.boardImage = image;
+        renderBoardTheme();
     }
 
     /**
@@ -173,6 +262,7 @@ public final class GameBoardViewer implements YiComponent {
      */
     public void setBackgroundImage(@Nullable Image image) {
         manager.view.backgroundImage = image;
+        renderBoardTheme();
     }
 
     public @Nullable Image getBackgroundImage() {
@@ -182,6 +272,7 @@ public final class GameBoardViewer implements YiComponent {
     public void setGridColor(Color gridColor) {
         Objects.requireNonNull(gridColor, "gridColor must not be null");
         manager.view.boardGridColor = gridColor;
+        renderBoardTheme();
     }
 
     protected final GameBoardManager getManager() {
@@ -1,6 +1,146 @@
 package yi.component.boardviewer;
 
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Transform;
+import yi.component.shared.component.RenderMetrics;
+import yi.component.shared.utilities.ComparisonUtilities;
+import yi.core.go.StoneColor;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Draws board stones from a sprite atlas instead of rendering each of them with its
+ * gradient and drop shadow effect, which are among the slowest operations on a canvas.
+ * <p/>
+ * The atlas of a {@link PresetStoneStyle} holds one black and one white stone, shadow
+ * included, rasterized at the current stone size. It is only rebuilt once the stone size
+ * or shadow in {@link GameBoardSize} has changed, or the canvas moved to a screen with
+ * a different output scale.
+ */
 // TODO: Allow custom stone image override stone texture
 final class StoneRenderer {
 
+    private static final int BLACK_SPRITE_INDEX = 0;
+    private static final int WHITE_SPRITE_INDEX = 1;
+
+    private final Map<PresetStoneStyle, StoneAtlas> atlases = new EnumMap<>(PresetStoneStyle.class);
+    private final RenderMetrics.Cache atlasMetrics;
+
+    /**
+     * @param atlasMetrics Statistics to record whether each stone could be drawn from an
+     *                     existing atlas, or had to rebuild it.
+     */
+    StoneRenderer(RenderMetrics.Cache atlasMetrics) {
+        this.atlasMetrics = atlasMetrics;
+    }
+
+    /**
+     * Draws one stone of given color at a given board intersection position. Nothing is
+     * drawn if the intersection is empty.
+     *
+     * @param g Graphics context.
+     * @param manager Game board manager.
+     * @param style Style of the stone.
+     * @param color Color of the stone.
+     * @param gridX Intersection x-position.
+     * @param gridY Intersection y-position.
+     */
+    void render(GraphicsContext g, GameBoardManager manager, PresetStoneStyle style,
+                StoneColor color, int gridX, int gridY) {
+        int spriteIndex;
+
+        if (color == StoneColor.BLACK) {
+            spriteIndex = BLACK_SPRITE_INDEX;
+        } else if (color == StoneColor.WHITE) {
+            spriteIndex = WHITE_SPRITE_INDEX;
+        } else {
+            return;
+        }
+
+        var atlas = getAtlas(g, manager, style);
+        double[] position = manager.size.getStoneRenderPosition(gridX, gridY);
+        double x = position[0] - atlas.padding;
+        double y = position[1] - atlas.padding;
+
+        g.drawImage(atlas.image,
+                spriteIndex * atlas.spriteSize * atlas.scale, 0,
+                atlas.spriteSize * atlas.scale, atlas.spriteSize * atlas.scale,
+                x, y, atlas.spriteSize, atlas.spriteSize);
+    }
+
+    private StoneAtlas getAtlas(GraphicsContext g, GameBoardManager manager, PresetStoneStyle style) {
+        var size = manager.size;
+        double scale = getOutputScale(g.getCanvas());
+        var atlas = atlases.get(style);
+
+        if (atlas == null || !atlas.isFor(size, scale)) {
+            atlas = new StoneAtlas(manager, style, scale);
+            atlases.put(style, atlas);
+            atlasMetrics.recordMiss();
+        } else {
+            atlasMetrics.recordHit();
+        }
+
+        return atlas;
+    }
+
+    /*
+     * Sprites are rasterized at the output scale of the screen so that they stay as sharp
+     * as stones drawn directly on the canvas.
+     */
+    private static double getOutputScale(Canvas canvas) {
+        var scene = canvas.getScene();
+        if (scene == null || scene.getWindow() == null) {
+            return 1d;
+        }
+
+        return scene.getWindow().getOutputScaleX();
+    }
+
+    private static final class StoneAtlas {
+
+        private final double stoneSize;
+        private final double shadowRadius;
+        private final double shadowOffset;
+        private final double scale;
+
+        // Space around the stone in each sprite for its shadow, in canvas units
+        private final double padding;
+        private final double spriteSize;
+        private final WritableImage image;
+
+        private StoneAtlas(GameBoardManager manager, PresetStoneStyle style, double scale) {
+            this.stoneSize = manager.size.getStoneSizeInPixels();
+            this.shadowRadius = manager.size.getStoneShadowRadius();
+            this.shadowOffset = manager.size.getStoneShadowOffset();
+            this.scale = scale;
+
+            this.padding = Math.ceil(shadowRadius + Math.abs(shadowOffset)) + 1;
+            this.spriteSize = Math.ceil(stoneSize) + padding * 2;
+
+            var canvas = new Canvas(spriteSize * 2, spriteSize);
+            var g = canvas.getGraphicsContext2D();
+            style._render(g, manager, StoneColor.BLACK,
+                    BLACK_SPRITE_INDEX * spriteSize + padding, padding, stoneSize);
+            style._render(g, manager, StoneColor.WHITE,
+                    WHITE_SPRITE_INDEX * spriteSize + padding, padding, stoneSize);
+
+            var parameters = new SnapshotParameters();
+            parameters.setFill(Color.TRANSPARENT);
+            parameters.setTransform(Transform.scale(scale, scale));
+            this.image = canvas.snapshot(parameters, null);
+        }
+
+        private boolean isFor(GameBoardSize size, double scale) {
+            return ComparisonUtilities.doubleEquals(stoneSize, size.getStoneSizeInPixels())
+                    && ComparisonUtilities.doubleEquals(shadowRadius, size.getStoneShadowRadius())
+                    && ComparisonUtilities.doubleEquals(shadowOffset, size.getStoneShadowOffset())
+                    && ComparisonUtilities.doubleEquals(this.scale, scale);
+        }
+    }
 }
@@ -0,0 +1,157 @@
+package yi.component.boardviewer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import yi.core.go.Annotation;
+import yi.core.go.GameModel;
+import yi.core.go.GameNode;
+import yi.core.go.GameTree;
+import yi.core.go.StandardGameRules;
+import yi.core.go.StoneColor;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+public final class BoardDamageTest {
+
+    @Test
+    public void testNextMove_DamagesMoveAndCaptures() {
+        var model = new GameModel(9, 9, StandardGameRules.CHINESE);
+        model.beginMoveSequence()
+                .playMove(1, 0)
+                .playMove(0, 0)
+                .playMove(2, 2)
+                .playMove(2, 1);
+        var beforeCapture = model.getCurrentNode();
+
+        var damage = new BoardDamage();
+        damage.reset(model, beforeCapture);
+
+        // Captures the white stone at the corner
+        model.beginMoveSequence().playMove(0, 1);
+        var result = damage.update(model, model.getCurrentNode()).orElseThrow();
+
+        var expected = new BitSet();
+        expected.set(0);          // Captured stone
+        expected.set(9);          // New move
+        expected.set(2 + 9);      // Previous move marker
+        Assertions.assertEquals(expected, result);
+    }
+
+    @Test
+    public void testAnnotations_DamagedOnBothNodes() {
+        var model = new GameModel(9, 9, StandardGameRules.CHINESE);
+        model.beginMoveSequence().playMove(0, 0);
+        model.getEditor().addAnnotationToCurrentNode(new Annotation.Line(1, 1, 3, 2));
+        var annotatedNode = model.getCurrentNode();
+
+        var damage = new BoardDamage();
+        damage.reset(model, annotatedNode);
+
+        model.beginMoveSequence().playMove(8, 8);
+        var result = damage.update(model, model.getCurrentNode()).orElseThrow();
+
+        for (int x = 1; x <= 3; ++x) {
+            for (int y = 1; y <= 2; ++y) {
+                Assertions.assertTrue(result.get(x + y * 9), "Line not damaged at " + x + ", " + y);
+            }
+        }
+    }
+
+    @Test
+    public void testSameNode_RedrawsEverything() {
+        var model = new GameModel(3, 3, StandardGameRules.CHINESE);
+        var damage = new BoardDamage();
+        damage.reset(model, model.getCurrentNode());
+
+        Assertions.assertTrue(damage.update(model, model.getCurrentNode()).isEmpty());
+    }
+
+    @Test
+    public void testAfterPreview_RedrawsEverything() {
+        var model = new GameModel(3, 3, StandardGameRules.CHINESE);
+        var damage = new BoardDamage();
+        damage.reset(model, null);
+
+        model.beginMoveSequence().playMove(0, 0);
+
+        Assertions.assertTrue(damage.update(model, model.getCurrentNode()).isEmpty());
+    }
+
+    @Test
+    public void testRandomNavigation_DamageCoversChangedStones() {
+        var random = new Random(5L);
+        var model = new GameModel(9, 9, StandardGameRules.CHINESE);
+
+        // Mostly long variations, so that there are captures to step over
+        for (int i = 0; i < 600; ++i) {
+            if (random.nextInt(20) == 0) {
+                var nodes = getAllNodes(model);
+                model.setCurrentNode(nodes.get(random.nextInt(nodes.size())));
+            }
+            model.getEditor().addMove(random.nextInt(9), random.nextInt(9));
+        }
+
+        var nodes = getAllNodes(model);
+        var damage = new BoardDamage();
+        var lastNode = model.getRootNode();
+        damage.reset(model, lastNode);
+        int partialRedraws = 0;
+
+        for (int i = 0; i < 1000; ++i) {
+            // Mostly steps back and forth, as when browsing a game with the arrow keys
+            GameNode node;
+            if (random.nextInt(10) == 0) {
+                node = nodes.get(random.nextInt(nodes.size()));
+            } else if (random.nextBoolean() && !lastNode.isRoot()) {
+                node = lastNode.getParent();
+            } else if (!lastNode.isLastMoveInThisVariation()) {
+                var children = lastNode.getChildNodes();
+                node = children.get(random.nextInt(children.size()));
+            } else {
+                node = model.getRootNode();
+            }
+
+            var result = damage.update(model, node);
+            if (result.isPresent()) {
+                ++partialRedraws;
+                assertCoversChangedStones(model, lastNode, node, result.get(), "Step #" + i);
+            }
+
+            lastNode = node;
+        }
+
+        Assertions.assertTrue(partialRedraws > 500, "Only " + partialRedraws + " partial redraws");
+    }
+
+    private void assertCoversChangedStones(GameModel model, GameNode from, GameNode to, BitSet damage,
+                                           String message) {
+        var before = model.getGameState(from).getBoardPosition();
+        var after = model.getGameState(to).getBoardPosition();
+
+        for (int i = 0; i < before.getIntersectionCount(); ++i) {
+            StoneColor colorBefore = before.getStoneColorAt(i);
+            StoneColor colorAfter = after.getStoneColorAt(i);
+
+            if (colorBefore != colorAfter) {
+                Assertions.assertTrue(damage.get(i), message + ": Changed intersection " + i + " not damaged");
+            }
+        }
+
+        for (var node : List.of(from, to)) {
+            var primaryMove = node.getPrimaryMove();
+            if (primaryMove != null) {
+                Assertions.assertTrue(damage.get(primaryMove.getX() + primaryMove.getY() * model.getBoardWidth()),
+                        message + ": Move marker not damaged");
+            }
+        }
+    }
+
+    private List<GameNode> getAllNodes(GameModel model) {
+        var result = new ArrayList<GameNode>();
+        GameTree.Companion.traverseSubtree(model.getRootNode(), result::add);
+        return result;
+    }
+}
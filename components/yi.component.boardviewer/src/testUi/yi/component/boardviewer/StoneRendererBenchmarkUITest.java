@@ -0,0 +1,119 @@
+package yi.component.boardviewer;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.stage.Stage;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.testfx.api.FxRobot;
+import org.testfx.framework.junit5.ApplicationExtension;
+import org.testfx.framework.junit5.Start;
+import yi.core.go.StandardGameRules;
+import yi.core.go.StoneColor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time taken to redraw a board filled with 361 stones, drawing each stone with
+ * its gradient and drop shadow against drawing it from the {@link StoneRenderer} atlas.
+ * Canvas commands are only rasterized once the canvas is shown, so every redraw is followed
+ * by a snapshot of the canvas.
+ */
+// TODO: Move me into a performance test source set
+@ExtendWith(ApplicationExtension.class)
+public final class StoneRendererBenchmarkUITest extends GameBoardUITestBase {
+
+    private static final int WARM_UP_REDRAWS = 20;
+    private static final int MEASURED_REDRAWS = 100;
+
+    @Start
+    @Override
+    public void start(Stage stage) {
+        super.start(stage);
+    }
+
+    @AfterEach
+    @Override
+    protected void dispose() {
+        super.dispose();
+    }
+
+    @Test
+    public void testFullBoardRedraw_AtlasFasterThanEffects(FxRobot robot) {
+        var durations = new long[2];
+
+        robot.interact(() -> {
+            var manager = getBoardManager();
+            var stageBounds = manager.size.getStageBounds();
+            var canvas = new Canvas(stageBounds.getWidth(), stageBounds.getHeight());
+            var stoneRenderer = new StoneRenderer(manager.metrics.getCache("Stone atlas"));
+
+            durations[0] = measureRedraws(canvas, (g, color, x, y) ->
+                    PresetStoneStyle.getDefaultValue().render(g, manager, color, x, y));
+            durations[1] = measureRedraws(canvas, (g, color, x, y) ->
+                    stoneRenderer.render(g, manager, PresetStoneStyle.getDefaultValue(), color, x, y));
+        });
+
+        long effectMillis = TimeUnit.NANOSECONDS.toMillis(durations[0]);
+        long atlasMillis = TimeUnit.NANOSECONDS.toMillis(durations[1]);
+
+        Assertions.assertTrue(durations[1] < durations[0],
+                "Drawing " + MEASURED_REDRAWS + " full boards from the atlas took " + atlasMillis
+                        + "ms (" + (double) atlasMillis / MEASURED_REDRAWS + "ms each), with effects "
+                        + effectMillis + "ms (" + (double) effectMillis / MEASURED_REDRAWS + "ms each)");
+    }
+
+    private long measureRedraws(Canvas canvas, StoneDrawer drawer) {
+        var g = canvas.getGraphicsContext2D();
+        var image = new WritableImage((int) canvas.getWidth(), (int) canvas.getHeight());
+        var parameters = new SnapshotParameters();
+
+        for (int i = 0; i < WARM_UP_REDRAWS; ++i) {
+            redraw(canvas, g, drawer);
+            canvas.snapshot(parameters, image);
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < MEASURED_REDRAWS; ++i) {
+            redraw(canvas, g, drawer);
+            canvas.snapshot(parameters, image);
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    private void redraw(Canvas canvas, GraphicsContext g, StoneDrawer drawer) {
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+        for (int x = 0; x < getBoardWidth(); ++x) {
+            for (int y = 0; y < getBoardHeight(); ++y) {
+                var color = (x + y) % 2 == 0 ? StoneColor.BLACK : StoneColor.WHITE;
+                drawer.draw(g, color, x, y);
+            }
+        }
+    }
+
+    private interface StoneDrawer {
+        void draw(GraphicsContext g, StoneColor color, int x, int y);
+    }
+
+    @Override
+    protected int getBoardWidth() {
+        return 19;
+    }
+
+    @Override
+    protected int getBoardHeight() {
+        return 19;
+    }
+
+    @NotNull
+    @Override
+    protected StandardGameRules getGameRules() {
+        return StandardGameRules.CHINESE;
+    }
+}
@@ -0,0 +1,262 @@
+package yi.component.shared.component;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Collects render statistics for one component: the time taken and number of elements drawn
+ * by each layer it renders, how often its caches could be reused, and the time taken by its
+ * recent frames. Can be drawn on the component using {@link RenderMetricsOverlay}.
+ * <p/>
+ * Canvas draw calls are only rasterized later in the JavaFx pulse, so the times recorded here
+ * are the times taken to issue them.
+ */
+public final class RenderMetrics {
+
+    /**
+     * Number of most recent frames kept for the frame time histogram.
+     */
+    public static final int FRAME_HISTORY_SIZE = 120;
+
+    // Upper bounds of the histogram buckets, the last bucket takes all frames above them
+    private static final double[] HISTOGRAM_BUCKET_LIMITS_MILLIS = { 2d, 4d, 8d, 16.7d, 33.3d };
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private final String name;
+    private final Map<String, Layer> layers = new LinkedHashMap<>();
+    private final Map<String, Cache> caches = new LinkedHashMap<>();
+
+    private final long[] frameTimes = new long[FRAME_HISTORY_SIZE];
+    private int nextFrameIndex = 0;
+    private int frameCount = 0;
+
+    public RenderMetrics(@NotNull String name) {
+        this.name = Objects.requireNonNull(name);
+    }
+
+    /**
+     * Retrieves the statistics for one render layer, creating it on first use. Layers are
+     * listed in the order they were first retrieved.
+     *
+     * @param layerName Name of the layer.
+     * @return Statistics to record the renders of the layer to.
+     */
+    public Layer getLayer(@NotNull String layerName) {
+        return layers.computeIfAbsent(layerName, Layer::new);
+    }
+
+    /**
+     * Retrieves the statistics for one cache, creating it on first use. Caches are listed
+     * in the order they were first retrieved.
+     *
+     * @param cacheName Name of the cache.
+     * @return Statistics to record the cache accesses to.
+     */
+    public Cache getCache(@NotNull String cacheName) {
+        return caches.computeIfAbsent(cacheName, Cache::new);
+    }
+
+    public List<Layer> getLayers() {
+        return Collections.unmodifiableList(new ArrayList<>(layers.values()));
+    }
+
+    public List<Cache> getCaches() {
+        return Collections.unmodifiableList(new ArrayList<>(caches.values()));
+    }
+
+    /**
+     * Records the time taken to render one frame of the component.
+     *
+     * @param durationNanos Time taken by the frame.
+     */
+    public void recordFrame(long durationNanos) {
+        frameTimes[nextFrameIndex] = durationNanos;
+        nextFrameIndex = (nextFrameIndex + 1) % FRAME_HISTORY_SIZE;
+        frameCount = Math.min(frameCount + 1, FRAME_HISTORY_SIZE);
+    }
+
+    /**
+     * @return Time taken by the most recent frames, from the oldest to the latest. Holds at
+     *         most {@link #FRAME_HISTORY_SIZE} frames.
+     */
+    public long[] getRecentFrameTimes() {
+        var result = new long[frameCount];
+        int firstIndex = (nextFrameIndex - frameCount + FRAME_HISTORY_SIZE) % FRAME_HISTORY_SIZE;
+
+        for (int i = 0; i < frameCount; ++i) {
+            result[i] = frameTimes[(firstIndex + i) % FRAME_HISTORY_SIZE];
+        }
+
+        return result;
+    }
+
+    /**
+     * @return Time taken by the latest frame, or 0 if there has been none.
+     */
+    public long getLastFrameTime() {
+        if (frameCount == 0) {
+            return 0;
+        }
+        return frameTimes[(nextFrameIndex - 1 + FRAME_HISTORY_SIZE) % FRAME_HISTORY_SIZE];
+    }
+
+    /**
+     * Counts the most recent frames by the time they took. Bucket {@code i} counts the frames
+     * that took longer than the limit of bucket {@code i - 1} and up to the limit of bucket
+     * {@code i}, see {@link #getHistogramBucketLimitsMillis()}. The extra last bucket counts
+     * the frames above all limits.
+     *
+     * @return Number of frames in each bucket.
+     */
+    public int[] getFrameTimeHistogram() {
+        var histogram = new int[HISTOGRAM_BUCKET_LIMITS_MILLIS.length + 1];
+
+        for (long frameTime : getRecentFrameTimes()) {
+            double millis = frameTime / NANOS_PER_MILLI;
+            int bucket = 0;
+
+            while (bucket < HISTOGRAM_BUCKET_LIMITS_MILLIS.length && millis > HISTOGRAM_BUCKET_LIMITS_MILLIS[bucket]) {
+                ++bucket;
+            }
+            ++histogram[bucket];
+        }
+
+        return histogram;
+    }
+
+    /**
+     * @return Upper bounds of the frame time histogram buckets, in milliseconds.
+     */
+    public static double[] getHistogramBucketLimitsMillis() {
+        return HISTOGRAM_BUCKET_LIMITS_MILLIS.clone();
+    }
+
+    /**
+     * Clears all recorded statistics, keeping the layers and caches.
+     */
+    public void reset() {
+        layers.values().forEach(Layer::reset);
+        caches.values().forEach(Cache::reset);
+        nextFrameIndex = 0;
+        frameCount = 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Render statistics of one layer of a component.
+     */
+    public static final class Layer {
+
+        private final String name;
+        private long renderCount = 0;
+        private long totalDurationNanos = 0;
+        private long lastDurationNanos = 0;
+        private int lastElementsDrawn = 0;
+
+        private Layer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records one render of the layer.
+         *
+         * @param durationNanos Time taken to render the layer.
+         * @param elementsDrawn Number of elements drawn, such as stones or tree nodes.
+         */
+        public void record(long durationNanos, int elementsDrawn) {
+            ++renderCount;
+            totalDurationNanos += durationNanos;
+            lastDurationNanos = durationNanos;
+            lastElementsDrawn = elementsDrawn;
+        }
+
+        private void reset() {
+            renderCount = 0;
+            totalDurationNanos = 0;
+            lastDurationNanos = 0;
+            lastElementsDrawn = 0;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getRenderCount() {
+            return renderCount;
+        }
+
+        public long getLastDurationNanos() {
+            return lastDurationNanos;
+        }
+
+        public long getAverageDurationNanos() {
+            return renderCount == 0 ? 0 : totalDurationNanos / renderCount;
+        }
+
+        public int getLastElementsDrawn() {
+            return lastElementsDrawn;
+        }
+    }
+
+    /**
+     * Access statistics of one cache of a component.
+     */
+    public static final class Cache {
+
+        private final String name;
+        private long hits = 0;
+        private long misses = 0;
+
+        private Cache(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records one access that could reuse the cached content.
+         */
+        public void recordHit() {
+            ++hits;
+        }
+
+        /**
+         * Records one access that had to create the content again.
+         */
+        public void recordMiss() {
+            ++misses;
+        }
+
+        private void reset() {
+            hits = 0;
+            misses = 0;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return Share of accesses that were hits, from 0 to 1, or 0 if there has been none.
+         */
+        public double getHitRate() {
+            long accesses = hits + misses;
+            return accesses == 0 ? 0d : (double) hits / accesses;
+        }
+    }
+}
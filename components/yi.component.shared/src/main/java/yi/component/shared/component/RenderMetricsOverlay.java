@@ -0,0 +1,124 @@
+package yi.component.shared.component;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws the {@link RenderMetrics} of a component in a panel over its content: the time and
+ * element count of each layer, the hit rate of each cache, and a histogram of recent frame
+ * times.
+ */
+public final class RenderMetricsOverlay {
+
+    private static final double FONT_SIZE = 11d;
+    private static final double LINE_HEIGHT = 14d;
+    private static final double PADDING = 6d;
+    private static final double PANEL_WIDTH = 230d;
+    private static final double HISTOGRAM_HEIGHT = 40d;
+
+    private static final Color BACKGROUND_COLOR = new Color(0d, 0d, 0d, 0.7d);
+    private static final Color TEXT_COLOR = Color.WHITE;
+    private static final Color BAR_COLOR = Color.LIMEGREEN;
+    // Frames slower than the display refresh interval
+    private static final Color SLOW_BAR_COLOR = Color.ORANGERED;
+    private static final double SLOW_FRAME_MILLIS = 16.7d;
+
+    private RenderMetricsOverlay() { }
+
+    /**
+     * Draws the metrics panel with its top left corner at the given position.
+     *
+     * @param g Graphics context.
+     * @param metrics Metrics to draw.
+     * @param x X position of the panel.
+     * @param y Y position of the panel.
+     */
+    public static void render(GraphicsContext g, RenderMetrics metrics, double x, double y) {
+        var lines = getTextLines(metrics);
+        double panelHeight = PADDING * 3 + lines.size() * LINE_HEIGHT + HISTOGRAM_HEIGHT + LINE_HEIGHT;
+
+        g.save();
+        g.setFill(BACKGROUND_COLOR);
+        g.fillRect(x, y, PANEL_WIDTH, panelHeight);
+
+        g.setFont(FontManager.getDefaultFont(FONT_SIZE));
+        g.setFill(TEXT_COLOR);
+        g.setTextAlign(TextAlignment.LEFT);
+        g.setTextBaseline(VPos.TOP);
+
+        double lineY = y + PADDING;
+        for (String line : lines) {
+            g.fillText(line, x + PADDING, lineY);
+            lineY += LINE_HEIGHT;
+        }
+
+        renderHistogram(g, metrics, x + PADDING, lineY + PADDING, PANEL_WIDTH - PADDING * 2);
+        g.restore();
+    }
+
+    private static List<String> getTextLines(RenderMetrics metrics) {
+        var lines = new ArrayList<String>();
+        var frameTimes = metrics.getRecentFrameTimes();
+        long totalFrameTime = 0;
+        for (long frameTime : frameTimes) {
+            totalFrameTime += frameTime;
+        }
+        long averageFrameTime = frameTimes.length == 0 ? 0 : totalFrameTime / frameTimes.length;
+
+        lines.add(metrics.getName());
+        lines.add(String.format("Frame: %.2f ms (avg %.2f ms)", toMillis(metrics.getLastFrameTime()),
+                toMillis(averageFrameTime)));
+
+        for (var layer : metrics.getLayers()) {
+            lines.add(String.format("%s: %.2f ms (avg %.2f ms), %d drawn", layer.getName(),
+                    toMillis(layer.getLastDurationNanos()), toMillis(layer.getAverageDurationNanos()),
+                    layer.getLastElementsDrawn()));
+        }
+
+        for (var cache : metrics.getCaches()) {
+            lines.add(String.format("%s: %.1f%% hits (%d of %d)", cache.getName(), cache.getHitRate() * 100d,
+                    cache.getHits(), cache.getHits() + cache.getMisses()));
+        }
+
+        return lines;
+    }
+
+    private static void renderHistogram(GraphicsContext g, RenderMetrics metrics, double x, double y, double width) {
+        var histogram = metrics.getFrameTimeHistogram();
+        var limits = RenderMetrics.getHistogramBucketLimitsMillis();
+
+        int maxCount = 1;
+        for (int count : histogram) {
+            maxCount = Math.max(maxCount, count);
+        }
+
+        double barWidth = width / histogram.length;
+        g.setTextAlign(TextAlignment.CENTER);
+
+        for (int i = 0; i < histogram.length; ++i) {
+            double barHeight = HISTOGRAM_HEIGHT * histogram[i] / maxCount;
+            double barX = x + i * barWidth;
+            boolean slow = i > 0 && limits[i - 1] >= SLOW_FRAME_MILLIS;
+
+            g.setFill(slow ? SLOW_BAR_COLOR : BAR_COLOR);
+            g.fillRect(barX + 1, y + HISTOGRAM_HEIGHT - barHeight, barWidth - 2, barHeight);
+
+            String label = i < limits.length ? "<=" + formatLimit(limits[i]) : ">" + formatLimit(limits[i - 1]);
+            g.setFill(TEXT_COLOR);
+            g.fillText(label, barX + barWidth / 2, y + HISTOGRAM_HEIGHT);
+        }
+    }
+
+    private static String formatLimit(double millis) {
+        return millis == Math.floor(millis) ? String.valueOf((int) millis) : String.valueOf(millis);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000d;
+    }
+}
@@ -0,0 +1,171 @@
+package yi.component.shared.component;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Global render scheduler for Yi application suite. Components request a render through a
+ * {@link RenderTask} whenever their content has changed, and each task is run at most once
+ * per JavaFx pulse no matter how many times it has been requested since the last one.
+ * <p/>
+ * Tasks are run before the pulse lays out and draws the scene, so anything they draw shows
+ * up in the same frame. Renders requested while the tasks are run are left for the next
+ * pulse, as are the tasks after one that throws. The scheduler stops requesting pulses
+ * once a pulse has passed without any render requested.
+ */
+public final class RenderScheduler {
+
+    private static final Set<RenderTask> PENDING_TASKS = new LinkedHashSet<>();
+
+    private static AnimationTimer pulseTimer = null;
+    private static boolean pulseTimerRunning = false;
+    private static boolean idlePulse = false;
+
+    private static long requestedRenders = 0;
+    private static long executedRenders = 0;
+
+    private RenderScheduler() { }
+
+    /**
+     * Creates a task that renders one component.
+     *
+     * @param name Name of the component, used to tell tasks apart when inspecting them.
+     * @param render Action that renders the component. Always invoked on the JavaFx
+     *               application thread.
+     * @return The task to request renders with.
+     */
+    public static RenderTask createTask(@NotNull String name, @NotNull Runnable render) {
+        return new RenderTask(name, render);
+    }
+
+    /**
+     * @return Number of renders requested on all tasks.
+     */
+    public static long getRequestedRenderCount() {
+        return requestedRenders;
+    }
+
+    /**
+     * @return Number of renders actually run for all tasks. The difference to
+     *         {@link #getRequestedRenderCount()} is the number of redundant renders saved.
+     */
+    public static long getExecutedRenderCount() {
+        return executedRenders;
+    }
+
+    private static void schedule(RenderTask task) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> schedule(task));
+            return;
+        }
+
+        ++requestedRenders;
+        ++task.requestedRenders;
+        PENDING_TASKS.add(task);
+
+        if (!pulseTimerRunning) {
+            if (pulseTimer == null) {
+                pulseTimer = new AnimationTimer() {
+                    @Override
+                    public void handle(long now) {
+                        runPendingTasks();
+                    }
+                };
+            }
+            pulseTimer.start();
+            pulseTimerRunning = true;
+            idlePulse = false;
+        }
+    }
+
+    private static void runPendingTasks() {
+        if (PENDING_TASKS.isEmpty()) {
+            // Only stopped after an idle pulse. Requests made in between pulses, such as
+            // every frame of a camera animation, would otherwise restart the timer each
+            // time and only be run every other pulse.
+            if (idlePulse) {
+                pulseTimer.stop();
+                pulseTimerRunning = false;
+            }
+            idlePulse = true;
+            return;
+        }
+
+        idlePulse = false;
+
+        var tasks = new ArrayList<>(PENDING_TASKS);
+        PENDING_TASKS.clear();
+        int nextTask = 0;
+
+        try {
+            while (nextTask < tasks.size()) {
+                RenderTask task = tasks.get(nextTask++);
+                ++executedRenders;
+                ++task.executedRenders;
+                task.render.run();
+            }
+        } finally {
+            // A render that throws leaves the tasks after it for the next pulse
+            if (nextTask < tasks.size()) {
+                var requestedTasks = new ArrayList<>(PENDING_TASKS);
+                PENDING_TASKS.clear();
+                PENDING_TASKS.addAll(tasks.subList(nextTask, tasks.size()));
+                PENDING_TASKS.addAll(requestedTasks);
+            }
+        }
+    }
+
+    /**
+     * Renders one component through the {@link RenderScheduler}.
+     */
+    public static final class RenderTask {
+
+        private final String name;
+        private final Runnable render;
+
+        private long requestedRenders = 0;
+        private long executedRenders = 0;
+
+        private RenderTask(@NotNull String name, @NotNull Runnable render) {
+            this.name = Objects.requireNonNull(name);
+            this.render = Objects.requireNonNull(render);
+        }
+
+        /**
+         * Marks the component as needing a render in the next pulse. May be invoked from
+         * any thread.
+         */
+        public void request() {
+            schedule(this);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Number of renders requested on this task.
+         */
+        public long getRequestedRenderCount() {
+            return requestedRenders;
+        }
+
+        /**
+         * @return Number of renders run for this task.
+         */
+        public long getExecutedRenderCount() {
+            return executedRenders;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + executedRenders + " of " + requestedRenders + " requested renders)";
+        }
+    }
+}
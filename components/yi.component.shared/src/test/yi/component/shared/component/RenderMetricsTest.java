@@ -0,0 +1,100 @@
+package yi.component.shared.component;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import yi.component.shared.utilities.ComparisonUtilities;
+
+public final class RenderMetricsTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    @Test
+    public void testRecentFrameTimes_MoreThanHistorySize_KeepsLatestInOrder() {
+        var metrics = new RenderMetrics("Test");
+        int framesRecorded = RenderMetrics.FRAME_HISTORY_SIZE + 10;
+
+        for (int i = 0; i < framesRecorded; ++i) {
+            metrics.recordFrame(i);
+        }
+
+        var frameTimes = metrics.getRecentFrameTimes();
+        Assertions.assertEquals(RenderMetrics.FRAME_HISTORY_SIZE, frameTimes.length);
+        for (int i = 0; i < frameTimes.length; ++i) {
+            Assertions.assertEquals(10 + i, frameTimes[i]);
+        }
+        Assertions.assertEquals(framesRecorded - 1, metrics.getLastFrameTime());
+    }
+
+    @Test
+    public void testRecentFrameTimes_NoFrames_IsEmpty() {
+        var metrics = new RenderMetrics("Test");
+
+        Assertions.assertEquals(0, metrics.getRecentFrameTimes().length);
+        Assertions.assertEquals(0, metrics.getLastFrameTime());
+    }
+
+    @Test
+    public void testFrameTimeHistogram_CountsFramesIntoBuckets() {
+        var metrics = new RenderMetrics("Test");
+        var limits = RenderMetrics.getHistogramBucketLimitsMillis();
+
+        metrics.recordFrame(MILLIS);         // Below the first limit
+        metrics.recordFrame(2 * MILLIS);     // Exactly on the first limit
+        metrics.recordFrame(3 * MILLIS);
+        metrics.recordFrame(20 * MILLIS);
+        metrics.recordFrame(1000 * MILLIS);  // Above all limits
+
+        var histogram = metrics.getFrameTimeHistogram();
+        Assertions.assertEquals(limits.length + 1, histogram.length);
+        Assertions.assertEquals(2, histogram[0]);
+        Assertions.assertEquals(1, histogram[1]);
+        Assertions.assertEquals(1, histogram[4]);
+        Assertions.assertEquals(1, histogram[histogram.length - 1]);
+    }
+
+    @Test
+    public void testLayer_RecordsLastAndAverage() {
+        var metrics = new RenderMetrics("Test");
+        var layer = metrics.getLayer("Stones");
+
+        layer.record(2 * MILLIS, 10);
+        layer.record(4 * MILLIS, 20);
+
+        Assertions.assertSame(layer, metrics.getLayer("Stones"));
+        Assertions.assertEquals(2, layer.getRenderCount());
+        Assertions.assertEquals(4 * MILLIS, layer.getLastDurationNanos());
+        Assertions.assertEquals(3 * MILLIS, layer.getAverageDurationNanos());
+        Assertions.assertEquals(20, layer.getLastElementsDrawn());
+    }
+
+    @Test
+    public void testCache_HitRate() {
+        var metrics = new RenderMetrics("Test");
+        var cache = metrics.getCache("Atlas");
+
+        Assertions.assertTrue(ComparisonUtilities.doubleEquals(0d, cache.getHitRate()));
+
+        cache.recordHit();
+        cache.recordHit();
+        cache.recordHit();
+        cache.recordMiss();
+
+        Assertions.assertTrue(ComparisonUtilities.doubleEquals(0.75d, cache.getHitRate()));
+    }
+
+    @Test
+    public void testReset_ClearsStatisticsButKeepsLayersAndCaches() {
+        var metrics = new RenderMetrics("Test");
+        metrics.getLayer("Board").record(MILLIS, 1);
+        metrics.getCache("Board layer").recordHit();
+        metrics.recordFrame(MILLIS);
+
+        metrics.reset();
+
+        Assertions.assertEquals(1, metrics.getLayers().size());
+        Assertions.assertEquals(1, metrics.getCaches().size());
+        Assertions.assertEquals(0, metrics.getLayer("Board").getRenderCount());
+        Assertions.assertEquals(0, metrics.getCache("Board layer").getHits());
+        Assertions.assertEquals(0, metrics.getRecentFrameTimes().length);
+    }
+}
@@ -0,0 +1,109 @@
+package yi.component.shared.component;
+
+import javafx.scene.Scene;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.Stage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.testfx.framework.junit5.ApplicationExtension;
+import org.testfx.framework.junit5.Start;
+import org.testfx.util.WaitForAsyncUtils;
+import yi.component.shared.UITestHelper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@ExtendWith(ApplicationExtension.class)
+public final class RenderSchedulerTest {
+
+    private Stage stage;
+
+    @SuppressWarnings("unused")
+    @Start
+    public void start(Stage stage) {
+        this.stage = stage;
+        stage.setScene(new Scene(new BorderPane(), 200, 200));
+        stage.show();
+    }
+
+    @AfterEach
+    public void cleanUp() throws InterruptedException {
+        UITestHelper.onFxThread(isDone -> {
+            stage.close();
+            isDone.set(true);
+        });
+    }
+
+    @Test
+    public void testManyRequestsInOnePulse_RendersOnce() throws InterruptedException {
+        var renders = new AtomicInteger(0);
+        var rendersBeforePulse = new AtomicInteger(-1);
+        var task = RenderScheduler.createTask("Test", renders::incrementAndGet);
+
+        UITestHelper.onFxThread(isDone -> {
+            for (int i = 0; i < 100; ++i) {
+                task.request();
+            }
+            rendersBeforePulse.set(renders.get());
+            isDone.set(true);
+        });
+        WaitForAsyncUtils.sleep(200, TimeUnit.MILLISECONDS);
+
+        Assertions.assertEquals(0, rendersBeforePulse.get(), "Rendered before the next pulse");
+        Assertions.assertEquals(1, renders.get());
+        Assertions.assertEquals(100, task.getRequestedRenderCount());
+        Assertions.assertEquals(1, task.getExecutedRenderCount());
+    }
+
+    @Test
+    public void testRequestDuringRender_RendersInNextPulse() throws InterruptedException {
+        var renders = new AtomicInteger(0);
+        var task = new RenderScheduler.RenderTask[1];
+        task[0] = RenderScheduler.createTask("Test", () -> {
+            if (renders.incrementAndGet() < 3) {
+                task[0].request();
+            }
+        });
+
+        UITestHelper.onFxThread(isDone -> {
+            task[0].request();
+            isDone.set(true);
+        });
+        WaitForAsyncUtils.sleep(200, TimeUnit.MILLISECONDS);
+
+        Assertions.assertEquals(3, renders.get());
+        Assertions.assertEquals(3, task[0].getExecutedRenderCount());
+    }
+
+    @Test
+    public void testRenderThrows_OtherTasksStillRender() throws InterruptedException {
+        var renders = new AtomicInteger(0);
+        var failingTask = RenderScheduler.createTask("Failing", () -> {
+            throw new IllegalStateException("Render failed");
+        });
+        var task = RenderScheduler.createTask("Test", renders::incrementAndGet);
+
+        UITestHelper.onFxThread(isDone -> {
+            failingTask.request();
+            task.request();
+            isDone.set(true);
+        });
+        WaitForAsyncUtils.sleep(200, TimeUnit.MILLISECONDS);
+
+        Assertions.assertEquals(1, renders.get());
+        Assertions.assertEquals(1, task.getExecutedRenderCount());
+    }
+
+    @Test
+    public void testRequestOffFxThread_Renders() {
+        var renders = new AtomicInteger(0);
+        var task = RenderScheduler.createTask("Test", renders::incrementAndGet);
+
+        task.request();
+        WaitForAsyncUtils.sleep(200, TimeUnit.MILLISECONDS);
+
+        Assertions.assertEquals(1, renders.get());
+    }
+}
@@ -1,10 +1,8 @@
 package yi.component.treeviewer;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
 import javafx.geometry.Dimension2D;
 import javafx.geometry.Point2D;
-import javafx.util.Duration;
 import yi.component.shared.utilities.ComparisonUtilities;
 
 import java.util.HashSet;
@@ -12,16 +10,22 @@ import java.util.Set;
 
 /**
  * A drawing offset manager that determines the draw position of all the elements on
- * the tree canvas. Supports a smooth panning animation.
+ * the tree canvas. Supports a smooth panning animation, which is driven by one
+ * {@link AnimationTimer} that only runs while the camera is moving towards its target.
  */
 final class Camera {
 
+    // TODO: Transfer these hard-coded values to preference values
+    // Time taken to cover about two thirds of the remaining distance to the target
+    private static final double PAN_TIME_CONSTANT_NANOS = 60_000_000d;
+    // Frame duration assumed for the first frame of an animation
+    private static final long FIRST_FRAME_NANOS = 16_666_667L;
+    // The camera snaps onto its target once it is closer than this
+    private static final double PAN_SNAP_DISTANCE = 0.5d;
+
     private double offsetX = 0d;
     private double offsetY = 0d;
 
-    private double stepSizeX = 0d;
-    private double stepSizeY = 0d;
-
     private double lastCenterX = 0d;
     private double lastCenterY = 0d;
 
@@ -33,9 +37,10 @@ final class Camera {
 
     private final Set<Runnable> offsetChangeListener = new HashSet<>();
 
-    // TODO: Transfer this hard-coded value to a preference value
-    // Number of times doSmoothScroll() should be called in order for the entire transition to take place
-    final int animationSteps = 30;
+    // Created on first use, so that the camera can be used without the JavaFx toolkit
+    private AnimationTimer animator = null;
+    private boolean animating = false;
+    private long lastFrameNanos = -1;
 
     public Camera(double viewportWidth, double viewportHeight) {
         this(0d, 0d, viewportWidth, viewportHeight);
@@ -74,8 +79,9 @@ final class Camera {
 
     /**
      * Set the point to center on. The camera will pan to the target location over time.
+     * If the camera is still panning, it turns towards the new location from where it is.
      * To respond to panning animation intermediate-step events, subscribe to the pan animation listener
-     * using {@link #addOffsetChangeListener(Runnable)}.
+     * using {@link #addOffsetChangeListener(Runnable)}. These are fired at most once per frame.
      *
      * @param centerX X position to center on
      * @param centerY Y position to center on
@@ -93,6 +99,7 @@ final class Camera {
      * @param centerY Y position to center on
      */
     public void setCenterOnCoordinateImmediately(double centerX, double centerY) {
+        stopAnimation();
         setCenterOnCoordinate(centerX, centerY);
 
         // Method above should calculate target offset for us
@@ -102,13 +109,10 @@ final class Camera {
         offsetChangeListener.forEach(Runnable::run);
     }
 
-    private void setCenterOnCoordinate(double centerX, double centerY) {
+    void setCenterOnCoordinate(double centerX, double centerY) {
         this.targetOffsetX = -(centerX - viewportWidth / 2);
         this.targetOffsetY = -(centerY - viewportHeight / 2);
 
-        this.stepSizeX = (targetOffsetX - offsetX) / animationSteps;
-        this.stepSizeY = (targetOffsetY - offsetY) / animationSteps;
-
         this.lastCenterX = centerX;
         this.lastCenterY = centerY;
     }
@@ -128,15 +132,26 @@ final class Camera {
     }
 
     /**
-     * Performs one tick of scrolling if the viewport is currently not centered on the target item.
-     * Otherwise, do nothing. The number of invocations required to fully pan to the target location is
-     * dictated by {@link #animationSteps}.
+     * Moves the camera towards its target by the distance covered in the given time. The
+     * camera eases towards the target, so it slows down as it gets closer, and snaps
+     * onto it once it is close enough.
+     *
+     * @param elapsedNanos Time passed since the last step.
+     * @return {@code true} if the camera has not reached its target yet.
      */
-    public void doSmoothScroll() {
-        if (!isCenteredOnTarget()) {
-            offsetX += stepSizeX;
-            offsetY += stepSizeY;
+    boolean stepAnimation(long elapsedNanos) {
+        double progress = 1d - Math.exp(-elapsedNanos / PAN_TIME_CONSTANT_NANOS);
+        offsetX += (targetOffsetX - offsetX) * progress;
+        offsetY += (targetOffsetY - offsetY) * progress;
+
+        if (Math.abs(targetOffsetX - offsetX) < PAN_SNAP_DISTANCE
+                && Math.abs(targetOffsetY - offsetY) < PAN_SNAP_DISTANCE) {
+            offsetX = targetOffsetX;
+            offsetY = targetOffsetY;
+            return false;
         }
+
+        return true;
     }
 
     /**
@@ -149,6 +164,7 @@ final class Camera {
     }
 
     public void setOffset(double x, double y) {
+        stopAnimation();
         this.offsetX = x;
         this.offsetY = y;
 
@@ -172,13 +188,48 @@ final class Camera {
     }
 
     private void startAnimation() {
-        Timeline animator = new Timeline(new KeyFrame(new Duration(10), "Pan Tick", (event) -> {
-            doSmoothScroll();
-            offsetChangeListener.forEach(Runnable::run);
-        }));
+        if (animating) {
+            return;
+        }
+
+        if (animator == null) {
+            animator = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    onAnimationFrame(now);
+                }
+            };
+        }
+
+        animating = true;
+        lastFrameNanos = -1;
+        animator.start();
+    }
 
-        animator.setCycleCount(animationSteps);
-        animator.play();
+    private void onAnimationFrame(long now) {
+        long elapsedNanos = lastFrameNanos < 0 ? FIRST_FRAME_NANOS : now - lastFrameNanos;
+        lastFrameNanos = now;
+
+        boolean moving = stepAnimation(elapsedNanos);
+        offsetChangeListener.forEach(Runnable::run);
+
+        if (!moving) {
+            stopAnimation();
+        }
+    }
+
+    private void stopAnimation() {
+        if (animating) {
+            animator.stop();
+            animating = false;
+        }
+    }
+
+    /**
+     * @return true if the camera is panning towards its target.
+     */
+    public boolean isAnimating() {
+        return animating;
     }
 
     public double getCenterX() {
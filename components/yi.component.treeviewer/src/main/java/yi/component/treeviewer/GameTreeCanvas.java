@@ -11,6 +11,8 @@ import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import yi.component.shared.component.RenderMetrics;
+import yi.component.shared.component.RenderMetricsOverlay;
 import yi.component.shared.i18n.TextResource;
 import yi.component.shared.utilities.GuiUtilities;
 import yi.core.go.GameNode;
@@ -26,9 +28,15 @@ import java.util.List;
 final class GameTreeCanvas extends Canvas {
 
     private static final double BRANCH_LINE_WIDTH = 2d;
+    private static final double METRICS_OVERLAY_INSETS = 8d;
 
     private final GraphicsContext graphics;
 
+    private final RenderMetrics metrics = new RenderMetrics("Game tree");
+    private final RenderMetrics.Layer trackMetrics = metrics.getLayer("Tracks");
+    private final RenderMetrics.Layer nodeMetrics = metrics.getLayer("Nodes");
+    private boolean showMetrics = false;
+
     public GameTreeCanvas() {
         graphics = getGraphicsContext2D();
     }
@@ -49,8 +57,8 @@ final class GameTreeCanvas extends Canvas {
                        @Nullable GameNode previewNode,
                        GameTreeElementSize size) {
 
+        long startTime = System.nanoTime();
         graphics.setFont(settings.getPreviewTextFont());
-        var currentVariationHistory = currentNode.getMoveHistory();
 
         graphics.clearRect(0, 0, getWidth(), getHeight());
         graphics.setFill(settings.getBackgroundColor());
@@ -66,12 +74,37 @@ final class GameTreeCanvas extends Canvas {
         final double gridWidth = size.getGridSize().getWidth();
         final double gridHeight = size.getGridSize().getHeight();
 
-        renderTracks(settings, visibleElements, currentVariationHistory, previewNode, gridWidth, gridHeight, offsetX, offsetY);
-        renderNodes(settings, visibleElements, currentNode, currentVariationHistory, previewNode, gridWidth, gridHeight, offsetX, offsetY);
+        long tracksStartTime = System.nanoTime();
+        int tracksDrawn = renderTracks(settings, visibleElements, currentNode, previewNode,
+                gridWidth, gridHeight, offsetX, offsetY);
+        long nodesStartTime = System.nanoTime();
+        renderNodes(settings, visibleElements, currentNode, previewNode, gridWidth, gridHeight, offsetX, offsetY);
+        long nodesEndTime = System.nanoTime();
+
+        trackMetrics.record(nodesStartTime - tracksStartTime, tracksDrawn);
+        nodeMetrics.record(nodesEndTime - nodesStartTime, visibleElements.size());
 
         if (settings.isPreviewPromptEnabled()) {
             renderPreviewPrompt(settings, previewNode);
         }
+
+        metrics.recordFrame(System.nanoTime() - startTime);
+
+        if (showMetrics) {
+            RenderMetricsOverlay.render(graphics, metrics, METRICS_OVERLAY_INSETS, METRICS_OVERLAY_INSETS);
+        }
+    }
+
+    RenderMetrics getRenderMetrics() {
+        return metrics;
+    }
+
+    void setShowRenderMetrics(boolean doShow) {
+        this.showMetrics = doShow;
+    }
+
+    boolean isShowingRenderMetrics() {
+        return showMetrics;
     }
 
     private void renderPreviewPrompt(GameTreeViewerSettings settings, @Nullable GameNode previewNode) {
@@ -98,12 +131,9 @@ final class GameTreeCanvas extends Canvas {
     }
 
     private void renderNodes(GameTreeViewerSettings settings, List<TreeNodeElement> nodeElements,
-                             GameNode currentNode, List<GameNode> currentVariationHistory,
-                             @Nullable GameNode previewNode,
+                             GameNode currentNode, @Nullable GameNode previewNode,
                              double gridWidth, double gridHeight, double offsetX, double offsetY) {
 
-        var previewNodeHistory = previewNode != null ? previewNode.getMoveHistory() : null;
-
         for (var nodeElement : nodeElements) {
             double x = nodeElement.getGridX() * gridWidth + offsetX;
             double y = nodeElement.getGridY() * gridHeight + offsetY;
@@ -112,7 +142,7 @@ final class GameTreeCanvas extends Canvas {
 
             var node = nodeElement.getNode();
             var isCurrentNode = node.equals(currentNode);
-            var isPartOfCurrentHistory = currentVariationHistory.contains(node);
+            var isPartOfCurrentHistory = currentNode.isContinuationOf(node);
             var isCommented = !node.getComments().isBlank();
             var isPass = node.getType() == GameNodeType.PASS;
             var strokeOutlineForCurrentNode = false;
@@ -139,8 +169,8 @@ final class GameTreeCanvas extends Canvas {
                 insets -= 1; // Optical illusion, diamond appears slightly smaller at same insets
             }
 
-            if (!isPartOfCurrentHistory && previewNodeHistory != null
-                    && previewNodeHistory.contains(node)) {
+            if (!isPartOfCurrentHistory && previewNode != null
+                    && previewNode.isContinuationOf(node)) {
                 nodeColor = nodeColor.brighter();
                 insets -= 1;
             }
@@ -197,19 +227,42 @@ final class GameTreeCanvas extends Canvas {
                 }
 
             }
+
+            if (node.hasUnloadedVariations()) {
+                renderCollapsedVariations(bounds, x + gridWidth);
+            }
         }
     }
 
-    private void renderTracks(GameTreeViewerSettings settings, List<TreeNodeElement> nodeElements,
-                              List<GameNode> currentVariationHistory, @Nullable GameNode previewNode,
-                              double gridWidth, double gridHeight, double offsetX, double offsetY) {
+    /*
+     * Marks a node whose variations have not been loaded yet with a short track that ends
+     * at the edge of its grid cell, so that it does not run into the neighbouring nodes.
+     */
+    private void renderCollapsedVariations(Rectangle nodeBounds, double cellEndX) {
+        double startX = nodeBounds.getX() + nodeBounds.getWidth();
+        double centerY = nodeBounds.getY() + nodeBounds.getHeight() / 2d;
+
+        graphics.strokeLine(startX, centerY, cellEndX, centerY);
+    }
+
+    /**
+     * @return Number of tracks drawn.
+     */
+    private int renderTracks(GameTreeViewerSettings settings, List<TreeNodeElement> nodeElements,
+                             GameNode currentNode, @Nullable GameNode previewNode,
+                             double gridWidth, double gridHeight, double offsetX, double offsetY) {
 
-        var previewNodeHistory = previewNode != null ? previewNode.getMoveHistory() : null;
+        int tracksDrawn = 0;
 
-        for (int i = nodeElements.size() - 1; i > 0; --i) {
+        for (int i = nodeElements.size() - 1; i >= 0; --i) {
             var nodeElement = nodeElements.get(i);
+            var parentElement = nodeElement.getParent();
 
-            nodeElement.getParent().ifPresent(parent -> {
+            if (parentElement.isPresent()) {
+                ++tracksDrawn;
+            }
+
+            parentElement.ifPresent(parent -> {
                 double px = parent.getGridX() * gridWidth;
                 double py = parent.getGridY() * gridHeight;
 
@@ -227,9 +280,9 @@ final class GameTreeCanvas extends Canvas {
 
                 Color trackColor;
 
-                if (currentVariationHistory.contains(thisNode)) {
+                if (currentNode.isContinuationOf(thisNode)) {
                     trackColor = settings.getNodeInCurrentVariationColor();
-                } else if (previewNodeHistory != null && previewNodeHistory.contains(thisNode)) {
+                } else if (previewNode != null && previewNode.isContinuationOf(thisNode)) {
                     trackColor = settings.getNodeColor().brighter();
                 } else {
                     trackColor = settings.getNodeColor();
@@ -242,14 +295,16 @@ final class GameTreeCanvas extends Canvas {
                 // current variation branch color.
                 boolean drawBranchLine = false;
 
-                if (currentVariationHistory.contains(parentNode)) {
-                    var parentIndexInHistory = currentVariationHistory.indexOf(parentNode);
-                    var continuationNode = parentIndexInHistory + 1 < currentVariationHistory.size()
-                            ? currentVariationHistory.get(parentIndexInHistory + 1) : null;
+                if (currentNode.isContinuationOf(parentNode)) {
+                    // The child of parentNode on the path to the current node, if any
+                    var continuationNode = parentNode == currentNode ? null
+                            : currentNode.getAncestor(currentNode.getMoveNumber() - parentNode.getMoveNumber() - 1);
 
                     if (continuationNode != null) {
-                        var continuationOrder = parentNode.getChildOrder(continuationNode);
-                        var thisOrder = parentNode.getChildOrder(thisNode);
+                        // Both nodes are laid out, so they are among the loaded children
+                        var siblings = parentNode.getLoadedChildNodes();
+                        var continuationOrder = siblings.indexOf(continuationNode);
+                        var thisOrder = siblings.indexOf(thisNode);
 
                         if (thisOrder >= continuationOrder) {
                             drawBranchLine = true;
@@ -268,6 +323,8 @@ final class GameTreeCanvas extends Canvas {
                 graphics.strokeLine(centerX, pCenterY+BRANCH_LINE_WIDTH, centerX, centerY);
             });
         }
+
+        return tracksDrawn;
     }
 
     public Rectangle2D getElementBounds(@NotNull TreeNodeElement element,
@@ -12,6 +12,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * structure is hosted within a grid space, where (0, 0) is on top left, and denotes the
  * root element of the tree. Elements are enumerated downwards (positive y-axis) and
  * sideways (positive x-axis).
+ * <p/>
+ * The tree is laid out as branches, each being a node followed by its continuations in
+ * the main variation, placed in a single column. Branches are laid out one at a time in
+ * a fixed order, each taking the first column where it does not overlap the branches
+ * before it. When the game tree changes, only the branches after the change are
+ * revisited, and only the ones whose grid space may have changed are laid out again.
+ * The result is the same as laying out the whole tree again with {@link #reconstruct()}.
  */
 final class GameTreeStructure {
 
@@ -29,7 +36,150 @@ final class GameTreeStructure {
 
     public void reconstruct() {
         treeElementManager.reset();
-        createSubtree(null, gameModel.getRootNode());
+
+        var branches = new ArrayList<TreeBranch>();
+        collectBranches(gameModel.getRootNode(), 0, branches);
+        treeElementManager.replaceBranches(0, 0, branches);
+    }
+
+    /**
+     * Updates the layout after a node has been appended to the game tree, along with
+     * any subtree the node already has. This is usually called on
+     * {@link GameModel#onNodeAdd()} events.
+     *
+     * @param node The node that was added to the game tree.
+     */
+    public void onNodeAdded(GameNode node) {
+        var parent = node.getParent();
+        var branch = parent != null ? getBranchOfNode(parent) : null;
+
+        if (branch == null || treeElementManager.gameNodeToTreeElement.containsKey(node)) {
+            reconstruct();
+            return;
+        }
+
+        var branches = treeElementManager.branches;
+        int branchIndex = branches.indexOf(branch);
+        var siblings = parent.getLoadedChildNodes();
+
+        if (siblings.get(0) == node && branch.getLastNode() == parent) {
+            // The branch continues with the new node. Variations along the new nodes come right
+            // after the branch as they are further from the root than the existing ones.
+            var newBranches = new ArrayList<TreeBranch>();
+            newBranches.add(branch);
+            collectVariations(node, branch.level + 1, newBranches);
+
+            branch.structureChanged = true;
+            treeElementManager.replaceBranches(branchIndex, branchIndex + 1, newBranches);
+        } else if (siblings.get(0) != node && siblings.get(siblings.size() - 1) == node) {
+            // A new variation is laid out after the existing variations of its parent, but before
+            // the variations of nodes closer to the root in the same branch.
+            int parentRow = treeElementManager.gameNodeToTreeElement.get(parent).getGridY();
+            int index = branchIndex + 1;
+
+            while (index < branches.size() && branches.get(index).level > branch.level) {
+                var otherBranch = branches.get(index);
+                if (otherBranch.level == branch.level + 1 && otherBranch.firstRow - 1 < parentRow) {
+                    break;
+                }
+                ++index;
+            }
+
+            var newBranches = new ArrayList<TreeBranch>();
+            collectBranches(node, branch.level + 1, newBranches);
+            treeElementManager.replaceBranches(index, index, newBranches);
+        } else {
+            recreateBranches(branch);
+        }
+    }
+
+    /**
+     * Updates the layout after a node and its subtree have been removed from the game
+     * tree. This is usually called on {@link GameModel#onNodeRemove()} events.
+     *
+     * @param node The node that was removed from the game tree.
+     */
+    public void onNodeRemoved(GameNode node) {
+        var nodeElement = treeElementManager.gameNodeToTreeElement.get(node);
+        if (nodeElement == null) {
+            return; // Not part of the tree structure
+        }
+
+        var parentElement = nodeElement.getParent();
+        if (parentElement.isEmpty()) {
+            // Only the children of the root node are removed
+            reconstruct();
+            return;
+        }
+
+        var branches = treeElementManager.branches;
+        var removedBranch = treeElementManager.branchesByHead.get(node);
+
+        if (removedBranch != null) {
+            // A variation, so the main variation of the parent is unchanged
+            int branchIndex = branches.indexOf(removedBranch);
+            treeElementManager.replaceBranches(branchIndex, getBranchSubtreeEnd(branchIndex), Collections.emptyList());
+            return;
+        }
+
+        var parent = parentElement.get().getNode();
+        var branch = getBranchOfNode(parent);
+
+        if (branch == null) {
+            reconstruct();
+        } else if (branch.getLastNode() == node && parent.getLoadedChildNodes().isEmpty()) {
+            // Only the last node of the branch is removed
+            int branchIndex = branches.indexOf(branch);
+            branch.structureChanged = true;
+            treeElementManager.replaceBranches(branchIndex, branchIndex + 1, Collections.singletonList(branch));
+        } else {
+            recreateBranches(branch);
+        }
+    }
+
+    /*
+     * Collects the branches in the subtree of the given branch from the game tree again,
+     * for changes where the branches themselves may be different.
+     */
+    private void recreateBranches(TreeBranch branch) {
+        var branches = treeElementManager.branches;
+        int branchIndex = branches.indexOf(branch);
+
+        var newBranches = new ArrayList<TreeBranch>();
+        collectBranches(branch.head, branch.level, newBranches);
+        treeElementManager.replaceBranches(branchIndex, getBranchSubtreeEnd(branchIndex), newBranches);
+    }
+
+    /*
+     * The branches in the subtree of a branch are laid out right after it, so they end at
+     * the first branch that is not nested deeper.
+     */
+    private int getBranchSubtreeEnd(int branchIndex) {
+        var branches = treeElementManager.branches;
+        int level = branches.get(branchIndex).level;
+        int end = branchIndex + 1;
+
+        while (end < branches.size() && branches.get(end).level > level) {
+            ++end;
+        }
+
+        return end;
+    }
+
+    /*
+     * Finds the branch a node is laid out in by following its ancestors until the node that
+     * starts the branch. The tree above the node must be unchanged since it was laid out.
+     */
+    private @Nullable TreeBranch getBranchOfNode(GameNode node) {
+        var head = node;
+        var parent = head.getParent();
+
+        while (parent != null && parent.getChildNodeInMainBranch() == head) {
+            head = parent;
+            parent = head.getParent();
+        }
+
+        return treeElementManager.branchesByHead.get(head);
     }
 
     /**
@@ -46,47 +196,93 @@ final class GameTreeStructure {
         return Optional.ofNullable(treeElement);
     }
 
+    /*
+     * Collects the branch starting at the given node, followed by the branches in its
+     * subtree in the order they are laid out.
+     */
+    private void collectBranches(GameNode head, int level, List<TreeBranch> result) {
+        var pendingBranches = new ArrayDeque<TreeBranch>();
+        pendingBranches.push(getBranchForHead(head, level));
+
+        collectPendingBranches(pendingBranches, result);
+    }
+
+    /*
+     * Collects the branches of the variations along the main variation from the given node,
+     * along with the branches in their subtrees, in the order they are laid out.
+     */
+    private void collectVariations(GameNode lineStart, int level, List<TreeBranch> result) {
+        var pendingBranches = new ArrayDeque<TreeBranch>();
+        pushVariations(lineStart, level, pendingBranches);
+
+        collectPendingBranches(pendingBranches, result);
+    }
+
     /*
      * Algorithm:
      *
-     * 1. Build the main variation branch
-     * 2. Backtrack from the leaf node until a node with child size > 1 is encountered,
-     *    and recursively call createSubtree with it as the parent.
+     * 1. Take the next branch from the stack and follow its main variation
+     * 2. Push the branches of the variations along it onto the stack, so that they are
+     *    collected along with their own subtree before the branches pushed earlier.
      *
-     * Branches are created from the child variation first so that variations closer towards the
-     * root of the tree grows outwards.
+     * Game files can nest variations thousands of levels deep, so the branches still to be
+     * visited are kept on an explicit stack rather than the call stack.
      */
-    private void createSubtree(TreeNodeElement parentElement, GameNode treeParent) {
-        var nodesToCreateSubtree = new Stack<TreeNodeElement>();
-        var currentNode = treeParent;
-
-        TreeNodeElement lastParent = parentElement;
-
-        while (currentNode != null) {
-            var currentNodeElement = treeElementManager.addNode(lastParent, currentNode, treeParent);
+    private void collectPendingBranches(Deque<TreeBranch> pendingBranches, List<TreeBranch> result) {
+        while (!pendingBranches.isEmpty()) {
+            var branch = pendingBranches.pop();
+            int length = 0;
+            GameNode lastNode = null;
+
+            for (var node = branch.head; node != null; node = node.getChildNodeInMainBranch()) {
+                lastNode = node;
+                ++length;
+            }
 
-            if (currentNode.hasAlternativeVariations()) {
-                // Revisit this later to create its subtree
-                nodesToCreateSubtree.push(currentNodeElement);
+            // Existing branches are marked as changed if their nodes are different from when
+            // they were last laid out
+            if (length != branch.nodes.size() || lastNode != branch.getLastNode()) {
+                branch.structureChanged = true;
             }
 
-            lastParent = currentNodeElement;
-            currentNode = currentNode.getChildNodeInMainBranch();
+            result.add(branch);
+            pushVariations(branch.head, branch.level + 1, pendingBranches);
         }
+    }
 
-        while (nodesToCreateSubtree.size() > 0) {
-            var branchingPoint = nodesToCreateSubtree.pop();
-            var variations = branchingPoint.getNode().getChildNodesExcludingMainBranch();
+    /*
+     * Branches are laid out from the child variation first so that variations closer towards the
+     * root of the tree grows outwards. As the stack is last in, first out, variations are pushed
+     * from the root down, each set of siblings in reverse.
+     *
+     * Variations left out by a lazy import are not loaded here, the node is drawn as collapsed
+     * instead. They are laid out through onNodeAdded() once they are loaded.
+     */
+    private void pushVariations(GameNode lineStart, int level, Deque<TreeBranch> pendingBranches) {
+        for (var node = lineStart; node != null; node = node.getChildNodeInMainBranch()) {
+            if (node.hasAlternativeVariations()) {
+                var children = node.getLoadedChildNodes();
 
-            for (var child : variations) {
-                // As a MVP I think this recursion is fine. However...
-                // If this starts to throw StackOverflowException, it's probably because the game file has
-                // too many variations. We might have to consider a different approach at that point...
-                createSubtree(branchingPoint, child);
+                for (int i = children.size() - 1; i >= 1; --i) {
+                    pendingBranches.push(getBranchForHead(children.get(i), level));
+                }
             }
         }
     }
 
+    /*
+     * Reuses the branch that was laid out for the head node before, if there is one.
+     */
+    private TreeBranch getBranchForHead(GameNode head, int level) {
+        var branch = treeElementManager.branchesByHead.get(head);
+        if (branch == null) {
+            branch = new TreeBranch(head);
+        }
+
+        branch.level = level;
+        return branch;
+    }
+
     /**
      * Retrieves the element at the given grid space.
      */
@@ -113,7 +309,11 @@ final class GameTreeStructure {
     /**
      * Retrieves a list of {@link TreeNodeElement} that lie within the bounds of a
      * rectangular region defined by {@code (startX, startY)} on the top left corner to
-     * {@code (endX, endY)} on the bottom right corner. Logical grid units are used.
+     * {@code (endX, endY)} on the bottom right corner, exclusive. Logical grid units are used.
+     * <p/>
+     * Elements outside of the region are included if the track line to their parent
+     * crosses it, so that variations very far away from their parent still have their
+     * branch lines drawn. Elements are ordered by column, then by row.
      *
      * @param startX Top left x position
      * @param startY Top left y position
@@ -122,24 +322,8 @@ final class GameTreeStructure {
      *
      * @return All the {@link TreeNodeElement} that lie within this region.
      */
-    public List<TreeNodeElement> getNodeElementsWithinVerticalRegion(int startX, int startY, int endX, int endY) {
-        var itemsHorizontally = (endY - startY) * 10;
-        var result = new ArrayList<TreeNodeElement>();
-
-        // Draw excessively on the horizontal axis so that variations very far away from the current
-        // branch still have their branch lines drawn, even when the variation node themselves are
-        // out of the viewport.
-        for (int x = startX; x < endX + itemsHorizontally; ++x) {
-            for (int y = startY; y < endY; ++y) {
-                treeElementManager.positionStorage.getElement(x, y).ifPresent(element -> {
-                    if (element instanceof TreeNodeElement) {
-                        result.add(element);
-                    }
-                });
-            }
-        }
-
-        return result;
+    public List<TreeNodeElement> getNodeElementsWithinRegion(int startX, int startY, int endX, int endY) {
+        return treeElementManager.positionStorage.getElementsWithinRegion(startX, startY, endX, endY);
     }
 
     public boolean setHighlightedGrid(int x, int y) {
@@ -164,40 +348,184 @@ final class GameTreeStructure {
 
     private static final class TreeElementManager {
 
-        private List<TreeElement> allElements = new ArrayList<>();
+        private List<TreeElement> allElements = null;
         private final Map<GameNode, TreeNodeElement> gameNodeToTreeElement = new HashMap<>();
         private TreeElementPositionStorage positionStorage = new TreeElementPositionStorage();
         private TreeElement currentHighlight;
 
-        private void reset() {
-            positionStorage.clear();
-            allElements.clear();
+        // All branches in the order they are laid out
+        private final List<TreeBranch> branches = new ArrayList<>();
+        private final Map<GameNode, TreeBranch> branchesByHead = new HashMap<>();
 
-            allElements = new ArrayList<>();
+        private void reset() {
+            allElements = null;
             positionStorage = new TreeElementPositionStorage();
             gameNodeToTreeElement.clear();
+            branches.clear();
+            branchesByHead.clear();
             currentHighlight = null;
         }
 
         /**
-         * Wraps a new node as an element and determine its location in the tree structure.
-         * This is the entry point to the tree structure spacing algorithm.
+         * Replaces a range of branches with a new list of branches and updates the layout.
+         * Branches may appear in both, in which case they are kept. The branches before the
+         * range are unaffected by the change, so the layout is updated from the start of
+         * the range onwards.
          *
-         * @param parentElement The node element of the parent node of <code>nodeToAdd</code>
-         * @param gameNodeToAdd The new node to be added to the position storage.
-         * @param firstNodeInThisBranch The first node in the branch of <code>nodeToAdd</code>
-         * @return A new {@link TreeNodeElement} that wraps the <code>nodeToAdd</code>
+         * @param fromIndex Index of the first branch to replace, inclusive.
+         * @param toIndex Index of the last branch to replace, exclusive.
+         * @param newBranches Branches in the order they are laid out.
          */
-        public TreeNodeElement addNode(TreeNodeElement parentElement, GameNode gameNodeToAdd,
-                                       GameNode firstNodeInThisBranch) {
-            var treeNodeElement = positionStorage.addNode(parentElement, gameNodeToAdd, firstNodeInThisBranch);
-            allElements.add(treeNodeElement);
-            gameNodeToTreeElement.put(gameNodeToAdd, treeNodeElement);
+        public void replaceBranches(int fromIndex, int toIndex, List<TreeBranch> newBranches) {
+            var replacedBranches = branches.subList(fromIndex, toIndex);
+            var previousOrder = new IdentityHashMap<TreeBranch, Integer>();
+            for (int i = 0; i < replacedBranches.size(); ++i) {
+                previousOrder.put(replacedBranches.get(i), i);
+            }
+
+            // Branches that are laid out in a different order see a different set of branches before
+            // them, so lay them out again regardless of whether their grid space has changed.
+            int lastOrder = -1;
+            boolean reordered = false;
+            for (var branch : newBranches) {
+                Integer order = previousOrder.remove(branch);
+                if (order != null) {
+                    reordered |= order < lastOrder;
+                    lastOrder = order;
+                }
+            }
+            if (reordered) {
+                newBranches.forEach(branch -> branch.structureChanged = true);
+            }
+
+            var removedBranches = previousOrder.keySet();
+            replacedBranches.clear();
+            branches.addAll(fromIndex, newBranches);
+
+            for (var branch : newBranches) {
+                branchesByHead.put(branch.head, branch);
+            }
+
+            layOutBranches(fromIndex, removedBranches);
+        }
+
+        /*
+         * Lays out the branches from the given index again where necessary. A branch is
+         * placed in the first column where its nodes do not overlap any branch before it,
+         * so its position only depends on its own nodes, the position of its parent and the
+         * grids it checked on the way, which are those in between its first column and the
+         * column it is in. If none of these changed, the branch would end up in the same
+         * place, and it is skipped.
+         */
+        private void layOutBranches(int fromIndex, Collection<TreeBranch> removedBranches) {
+            var changedGrids = new ChangedGrids();
+
+            for (var branch : removedBranches) {
+                positionStorage.removeBranch(branch, changedGrids);
+                branch.nodes.forEach(element -> gameNodeToTreeElement.remove(element.getNode(), element));
+                branch.nodes.clear();
+                branchesByHead.remove(branch.head, branch);
+            }
+
+            // Only branches that have not changed themselves are checked against the changed grids
+            int lastCheckedIndex = -1;
+            for (int i = fromIndex; i < branches.size(); ++i) {
+                var branch = branches.get(i);
+                branch.pending = true;
+
+                if (!branch.structureChanged) {
+                    lastCheckedIndex = i;
+                }
+            }
+
+            for (int i = fromIndex; i < branches.size(); ++i) {
+                var branch = branches.get(i);
+
+                if (i >= lastCheckedIndex) {
+                    changedGrids.stopRecording();
+                }
+                var parentNode = branch.head.getParent();
+                var parentElement = parentNode != null ? gameNodeToTreeElement.get(parentNode) : null;
+
+                if (branch.structureChanged
+                        || branch.parentElement != parentElement
+                        || changedGrids.intersects(branch)) {
+                    layOutBranch(branch, parentElement, changedGrids);
+                }
+
+                branch.pending = false;
+            }
+
+            allElements = null;
+            positionStorage.updateFurthestNodes(branches);
+
+            if (currentHighlight instanceof TreeNodeElement) {
+                var highlightedNode = ((TreeNodeElement) currentHighlight).getNode();
+                if (gameNodeToTreeElement.get(highlightedNode) != currentHighlight) {
+                    currentHighlight = null;
+                }
+            }
+        }
+
+        /*
+         * Determines a suitable column to house all the nodes in the branch such that all the nodes will be
+         * displayed in a single column, then wraps the nodes as elements. Elements from the last layout are
+         * kept where the node is in the same place.
+         */
+        private void layOutBranch(TreeBranch branch, @Nullable TreeNodeElement parentElement,
+                                  ChangedGrids changedGrids) {
+
+            int firstColumn = parentElement != null ? parentElement.getGridX() + 1 : 0; // Use first column for root
+            int firstRow = parentElement != null ? parentElement.getGridY() + 1 : 0; // Use first row for root
+            int length = 0;
+
+            for (var node = branch.head; node != null; node = node.getChildNodeInMainBranch()) {
+                ++length;
+            }
+
+            int column = positionStorage.computeColumnForBranch(firstColumn, firstRow, length);
+            positionStorage.moveBranch(branch, firstColumn, column, firstRow, length, changedGrids);
+
+            var previousNodes = branch.nodes;
+            var nodes = new ArrayList<TreeNodeElement>(length);
+            var lastElement = parentElement;
+            var node = branch.head;
 
-            return treeNodeElement;
+            for (int i = 0; i < length; ++i) {
+                var element = i < previousNodes.size() ? previousNodes.get(i) : null;
+
+                if (element == null || element.getNode() != node
+                        || element.getGridX() != column || element.getGridY() != firstRow + i
+                        || element.getParent().orElse(null) != lastElement) {
+
+                    if (element != null) {
+                        gameNodeToTreeElement.remove(element.getNode(), element);
+                    }
+                    element = new TreeNodeElement(lastElement, node, column, firstRow + i);
+                }
+
+                gameNodeToTreeElement.put(node, element);
+                nodes.add(element);
+
+                lastElement = element;
+                node = node.getChildNodeInMainBranch();
+            }
+
+            for (int i = length; i < previousNodes.size(); ++i) {
+                var element = previousNodes.get(i);
+                gameNodeToTreeElement.remove(element.getNode(), element);
+            }
+
+            branch.nodes = nodes;
+            branch.parentElement = parentElement;
+            branch.structureChanged = false;
         }
 
         public List<TreeElement> getAllElements() {
+            if (allElements == null) {
+                allElements = new ArrayList<>(gameNodeToTreeElement.size());
+                branches.forEach(branch -> allElements.addAll(branch.nodes));
+            }
             return allElements;
         }
 
@@ -252,6 +580,208 @@ final class GameTreeStructure {
         }
     }
 
+    /*
+     * A node followed by all of its continuations in the main variation, which are
+     * displayed in a single column. The root node starts the first branch, and every
+     * other branch starts with a variation that is not the main branch of its parent.
+     */
+    private static final class TreeBranch {
+
+        private final GameNode head;
+
+        // Number of branches this one is nested in, the branch of the root node is at level 0
+        private int level;
+
+        // Position of the branch as last laid out, the column is -1 if it has not been laid out yet
+        private int firstColumn;
+        private int column = -1;
+        private int firstRow;
+        private int length;
+
+        private List<TreeNodeElement> nodes = new ArrayList<>();
+        private @Nullable TreeNodeElement parentElement;
+
+        // Set when the nodes in the branch are different from when it was last laid out
+        private boolean structureChanged = true;
+
+        // Set while the branch is waiting to be laid out again, the grids it occupies are not taken yet
+        private boolean pending = false;
+
+        private TreeBranch(GameNode head) {
+            this.head = head;
+        }
+
+        private @Nullable GameNode getLastNode() {
+            return nodes.isEmpty() ? null : nodes.get(nodes.size() - 1).getNode();
+        }
+
+        /*
+         * Besides the nodes, a branch reserves the grids on the row of its parent for the
+         * track line leading to it, and the grids in between on the row of its first node
+         * so that subsequent branches are created on the outside. This will avoid all sorts
+         * of internal collisions.
+         */
+        private static void forEachGrid(int firstColumn, int column, int firstRow, int length, GridAction action) {
+            if (firstRow > 0) {
+                for (int x = firstColumn; x <= column; ++x) {
+                    action.apply(x, firstRow - 1);
+                }
+                for (int x = firstColumn; x < column; ++x) {
+                    action.apply(x, firstRow);
+                }
+            }
+
+            for (int y = firstRow; y < firstRow + length; ++y) {
+                action.apply(column, y);
+            }
+        }
+
+        private static void forEachColumnGrid(int column, int firstRow, int length, GridAction action) {
+            for (int y = firstRow - (firstRow > 0 ? 1 : 0); y < firstRow + length; ++y) {
+                action.apply(column, y);
+            }
+        }
+
+        private static boolean isGridInBranch(int firstColumn, int column, int firstRow, int length, int x, int y) {
+            if (x == column) {
+                return isColumnGridInBranch(firstRow, length, y);
+            }
+            return isSideGridInBranch(firstColumn, column, firstRow, x, y);
+        }
+
+        /*
+         * The grids in the column of the branch, from the track line leading to it down to its last node.
+         */
+        private static boolean isColumnGridInBranch(int firstRow, int length, int y) {
+            return y >= firstRow - (firstRow > 0 ? 1 : 0) && y < firstRow + length;
+        }
+
+        /*
+         * The grids reserved on the side of the branch towards its parent, on the row of the track line
+         * and the row of its first node.
+         */
+        private static boolean isSideGridInBranch(int firstColumn, int column, int firstRow, int x, int y) {
+            return firstRow > 0 && x >= firstColumn && x < column && (y == firstRow - 1 || y == firstRow);
+        }
+    }
+
+    /*
+     * One of the branches taking a grid, linked to the next one taking the same grid.
+     */
+    private static final class GridEntry {
+
+        private final TreeBranch branch;
+        private GridEntry next;
+
+        private GridEntry(TreeBranch branch, @Nullable GridEntry next) {
+            this.branch = branch;
+            this.next = next;
+        }
+    }
+
+    /*
+     * Grids taken in one column, which only span the rows between the first and last branch
+     * in the column. Variations nested in each other go down and sideways at once, so most
+     * columns start far below the root.
+     */
+    private static final class GridColumn {
+
+        private int firstRow = 0;
+        private GridEntry[] entries = new GridEntry[0];
+
+        private @Nullable GridEntry get(int y) {
+            int index = y - firstRow;
+            return index >= 0 && index < entries.length ? entries[index] : null;
+        }
+
+        private void set(int y, @Nullable GridEntry entry) {
+            if (entries.length == 0) {
+                firstRow = y;
+                entries = new GridEntry[4];
+            } else if (y < firstRow) {
+                int lastRow = firstRow + entries.length;
+                int newFirstRow = Math.max(0, Math.min(y, lastRow - entries.length * 2));
+                var newEntries = new GridEntry[lastRow - newFirstRow];
+                System.arraycopy(entries, 0, newEntries, firstRow - newFirstRow, entries.length);
+                firstRow = newFirstRow;
+                entries = newEntries;
+            } else if (y >= firstRow + entries.length) {
+                entries = Arrays.copyOf(entries, Math.max(y - firstRow + 1, entries.length * 2));
+            }
+
+            entries[y - firstRow] = entry;
+        }
+    }
+
+    private interface GridAction {
+        void apply(int x, int y);
+    }
+
+    /*
+     * Grids that are taken or freed by the branches laid out so far. Stored by column as
+     * branches are tall and narrow.
+     */
+    private static final class ChangedGrids {
+
+        private final Map<Integer, BitSet> rowsByColumn = new HashMap<>();
+        private int firstColumn = Integer.MAX_VALUE;
+        private int lastColumn = Integer.MIN_VALUE;
+        private boolean recording = true;
+
+        private boolean isRecording() {
+            return recording;
+        }
+
+        private void add(int x, int y) {
+            if (!recording) {
+                return;
+            }
+            rowsByColumn.computeIfAbsent(x, column -> new BitSet()).set(y);
+            firstColumn = Math.min(firstColumn, x);
+            lastColumn = Math.max(lastColumn, x);
+        }
+
+        /*
+         * Called when there are no more branches to check, such as when the whole tree is laid out.
+         */
+        private void stopRecording() {
+            recording = false;
+        }
+
+        /*
+         * Checks the grids the branch has gone through to find its column when it was last
+         * laid out.
+         */
+        private boolean intersects(TreeBranch branch) {
+            int startColumn = Math.max(branch.firstColumn, firstColumn);
+            int endColumn = Math.min(branch.column, lastColumn);
+
+            if (endColumn - startColumn >= rowsByColumn.size()) {
+                // Branches far away from their parent span more columns than have changed
+                for (var changedColumn : rowsByColumn.entrySet()) {
+                    int x = changedColumn.getKey();
+                    if (x >= startColumn && x <= endColumn && intersects(changedColumn.getValue(), branch)) {
+                        return true;
+                    }
+                }
+            } else {
+                for (int x = startColumn; x <= endColumn; ++x) {
+                    var rows = rowsByColumn.get(x);
+                    if (rows != null && intersects(rows, branch)) {
+                        return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+
+        private static boolean intersects(BitSet rows, TreeBranch branch) {
+            int row = rows.nextSetBit(branch.firstRow);
+            return row >= 0 && row < branch.firstRow + branch.length;
+        }
+    }
+
     /**
      * Maps all the elements displayed on the game tree within an internal grid space,
      * where (0,0) is the top-left grid reserved for the root node. Subsequent nodes are
@@ -260,184 +790,314 @@ final class GameTreeStructure {
      */
     private static final class TreeElementPositionStorage {
 
-        // Map of <X, <Y, Element>> where (X, Y) denote the grid position of the element
-        private final Map<Integer, Map<Integer, TreeElement>> elementPositions = new HashMap<>();
-        private final Map<GameNode, Integer> branchHeadToColumn = new HashMap<>();
+        // Branches taking each grid in their own column, by column and then row. Only one branch has a node
+        // on a grid, but the grids reserved for track lines of different branches may overlap. Arrays are used
+        // over maps as the layout checks a lot of grids while looking for a column for each branch.
+        private final List<GridColumn> branchPositions = new ArrayList<>();
+
+        // Index of branches for region queries. Branches in each column are ordered by their first row,
+        // and branches are also listed by the row of the track line leading to them. The grids reserved on
+        // the side of a branch are found through the latter, as they can span thousands of columns for
+        // branches far away from their parent.
+        private final List<List<TreeBranch>> branchesByColumn = new ArrayList<>();
+        private final List<List<TreeBranch>> branchesByTrackRow = new ArrayList<>();
         private int furthestNodeHorizontal = 0;
         private int furthestNodeVertical = 0;
 
-        public TreeNodeElement addNode(TreeNodeElement nodeParent, GameNode nodeToAdd,
-                                       GameNode firstNodeInThisBranch) {
-            int[] vacantPosition = prepareForNextNode(nodeParent, nodeToAdd, firstNodeInThisBranch);
-            int x = vacantPosition[0];
-            int y = vacantPosition[1];
+        /*
+         * Determines the first column from which the branch can be displayed in a single column
+         * without overlapping the branches laid out before it.
+         */
+        private int computeColumnForBranch(int firstColumn, int firstRow, int length) {
+            int columnToUse = firstColumn;
+
+            for (int y = firstRow; y < firstRow + length; ++y) {
+                while (true) {
+                    if (isColumnGridOccupied(columnToUse, y)) {
+                        ++columnToUse;
+                        continue;
+                    }
 
-            assertNotOccupied(x, y);
+                    // Skips all the grids reserved on the side of another branch at once
+                    int sideGridsEnd = getSideGridsEnd(columnToUse, y);
+                    if (sideGridsEnd > columnToUse) {
+                        columnToUse = sideGridsEnd;
+                        continue;
+                    }
 
-            var nodeElement = new TreeNodeElement(nodeParent, nodeToAdd, x, y);
-            addElement(nodeElement);
+                    break;
+                }
+            }
 
-            return nodeElement;
+            return columnToUse;
         }
 
-        private void removeNode(TreeElement nodeToRemove) {
-            int x = nodeToRemove.getGridX();
-            int y = nodeToRemove.getGridY();
-
-            if (elementPositions.containsKey(x)) {
-                var elementThere = elementPositions.get(x).get(y);
-                if (elementThere != null && elementThere.equals(nodeToRemove)) {
-                    elementPositions.get(x).remove(y, elementThere);
-                } else {
-                    throw new IllegalStateException("There is a different node at ("
-                            + x + ", " + y + ")");
+        private boolean isColumnGridOccupied(int x, int y) {
+            for (var entry = getGridEntry(x, y); entry != null; entry = entry.next) {
+                if (!entry.branch.pending) {
+                    return true;
                 }
             }
+
+            return false;
         }
 
-        private void assertNotOccupied(int x, int y) {
-            if (isPositionOccupied(x, y)) {
-                throw new IllegalArgumentException("The position at (" + x + ", " + y + ") " +
-                        "is already occupied");
+        /*
+         * Finds the branches reserving the given grid on their side, which are the branches with their
+         * track line on this row or the row above.
+         *
+         * @return The column of the branch, or the given column if the grid is not reserved.
+         */
+        private int getSideGridsEnd(int x, int y) {
+            int end = x;
+
+            for (int trackRow = Math.max(y - 1, 0); trackRow <= y && trackRow < branchesByTrackRow.size(); ++trackRow) {
+                for (var branch : branchesByTrackRow.get(trackRow)) {
+                    if (!branch.pending && TreeBranch.isSideGridInBranch(branch.firstColumn, branch.column,
+                            branch.firstRow, x, y)) {
+                        end = Math.max(end, branch.column);
+                    }
+                }
             }
+
+            return end;
         }
 
-        /**
-         * Gets the next nearest vacant position to place the child of this parent element.
-         * The parent must be part of the game tree. If the parent element is null, the
-         * vacant position will be the position of the tree root node.
-         *
-         * This method will change the state of the position storage by adding tracks to
-         * grids that are unsuitable to place new nodes.
-         *
-         * @param parentElement The element to find vacant child node position for
-         * @return An array of size 2, representing the (x, y) position in the element
-         * position space.
-         *
-         * @throws IllegalArgumentException If the element is not part of the position storage.
+        /*
+         * Updates the grids taken by the branch to its new position, and records the grids that
+         * are no longer the same.
          */
-        private int[] prepareForNextNode(@Nullable TreeNodeElement parentElement,
-                                         GameNode nodeToAdd, GameNode firstNodeInThisBranch) {
-
-            if (nodeToAdd.equals(firstNodeInThisBranch)
-                    && !branchHeadToColumn.containsKey(firstNodeInThisBranch)) {
-
-                computeColumnForNewBranch(parentElement, firstNodeInThisBranch);
-                int columnToUse = branchHeadToColumn.get(firstNodeInThisBranch);
-
-                if (parentElement != null) {
-                    // All columns to the left of this one is unavailable, reserve track line space
-                    for (int column = parentElement.getGridX() + 1; column <= columnToUse; ++column) {
-                        var reservedGridForTrack = new TreeSpacerElement(column, parentElement.getGridY());
-                        addElement(reservedGridForTrack);
-
-                        // Block all internal space between the parent branch and this branch so that new branches
-                        // are created on the outside. This will avoid all sorts of internal collisions.
-                        if (column < columnToUse && getElement(column, parentElement.getGridY() + 1).isEmpty()) {
-                            var blockedGridForSubsequentBranches = new TreeSpacerElement(column, parentElement.getGridY() + 1);
-                            addElement(blockedGridForSubsequentBranches);
-                        }
+        private void moveBranch(TreeBranch branch, int firstColumn, int column, int firstRow, int length,
+                                ChangedGrids changedGrids) {
+            boolean laidOut = branch.column >= 0;
+
+            if (laidOut) {
+                TreeBranch.forEachColumnGrid(branch.column, branch.firstRow, branch.length, (x, y) -> {
+                    if (x != column || !TreeBranch.isColumnGridInBranch(firstRow, length, y)) {
+                        removeFromGrid(branch, x, y);
                     }
+                });
+            }
+
+            TreeBranch.forEachColumnGrid(column, firstRow, length, (x, y) -> {
+                if (!laidOut || x != branch.column || !TreeBranch.isColumnGridInBranch(branch.firstRow, branch.length, y)) {
+                    addToGrid(branch, x, y);
+                }
+            });
+
+            if (changedGrids.isRecording()) {
+                if (laidOut) {
+                    TreeBranch.forEachGrid(branch.firstColumn, branch.column, branch.firstRow, branch.length, (x, y) -> {
+                        if (!TreeBranch.isGridInBranch(firstColumn, column, firstRow, length, x, y)) {
+                            changedGrids.add(x, y);
+                        }
+                    });
                 }
+
+                TreeBranch.forEachGrid(firstColumn, column, firstRow, length, (x, y) -> {
+                    if (!laidOut || !TreeBranch.isGridInBranch(branch.firstColumn, branch.column,
+                            branch.firstRow, branch.length, x, y)) {
+                        changedGrids.add(x, y);
+                    }
+                });
             }
 
-            if (parentElement == null) {
-                return new int[] { 0, 0 }; // Root node
+            boolean moved = branch.column != column || branch.firstRow != firstRow;
+            if (moved && branch.column >= 0) {
+                removeFromIndex(branch);
             }
 
-            int nextNodeX = branchHeadToColumn.get(firstNodeInThisBranch);
-            int nextNodeY = parentElement.getGridY() + 1;
+            branch.firstColumn = firstColumn;
+            branch.column = column;
+            branch.firstRow = firstRow;
+            branch.length = length;
 
-            return new int[] { nextNodeX, nextNodeY };
+            if (moved) {
+                addToIndex(branch);
+            }
         }
 
-        private boolean isPositionOccupied(int x, int y) {
-            if(!elementPositions.containsKey(x))
-                return false;
+        private void removeBranch(TreeBranch branch, ChangedGrids changedGrids) {
+            if (branch.column < 0) {
+                return;
+            }
 
-            return elementPositions.get(x).containsKey(y);
-        }
+            TreeBranch.forEachColumnGrid(branch.column, branch.firstRow, branch.length,
+                    (x, y) -> removeFromGrid(branch, x, y));
+
+            if (changedGrids.isRecording()) {
+                TreeBranch.forEachGrid(branch.firstColumn, branch.column, branch.firstRow, branch.length,
+                        changedGrids::add);
+            }
 
-        private void addElement(TreeElement element) {
-            int x = element.getGridX();
-            int y = element.getGridY();
+            removeFromIndex(branch);
+            branch.column = -1;
+        }
 
-            elementPositions.putIfAbsent(x, new HashMap<>());
-            var yMap = elementPositions.get(x);
+        private void addToIndex(TreeBranch branch) {
+            getOrAddList(branchesByColumn, branch.column)
+                    .add(findFirstBranchFromRow(branchesByColumn.get(branch.column), branch.firstRow), branch);
 
-            var itemHere = yMap.get(y);
-            if (itemHere instanceof TreeNodeElement) {
-                throw new IllegalStateException("Overwriting existing node element at (" + x + ", " + y + ")");
+            if (branch.firstRow > 0) {
+                getOrAddList(branchesByTrackRow, branch.firstRow - 1).add(branch);
             }
+        }
 
-            yMap.put(y, element);
+        private void removeFromIndex(TreeBranch branch) {
+            var branchesInColumn = branchesByColumn.get(branch.column);
+            int index = findFirstBranchFromRow(branchesInColumn, branch.firstRow);
+            while (branchesInColumn.get(index) != branch) {
+                ++index;
+            }
+            branchesInColumn.remove(index);
 
-            furthestNodeHorizontal = Math.max(furthestNodeHorizontal, x);
-            furthestNodeVertical = Math.max(furthestNodeVertical, y);
+            if (branch.firstRow > 0) {
+                branchesByTrackRow.get(branch.firstRow - 1).remove(branch);
+            }
         }
 
-        /**
-         * Removes all cached element positions within the storage.
-         */
-        protected final void clear() {
-            elementPositions.keySet().forEach(xKey -> elementPositions.get(xKey).clear());
+        private static List<TreeBranch> getOrAddList(List<List<TreeBranch>> lists, int index) {
+            while (lists.size() <= index) {
+                lists.add(new ArrayList<>());
+            }
+            return lists.get(index);
         }
 
-        /**
-         * Retrieves a tree node element at the given co-ordinate.
-         *
-         * @param x X ordinate of the node element
-         * @param y Y ordinate of the node element
-         * @return The element if one is present at the location, or {@link Optional#empty()} if grid is empty, or
-         *         it is not a {@link TreeNodeElement}
+        /*
+         * Binary search for the first branch in a column that starts on or after the given row.
          */
-        public Optional<TreeNodeElement> getElement(int x, int y) {
-            if (elementPositions.containsKey(x)) {
-                var itemHere = elementPositions.get(x).get(y);
-
-                if (itemHere instanceof TreeNodeElement) {
-                    return Optional.of((TreeNodeElement) itemHere);
+        private static int findFirstBranchFromRow(List<TreeBranch> branchesInColumn, int row) {
+            int low = 0;
+            int high = branchesInColumn.size();
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (branchesInColumn.get(middle).firstRow < row) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
                 }
             }
 
-            return Optional.empty();
+            return low;
         }
 
         /*
-            Determines a suitable column to house all the nodes in the new branch such that all the nodes will be
-            displayed in a single column.
+         * Elements in the region are found by the branches in each column of the region. Branches in
+         * a column do not overlap, so they are ordered by both their first and last row. The track line
+         * of a node leads up from the row above it, which is the only way for elements on the row after
+         * the region to cross it. Besides that, the track line of the first node in a branch goes
+         * sideways from its parent, which can be far away from the branch.
          */
-        private void computeColumnForNewBranch(@Nullable TreeNodeElement parentElementOfFirstNode, GameNode firstNodeInThisBranch) {
-            int columnToUse = parentElementOfFirstNode != null ? parentElementOfFirstNode.getGridX() + 1 : 0; // Use first column for root
-            int currentGridY = parentElementOfFirstNode != null ? parentElementOfFirstNode.getGridY() + 1 : 0; // Use first row for root
+        private List<TreeNodeElement> getElementsWithinRegion(int startX, int startY, int endX, int endY) {
+            var result = new ArrayList<TreeNodeElement>();
+            if (startX >= endX || startY >= endY || endY <= 0) {
+                return result;
+            }
 
-            var currentNode = firstNodeInThisBranch;
+            for (int x = Math.max(startX, 0); x < Math.min(endX, branchesByColumn.size()); ++x) {
+                var branchesInColumn = branchesByColumn.get(x);
+                int index = findFirstBranchFromRow(branchesInColumn, startY);
 
-            while (currentNode != null) {
-                while (isPositionOccupied(columnToUse, currentGridY)) {
-                    ++columnToUse;
+                // The branch before may continue into the region
+                if (index > 0) {
+                    --index;
                 }
 
-                var nextMove = currentNode.getChildNodeInMainBranch();
+                for (; index < branchesInColumn.size(); ++index) {
+                    var branch = branchesInColumn.get(index);
+                    if (branch.firstRow > endY) {
+                        break;
+                    }
+
+                    int firstRow = Math.max(branch.firstRow, startY);
+                    int lastRow = Math.min(branch.firstRow + branch.length - 1, endY);
+                    for (int y = firstRow; y <= lastRow; ++y) {
+                        result.add(branch.nodes.get(y - branch.firstRow));
+                    }
+                }
+            }
 
-                if (nextMove != null) {
-                    currentNode = nextMove;
-                    ++currentGridY;
-                } else {
-                    break;
+            var branchesOutside = new ArrayList<TreeBranch>();
+            for (int y = Math.max(startY, 0); y < Math.min(endY, branchesByTrackRow.size()); ++y) {
+                for (var branch : branchesByTrackRow.get(y)) {
+                    if (branch.column >= endX && branch.firstColumn - 1 < endX) {
+                        branchesOutside.add(branch);
+                    }
                 }
             }
 
+            branchesOutside.sort(Comparator.<TreeBranch>comparingInt(branch -> branch.column)
+                    .thenComparingInt(branch -> branch.firstRow));
+            branchesOutside.forEach(branch -> result.add(branch.nodes.get(0)));
+
+            return result;
+        }
+
+        private void addToGrid(TreeBranch branch, int x, int y) {
+            while (branchPositions.size() <= x) {
+                branchPositions.add(new GridColumn());
+            }
+
+            var column = branchPositions.get(x);
+            column.set(y, new GridEntry(branch, column.get(y)));
+        }
+
+        private void removeFromGrid(TreeBranch branch, int x, int y) {
+            GridEntry previous = null;
+            var entry = getGridEntry(x, y);
+
+            while (entry != null && entry.branch != branch) {
+                previous = entry;
+                entry = entry.next;
+            }
+
+            if (entry == null) {
+                throw new IllegalStateException("Branch is not at (" + x + ", " + y + ")");
+            } else if (previous != null) {
+                previous.next = entry.next;
+            } else {
+                branchPositions.get(x).set(y, entry.next);
+            }
+        }
+
+        private @Nullable GridEntry getGridEntry(int x, int y) {
+            if (x < 0 || y < 0 || x >= branchPositions.size()) {
+                return null;
+            }
 
-            branchHeadToColumn.put(firstNodeInThisBranch, columnToUse);
+            return branchPositions.get(x).get(y);
         }
 
-        public int getFurtheristNodeHorizontal() {
-            return furthestNodeHorizontal;
+        private void updateFurthestNodes(List<TreeBranch> branches) {
+            furthestNodeHorizontal = 0;
+            furthestNodeVertical = 0;
+
+            for (var branch : branches) {
+                furthestNodeHorizontal = Math.max(furthestNodeHorizontal, branch.column);
+                furthestNodeVertical = Math.max(furthestNodeVertical, branch.firstRow + branch.length - 1);
+            }
         }
 
-        public int getFurthestNodeVertical() {
-            return furthestNodeVertical;
+        /**
+         * Retrieves a tree node element at the given co-ordinate.
+         *
+         * @param x X ordinate of the node element
+         * @param y Y ordinate of the node element
+         * @return The element if one is present at the location, or {@link Optional#empty()} if grid is empty, or
+         *         it is only reserved for track lines
+         */
+        public Optional<TreeNodeElement> getElement(int x, int y) {
+            var branchesHere = getGridEntry(x, y);
+
+            for (var entry = branchesHere; entry != null; entry = entry.next) {
+                var branch = entry.branch;
+                if (branch.column == x && y >= branch.firstRow && y < branch.firstRow + branch.length) {
+                    return Optional.of(branch.nodes.get(y - branch.firstRow));
+                }
+            }
+
+            return Optional.empty();
         }
     }
 }
@@ -11,6 +11,8 @@ import org.jetbrains.annotations.Nullable;
 import yi.component.shared.property.NullableProperty;
 import yi.component.shared.property.NullablePropertyListener;
 import yi.component.shared.component.CanvasContainer;
+import yi.component.shared.component.RenderMetrics;
+import yi.component.shared.component.RenderScheduler;
 import yi.component.shared.component.YiComponent;
 import yi.core.go.EventListener;
 import yi.core.go.GameModel;
@@ -36,6 +38,7 @@ public final class GameTreeViewer implements YiComponent {
     private final GameTreeStructure treeStructure = new GameTreeStructure();
     private final GameTreeElementSize elementSize;
     private final NullableProperty<GameNode> highlightedNode = new NullableProperty<>(null);
+    private final RenderScheduler.RenderTask renderTask = RenderScheduler.createTask("Game tree", this::renderTree);
 
     public GameTreeViewer() {
         canvas = new GameTreeCanvas();
@@ -65,6 +68,10 @@ public final class GameTreeViewer implements YiComponent {
     }
 
     private void render() {
+        renderTask.request();
+    }
+
+    private void renderTree() {
         if (gameModel != null && treeStructure != null) {
             var elements = getVisibleElementsInViewport();
             var currentNode = gameModel.getCurrentNode();
@@ -77,23 +84,42 @@ public final class GameTreeViewer implements YiComponent {
     private List<TreeNodeElement> getVisibleElementsInViewport() {
         var gridWidth = elementSize.getGridSize().getWidth();
         var gridHeight = elementSize.getGridSize().getHeight();
+        var offsetX = -camera.getOffsetX();
         var offsetY = -camera.getOffsetY();
 
-        // Some branches may be very far from their parent, in this case we still want to render it
-        var startX = 0;
+        // Branches very far from their parent are still included if their track line is in view
+        var startX = (int) Math.floor(offsetX / gridWidth) - 1;
         var startY = (int) Math.floor(offsetY / gridHeight) - 1;
         var endX = startX + (int) Math.ceil(canvas.getWidth() / gridWidth) + 3;
         var endY = startY + (int) Math.ceil(canvas.getHeight() / gridHeight) + 3;
 
-        return treeStructure.getNodeElementsWithinVerticalRegion(startX, startY, endX, endY);
+        return treeStructure.getNodeElementsWithinRegion(startX, startY, endX, endY);
     }
 
-    private final EventListener<NodeEvent> treeStructureChangeListener = (event) -> {
-        treeStructure.reconstruct();
+    private final EventListener<NodeEvent> nodeAddListener = (event) -> {
+        treeStructure.onNodeAdded(event.getNode());
         render();
     };
 
-    private final EventListener<NodeEvent> currentMoveChangeListener = (event) -> updateCameraAndRender(event.getNode());
+    private final EventListener<NodeEvent> nodeRemoveListener = (event) -> {
+        treeStructure.onNodeRemoved(event.getNode());
+        render();
+    };
+
+    private final EventListener<NodeEvent> currentMoveChangeListener = (event) -> {
+        expandVariations(event.getNode());
+        updateCameraAndRender(event.getNode());
+    };
+
+    /*
+     * Variations left out by a lazy import are drawn collapsed until their parent node is
+     * visited. Loading them emits a node add event for each, which lays them out.
+     */
+    private void expandVariations(GameNode node) {
+        if (node.hasUnloadedVariations()) {
+            node.getChildNodes();
+        }
+    }
     private final EventListener<NodeEvent> currentMoveDataChangeListener = (event) -> render();
 
     public void setGameModel(@NotNull GameModel model) {
@@ -102,8 +128,8 @@ public final class GameTreeViewer implements YiComponent {
         if (this.gameModel != null) {
             this.gameModel.onCurrentNodeChange().removeListener(currentMoveChangeListener);
             this.gameModel.onCurrentNodeDataUpdate().removeListener(currentMoveDataChangeListener);
-            this.gameModel.onNodeAdd().removeListener(treeStructureChangeListener);
-            this.gameModel.onNodeRemove().removeListener(treeStructureChangeListener);
+            this.gameModel.onNodeAdd().removeListener(nodeAddListener);
+            this.gameModel.onNodeRemove().removeListener(nodeRemoveListener);
             panToNewNode = true;
         }
 
@@ -120,9 +146,10 @@ public final class GameTreeViewer implements YiComponent {
 
         this.gameModel.onCurrentNodeChange().addListener(currentMoveChangeListener);
         this.gameModel.onCurrentNodeDataUpdate().addListener(currentMoveDataChangeListener);
-        this.gameModel.onNodeAdd().addListener(treeStructureChangeListener);
-        this.gameModel.onNodeRemove().addListener(treeStructureChangeListener);
+        this.gameModel.onNodeAdd().addListener(nodeAddListener);
+        this.gameModel.onNodeRemove().addListener(nodeRemoveListener);
 
+        expandVariations(model.getCurrentNode());
         updateCameraAndRender(model.getCurrentNode());
     }
 
@@ -145,6 +172,35 @@ public final class GameTreeViewer implements YiComponent {
         return canvasContainer;
     }
 
+    /**
+     * Retrieves the render statistics of the game tree, such as the time taken to draw
+     * its tracks and nodes, the number of them drawn, and the time taken by its recent
+     * frames.
+     *
+     * @return Render metrics of this game tree.
+     */
+    public RenderMetrics getRenderMetrics() {
+        return canvas.getRenderMetrics();
+    }
+
+    /**
+     * Sets whether to draw the render metrics of the game tree over its content.
+     *
+     * @param doShow {@code true} to draw the render metrics.
+     * @see #getRenderMetrics()
+     */
+    public void setShowRenderMetrics(boolean doShow) {
+        canvas.setShowRenderMetrics(doShow);
+        render();
+    }
+
+    /**
+     * @return {@code true} if the game tree is drawing its render metrics.
+     */
+    public boolean isShowingRenderMetrics() {
+        return canvas.isShowingRenderMetrics();
+    }
+
     public @Nullable GameNode getHighlightedNode() {
         return treeStructure.getHighlightedNodePath();
     }
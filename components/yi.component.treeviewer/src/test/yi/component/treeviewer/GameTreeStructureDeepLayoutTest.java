@@ -0,0 +1,49 @@
+package yi.component.treeviewer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import yi.core.go.GameModel;
+import yi.core.go.LargeGameTrees;
+import yi.core.go.TreeWalks;
+
+import static yi.core.go.LargeGameTrees.DEEP_TREE_SIZE;
+import static yi.core.go.LargeGameTrees.WIDE_TREE_BRANCHES;
+
+/**
+ * Lays out game trees that are far deeper and wider than regular game records on a thread
+ * with a small stack, so that the layout fails if it recurses once per node or per
+ * variation. The time taken by the layout is checked in {@link GameTreeStructureStressTest}.
+ */
+public class GameTreeStructureDeepLayoutTest {
+
+    @Test
+    public void testLayout_100kNodesDeep() {
+        var structure = layOutOnSmallStack(LargeGameTrees.INSTANCE.createDeepModel(DEEP_TREE_SIZE));
+
+        Assertions.assertEquals(DEEP_TREE_SIZE - 1, structure.getFurthestVerticalNode());
+        Assertions.assertEquals(0, structure.getFurthestHorizontalNode());
+    }
+
+    @Test
+    public void testLayout_10kBranchesWide() {
+        var structure = layOutOnSmallStack(LargeGameTrees.INSTANCE.createWideModel(WIDE_TREE_BRANCHES));
+
+        Assertions.assertEquals(WIDE_TREE_BRANCHES * 2 + 1, structure.getNodeElements().size());
+    }
+
+    @Test
+    public void testLayout_10kVariationsNested() {
+        var structure = layOutOnSmallStack(GameTreeTestHelper.createNestedModel(WIDE_TREE_BRANCHES));
+
+        Assertions.assertEquals(WIDE_TREE_BRANCHES * 2 + 1, structure.getNodeElements().size());
+        Assertions.assertEquals(WIDE_TREE_BRANCHES, structure.getFurthestHorizontalNode());
+    }
+
+    private GameTreeStructure layOutOnSmallStack(GameModel model) {
+        return TreeWalks.INSTANCE.runOnSmallStack(() -> {
+            var structure = new GameTreeStructure();
+            structure.setGameModel(model);
+            return structure;
+        });
+    }
+}
@@ -0,0 +1,136 @@
+package yi.component.treeviewer;
+
+import org.junit.jupiter.api.Test;
+import yi.core.go.GameModel;
+import yi.core.go.TestGameRules;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static yi.component.treeviewer.GameTreeTestHelper.addRandomMove;
+import static yi.component.treeviewer.GameTreeTestHelper.getAllNodes;
+
+/**
+ * Tests that region queries on the tree structure return the elements that are drawn in the region.
+ */
+public class GameTreeStructureRegionTest {
+
+    @Test
+    public void testFarAwayVariation_TrackLineInRegion_IsIncluded() {
+        var model = new GameModel(3, 3, new TestGameRules.TestingGameRulesNoSuicide());
+        model.beginMoveSequence()
+                .playMove(0, 0)
+                .playMove(1, 0)
+                .playMove(2, 0)
+                .playMove(0, 1);
+        model.toPreviousNode(3);
+        model.beginMoveSequence()
+                .playMove(1, 1)
+                .playMove(2, 1)
+                .playMove(0, 2);
+        model.toPreviousNode(2);
+        model.beginMoveSequence().playMove(1, 2);
+
+        // Placed outside the two branches above it
+        model.setCurrentNode(model.getRootNode());
+        model.beginMoveSequence().playMove(2, 2);
+
+        var structure = new GameTreeStructure();
+        structure.setGameModel(model);
+
+        var variation = structure.getTreeNodeElementForNode(model.getCurrentNode()).orElseThrow();
+        var elements = structure.getNodeElementsWithinRegion(0, 0, 1, 1);
+
+        assertTrue(variation.getGridX() > 1);
+        assertTrue(elements.contains(variation), "Variation with track line in region is missing");
+        assertEquals(List.of(model.getRootNode(), model.getRootNode().getChildNodes().get(0), model.getCurrentNode()),
+                elements.stream().map(TreeNodeElement::getNode).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testRandomRegions_SameAsCheckingAllElements() {
+        var random = new Random(7L);
+        var model = new GameModel(9, 9, new TestGameRules.TestingGameRulesNoSuicide());
+
+        for (int i = 0; i < 600; ++i) {
+            addRandomMove(model, random);
+        }
+
+        var structure = new GameTreeStructure();
+        structure.setGameModel(model);
+
+        for (int i = 0; i < 500; ++i) {
+            assertRandomRegion(structure, random, "Region #" + i);
+        }
+    }
+
+    @Test
+    public void testRandomRegions_AfterTreeUpdates_SameAsCheckingAllElements() {
+        var random = new Random(11L);
+        var model = new GameModel(9, 9, new TestGameRules.TestingGameRulesNoSuicide());
+        var structure = new GameTreeStructure();
+        structure.setGameModel(model);
+
+        model.onNodeAdd().addListener(event -> structure.onNodeAdded(event.getNode()));
+        model.onNodeRemove().addListener(event -> structure.onNodeRemoved(event.getNode()));
+
+        for (int i = 0; i < 500; ++i) {
+            if (random.nextInt(5) == 0) {
+                var nodes = getAllNodes(model);
+                model.getEditor().removeNodeSubtree(nodes.get(random.nextInt(nodes.size())));
+            } else {
+                addRandomMove(model, random);
+            }
+
+            assertRandomRegion(structure, random, "Update #" + i);
+        }
+    }
+
+    private void assertRandomRegion(GameTreeStructure structure, Random random, String message) {
+        int startX = random.nextInt(structure.getFurthestHorizontalNode() + 4) - 2;
+        int startY = random.nextInt(structure.getFurthestVerticalNode() + 4) - 2;
+        int endX = startX + random.nextInt(8);
+        int endY = startY + random.nextInt(8);
+
+        var expected = structure.getNodeElements().stream()
+                .filter(element -> isDrawnInRegion(element, startX, startY, endX, endY))
+                .sorted(Comparator.comparingInt(TreeNodeElement::getGridX).thenComparingInt(TreeNodeElement::getGridY))
+                .collect(Collectors.toList());
+
+        String region = String.format("%s: (%d, %d) to (%d, %d)", message, startX, startY, endX, endY);
+        assertEquals(expected, structure.getNodeElementsWithinRegion(startX, startY, endX, endY), region);
+    }
+
+    /*
+     * Checks the grid of the element, and the track line from the center of its parent
+     * across to its column, then down to the element.
+     */
+    private boolean isDrawnInRegion(TreeNodeElement element, int startX, int startY, int endX, int endY) {
+        int x = element.getGridX();
+        int y = element.getGridY();
+
+        if (startX >= endX || startY >= endY) {
+            return false;
+        }
+
+        if (x >= startX && x < endX && y >= startY && y < endY) {
+            return true;
+        }
+
+        var parent = element.getParent();
+        if (parent.isEmpty()) {
+            return false;
+        }
+
+        int trackRow = parent.get().getGridY();
+        boolean verticalTrackInRegion = x >= startX && x < endX && trackRow < endY && y >= startY;
+        boolean horizontalTrackInRegion = trackRow >= startY && trackRow < endY
+                && parent.get().getGridX() < endX && x >= startX;
+
+        return verticalTrackInRegion || horizontalTrackInRegion;
+    }
+}
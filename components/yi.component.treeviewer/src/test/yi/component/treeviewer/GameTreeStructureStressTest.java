@@ -0,0 +1,44 @@
+package yi.component.treeviewer;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import yi.core.go.GameModel;
+import yi.core.go.LargeGameTrees;
+import yi.core.go.TreeWalks;
+
+import static yi.core.go.LargeGameTrees.DEEP_TREE_SIZE;
+import static yi.core.go.LargeGameTrees.WIDE_TREE_BRANCHES;
+
+/**
+ * Checks the time taken to lay out game trees that are far deeper and wider than regular
+ * game records, and the memory held by the laid out structure. The same layouts are
+ * checked for their results in {@link GameTreeStructureDeepLayoutTest}.
+ * <p/>
+ * Run with the performanceTest task, the timings are too noisy for the regular test run.
+ */
+@Tag("performance")
+public class GameTreeStructureStressTest {
+
+    @Test
+    public void testLayout_100kNodesDeep() {
+        assertLayoutWithin(LargeGameTrees.INSTANCE.createDeepModel(DEEP_TREE_SIZE), 1000, 64);
+    }
+
+    @Test
+    public void testLayout_10kBranchesWide() {
+        assertLayoutWithin(LargeGameTrees.INSTANCE.createWideModel(WIDE_TREE_BRANCHES), 500, 16);
+    }
+
+    @Test
+    public void testLayout_10kVariationsNested() {
+        assertLayoutWithin(GameTreeTestHelper.createNestedModel(WIDE_TREE_BRANCHES), 500, 16);
+    }
+
+    private void assertLayoutWithin(GameModel model, long maxMillis, long maxRetainedMb) {
+        TreeWalks.INSTANCE.measure(() -> {
+            var structure = new GameTreeStructure();
+            structure.setGameModel(model);
+            return structure;
+        }).assertWithin(maxMillis, maxRetainedMb);
+    }
+}
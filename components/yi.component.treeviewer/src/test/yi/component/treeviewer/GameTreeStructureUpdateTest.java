@@ -0,0 +1,184 @@
+package yi.component.treeviewer;
+
+import org.junit.jupiter.api.Test;
+import yi.core.go.GameModel;
+import yi.core.go.GameModelImporter;
+import yi.core.go.GameParseException;
+import yi.core.go.TestGameRules;
+import yi.core.go.docformat.FileFormat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static yi.component.treeviewer.GameTreeTestHelper.addRandomMove;
+import static yi.component.treeviewer.GameTreeTestHelper.getAllNodes;
+
+/**
+ * Tests that the layout updated on node events is the same as laying out the whole tree again.
+ */
+public class GameTreeStructureUpdateTest {
+
+    @Test
+    public void testAddNodes() {
+        var random = new Random(17L);
+        var model = new GameModel(9, 9, new TestGameRules.TestingGameRulesNoSuicide());
+        var structure = createUpdatingStructure(model);
+
+        for (int i = 0; i < 400; ++i) {
+            addRandomMove(model, random);
+            assertSameAsReconstructed(model, structure, "Add #" + i);
+        }
+    }
+
+    @Test
+    public void testAddAndRemoveNodes() {
+        var random = new Random(29L);
+        var model = new GameModel(9, 9, new TestGameRules.TestingGameRulesNoSuicide());
+        var structure = createUpdatingStructure(model);
+
+        for (int i = 0; i < 600; ++i) {
+            if (random.nextInt(4) == 0) {
+                var nodes = getAllNodes(model);
+                var nodeToRemove = nodes.get(random.nextInt(nodes.size()));
+
+                model.getEditor().removeNodeSubtree(nodeToRemove);
+                assertSameAsReconstructed(model, structure, "Remove #" + i);
+            } else {
+                addRandomMove(model, random);
+                assertSameAsReconstructed(model, structure, "Add #" + i);
+            }
+        }
+    }
+
+    @Test
+    public void testMoveSubtrees() {
+        var random = new Random(43L);
+        var model = new GameModel(9, 9, new TestGameRules.TestingGameRulesNoSuicide());
+        var structure = createUpdatingStructure(model);
+
+        for (int i = 0; i < 300; ++i) {
+            addRandomMove(model, random);
+        }
+        assertSameAsReconstructed(model, structure, "Initial tree");
+
+        for (int i = 0; i < 200; ++i) {
+            var nodes = getAllNodes(model);
+            var nodeToMove = nodes.get(random.nextInt(nodes.size()));
+            var newParent = nodes.get(random.nextInt(nodes.size()));
+
+            if (nodeToMove.isRoot() || newParent.isContinuationOf(nodeToMove)) {
+                continue;
+            }
+
+            model.getEditor().removeNode(nodeToMove);
+            assertSameAsReconstructed(model, structure, "Remove #" + i);
+
+            model.getEditor().appendNode(newParent, nodeToMove);
+            assertSameAsReconstructed(model, structure, "Append #" + i);
+        }
+    }
+
+    @Test
+    public void testNewBranchOutsideExistingBranches() {
+        var model = new GameModel(3, 3, new TestGameRules.TestingGameRulesNoSuicide());
+        var structure = createUpdatingStructure(model);
+
+        model.beginMoveSequence()
+                .playMove(0, 0)
+                .playMove(1, 0)
+                .playMove(2, 0);
+        model.setCurrentNode(model.getRootNode());
+        model.beginMoveSequence()
+                .playMove(0, 1)
+                .playMove(1, 1);
+        model.toPreviousNode();
+        model.beginMoveSequence().playMove(2, 1);
+
+        // Grows from the root, so it has to go around the variations above
+        model.setCurrentNode(model.getRootNode());
+        model.beginMoveSequence().playMove(2, 2);
+
+        assertSameAsReconstructed(model, structure, "New branch");
+        assertEquals(3, structure.getTreeNodeElementForNode(model.getCurrentNode()).orElseThrow().getGridX());
+    }
+
+    @Test
+    public void testLoadLazilyImportedVariations() throws GameParseException, IOException {
+        var file = Files.createTempFile("lazy", ".sgf");
+        GameModel model;
+        try {
+            Files.writeString(file, "(;GM[1]SZ[9](;B[aa];W[bb](;B[cc])(;B[dd]))(;B[ee])(;B[ff]))");
+            model = GameModelImporter.INSTANCE.fromFileLazily(file, FileFormat.SGF);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        var structure = createUpdatingStructure(model);
+        var root = model.getRootNode();
+
+        // Only the main branch is laid out, the variations are drawn collapsed until they are
+        // loaded and laid out through node add events
+        assertTrue(root.hasUnloadedVariations(), "Laying out the tree loaded the variations");
+        assertEquals(4, structure.getNodeElements().size());
+
+        var mainBranch = root.getChildNodes().get(0);
+        assertEquals(6, structure.getNodeElements().size());
+
+        mainBranch.getChildNodeInMainBranch().getChildNodes();
+        assertSameAsReconstructed(model, structure, "Loaded variations");
+    }
+
+    private GameTreeStructure createUpdatingStructure(GameModel model) {
+        var structure = new GameTreeStructure();
+        structure.setGameModel(model);
+
+        model.onNodeAdd().addListener(event -> structure.onNodeAdded(event.getNode()));
+        model.onNodeRemove().addListener(event -> structure.onNodeRemoved(event.getNode()));
+
+        return structure;
+    }
+
+
+    private void assertSameAsReconstructed(GameModel model, GameTreeStructure structure, String message) {
+        var expected = new GameTreeStructure();
+        expected.setGameModel(model);
+
+        var nodes = getAllNodes(model);
+        assertEquals(nodes.size(), structure.getNodeElements().size(), message);
+        assertEquals(expected.getFurthestHorizontalNode(), structure.getFurthestHorizontalNode(), message);
+        assertEquals(expected.getFurthestVerticalNode(), structure.getFurthestVerticalNode(), message);
+
+        for (var node : nodes) {
+            var expectedElement = expected.getTreeNodeElementForNode(node).orElseThrow();
+            var actualElement = structure.getTreeNodeElementForNode(node);
+            assertTrue(actualElement.isPresent(), message + ": No element for node " + node);
+
+            int x = expectedElement.getGridX();
+            int y = expectedElement.getGridY();
+            String errorMessage = String.format("%s: Expected node at %d,%d but was at %d,%d", message, x, y,
+                    actualElement.get().getGridX(), actualElement.get().getGridY());
+            assertEquals(x, actualElement.get().getGridX(), errorMessage);
+            assertEquals(y, actualElement.get().getGridY(), errorMessage);
+            assertSame(actualElement.get(), structure.getNodeElement(x, y).orElseThrow(), errorMessage);
+
+            var expectedParent = expectedElement.getParent().map(TreeNodeElement::getNode).orElse(null);
+            var actualParent = actualElement.get().getParent().orElse(null);
+            assertSame(expectedParent, actualParent != null ? actualParent.getNode() : null, errorMessage);
+            if (actualParent != null) {
+                assertSame(actualParent, structure.getTreeNodeElementForNode(actualParent.getNode()).orElseThrow(), errorMessage);
+            }
+        }
+
+        var expectedElements = expected.getAllElements();
+        var actualElements = structure.getAllElements();
+        assertEquals(expectedElements.size(), actualElements.size(), message);
+        for (int i = 0; i < expectedElements.size(); ++i) {
+            assertSame(((TreeNodeElement) expectedElements.get(i)).getNode(),
+                    ((TreeNodeElement) actualElements.get(i)).getNode(), message);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package yi.component.treeviewer;
+
+import yi.core.go.GameModel;
+import yi.core.go.GameNode;
+import yi.core.go.GameTree;
+import yi.core.go.TestGameRules;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Game trees and edits shared by the tests of the tree structure.
+ */
+final class GameTreeTestHelper {
+
+    private GameTreeTestHelper() {
+
+    }
+
+    /**
+     * Every variation has a one move main variation, and a variation of its own, so each
+     * variation is laid out one column further than the last.
+     */
+    static GameModel createNestedModel(int variationCount) {
+        var model = new GameModel(101, 101, new TestGameRules.TestingGameRulesNoSuicide());
+        var node = model.getRootNode();
+
+        for (int i = 0; i < variationCount; ++i) {
+            model.setCurrentNode(node);
+            model.getEditor().addPass();
+
+            model.setCurrentNode(node);
+            node = model.getEditor().addMove(i % 101, i / 101).getMoveNode();
+        }
+
+        return model;
+    }
+
+    /**
+     * Plays a move at a random intersection on a random node of the game tree.
+     */
+    static void addRandomMove(GameModel model, Random random) {
+        var nodes = getAllNodes(model);
+        var parent = nodes.get(random.nextInt(nodes.size()));
+
+        model.getEditor().addMove(parent, random.nextInt(model.getBoardWidth()), random.nextInt(model.getBoardHeight()));
+    }
+
+    static List<GameNode> getAllNodes(GameModel model) {
+        var result = new ArrayList<GameNode>();
+        GameTree.Companion.traverseSubtree(model.getRootNode(), result::add);
+        return result;
+    }
+}
@@ -121,4 +121,62 @@ public class GameTreeViewerCameraTest {
         Assertions.assertTrue(eventReceived.get());
     }
 
+    @Test
+    public void testAnimationStep_MovesTowardsTargetAndStops() {
+        var camera = new Camera(100, 100);
+        camera.setCenterOnCoordinateImmediately(50, 50);
+        camera.setCenterOnCoordinate(150, 50); // Target offset is (-100, 0)
+
+        double lastOffsetX = camera.getOffsetX();
+        int frames = 0;
+
+        while (camera.stepAnimation(FRAME_NANOS)) {
+            Assertions.assertTrue(camera.getOffsetX() < lastOffsetX, "Camera did not move towards target");
+            lastOffsetX = camera.getOffsetX();
+
+            ++frames;
+            Assertions.assertTrue(frames < 60, "Camera is still panning after one second");
+        }
+
+        Assertions.assertTrue(ComparisonUtilities.doubleEquals(-100d, camera.getOffsetX()));
+        Assertions.assertTrue(ComparisonUtilities.doubleEquals(0d, camera.getOffsetY()));
+        Assertions.assertTrue(camera.isCenteredOnTarget());
+    }
+
+    @Test
+    public void testAnimationStep_NewTargetWhilePanning_ContinuesFromCurrentOffset() {
+        var camera = new Camera(100, 100);
+        camera.setCenterOnCoordinateImmediately(50, 50);
+        camera.setCenterOnCoordinate(150, 50);
+
+        for (int i = 0; i < 3; ++i) {
+            camera.stepAnimation(FRAME_NANOS);
+        }
+        double offsetWhenRetargeted = camera.getOffsetX();
+
+        camera.setCenterOnCoordinate(50, 50); // Back to (0, 0)
+        camera.stepAnimation(FRAME_NANOS);
+
+        Assertions.assertTrue(camera.getOffsetX() > offsetWhenRetargeted);
+        Assertions.assertTrue(camera.getOffsetX() < 0d);
+    }
+
+    @Test
+    public void testAnimationStep_SameDistanceAtAnyFrameRate() {
+        var camera60Fps = new Camera(100, 100);
+        camera60Fps.setCenterOnCoordinateImmediately(50, 50);
+        camera60Fps.setCenterOnCoordinate(150, 50);
+
+        var camera120Fps = new Camera(100, 100);
+        camera120Fps.setCenterOnCoordinateImmediately(50, 50);
+        camera120Fps.setCenterOnCoordinate(150, 50);
+
+        camera60Fps.stepAnimation(FRAME_NANOS);
+        camera120Fps.stepAnimation(FRAME_NANOS / 2);
+        camera120Fps.stepAnimation(FRAME_NANOS / 2);
+
+        Assertions.assertEquals(camera60Fps.getOffsetX(), camera120Fps.getOffsetX(), 0.01d);
+    }
+
+    private static final long FRAME_NANOS = 16_666_666L;
 }
@@ -0,0 +1,54 @@
+package yi.core.go
+
+import java.util.*
+
+/**
+ * Creates the game models measured by the benchmarks. Every game is generated from a
+ * fixed seed so that each run measures the same positions.
+ */
+internal object BenchmarkGames {
+
+    /**
+     * Plays random legal moves until the requested number of moves have been played, or
+     * until no legal move can be found in a reasonable number of attempts.
+     *
+     * @return Game model with the current node at the last move played.
+     */
+    fun playRandomGame(boardSize: Int, movesToPlay: Int, seed: Long = 0): GameModel {
+        val model = GameModel(boardSize, boardSize, StandardGameRules.CHINESE)
+        val random = Random(seed)
+        var movesPlayed = 0
+        var attempts = 0
+
+        while (movesPlayed < movesToPlay && attempts < movesToPlay * 50) {
+            val result = model.editor.addMove(random.nextInt(boardSize), random.nextInt(boardSize))
+            if (result.validationResult == MoveValidationResult.OK) {
+                ++movesPlayed
+            }
+            ++attempts
+        }
+
+        return model
+    }
+
+    /**
+     * @return Node at the given move number on the main branch.
+     */
+    fun getMainBranchNode(model: GameModel, moveNumber: Int): GameNode {
+        var node = model.getRootNode()
+        for (i in 0 until moveNumber) {
+            node = node.getChildNodeInMainBranch() ?: break
+        }
+        return node
+    }
+
+    /**
+     * Reads one of the game records bundled with the tests.
+     */
+    fun readGameRecord(fileName: String): String {
+        val inputStream = BenchmarkGames::class.java.getResourceAsStream("/sgf/$fileName")
+                ?: throw IllegalArgumentException("No bundled game record named $fileName")
+
+        return inputStream.bufferedReader(Charsets.UTF_8).use { it.readText() }
+    }
+}
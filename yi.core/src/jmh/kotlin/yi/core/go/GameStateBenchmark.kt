@@ -0,0 +1,49 @@
+package yi.core.go
+
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures [GameModel.getGameState] for nodes at several depths of the main branch, both
+ * when the state has to be resolved and when it has been resolved before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class GameStateBenchmark {
+
+    @Param("10", "100", "300")
+    @JvmField
+    var depth = 0
+
+    private lateinit var model: GameModel
+    private lateinit var node: GameNode
+
+    @Setup(Level.Trial)
+    fun setup() {
+        model = BenchmarkGames.playRandomGame(19, 300)
+        node = BenchmarkGames.getMainBranchNode(model, depth)
+    }
+
+    @Benchmark
+    fun resolveCachedState(): GameState {
+        return model.getGameState(node)
+    }
+
+    @Benchmark
+    fun resolveUncachedState(invalidation: StateInvalidation): GameState {
+        return model.getGameState(node)
+    }
+
+    /**
+     * Discards all resolved states before each invocation.
+     */
+    @State(Scope.Thread)
+    open class StateInvalidation {
+
+        @Setup(Level.Invocation)
+        fun invalidate(benchmark: GameStateBenchmark) {
+            benchmark.model.invalidateStateData(benchmark.model.getRootNode())
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package yi.core.go
+
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures [GameMoveSubmitter] validating a move at every intersection of the board,
+ * legal or not, in positions from different stages of a game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class MoveValidationBenchmark {
+
+    @Param("0", "100", "250")
+    @JvmField
+    var movesPlayed = 0
+
+    private lateinit var model: GameModel
+    private lateinit var position: GameNode
+    private lateinit var candidateMoves: Array<Stone>
+
+    @Setup
+    fun setup() {
+        model = BenchmarkGames.playRandomGame(19, movesPlayed)
+        position = model.currentNode
+
+        val color = model.getNextTurnStoneColor()
+        candidateMoves = Array(model.getIntersectionCount()) { Stone(it % 19, it / 19, color) }
+    }
+
+    @Benchmark
+    fun validateEveryIntersection(blackhole: Blackhole) {
+        for (move in candidateMoves) {
+            blackhole.consume(GameMoveSubmitter.createMoveNode(model, position, move))
+        }
+    }
+}
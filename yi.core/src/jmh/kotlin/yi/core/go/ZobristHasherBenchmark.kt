@@ -0,0 +1,50 @@
+package yi.core.go
+
+import org.openjdk.jmh.annotations.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures [ZobristHasher] updating a state hash, as is done for every submitted move,
+ * and hashing an entire position.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class ZobristHasherBenchmark {
+
+    private val hasher = ZobristHasher(19, 19)
+
+    // A move on its own, and a move that captures a large string
+    private val singleMove = setOf(Stone(3, 3, StoneColor.BLACK))
+    private val moveWithCaptures = HashSet<Stone>().apply {
+        add(Stone(9, 9, StoneColor.WHITE))
+        for (x in 0 until 12) {
+            add(Stone(x, 10, StoneColor.NONE))
+        }
+    }
+
+    private lateinit var state: GameState
+    private var stateHash = 0L
+
+    @Setup
+    fun setup() {
+        val model = BenchmarkGames.playRandomGame(19, 200)
+        state = model.getCurrentGameState()
+        stateHash = model.currentNode.getStateHash()
+    }
+
+    @Benchmark
+    fun updateHashForMove(): Long {
+        return hasher.computeUpdateHash(stateHash, singleMove)
+    }
+
+    @Benchmark
+    fun updateHashForMoveWithCaptures(): Long {
+        return hasher.computeUpdateHash(stateHash, moveWithCaptures)
+    }
+
+    @Benchmark
+    fun hashEntirePosition(): Long {
+        return hasher.computeStateHash(state, 19, 19)
+    }
+}
@@ -0,0 +1,43 @@
+package yi.core.go.docformat
+
+import org.openjdk.jmh.annotations.*
+import yi.core.go.BenchmarkGames
+import yi.core.go.GameModel
+import yi.core.go.GameModelImporter
+import java.io.BufferedWriter
+import java.io.Writer
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures importing and exporting the SGF game records bundled with the tests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class SgfBenchmark {
+
+    @Param("1000_nodes.sgf", "standard.sgf", "igsGame.sgf", "ogsLinear.sgf")
+    @JvmField
+    var gameRecord = ""
+
+    private lateinit var data: String
+    private lateinit var model: GameModel
+
+    @Setup
+    fun setup() {
+        data = BenchmarkGames.readGameRecord(gameRecord)
+        model = GameModelImporter.fromString(data, FileFormat.SGF)
+    }
+
+    @Benchmark
+    fun importGameRecord(): GameModel {
+        return GameModelImporter.fromString(data, FileFormat.SGF)
+    }
+
+    @Benchmark
+    fun exportGameRecord() {
+        // Discard the output so that only the exporter is measured
+        val writer = BufferedWriter(Writer.nullWriter())
+        (FileFormat.SGF.getHandler() as TextFileFormatHandler).doExport(model, writer)
+    }
+}
@@ -0,0 +1,47 @@
+package yi.core.go.docformat
+
+import org.openjdk.jmh.annotations.*
+import yi.core.go.BenchmarkGames
+import yi.core.go.GameModel
+import yi.core.go.GameModelImporter
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures importing and exporting the game records bundled with the tests in the binary
+ * YGR format, to compare against [SgfBenchmark].
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class YgrBenchmark {
+
+    @Param("1000_nodes.sgf", "standard.sgf", "igsGame.sgf", "ogsLinear.sgf")
+    @JvmField
+    var gameRecord = ""
+
+    private lateinit var data: ByteArray
+    private lateinit var model: GameModel
+
+    @Setup
+    fun setup() {
+        model = GameModelImporter.fromString(BenchmarkGames.readGameRecord(gameRecord), FileFormat.SGF)
+
+        val output = ByteArrayOutputStream()
+        FileFormat.YGR.getHandler().doExport(model, output)
+        data = output.toByteArray()
+    }
+
+    @Benchmark
+    fun importGameRecord(): GameModel {
+        return FileFormat.YGR.getHandler().doImport(ByteArrayInputStream(data))
+    }
+
+    @Benchmark
+    fun exportGameRecord() {
+        // Discard the output so that only the exporter is measured
+        FileFormat.YGR.getHandler().doExport(model, OutputStream.nullOutputStream())
+    }
+}
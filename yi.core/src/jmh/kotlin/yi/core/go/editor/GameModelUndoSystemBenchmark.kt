@@ -0,0 +1,48 @@
+package yi.core.go.editor
+
+import org.openjdk.jmh.annotations.*
+import yi.core.go.BenchmarkGames
+import yi.core.go.GameModel
+import yi.core.go.editor.edit.MoveEdit
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures [GameModelUndoSystem] recording an edit, and undoing and redoing recorded
+ * edits, on a game that is already some way into the middle game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class GameModelUndoSystemBenchmark {
+
+    private lateinit var model: GameModel
+    private lateinit var undoSystem: GameModelUndoSystem
+
+    @Setup(Level.Iteration)
+    fun setup() {
+        model = BenchmarkGames.playRandomGame(19, 150)
+        undoSystem = model.editor.undoSystem
+
+        // Gives undoAndRedo() an edit to work with
+        model.editor.recordAndApplyUndoable(MoveEdit.pass())
+    }
+
+    /*
+     * Records a new edit and undoes it again, which leaves the model and the history as
+     * they were before.
+     */
+    @Benchmark
+    fun recordAndUndo() {
+        model.editor.recordAndApplyUndoable(MoveEdit.pass())
+        undoSystem.performUndo()
+    }
+
+    /*
+     * Undoes and redoes the last recorded edit.
+     */
+    @Benchmark
+    fun undoAndRedo() {
+        undoSystem.performUndo()
+        undoSystem.performRedo()
+    }
+}
@@ -0,0 +1,110 @@
+package yi.core.go
+
+/**
+ * One of the eight symmetries of a square board, being the four rotations with and without
+ * a reflection. Rectangular boards only have the four symmetries that keep the board
+ * dimensions, see [isAvailableFor].
+ *
+ * Rotations are clockwise, with (0, 0) being the top-left corner.
+ */
+enum class BoardSymmetry {
+
+    IDENTITY {
+        override fun transformX(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = x
+        override fun transformY(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = y
+    },
+
+    ROTATE_90 {
+        override fun transformX(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = boardHeight - 1 - y
+        override fun transformY(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = x
+    },
+
+    ROTATE_180 {
+        override fun transformX(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = boardWidth - 1 - x
+        override fun transformY(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = boardHeight - 1 - y
+    },
+
+    ROTATE_270 {
+        override fun transformX(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = y
+        override fun transformY(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = boardWidth - 1 - x
+    },
+
+    /**
+     * Reflection across the vertical center line, swapping left and right.
+     */
+    FLIP_HORIZONTAL {
+        override fun transformX(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = boardWidth - 1 - x
+        override fun transformY(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = y
+    },
+
+    /**
+     * Reflection across the horizontal center line, swapping top and bottom.
+     */
+    FLIP_VERTICAL {
+        override fun transformX(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = x
+        override fun transformY(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = boardHeight - 1 - y
+    },
+
+    /**
+     * Reflection across the diagonal from the top-left to the bottom-right corner.
+     */
+    TRANSPOSE {
+        override fun transformX(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = y
+        override fun transformY(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = x
+    },
+
+    /**
+     * Reflection across the diagonal from the top-right to the bottom-left corner.
+     */
+    ANTI_TRANSPOSE {
+        override fun transformX(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = boardHeight - 1 - y
+        override fun transformY(x: Int, y: Int, boardWidth: Int, boardHeight: Int) = boardWidth - 1 - x
+    };
+
+    protected abstract fun transformX(x: Int, y: Int, boardWidth: Int, boardHeight: Int): Int
+
+    protected abstract fun transformY(x: Int, y: Int, boardWidth: Int, boardHeight: Int): Int
+
+    /**
+     * @return true if this symmetry maps a board of the given dimensions onto itself.
+     */
+    fun isAvailableFor(boardWidth: Int, boardHeight: Int): Boolean {
+        return boardWidth == boardHeight || this == IDENTITY || this == ROTATE_180
+                || this == FLIP_HORIZONTAL || this == FLIP_VERTICAL
+    }
+
+    /**
+     * @return The stone moved to where this symmetry takes its intersection.
+     * @throws IllegalArgumentException If the symmetry is not available for the board.
+     */
+    fun transform(stone: Stone, boardWidth: Int, boardHeight: Int): Stone {
+        checkAvailable(boardWidth, boardHeight)
+        return Stone(transformX(stone.x, stone.y, boardWidth, boardHeight),
+                transformY(stone.x, stone.y, boardWidth, boardHeight), stone.color)
+    }
+
+    /**
+     * @return The one variable position that this symmetry takes the given position to.
+     * @throws IllegalArgumentException If the symmetry is not available for the board.
+     */
+    fun transform(position: Int, boardWidth: Int, boardHeight: Int): Int {
+        checkAvailable(boardWidth, boardHeight)
+        val x = position % boardWidth
+        val y = position / boardWidth
+        return transformX(x, y, boardWidth, boardHeight) + transformY(x, y, boardWidth, boardHeight) * boardWidth
+    }
+
+    private fun checkAvailable(boardWidth: Int, boardHeight: Int) {
+        if (!isAvailableFor(boardWidth, boardHeight))
+            throw IllegalArgumentException("$this is not a symmetry of a $boardWidth x $boardHeight board")
+    }
+
+    companion object {
+        /**
+         * @return Symmetries that map a board of the given dimensions onto itself.
+         */
+        fun availableFor(boardWidth: Int, boardHeight: Int): List<BoardSymmetry> {
+            return values().filter { it.isAvailableFor(boardWidth, boardHeight) }
+        }
+    }
+}
@@ -4,8 +4,6 @@ import yi.core.go.docformat.FileFormat
 import yi.core.go.editor.GameModelEditor
 import yi.core.go.rules.GameRulesHandler
 import java.nio.file.Path
-import java.util.*
-import kotlin.collections.ArrayList
 
 /**
  * Representing one game of Go. The model tracks
@@ -32,9 +30,7 @@ class GameModel(val boardWidth: Int,
             currentNodeChangeEventHook.fireEvent(NodeEvent(value))
         }
 
-    internal var playedMoveHistory: List<GameNode> = LinkedList()
-    private var stateHashHistory: List<Long> = LinkedList()
-    private var stateCache = WeakHashMap<Long, GameState>()
+    internal val positionHistory = PositionHistory()
     val editor = GameModelEditor(this)
 
     var lastSavePath: Path? = null
@@ -50,6 +46,9 @@ class GameModel(val boardWidth: Int,
         info.setKomi(rules.getDefaultKomi())
     }
 
+    private val stateResolver = GameStateResolver(this)
+    internal val stoneStringTracker = StoneStringTracker(boardWidth, boardHeight)
+
     constructor(boardWidth: Int, boardHeight: Int, rulesHandler: GameRulesHandler)
             : this(boardWidth, boardHeight, rulesHandler, ZobristHasher(boardWidth, boardHeight))
 
@@ -58,19 +57,7 @@ class GameModel(val boardWidth: Int,
 
 
     private fun internalCurrentNodeUpdate(currentNode: GameNode) {
-        val nodeHistory = currentNode.getMoveHistory()
-        this.playedMoveHistory = nodeHistory.filter {
-            it.delta.type == GameNodeType.MOVE_PLAYED
-                || it.delta.type == GameNodeType.PASS
-        }
-        if (nodeHistory.size > 1) {
-            // Only count non-root and primary move updates for unique state
-            val uniqueStateHistory = nodeHistory.subList(1, nodeHistory.size)
-                    .filter { node -> node.getType() == GameNodeType.MOVE_PLAYED }
-            this.stateHashHistory = uniqueStateHistory.map { node -> node.getStateHash() }
-        } else {
-            this.stateHashHistory = ArrayList()
-        }
+        positionHistory.moveTo(currentNode)
     }
 
     /**
@@ -117,7 +104,7 @@ class GameModel(val boardWidth: Int,
 
     /**
      * The game state is dynamically calculated if it does not exist, otherwise it will be
-     * cached for a period of time for performance.
+     * cached for a period of time for performance. See [GameStateResolver] for details.
      *
      * @return The [GameState] at a given node position.
      */
@@ -125,38 +112,38 @@ class GameModel(val boardWidth: Int,
         if (!gameTree.isDescendant(gameNode))
             throw IllegalArgumentException("Game node is not part of this move tree")
 
-        if (gameNode.getType() == GameNodeType.MOVE_PLAYED) {
-            this.stateCache[gameNode.getStateHash()]?.let {
-                return it
-            }
-        }
-
-        // Only perform state resolution if we don't have a cached position
-        val positionState = GamePosition(boardWidth, boardHeight)
-
-        var prisonersWhite = 0
-        var prisonersBlack = 0
-
-        val annotations: Collection<Annotation>
+        return stateResolver.resolve(gameNode)
+    }
 
-        // Build the board state by traversing the history and apply the delta from root up to gameNode
-        val pathToRoot = gameNode.getMoveHistory()
+    /**
+     * @return Counters describing how often [getGameState] was served from cache since
+     * the model was created, or since the last [resetGameStateStatistics].
+     */
+    fun getGameStateStatistics(): GameStateResolverStatistics {
+        return stateResolver.getStatistics()
+    }
 
-        pathToRoot.forEach { node ->
-            val captures = node.getCapturesThisTurn()
+    /**
+     * Resets the counters reported by [getGameStateStatistics].
+     */
+    fun resetGameStateStatistics() {
+        stateResolver.resetStatistics()
+    }
 
-            positionState.apply(node.delta)
-            prisonersWhite += captures.filter { capture -> capture.color == StoneColor.BLACK }.count()
-            prisonersBlack += captures.filter { capture -> capture.color == StoneColor.WHITE }.count()
+    /**
+     * Discards position data derived from the stones on the given node. Must be invoked
+     * whenever the stone edits of a node in the game tree change.
+     */
+    internal fun invalidateStateData(gameNode: GameNode) {
+        if (!gameTree.isDescendant(gameNode)) {
+            return
         }
 
-        annotations = pathToRoot[pathToRoot.lastIndex].getAnnotations()
-
-        val gameState = GameState(this, positionState, gameNode, prisonersWhite,
-                prisonersBlack, annotations)
-        this.stateCache[gameNode.getStateHash()] = gameState
-
-        return gameState
+        // The positions of all descendants change too, but their state hashes do not
+        stateResolver.invalidate()
+        stoneStringTracker.invalidateIfAffectedBy(gameNode)
+        positionHistory.invalidate()
+        positionHistory.moveTo(currentNode)
     }
 
     /**
@@ -180,7 +167,7 @@ class GameModel(val boardWidth: Int,
      * @return The [StoneColor] for the stone that will be played on the next turn.
      */
     fun getNextTurnStoneColor(): StoneColor {
-        return rules.getStoneColorForTurn(playedMoveHistory.size, info.getHandicapCount() > 0)
+        return rules.getStoneColorForTurn(positionHistory.getPlayedMoveCount(), info.getHandicapCount() > 0)
     }
 
     /**
@@ -193,7 +180,7 @@ class GameModel(val boardWidth: Int,
      * Returns a copy of the state hash history that led up to the current state.
      */
     fun getStateHashHistory(): List<Long> {
-        return ArrayList(stateHashHistory)
+        return positionHistory.toList()
     }
 
     /**
@@ -0,0 +1,296 @@
+package yi.core.go
+
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Imports a batch of game record files in parallel, such as an entire tournament archive.
+ * Use [GameModelImporter.batchFromDirectory] or [GameModelImporter.batchFromFiles] to
+ * start one.
+ *
+ * Files are parsed on a [ForkJoinPool] owned by the batch, with at most the given number
+ * of files being parsed at the same time. A file that fails to import does not stop the
+ * batch, instead its error is reported in its [BatchImportResult]. The batch can be
+ * cancelled at any time, in which case files that have not been started are skipped.
+ *
+ * Progress is reported to the [BatchImportListener] as each file finishes. Every imported
+ * model is also kept until the batch is discarded, so that [awaitResults] can return them.
+ */
+class GameModelBatchImport internal constructor(filePaths: List<Path>,
+                                                failedPaths: List<BatchImportResult>,
+                                                parallelism: Int,
+                                                private val listener: BatchImportListener?,
+                                                private val keepResults: Boolean = true,
+                                                private val importer: (Path) -> GameModel = GameModelImporter::fromFile) {
+
+    private val filePaths = ArrayList(filePaths)
+    private val totalFiles = filePaths.size + failedPaths.size
+    private val results = arrayOfNulls<BatchImportResult>(totalFiles)
+
+    private val filesImported = AtomicInteger()
+    private val filesFailed = AtomicInteger()
+    private val bytesRead = AtomicLong()
+    private val startTime = System.nanoTime()
+
+    @Volatile private var cancelled = false
+    @Volatile private var finishTime = -1L
+
+    private val remainingFiles = AtomicInteger(totalFiles)
+    private val finished = CountDownLatch(1)
+    private val pool = ForkJoinPool(parallelism.coerceAtLeast(1))
+
+    init {
+        // Paths that could not be read while collecting them are reported first
+        for (i in failedPaths.indices) {
+            complete(i, failedPaths[i])
+        }
+
+        for (i in this.filePaths.indices) {
+            val index = failedPaths.size + i
+            val filePath = this.filePaths[i]
+            pool.execute { importFile(index, filePath) }
+        }
+
+        if (totalFiles == 0) {
+            finish()
+        }
+    }
+
+    /**
+     * Stops the batch. Files that are already being parsed are finished, and the rest are
+     * skipped without a result.
+     */
+    fun cancel() {
+        cancelled = true
+    }
+
+    /**
+     * @return true if [cancel] has been called.
+     */
+    fun isCancelled(): Boolean = cancelled
+
+    /**
+     * @return true once every file has either been imported or skipped due to cancellation.
+     */
+    fun isDone(): Boolean = finished.count == 0L
+
+    /**
+     * @return A snapshot of the progress of this batch.
+     */
+    fun getProgress(): BatchImportProgress {
+        val endTime = if (finishTime >= 0) finishTime else System.nanoTime()
+        return BatchImportProgress(filesImported.get(), filesFailed.get(), totalFiles, bytesRead.get(),
+                endTime - startTime)
+    }
+
+    /**
+     * Waits for the batch to complete.
+     *
+     * @return Result of each file in the order the files were given, or in the order they
+     * were found in the directory. Files skipped due to cancellation have no result.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Throws(InterruptedException::class)
+    fun awaitResults(): List<BatchImportResult> {
+        finished.await()
+        return results.filterNotNull()
+    }
+
+    /**
+     * Waits up to the given time for the batch to complete.
+     *
+     * @return true if the batch has completed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Throws(InterruptedException::class)
+    fun await(timeout: Long, unit: TimeUnit): Boolean {
+        return finished.await(timeout, unit)
+    }
+
+    private fun importFile(index: Int, filePath: Path) {
+        if (cancelled) {
+            skip()
+            return
+        }
+
+        var fatalError: VirtualMachineError? = null
+        var countedDown = false
+
+        try {
+            val result = try {
+                bytesRead.addAndGet(Files.size(filePath))
+                BatchImportResult(filePath, importer(filePath), null)
+            } catch (e: GameParseException) {
+                BatchImportResult(filePath, null, e)
+            } catch (e: IOException) {
+                BatchImportResult(filePath, null, e)
+            } catch (e: VirtualMachineError) {
+                // Reported as a failure so that waiting callers are released, then rethrown below
+                fatalError = e
+                BatchImportResult(filePath, null, GameParseException("Failed to import ${filePath.fileName}", e))
+            } catch (e: Throwable) {
+                // Malformed data may also surface as unchecked exceptions or errors within the parser
+                BatchImportResult(filePath, null, GameParseException("Failed to import ${filePath.fileName}", e))
+            }
+
+            // complete() counts the file down itself, even if the listener throws
+            countedDown = true
+            complete(index, result)
+        } finally {
+            // Otherwise the batch would never finish, leaving awaitResults() waiting forever
+            if (!countedDown) {
+                countDown()
+            }
+        }
+
+        fatalError?.let { throw it }
+    }
+
+    private fun complete(index: Int, result: BatchImportResult) {
+        // Callers that consume each model in the listener need not keep the whole batch in memory
+        if (keepResults) {
+            results[index] = result
+        }
+
+        if (result.isSuccessful()) {
+            filesImported.incrementAndGet()
+        } else {
+            filesFailed.incrementAndGet()
+        }
+
+        try {
+            // Listeners are never called concurrently, so that they need not be thread-safe
+            listener?.let {
+                val progress = getProgress()
+                synchronized(it) {
+                    it.onFileImported(result, progress)
+                }
+            }
+        } finally {
+            countDown()
+        }
+    }
+
+    private fun skip() {
+        countDown()
+    }
+
+    private fun countDown() {
+        if (remainingFiles.decrementAndGet() == 0) {
+            finish()
+        }
+    }
+
+    private fun finish() {
+        finishTime = System.nanoTime()
+        pool.shutdown()
+
+        try {
+            listener?.let {
+                val progress = getProgress()
+                synchronized(it) {
+                    it.onFinished(progress, cancelled)
+                }
+            }
+        } finally {
+            finished.countDown()
+        }
+    }
+}
+
+/**
+ * Outcome of importing one file in a [GameModelBatchImport].
+ *
+ * @param filePath Path of the imported file.
+ */
+class BatchImportResult internal constructor(val filePath: Path,
+                                             private val gameModel: GameModel?,
+                                             private val error: Exception?) {
+
+    /**
+     * @return true if the file was imported.
+     */
+    fun isSuccessful(): Boolean = gameModel != null
+
+    /**
+     * @return The imported game model, or [Optional.empty] if the import failed.
+     */
+    fun getGameModel(): Optional<GameModel> = Optional.ofNullable(gameModel)
+
+    /**
+     * @return Reason the import failed, or [Optional.empty] if it succeeded. This is a
+     * [GameParseException] if the file content could not be parsed or the parser failed
+     * with an error, or an [IOException] if the file could not be read.
+     */
+    fun getError(): Optional<Exception> = Optional.ofNullable(error)
+
+    override fun toString(): String {
+        return if (error == null) "$filePath: imported" else "$filePath: ${error.message}"
+    }
+}
+
+/**
+ * Snapshot of the progress of a [GameModelBatchImport].
+ *
+ * @param filesImported Number of files imported successfully so far.
+ * @param filesFailed Number of files that failed to import so far.
+ * @param totalFiles Number of files in the batch.
+ * @param bytesRead Total size of the files read so far.
+ * @param elapsedNanos Time since the batch started, or the duration of the batch once it
+ * has finished.
+ */
+class BatchImportProgress(val filesImported: Int,
+                          val filesFailed: Int,
+                          val totalFiles: Int,
+                          val bytesRead: Long,
+                          val elapsedNanos: Long) {
+
+    /**
+     * @return Number of files that have been imported or failed to import.
+     */
+    fun getFilesCompleted(): Int = filesImported + filesFailed
+
+    /**
+     * @return Files completed per second since the batch started.
+     */
+    fun getFilesPerSecond(): Double {
+        return if (elapsedNanos > 0) getFilesCompleted() * NANOS_PER_SECOND / elapsedNanos else 0.0
+    }
+
+    /**
+     * @return Bytes read per second since the batch started.
+     */
+    fun getBytesPerSecond(): Double {
+        return if (elapsedNanos > 0) bytesRead * NANOS_PER_SECOND / elapsedNanos else 0.0
+    }
+
+    private companion object {
+        const val NANOS_PER_SECOND = 1_000_000_000.0
+    }
+}
+
+/**
+ * Receives the progress of a [GameModelBatchImport]. Methods are called from the threads
+ * importing the files, but never concurrently. User interfaces must hand the updates over
+ * to their own thread.
+ */
+interface BatchImportListener {
+
+    /**
+     * Called once for each file after it has been imported or failed to import.
+     */
+    fun onFileImported(result: BatchImportResult, progress: BatchImportProgress)
+
+    /**
+     * Called once after the last file has completed, or after cancellation once the files
+     * that were being parsed have completed.
+     */
+    fun onFinished(progress: BatchImportProgress, cancelled: Boolean) { }
+}
@@ -37,9 +37,8 @@ object GameModelExporter {
      * values.
      */
     fun toOutputStream(gameModel: GameModel, outputStream: OutputStream, format: FileFormat) {
-        val writer = outputStream.bufferedWriter(Charsets.UTF_8)
-        writer.use {
-            format.getHandler().doExport(gameModel, writer)
+        outputStream.use {
+            format.getHandler().doExport(gameModel, it)
         }
     }
 
@@ -2,11 +2,17 @@ package yi.core.go
 
 import yi.core.go.docformat.FileFormat
 import yi.core.go.docformat.FileFormatHandler
+import yi.core.go.docformat.GameCollection
+import yi.core.go.docformat.TextFileFormatHandler
 import java.io.CharArrayReader
 import java.io.IOException
+import java.io.StringReader
+import java.nio.file.FileVisitResult
 import java.nio.file.Files
 import java.nio.file.Path
+import java.nio.file.SimpleFileVisitor
 import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributes
 import java.util.*
 import java.util.function.Function
 import java.util.stream.Collectors
@@ -35,7 +41,7 @@ object GameModelImporter {
     fun fromInternalResources(fileResourceUrl: String, format: FileFormat, resourceClass: Class<*>): GameModel {
         val handler = format.getHandler()
         val inputStream = resourceClass.getResourceAsStream(fileResourceUrl)
-        return handler.doImport(inputStream.bufferedReader(Charsets.UTF_8))
+        return handler.doImport(inputStream)
     }
 
     /**
@@ -61,23 +67,68 @@ object GameModelImporter {
      */
     @Throws(GameParseException::class, IOException::class)
     fun fromFile(filePath: Path): GameModel {
+        return fromFileImpl(filePath, detectFormat(filePath).getHandler(), false)
+    }
+
+    /**
+     * Parses a given file as a [GameModel] in the same way as [fromFile], except that
+     * only the main branch of each variation is read up front where the format allows it.
+     * The other variations are read the first time the children of the node they branch
+     * from are accessed, such as through [GameNode.getChildNodes]. This makes very large
+     * game records, such as AI reviews, quicker to open, and variations that are never
+     * visited are never loaded. Callers that go through the whole game tree, such as a
+     * view that lays it out, should use [GameNode.getLoadedChildNodes] and
+     * [GameNode.hasUnloadedVariations] instead so that they do not load every variation.
+     *
+     * Until every variation has been loaded, the model keeps the file data in memory.
+     * Variations are checked to be complete before they are skipped, but other errors
+     * within them are only found once they are loaded, which then throws an
+     * [IllegalStateException].
+     *
+     * @param filePath The path to the game model data file.
+     * @return [GameModel] that represents the game data in the file.
+     *
+     * @throws GameParseException If the file is corrupted, or a fatal file format error occurs.
+     * @throws IOException Issues with identifying or setting up the input stream for the file.
+     */
+    @Throws(GameParseException::class, IOException::class)
+    fun fromFileLazily(filePath: Path): GameModel {
+        return fromFileImpl(filePath, detectFormat(filePath).getHandler(), true)
+    }
+
+    /**
+     * Parses a given file as a [GameModel] using a specified file format, reading
+     * variations lazily. See [fromFileLazily] for details.
+     *
+     * @param filePath The path to the game model data file.
+     * @param format Format of the game file.
+     * @return [GameModel] that represents the game data in the file.
+     *
+     * @throws GameParseException If the file is corrupted, or a fatal file format error occurs.
+     * @throws IOException Issues with identifying or setting up the input stream for the file.
+     */
+    @Throws(GameParseException::class, IOException::class)
+    fun fromFileLazily(filePath: Path, format: FileFormat): GameModel {
+        return fromFileImpl(filePath, format.getHandler(), true)
+    }
+
+    @Throws(GameParseException::class, IOException::class)
+    private fun detectFormat(filePath: Path): FileFormat {
         val name = filePath.fileName.toString()
         val extensionDot = name.lastIndexOf(".")
         val formats: Set<FileFormat>
         formats = if (extensionDot == -1) {
-            // File has no extension, scan it.
-            val inputStream = Files.newInputStream(filePath, StandardOpenOption.READ)
-            val reader = inputStream.bufferedReader(Charsets.UTF_8)
-            getRecognizedFormats(Function { format: FileFormat -> format.getHandler().isLikelyLoadable(reader) })
+            // File has no extension, scan it. Each format scans from the start of the file.
+            getRecognizedFormats(Function { format: FileFormat ->
+                val inputStream = Files.newInputStream(filePath, StandardOpenOption.READ)
+                inputStream.bufferedReader(Charsets.UTF_8).use { format.getHandler().isLikelyLoadable(it) }
+            })
         } else {
             val extension = name.substring(extensionDot + 1)
             getRecognizedFormats(Function { format: FileFormat -> format.isSupportedFormat(extension) })
         }
         return when {
-            formats.size == 1 -> {
-                val format = formats.iterator().next()
-                fromFileImpl(filePath, format.getHandler())
-            }
+            formats.size == 1 -> formats.iterator().next()
             formats.size > 1 -> {
                 throw GameParseException("File conforms to more than 1 format: $formats")
             }
@@ -99,13 +150,107 @@ object GameModelImporter {
      */
     @Throws(GameParseException::class, IOException::class)
     fun fromFile(filePath: Path, format: FileFormat): GameModel {
-        return fromFileImpl(filePath, format.getHandler())
+        return fromFileImpl(filePath, format.getHandler(), false)
     }
 
-    @Throws(GameParseException::class, IOException::class)
-    private fun fromFileImpl(filePath: Path, handler: FileFormatHandler): GameModel {
+    /**
+     * Parses every game stored in a given file using a specified file format. Some servers
+     * store a collection of many games in one file, which [fromFile] only reads the first
+     * game of.
+     *
+     * The games are parsed in parallel while the collection is iterated, and only a few games
+     * ahead of the one being returned are kept in memory. The file is closed once all games
+     * have been read. Iterating the collection throws [GameParseException] upon reaching a
+     * game that cannot be parsed.
+     *
+     * The caller must close the returned collection if it stops iterating before the last
+     * game, otherwise the file stays open. Reading it within [use] takes care of this.
+     *
+     * @param filePath The path to the game collection file.
+     * @param format Format of the game file.
+     * @return The games in the file, in the order they are stored. The collection can only
+     * be iterated once.
+     *
+     * @throws IOException Issues with identifying or setting up the input stream for the file.
+     */
+    @Throws(IOException::class)
+    fun collectionFromFile(filePath: Path, format: FileFormat): GameCollection {
         val inputStream = Files.newInputStream(filePath, StandardOpenOption.READ)
-        return handler.doImport(inputStream.bufferedReader(Charsets.UTF_8))
+        try {
+            return format.getHandler().doImportCollection(inputStream)
+        } catch (e: Throwable) {
+            inputStream.close()
+            throw e
+        }
+    }
+
+    /**
+     * Imports every game record file under a directory, including its sub-directories,
+     * in parallel. Only files whose extension belongs to a supported [FileFormat] are
+     * imported. See [GameModelBatchImport] for how the batch is run.
+     *
+     * The batch starts immediately and this method returns without waiting for it. Files or
+     * directories that cannot be read are reported as failed results rather than stopping
+     * the batch.
+     *
+     * @param directory Directory to search for game record files.
+     * @param parallelism Maximum number of files to parse at the same time.
+     * @param listener Receives the result of each file as it completes, or null if not needed.
+     * @return The running batch, which can be used to wait for its results or to cancel it.
+     *
+     * @throws IOException If the directory itself cannot be read.
+     */
+    @Throws(IOException::class)
+    fun batchFromDirectory(directory: Path, parallelism: Int, listener: BatchImportListener?): GameModelBatchImport {
+        val filePaths = ArrayList<Path>()
+        val failedPaths = ArrayList<BatchImportResult>()
+
+        Files.walkFileTree(directory, object : SimpleFileVisitor<Path>() {
+            override fun visitFile(file: Path, attributes: BasicFileAttributes): FileVisitResult {
+                if (attributes.isRegularFile && isSupportedFile(file)) {
+                    filePaths.add(file)
+                }
+                return FileVisitResult.CONTINUE
+            }
+
+            override fun visitFileFailed(file: Path, exception: IOException): FileVisitResult {
+                if (file == directory) {
+                    throw exception
+                }
+                failedPaths.add(BatchImportResult(file, null, exception))
+                return FileVisitResult.CONTINUE
+            }
+        })
+        filePaths.sort()
+
+        return GameModelBatchImport(filePaths, failedPaths, parallelism, listener)
+    }
+
+    /**
+     * Imports a list of game record files in parallel, detecting the format of each file in
+     * the same way as [fromFile]. See [GameModelBatchImport] for how the batch is run.
+     *
+     * The batch starts immediately and this method returns without waiting for it.
+     *
+     * @param filePaths Paths to the game record files.
+     * @param parallelism Maximum number of files to parse at the same time.
+     * @param listener Receives the result of each file as it completes, or null if not needed.
+     * @return The running batch, which can be used to wait for its results or to cancel it.
+     */
+    fun batchFromFiles(filePaths: List<Path>, parallelism: Int, listener: BatchImportListener?): GameModelBatchImport {
+        return GameModelBatchImport(filePaths, Collections.emptyList(), parallelism, listener)
+    }
+
+    internal fun isSupportedFile(filePath: Path): Boolean {
+        val name = filePath.fileName.toString()
+        val extensionDot = name.lastIndexOf(".")
+
+        return extensionDot != -1 && FileFormat.values().any { it.isSupportedFormat(name.substring(extensionDot + 1)) }
+    }
+
+    @Throws(GameParseException::class, IOException::class)
+    private fun fromFileImpl(filePath: Path, handler: FileFormatHandler, lazily: Boolean): GameModel {
+        return if (lazily) handler.doImportLazily(filePath) else handler.doImport(filePath)
     }
 
     private fun getRecognizedFormats(formatEvaluator: Function<FileFormat, Boolean>): Set<FileFormat> {
@@ -119,6 +264,9 @@ object GameModelImporter {
      *
      * @param modelData Game model data as String.
      * @param format Format of the game data.
+     *
+     * @throws GameParseException If the data is corrupted, or the format is a binary format
+     * whose data cannot be stored in a String.
      */
     @Throws(GameParseException::class)
     fun fromString(modelData: String, format: FileFormat): GameModel {
@@ -126,6 +274,31 @@ object GameModelImporter {
         val reader = CharArrayReader(charArray)
         val bufferedReader = reader.buffered(DEFAULT_BUFFER_SIZE)
 
-        return format.getHandler().doImport(bufferedReader)
+        return getTextHandler(format).doImport(bufferedReader)
+    }
+
+    /**
+     * Parses string data containing one or more games into a [GameCollection] using a
+     * specified data format. See [collectionFromFile] for how the games are parsed, and
+     * when the collection must be closed.
+     *
+     * @param modelData Game collection data as String.
+     * @param format Format of the game data.
+     *
+     * @throws GameParseException If the format is a binary format whose data cannot be
+     * stored in a String.
+     */
+    @Throws(GameParseException::class)
+    fun collectionFromString(modelData: String, format: FileFormat): GameCollection {
+        val bufferedReader = StringReader(modelData).buffered(DEFAULT_BUFFER_SIZE)
+
+        return getTextHandler(format).doImportCollection(bufferedReader)
+    }
+
+    @Throws(GameParseException::class)
+    private fun getTextHandler(format: FileFormat): TextFileFormatHandler {
+        return format.getHandler() as? TextFileFormatHandler
+                ?: throw GameParseException("Game data of the ${format.getHandler().getUserFriendlyName()} " +
+                        "format cannot be read from text")
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,5 @@
 package yi.core.go
 
-import java.util.*
 import kotlin.collections.HashSet
 
 /**
@@ -20,18 +19,21 @@ internal object GameMoveSubmitter {
      * @param ignoreRules Whether to ignore rule violation when evaluating this move.
      * If this is true, and the proposed move is not in compliance with game rules,
      * it will be played anyway. This is false by default.
+     * @param tracker Strings of the game position, which are synchronised to [currentNode]
+     * before the move is evaluated. Defaults to the strings tracked by the game model.
      */
     // TODO: This doesn't reuse existing identical moves if one exists in the position
     //       being played. Check if it should do that instead.
     fun createMoveNode(gameModel: GameModel, currentNode: GameNode,
-                       proposedMove: Stone, ignoreRules: Boolean = false)
+                       proposedMove: Stone, ignoreRules: Boolean = false,
+                       tracker: StoneStringTracker = gameModel.stoneStringTracker)
             : Pair<MoveValidationResult, GameNode?> {
 
         val validationResult: MoveValidationResult
         val update: StateDelta?
 
         val validationAndDelta = validateAndCreateStateUpdate(gameModel,
-                currentNode, proposedMove, ignoreRules)
+                currentNode, proposedMove, ignoreRules, tracker)
         validationResult = validationAndDelta.first
 
         if (validationResult != MoveValidationResult.OK) {
@@ -87,25 +89,25 @@ internal object GameMoveSubmitter {
      * game state updates caused by playing this move on the game board.
      */
     private fun validateAndCreateStateUpdate(gameModel: GameModel, currentNode: GameNode,
-                                             proposedMove: Stone, ignoreRules: Boolean = false)
+                                             proposedMove: Stone, ignoreRules: Boolean,
+                                             tracker: StoneStringTracker)
             : Pair<MoveValidationResult, StateDelta?> {
 
         val proposedMovePosition = proposedMove.getPosition(gameModel.boardWidth)
         if (proposedMovePosition < 0 || proposedMovePosition >= gameModel.getIntersectionCount())
             return Pair(MoveValidationResult.ERROR_POSITION_OUT_OF_BOUNDS, null)
 
-        val currentGameState = gameModel.getGameState(currentNode)
-        val currentGamePosition = currentGameState.boardPosition
+        tracker.syncTo(gameModel, currentNode)
 
         if (!ignoreRules) {
-            val nextMoveNumber = gameModel.playedMoveHistory.size
+            val nextMoveNumber = gameModel.positionHistory.getPlayedMoveCount()
             val expectedStoneColorThisTurn = gameModel.rules.getStoneColorForTurn(nextMoveNumber, gameModel.info.getHandicapCount() > 0)
 
             if (expectedStoneColorThisTurn != proposedMove.color) {
                 return Pair(MoveValidationResult.ERROR_WRONG_STONE_COLOR_THIS_TURN, null)
             }
 
-            if (currentGamePosition.getStoneColorAt(proposedMovePosition) != StoneColor.NONE) {
+            if (tracker.getStoneColorAt(proposedMovePosition) != StoneColor.NONE) {
                 return Pair(MoveValidationResult.ERROR_NON_EMPTY_INTERSECTION, null)
             }
         }
@@ -114,49 +116,41 @@ internal object GameMoveSubmitter {
             Procedure reference: https://www.red-bean.com/sgf/ff5/m_vs_ax.htm
          */
 
-        // Overwrite
-        // Create a copy of the current position, overwrite the intersection at the proposed
-        // move location with the proposed  stone color
-        val testGamePosition = currentGamePosition.intersectionState.copyOf(currentGamePosition.intersectionState.size)
-        testGamePosition[proposedMovePosition] = proposedMove.color
-
         // Check for captures:
-        // Scan the intersections directly adjacent to the proposed move and obtain up to
-        // four strings of connected stones.
-        //
         // First check if any strings of the opponent color will be captured (i.e. have
         // zero liberty) upon playing the proposed move. (capture)
         //
         // Next check if any strings of the same color as the proposed move has zero
         // liberties upon playing the proposed move. (suicide)
-        val x = proposedMove.x
-        val y = proposedMove.y
-
-        // Check for captures
-        val strings = HashSet<StoneString>()
-
-        addStringIfNotVisitedAlready(x, y - 1, strings, gameModel, testGamePosition)
-        addStringIfNotVisitedAlready(x, y + 1, strings, gameModel, testGamePosition)
-        addStringIfNotVisitedAlready(x - 1, y, strings, gameModel, testGamePosition)
-        addStringIfNotVisitedAlready(x + 1, y, strings, gameModel, testGamePosition)
-        addStringIfNotVisitedAlready(x, y, strings, gameModel, testGamePosition)
-
-        val opponentStrings = HashSet<StoneString>()
-
-        // Check for self capture
-        val friendlyStrings = HashSet<StoneString>()
-
-        // Sets values for the two buckets above
-        collateStrings(proposedMove.color, friendlyStrings, opponentStrings, strings)
-
+        //
+        // The tracker keeps the liberty count of every string at currentNode, so this
+        // only looks at the strings directly adjacent to the proposed move.
         var moveIsSuicidal = false
         val capturedStones = HashSet<Stone>()
-        val capturesOfOpponent = getCapturesAndUpdateGamePosition(testGamePosition, opponentStrings, gameModel.boardWidth)
-        val capturesOfSelf = if (capturesOfOpponent.isEmpty())
-                                getCapturesAndUpdateGamePosition(testGamePosition, friendlyStrings, gameModel.boardWidth)
+        val capturesOfOpponent: Set<Stone>
+        val capturesOfSelf: Set<Stone>
+
+        if (tracker.getStoneColorAt(proposedMovePosition) == StoneColor.NONE) {
+            val captures = HashSet<Stone>()
+            val capturesAreOwnStones = tracker.findCaptures(proposedMovePosition, proposedMove.color, captures)
+
+            capturesOfOpponent = if (capturesAreOwnStones) emptySet() else captures
+            capturesOfSelf = if (capturesAreOwnStones) captures else emptySet()
+        } else {
+            // Only reachable when rules are ignored, the proposed move overwrites an existing
+            // stone. This changes the strings in ways the tracker does not model, so scan
+            // a copy of the position instead.
+            val strings = scanStringsAroundOverwrite(tracker.copyPosition(), proposedMove, gameModel)
+
+            capturesOfOpponent = getCapturesAndUpdateGamePosition(strings.first, strings.second,
+                    proposedMove.color.getOpponent(), gameModel.boardWidth)
+            capturesOfSelf = if (capturesOfOpponent.isEmpty())
+                                getCapturesAndUpdateGamePosition(strings.first, strings.second,
+                                        proposedMove.color, gameModel.boardWidth)
                              else
                                 HashSet() // If we capture opponent first, then even if
                                           // the played move has no liberties, it's not a self capture
+        }
 
         if (!ignoreRules) {
             if (capturesOfOpponent.size == 0 && capturesOfSelf.size > 0) {
@@ -185,18 +179,19 @@ internal object GameMoveSubmitter {
         }
 
         val newStateHash = gameModel.stateHasher.computeUpdateHash(currentNode.getStateHash(), stoneUpdates)
-        val stateHashHistory = gameModel.getStateHashHistory()
+        val positionHistory = gameModel.positionHistory
 
         if (!ignoreRules) {
             // Check if this new state repeats past board positions
-            if (stateHashHistory.contains(newStateHash)) {
+            val repeatHashPosition = positionHistory.indexOf(newStateHash)
+
+            if (repeatHashPosition >= 0) {
                 // Determine the reason of repetition. The two important distinction is
                 // an illegal ko recapture vs generic position repeat. An illegal ko
                 // recapture is an immediate repetition of currentNode.parent state
                 // (2 states ago from the perspective of the new node) Whereas a generic
                 // position repeat is a repetition of any state other than a ko recapture.
-                val newStatePosition = stateHashHistory.size
-                val repeatHashPosition = stateHashHistory.indexOf(newStateHash)
+                val newStatePosition = positionHistory.getStateCount()
 
                 if (newStatePosition - repeatHashPosition == 2) {
                     // Lastly, make sure we're trying to capture 1 opponent stone this
@@ -222,28 +217,42 @@ internal object GameMoveSubmitter {
         return Pair(MoveValidationResult.OK, update)
     }
 
-    private fun addStringIfNotVisitedAlready(x: Int, y: Int, strings: HashSet<StoneString>,
-                                             gameModel: GameModel, testPosition: Array<StoneColor?>) {
-        // Check if this intersection is already part of an existing string
-        if (strings.stream().anyMatch { string -> string.stones.contains(x + y * gameModel.boardWidth) }) {
-            return
-        }
+    /*
+     * Overwrites the intersection at the proposed move on the given position and collects
+     * up to five strings: the four adjacent to the proposed move and its own string.
+     */
+    private fun scanStringsAroundOverwrite(gamePosition: GamePosition, proposedMove: Stone,
+                                           gameModel: GameModel): Pair<GamePosition, List<StoneString>> {
+        gamePosition.setStoneColorAt(proposedMove.getPosition(gameModel.boardWidth), proposedMove.color)
+
+        val x = proposedMove.x
+        val y = proposedMove.y
+        val scanner = StoneStringScanner(gamePosition, gameModel.boardWidth, gameModel.boardHeight)
+        val strings = ArrayList<StoneString>(5)
 
-        getString(x, y, gameModel, testPosition)?.let { strings.add(it) }
+        scanner.scan(x, y - 1)?.let { strings.add(it) }
+        scanner.scan(x, y + 1)?.let { strings.add(it) }
+        scanner.scan(x - 1, y)?.let { strings.add(it) }
+        scanner.scan(x + 1, y)?.let { strings.add(it) }
+        scanner.scan(x, y)?.let { strings.add(it) }
+
+        return Pair(gamePosition, strings)
     }
 
-    private fun getCapturesAndUpdateGamePosition(gamePosition: Array<StoneColor?>,
-                                                 strings: HashSet<StoneString>,
+    private fun getCapturesAndUpdateGamePosition(gamePosition: GamePosition,
+                                                 strings: List<StoneString>,
+                                                 stringColor: StoneColor,
                                                  boardWidth: Int): HashSet<Stone> {
         val captures = HashSet<Stone>()
 
         strings.forEach { string ->
             // String is captured
-            if (string.liberties.size == 0) {
-                string.stones.stream().forEach { stonePosition ->
+            if (string.color == stringColor && !string.hasLiberties) {
+                for (i in 0 until string.size) {
+                    val stonePosition = string.stones[i]
                     val stoneX = stonePosition % boardWidth
                     val stoneY = stonePosition / boardWidth
-                    val stoneAtPosition = gamePosition[stoneX + stoneY * boardWidth]
+                    val stoneAtPosition = gamePosition.getStoneColorAt(stonePosition)
 
                     if (stoneAtPosition != string.color)
                         throw IllegalStateException("The stone color at ($stoneX, $stoneY) " +
@@ -251,7 +260,7 @@ internal object GameMoveSubmitter {
                                 " gamePosition: $stoneAtPosition stringColor: ${string.color} ")
 
                     // Erase the captured stone from the position
-                    gamePosition[stoneX + stoneY * boardWidth] = StoneColor.NONE
+                    gamePosition.setStoneColorAt(stonePosition, StoneColor.NONE)
                     captures.add(Stone(stoneX, stoneY, string.color))
                 }
             }
@@ -261,143 +270,87 @@ internal object GameMoveSubmitter {
     }
 
     /**
-     * Sorts an array of [StoneString] into friendly and opponent buckets, and merge
-     * strings that are equal.
+     * Represents a group of stones of the same color that is adjacently connected.
+     *
+     * @param stones One variable positions of the stones in this string, only the first
+     * [size] elements are valid.
+     * @param hasLiberties true if at least one intersection adjacent to the string is empty.
      */
-    private fun collateStrings(friendlyColor: StoneColor, friendlyStrings: HashSet<StoneString>,
-                               opponentStrings: HashSet<StoneString>, strings: HashSet<StoneString>) {
-        val uniqueStrings = strings.toSet() // Exploits the property of set that elements must be unique
-
-        uniqueStrings.forEach { string ->
-            if (string.color == friendlyColor)
-                friendlyStrings.add(string)
-            else
-                opponentStrings.add(string)
-        }
-    }
-
-    private fun getString(x: Int, y:Int, gameModel: GameModel, testPosition: Array<StoneColor?>): StoneString? {
-        var string: StoneString? = null
-
-        if (x >= 0 && x < gameModel.boardWidth && y >= 0 && y < gameModel.boardHeight) {
-            val nonEmpty = testPosition[x + y * gameModel.boardWidth] != StoneColor.NONE
-
-            if (nonEmpty) {
-                string = StoneString(x, y, testPosition, gameModel.boardWidth, gameModel.boardHeight)
-            }
-        }
-
-        return string
-    }
+    private class StoneString(val color: StoneColor,
+                              val stones: IntArray,
+                              val size: Int,
+                              val hasLiberties: Boolean)
 
     /**
-     * Represents a group of stones of the same color that is adjacently connected.
+     * Finds [StoneString]s on a position using a flood fill. Each stone is only ever
+     * assigned to one string, so scanning from an intersection that belongs to a string
+     * found earlier yields nothing. This is how the strings around a proposed move are
+     * de-duplicated without comparing them.
      */
-    private class StoneString(startX: Int, startY: Int, boardPosition: Array<StoneColor?>,
-                              private val boardWidth: Int, private val boardHeight: Int) {
-        // Intersections on the board that are empty and adjacent to the stones in this string
-        val liberties = HashSet<Int>()
-        val stones = HashSet<Int>()
-        var color: StoneColor = StoneColor.NONE // A little hacky, but better than null-check
+    private class StoneStringScanner(private val position: GamePosition,
+                                     private val boardWidth: Int,
+                                     private val boardHeight: Int) {
 
-        init {
-            val stringColor = boardPosition[getIndex(startX, startY)]
+        private val visited = BooleanArray(boardWidth * boardHeight)
+        private val toVisit = IntArray(boardWidth * boardHeight)
 
-            assert(stringColor != StoneColor.NONE)
-
-            stringColor?.let {
-                this.color = stringColor
-
-                // Seek all adjacent intersections for allied stones and add them to the string
-                val visited = HashSet<Int>()
-                val toVisit = HashSet<Int>()
-
-                toVisit.add(startX + startY * boardWidth)
+        /**
+         * @return The string of stones containing the intersection (x, y), or null if
+         * the intersection is empty, off the board or is already part of a scanned string.
+         */
+        fun scan(x: Int, y: Int): StoneString? {
+            if (x < 0 || x >= boardWidth || y < 0 || y >= boardHeight) {
+                return null
+            }
 
-                while (toVisit.size > 0) {
-                    val currentStonePosition = toVisit.iterator().next()
+            val startPosition = x + y * boardWidth
+            val stringColor = position.getStoneColorAt(startPosition)
 
-                    toVisit.remove(currentStonePosition)
-                    visited.add(currentStonePosition)
+            if (stringColor == StoneColor.NONE || visited[startPosition]) {
+                return null
+            }
 
-                    val x = currentStonePosition % boardWidth
-                    val y = currentStonePosition / boardWidth
+            // The stones of this string are pushed onto the visit stack and never popped off,
+            // so the stack doubles as the member list once the fill completes.
+            var stringSize = 0
+            var nextToVisit = 0
+            var hasLiberties = false
 
-                    val stoneAtPosition = boardPosition[currentStonePosition]
+            visited[startPosition] = true
+            toVisit[stringSize++] = startPosition
 
-                    if (stoneAtPosition == stringColor) {
-                        stones.add(currentStonePosition)
+            while (nextToVisit < stringSize) {
+                val stonePosition = toVisit[nextToVisit++]
+                val stoneX = stonePosition % boardWidth
+                val stoneY = stonePosition / boardWidth
 
-                        // Find adjacent intersections
-                        val up: Stone? = getNeighbour(x, y - 1, boardPosition, visited)
-                        val down: Stone? = getNeighbour(x, y + 1, boardPosition, visited)
-                        val left: Stone? = getNeighbour(x - 1, y, boardPosition, visited)
-                        val right: Stone? = getNeighbour(x + 1, y, boardPosition, visited)
+                for (direction in 0 until 4) {
+                    val neighbourX = stoneX + NEIGHBOUR_OFFSET_X[direction]
+                    val neighbourY = stoneY + NEIGHBOUR_OFFSET_Y[direction]
 
-                        processNeighbour(stringColor, up, toVisit)
-                        processNeighbour(stringColor, down, toVisit)
-                        processNeighbour(stringColor, left, toVisit)
-                        processNeighbour(stringColor, right, toVisit)
+                    if (neighbourX < 0 || neighbourX >= boardWidth || neighbourY < 0 || neighbourY >= boardHeight) {
+                        continue
                     }
-                }
-            }
-        }
 
-        private fun getNeighbour(x: Int, y: Int, boardPosition: Array<StoneColor?>,
-                                 visited: HashSet<Int>): Stone? {
-            if (x < 0
-                || x >= boardWidth
-                || y < 0
-                || y >= boardHeight
-                || visited.contains(getIndex(x, y))) {
-                return null
-            }
-
-            return Stone(x, y, boardPosition[getIndex(x, y)]!!)
-        }
+                    val neighbour = neighbourX + neighbourY * boardWidth
+                    val neighbourColor = position.getStoneColorAt(neighbour)
 
-        private fun processNeighbour(stringColor: StoneColor, neighbor: Stone?, toVisit: HashSet<Int>) {
-            neighbor?.let {
-                val position = neighbor.getPosition(boardWidth)
-
-                val color = neighbor.color
-                if (color != StoneColor.NONE && color == stringColor) {
-                    toVisit.add(position)
-                }
-                if (color == StoneColor.NONE) {
-                    liberties.add(position)
+                    if (neighbourColor == StoneColor.NONE) {
+                        hasLiberties = true
+                    } else if (neighbourColor == stringColor && !visited[neighbour]) {
+                        visited[neighbour] = true
+                        toVisit[stringSize++] = neighbour
+                    }
                 }
             }
-        }
 
-        private fun getIndex(x: Int, y: Int): Int {
-            return x + y * boardWidth
-        }
-
-        override fun equals(other: Any?): Boolean {
-            if (other is StoneString) {
-                if (other.liberties.size != this.liberties.size
-                        || other.stones.size != this.stones.size
-                        || other.color != this.color) {
-                    return false
-                }
-
-                // Check for identical stone positions. Since the two strings are
-                // known to have the same size, and that the set is unordered, we can
-                // find inequality if there exists one stone in the other set that don't belong in this one.
-                for (stonePosition in other.stones) {
-                    if (!this.stones.contains(stonePosition))
-                        return false
-                }
-
-                return true
-            }
-            return false
+            return StoneString(stringColor, toVisit.copyOf(stringSize), stringSize, hasLiberties)
         }
 
-        override fun hashCode(): Int {
-            return Objects.hash(liberties, stones, color)
+        private companion object {
+            val NEIGHBOUR_OFFSET_X = intArrayOf(0, 0, -1, 1)
+            val NEIGHBOUR_OFFSET_Y = intArrayOf(-1, 1, 0, 0)
         }
     }
 
-}
\ No newline at end of file
+}
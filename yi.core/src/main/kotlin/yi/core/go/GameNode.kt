@@ -27,12 +27,39 @@ class GameNode constructor(val delta: StateDelta) {
     var parent: GameNode? = null
         internal set
 
-    internal var children: ArrayList<GameNode> = ArrayList()
+    private val childList = ArrayList<GameNode>()
 
+    /*
+     * Loads children that were left out when the game record was imported, see
+     * GameModelImporter.fromFileLazily(). These are always variations other than the main
+     * branch, so the first child is present regardless. Cleared once it has been invoked.
+     * Set through deferVariations() so that the loaded children are announced.
+     */
+    internal var deferredChildren: ((GameNode) -> Unit)? = null
+
+    /** All children of this node, loading deferred children first if there are any. */
+    internal val children: ArrayList<GameNode>
+        get() {
+            if (deferredChildren != null) {
+                loadDeferredChildren()
+            }
+            return childList
+        }
+
+    /**
+     * Number of nodes between this node and the root, which is also the depth of this node
+     * in the tree. The root node has move number 0.
+     */
     var moveNumber: Int = 0
         internal set
 
-    private var cachedMoveHistory: LinkedList<GameNode>? = null
+    /*
+     * An ancestor further up the tree used to skip over several nodes at a time. These
+     * are skew-binary jump pointers: the distance to the jump target is chosen such that
+     * any ancestor can be reached in O(log moveNumber) steps using only this pointer and
+     * the parent. The root jumps to itself.
+     */
+    internal var jump: GameNode = this
 
     /**
      * Marks this node as the top-level ancestor node for the game tree.
@@ -44,6 +71,29 @@ class GameNode constructor(val delta: StateDelta) {
 
         root = this
         markedAsRoot = true
+        jump = this
+    }
+
+    /**
+     * Derives the move number and jump pointer of this node from its current parent.
+     */
+    internal fun updateAncestry() {
+        val parent = this.parent
+
+        if (parent == null) {
+            moveNumber = 0
+            jump = this
+            return
+        }
+
+        moveNumber = parent.moveNumber + 1
+
+        // Jump twice as far if the parent's jump and the jump after it cover equal distances
+        val parentJump = parent.jump
+        jump = if (parent.moveNumber - parentJump.moveNumber == parentJump.moveNumber - parentJump.jump.moveNumber)
+                   parentJump.jump
+               else
+                   parent
     }
 
     /**
@@ -53,7 +103,63 @@ class GameNode constructor(val delta: StateDelta) {
      * @return true if the current node is a sequence continuation of the given node.
      */
     fun isContinuationOf(node: GameNode): Boolean {
-        return getMoveHistory().contains(node)
+        if (node.moveNumber > moveNumber) {
+            return false
+        }
+
+        return getAncestorAtMoveNumber(node.moveNumber) === node
+    }
+
+    /**
+     * Finds the ancestor a given number of generations above this node in O(log moveNumber)
+     * steps. Zero generations is this node, one is the parent and so on.
+     *
+     * @return The ancestor, or null if it would be above the root node.
+     */
+    fun getAncestor(generations: Int): GameNode? {
+        if (generations < 0) {
+            throw IllegalArgumentException("Generations cannot be negative: $generations")
+        }
+        if (generations > moveNumber) {
+            return null
+        }
+
+        return getAncestorAtMoveNumber(moveNumber - generations)
+    }
+
+    /**
+     * Finds the deepest node that both this node and the other node are a continuation of,
+     * in O(log moveNumber) steps.
+     *
+     * @return The lowest common ancestor, or null if the nodes are not in the same tree.
+     */
+    fun getLowestCommonAncestor(other: GameNode): GameNode? {
+        var a: GameNode = getAncestorAtMoveNumber(minOf(moveNumber, other.moveNumber)) ?: return null
+        var b: GameNode = other.getAncestorAtMoveNumber(a.moveNumber) ?: return null
+
+        // Nodes of equal depth have jump targets of equal depth, so a and b stay level
+        while (a !== b) {
+            if (a.jump !== b.jump && a.jump !== a) {
+                a = a.jump
+                b = b.jump
+            } else {
+                a = a.parent ?: return null
+                b = b.parent ?: return null
+            }
+        }
+
+        return a
+    }
+
+    private fun getAncestorAtMoveNumber(targetMoveNumber: Int): GameNode? {
+        var node: GameNode = this
+
+        while (node.moveNumber > targetMoveNumber) {
+            node = if (node.jump.moveNumber >= targetMoveNumber && node.jump !== node) node.jump
+                   else node.parent ?: return null
+        }
+
+        return node
     }
 
     /**
@@ -66,26 +172,25 @@ class GameNode constructor(val delta: StateDelta) {
      *
      * @return true if this node is the last move in its branch.
      */
-    fun isLastMoveInThisVariation(): Boolean = children.size == 0
+    fun isLastMoveInThisVariation(): Boolean = childList.size == 0
 
     /**
+     * The list is created on each call, which takes O(moveNumber) time. To test whether
+     * a node is part of the history, use [isContinuationOf] instead.
      *
      * @return A chain of nodes that led up to the current node, starting from the root node.
      */
     fun getMoveHistory(): List<GameNode> {
-        cachedMoveHistory?.let {
-            return Collections.unmodifiableList(it)
-        }
-
-        val path = LinkedList<GameNode>()
+        val path = ArrayList<GameNode>(moveNumber + 1)
         var node: GameNode? = this
 
         while (node != null) {
-            path.add(0, node)
+            path.add(node)
             node = node.parent
         }
-        cachedMoveHistory = path
-        return path
+        path.reverse()
+
+        return Collections.unmodifiableList(path)
     }
 
     /**
@@ -93,7 +198,20 @@ class GameNode constructor(val delta: StateDelta) {
      * @return true if this position has more than 1 possible continuation.
      */
     fun hasAlternativeVariations(): Boolean {
-        return getVariationsCount() > 1
+        // Deferred children are only ever variations besides the main branch
+        return childList.size > 1 || deferredChildren != null
+    }
+
+    /**
+     * Checks whether this node has variations that were left out when the game record was
+     * imported lazily, see [GameModelImporter.fromFileLazily]. These are loaded once the
+     * children of this node are accessed, and [GameModel.onNodeAdd] is emitted for each
+     * of them.
+     *
+     * @return true if this node has variations that have yet to be loaded.
+     */
+    fun hasUnloadedVariations(): Boolean {
+        return deferredChildren != null
     }
 
     /**
@@ -104,6 +222,18 @@ class GameNode constructor(val delta: StateDelta) {
         return children
     }
 
+    /**
+     * Returns the children of this node without loading the variations left out by a lazy
+     * import. Useful to code that visits many nodes but only needs those that are already
+     * in the tree, such as a view of the game tree.
+     *
+     * @return All variations from this node that have been loaded.
+     * @see hasUnloadedVariations
+     */
+    fun getLoadedChildNodes(): List<GameNode> {
+        return childList
+    }
+
     /**
      *
      * @return List of all immediate descendant nodes from this node that is not part of the
@@ -133,7 +263,7 @@ class GameNode constructor(val delta: StateDelta) {
      * @return The next move in the main branch if it exists, otherwise null.
      */
     fun getChildNodeInMainBranch(): GameNode? {
-        return if (getVariationsCount() > 0) children[0]
+        return if (childList.size > 0) childList[0]
                else null
     }
 
@@ -278,7 +408,7 @@ class GameNode constructor(val delta: StateDelta) {
         if (key.isBlank() || key.isEmpty()) {
             throw IllegalArgumentException("Metadata key cannot be empty or " +
                     "consist entirely of whitespace")
-        } else if (key.contains(Regex("[^\\d\\w]"))) {
+        } else if (key.contains(ILLEGAL_METADATA_KEY_CHARACTERS)) {
             throw IllegalArgumentException("Illegal metadata key name: $key. " +
                     "It must only contain letters and/or numbers.")
         }
@@ -351,9 +481,37 @@ class GameNode constructor(val delta: StateDelta) {
         if (!isRoot() && parent == null) {
             GameTree.traverseSubtree(this) { nodeToErase ->
                 nodeToErase.parent = null
+                nodeToErase.deferredChildren = null
                 nodeToErase.children.clear()
                 nodeToErase.delta.dispose()
             }
         }
     }
+
+    /*
+     * Defers loading the children of this node besides the main branch, which must have
+     * been appended already. Once the loader has run, GameModel.onNodeAdd() is emitted for
+     * each loaded child so that views built from the loaded part of the tree catch up.
+     */
+    internal fun deferVariations(gameModel: GameModel, loader: (GameNode) -> Unit) {
+        deferredChildren = { node ->
+            loader(node)
+
+            for (i in 1 until node.childList.size) {
+                gameModel.onNodeAdd().fireEvent(NodeEvent(node.childList[i]))
+            }
+        }
+    }
+
+    private fun loadDeferredChildren() {
+        val loader = deferredChildren ?: return
+        // Cleared first, the loader appends to the children of this node
+        deferredChildren = null
+        loader(this)
+    }
+
+    private companion object {
+        // Compiled once as metadata is stored for every imported property
+        val ILLEGAL_METADATA_KEY_CHARACTERS = Regex("[^\\d\\w]")
+    }
 }
\ No newline at end of file
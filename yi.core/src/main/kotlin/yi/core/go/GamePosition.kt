@@ -2,25 +2,43 @@ package yi.core.go
 
 /**
  * Describes the board position at a particular [GameState].
+ *
+ * Internally the position is packed into two bitboards, one for each stone color, where
+ * bit n of a bitboard is set if a stone of that color occupies the intersection at
+ * one-variable position n (see [getStoneColorAt]). This keeps the position compact
+ * enough to be copied cheaply during move validation, even for the largest supported
+ * board sizes.
  */
-class GamePosition(private val boardWidth: Int, boardHeight: Int) {
+class GamePosition private constructor(private val boardWidth: Int,
+                                       private val boardHeight: Int,
+                                       private val blackStones: LongArray,
+                                       private val whiteStones: LongArray) {
+
+    constructor(boardWidth: Int, boardHeight: Int)
+            : this(boardWidth, boardHeight, createBitboard(boardWidth, boardHeight),
+                   createBitboard(boardWidth, boardHeight))
 
     init {
         if (boardWidth < 1 || boardHeight < 1)
             throw IllegalArgumentException("Invalid board dimensions: $boardWidth x $boardHeight")
     }
 
-    val intersectionState = Array(boardWidth * boardHeight) { StoneColor.NONE }
-
     /**
      * Updates the current position based on the provided delta.
      */
     internal fun apply(update: StateDelta) {
         // Apply captures
-        update.captures.forEach { intersectionState[it.getPosition(boardWidth)] = StoneColor.NONE }
+        update.captures.forEach { setStoneColorAt(it.getPosition(boardWidth), StoneColor.NONE) }
 
         // Apply stone updates
-        update.stoneEdits.forEach { intersectionState[it.x + it.y * boardWidth] = it.color }
+        update.stoneEdits.forEach { setStoneColorAt(it.x + it.y * boardWidth, it.color) }
+
+        // A suicidal primary move is captured along with its string
+        update.primaryMove?.let {
+            if (update.captures.contains(it)) {
+                setStoneColorAt(it.getPosition(boardWidth), StoneColor.NONE)
+            }
+        }
     }
 
     /**
@@ -41,6 +59,63 @@ class GamePosition(private val boardWidth: Int, boardHeight: Int) {
      * returns [StoneColor.NONE].
      */
     fun getStoneColorAt(position: Int): StoneColor {
-        return intersectionState[position]
+        checkPosition(position)
+
+        val word = position ushr 6
+        val mask = 1L shl position
+
+        return when {
+            blackStones[word] and mask != 0L -> StoneColor.BLACK
+            whiteStones[word] and mask != 0L -> StoneColor.WHITE
+            else -> StoneColor.NONE
+        }
+    }
+
+    /**
+     * @return Total number of intersections on the board, which is also the exclusive
+     * upper bound of the one variable stone position accepted by [getStoneColorAt].
+     */
+    fun getIntersectionCount(): Int = boardWidth * boardHeight
+
+    /**
+     * Overwrites the intersection at the one variable position with the given color.
+     * Setting [StoneColor.NONE] removes any stone present at that intersection.
+     */
+    internal fun setStoneColorAt(position: Int, color: StoneColor) {
+        checkPosition(position)
+
+        val word = position ushr 6
+        val mask = 1L shl position
+
+        blackStones[word] = blackStones[word] and mask.inv()
+        whiteStones[word] = whiteStones[word] and mask.inv()
+
+        when (color) {
+            StoneColor.BLACK -> blackStones[word] = blackStones[word] or mask
+            StoneColor.WHITE -> whiteStones[word] = whiteStones[word] or mask
+            StoneColor.NONE -> { }
+        }
+    }
+
+    /**
+     * @return An independent copy of this position. Changes made to the copy are not
+     * reflected in this position and vice versa.
+     */
+    internal fun copy(): GamePosition {
+        return GamePosition(boardWidth, boardHeight, blackStones.copyOf(), whiteStones.copyOf())
+    }
+
+    private fun checkPosition(position: Int) {
+        if (position < 0 || position >= boardWidth * boardHeight)
+            throw IndexOutOfBoundsException("Position $position is outside of the " +
+                    "$boardWidth x $boardHeight board")
+    }
+
+    private companion object {
+        fun createBitboard(boardWidth: Int, boardHeight: Int): LongArray {
+            // Dimensions are validated in the init block, which runs after this
+            val intersections = (boardWidth * boardHeight).coerceAtLeast(0)
+            return LongArray((intersections + 63) ushr 6)
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,186 @@
+package yi.core.go
+
+import java.util.*
+
+/**
+ * Resolves the [GameState] at a node for [GameModel.getGameState].
+ *
+ * Since nodes only store a [StateDelta], resolving a state means applying the deltas
+ * from some known position down to the requested node. Two kinds of known positions are
+ * kept to keep this short:
+ *
+ * 1. Checkpoints: snapshots of the board position taken at every node whose move number
+ *    is a multiple of [checkpointInterval], on every branch that has been resolved. This
+ *    bounds the number of deltas to apply for any node to [checkpointInterval].
+ * 2. Recently resolved states, retained in a least-recently-used cache of at most
+ *    [cacheCapacity] entries. Stepping to an adjacent node usually starts from here and
+ *    only applies one delta.
+ *
+ * Both are keyed by node identity, so transpositions reached with different prisoner
+ * counts resolve to different states.
+ */
+internal class GameStateResolver(private val gameModel: GameModel,
+                                 private val checkpointInterval: Int = DEFAULT_CHECKPOINT_INTERVAL,
+                                 private val cacheCapacity: Int = DEFAULT_CACHE_CAPACITY) {
+
+    // Weakly referenced so that checkpoints on removed nodes are freed along with the node
+    private val checkpoints = WeakHashMap<GameNode, Checkpoint>()
+    private val recentStates = object : LinkedHashMap<GameNode, GameState>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<GameNode, GameState>?): Boolean {
+            return size > cacheCapacity
+        }
+    }
+
+    private var cacheHits = 0L
+    private var checkpointHits = 0L
+    private var misses = 0L
+    private var deltasApplied = 0L
+
+    init {
+        if (checkpointInterval < 1)
+            throw IllegalArgumentException("Checkpoint interval must be at least 1: $checkpointInterval")
+        if (cacheCapacity < 1)
+            throw IllegalArgumentException("Cache capacity must be at least 1: $cacheCapacity")
+    }
+
+    /**
+     * @return The game state at the given node, which must be part of the game tree.
+     */
+    fun resolve(gameNode: GameNode): GameState {
+        recentStates[gameNode]?.let {
+            ++cacheHits
+            return it
+        }
+
+        // Find the closest ancestor whose position is known, remembering the nodes that
+        // have to be applied on top of it.
+        val nodesToApply = ArrayList<GameNode>(checkpointInterval)
+        var startingPoint: Checkpoint? = null
+        var node: GameNode? = gameNode
+
+        while (node != null) {
+            val knownState = recentStates[node]
+            if (knownState != null) {
+                startingPoint = Checkpoint(knownState.boardPosition, knownState.prisonersWhite,
+                        knownState.prisonersBlack)
+                break
+            }
+
+            val checkpoint = checkpoints[node]
+            if (checkpoint != null) {
+                startingPoint = checkpoint
+                break
+            }
+
+            nodesToApply.add(node)
+            node = node.parent
+        }
+
+        if (startingPoint == null) {
+            ++misses
+        } else {
+            ++checkpointHits
+        }
+
+        val position = startingPoint?.position?.copy() ?: GamePosition(gameModel.boardWidth, gameModel.boardHeight)
+        var prisonersWhite = startingPoint?.prisonersWhite ?: 0
+        var prisonersBlack = startingPoint?.prisonersBlack ?: 0
+
+        for (i in nodesToApply.lastIndex downTo 0) {
+            val nodeToApply = nodesToApply[i]
+            val captures = nodeToApply.getCapturesThisTurn()
+
+            position.apply(nodeToApply.delta)
+            prisonersWhite += captures.count { capture -> capture.color == StoneColor.BLACK }
+            prisonersBlack += captures.count { capture -> capture.color == StoneColor.WHITE }
+            ++deltasApplied
+
+            if (nodeToApply.moveNumber % checkpointInterval == 0) {
+                checkpoints[nodeToApply] = Checkpoint(position.copy(), prisonersWhite, prisonersBlack)
+            }
+        }
+
+        val gameState = GameState(gameModel, position, gameNode, prisonersWhite,
+                prisonersBlack, gameNode.getAnnotations())
+        recentStates[gameNode] = gameState
+
+        return gameState
+    }
+
+    /**
+     * Discards all checkpoints and cached states. Must be invoked when the position at
+     * any node changes after it has been resolved.
+     */
+    fun invalidate() {
+        checkpoints.clear()
+        recentStates.clear()
+    }
+
+    /**
+     * @return A snapshot of the counters describing the effectiveness of the cache.
+     */
+    fun getStatistics(): GameStateResolverStatistics {
+        return GameStateResolverStatistics(cacheHits, checkpointHits, misses, deltasApplied,
+                checkpoints.size, recentStates.size)
+    }
+
+    /**
+     * Resets all the counters reported in [getStatistics] to zero.
+     */
+    fun resetStatistics() {
+        cacheHits = 0
+        checkpointHits = 0
+        misses = 0
+        deltasApplied = 0
+    }
+
+    private class Checkpoint(val position: GamePosition, val prisonersWhite: Int, val prisonersBlack: Int)
+
+    companion object {
+        const val DEFAULT_CHECKPOINT_INTERVAL = 8
+        const val DEFAULT_CACHE_CAPACITY = 256
+    }
+}
+
+/**
+ * Counters collected by the game model while resolving [GameState]s. Use these to judge
+ * how well the checkpoint interval and cache capacity suit a workload.
+ *
+ * @param cacheHits Number of states served directly from the recently resolved state cache.
+ * @param checkpointHits Number of states resolved starting from a checkpoint or a cached
+ * state of an ancestor node.
+ * @param misses Number of states resolved starting from an empty board.
+ * @param deltasApplied Total number of node deltas applied to resolve states.
+ * @param checkpointCount Number of checkpoints currently retained.
+ * @param cachedStateCount Number of states currently in the recently resolved state cache.
+ */
+data class GameStateResolverStatistics(val cacheHits: Long,
+                                       val checkpointHits: Long,
+                                       val misses: Long,
+                                       val deltasApplied: Long,
+                                       val checkpointCount: Int,
+                                       val cachedStateCount: Int) {
+
+    /**
+     * @return Total number of game states requested.
+     */
+    fun getRequestCount(): Long = cacheHits + checkpointHits + misses
+
+    /**
+     * @return Fraction of requests served from the cache without applying any delta,
+     * or 0 if there has not been any request.
+     */
+    fun getCacheHitRate(): Double {
+        val requests = getRequestCount()
+        return if (requests == 0L) 0.0 else cacheHits.toDouble() / requests
+    }
+
+    /**
+     * @return Average number of deltas applied per request that missed the cache, or 0
+     * if every request was a cache hit.
+     */
+    fun getAverageDeltasPerResolve(): Double {
+        val resolves = checkpointHits + misses
+        return if (resolves == 0L) 0.0 else deltasApplied.toDouble() / resolves
+    }
+}
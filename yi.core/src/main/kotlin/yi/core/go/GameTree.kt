@@ -27,7 +27,14 @@ open class GameTree constructor(internal var rootNode: GameNode) {
         child.parent = parent
 
         child.root = rootNode
-        child.moveNumber = parent.moveNumber + 1
+        child.updateAncestry()
+
+        // A subtree being re-attached may now sit at a different depth
+        if (child.children.isNotEmpty()) {
+            traverseSubtree(child) { node ->
+                node.children.forEach { if (it.parent === node) it.updateAncestry() }
+            }
+        }
     }
 
     /**
@@ -103,8 +110,18 @@ open class GameTree constructor(internal var rootNode: GameNode) {
             node.parent = null
         }
 
-        node.children.forEach { child -> child.parent = null; removeNodeSubtree(child); }
-        node.children.clear()
+        // Uses an explicit stack as the subtree can be as deep as the game is long
+        val nodesToRemove = ArrayDeque<GameNode>()
+        nodesToRemove.addLast(node)
+
+        while (nodesToRemove.isNotEmpty()) {
+            val nodeToRemove = nodesToRemove.removeLast()
+
+            // Deferred children would only be parsed to be removed again
+            nodeToRemove.deferredChildren = null
+            nodeToRemove.children.forEach { child -> child.parent = null; nodesToRemove.addLast(child) }
+            nodeToRemove.children.clear()
+        }
     }
 
     /**
@@ -119,10 +136,10 @@ open class GameTree constructor(internal var rootNode: GameNode) {
 
     companion object {
         fun traverseSubtree(node: GameNode, taskForEachNode: Consumer<GameNode>) {
-            val unprocessed = Stack<GameNode>()
-            unprocessed.push(node)
+            val unprocessed = ArrayDeque<GameNode>()
+            unprocessed.addLast(node)
             while (unprocessed.isNotEmpty()) {
-                val nodeToProcess = unprocessed.pop()
+                val nodeToProcess = unprocessed.removeLast()
                 taskForEachNode.accept(nodeToProcess)
                 unprocessed.addAll(nodeToProcess.children)
             }
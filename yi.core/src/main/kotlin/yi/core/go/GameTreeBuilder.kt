@@ -0,0 +1,98 @@
+package yi.core.go
+
+/**
+ * Appends nodes to the game tree of a [GameModel] in bulk, typically while a game record
+ * is being imported. Moves are appended without validating them against the game rules,
+ * the same as [yi.core.go.editor.GameModelEditor.addMoveWithoutValidation].
+ *
+ * Creating a move requires the board position at its parent node. Rather than resolving
+ * it for every node, the builder keeps the position of the last appended node and steps
+ * it forward by one move each time a child is appended to that node. This works best when
+ * the nodes are supplied in document order, where each node is a child of the node before
+ * it, or of the node where the enclosing variation began. Call [beginVariation] and
+ * [endVariation] around every variation so that the changes made to the position within
+ * the variation are undone once it has ended. Building a tree this way takes time linear
+ * in the number of nodes.
+ *
+ * Nodes can still be appended out of order, at the cost of resolving the position of the
+ * parent node.
+ *
+ * Use [yi.core.go.editor.GameModelEditor.beginBulkConstruction] to create a builder.
+ *
+ * @param isLoadingDeferredNodes true when appending nodes that belong to a game record
+ * already opened in the model, such as those loaded by [GameNode.deferredChildren].
+ * The nodes are then appended to the tree without emitting [GameModel.onNodeAdd] or
+ * marking the model as modified. The event is emitted for each loaded variation once all
+ * of them have been appended instead, see [GameNode.deferVariations].
+ */
+internal class GameTreeBuilder(private val gameModel: GameModel,
+                               private val isLoadingDeferredNodes: Boolean = false) {
+
+    // Separate from the tracker of the model so that unfinished variations do not leave
+    // it recording changes after the tree is built
+    private val tracker = StoneStringTracker(gameModel.boardWidth, gameModel.boardHeight)
+
+    /**
+     * Appends a move to the parent node, along with any stone edits on the same node.
+     *
+     * @return The appended node.
+     */
+    fun appendMove(parent: GameNode, move: Stone, stoneEdits: Collection<Stone> = emptySet()): GameNode {
+        // Nodes are usually appended to the last node, in which case the tracker is
+        // already at the parent position and is not updated.
+        val node = GameMoveSubmitter.createMoveNode(gameModel, parent, move, ignoreRules = true, tracker = tracker).second!!
+        return append(parent, node, stoneEdits)
+    }
+
+    /**
+     * Appends a pass to the parent node, along with any stone edits on the same node.
+     *
+     * @return The appended node.
+     */
+    fun appendPass(parent: GameNode, stoneEdits: Collection<Stone> = emptySet()): GameNode {
+        return append(parent, GameMoveSubmitter.createPassNode(parent), stoneEdits)
+    }
+
+    /**
+     * Appends a node of type [GameNodeType.STONE_EDIT] with the given stone edits to the
+     * parent node.
+     *
+     * @return The appended node.
+     */
+    fun appendStoneEdit(parent: GameNode, stoneEdits: Collection<Stone>): GameNode {
+        return append(parent, GameMoveSubmitter.createStoneEditNode(parent), stoneEdits)
+    }
+
+    /**
+     * Marks the last appended node as the start of a variation. Changes to the position
+     * are recorded from here on, until the matching call to [endVariation].
+     */
+    fun beginVariation() {
+        tracker.pushSavepoint()
+    }
+
+    /**
+     * Returns the position to the node where the variation began by undoing the changes
+     * recorded since the matching call to [beginVariation].
+     */
+    fun endVariation() {
+        tracker.rollbackToSavepoint()
+    }
+
+    private fun append(parent: GameNode, node: GameNode, stoneEdits: Collection<Stone>): GameNode {
+        if (isLoadingDeferredNodes) {
+            gameModel.gameTree.appendNode(parent, node)
+        } else {
+            gameModel.editor.appendNode(parent, node)
+        }
+
+        // The node is a new leaf, so no position derived from it has been cached yet and
+        // the edits can be made without invalidating the state data of the model.
+        if (stoneEdits.isNotEmpty()) {
+            node.addStoneEdits(stoneEdits, gameModel.stateHasher, gameModel.boardWidth, gameModel.boardHeight)
+        }
+
+        tracker.syncTo(gameModel, node)
+        return node
+    }
+}
@@ -0,0 +1,149 @@
+package yi.core.go
+
+/**
+ * A hash map from primitive long keys to primitive int values using open addressing with
+ * linear probing. Unlike a [HashMap], neither lookups nor insertions box their arguments,
+ * which matters for maps keyed by state hashes that are queried on every move.
+ *
+ * Only non-negative values can be stored, [get] returns a negative value for missing keys.
+ */
+internal class LongIntHashMap(initialCapacity: Int = 16) {
+
+    private var keys: LongArray
+    private var values: IntArray
+    private var occupied: BooleanArray
+    private var mask: Int
+    private var size = 0
+
+    init {
+        var capacity = 16
+        while (capacity < initialCapacity * 2) {
+            capacity = capacity shl 1
+        }
+
+        keys = LongArray(capacity)
+        values = IntArray(capacity)
+        occupied = BooleanArray(capacity)
+        mask = capacity - 1
+    }
+
+    /**
+     * @return The value mapped to the key, or [NO_VALUE] if the key is not present.
+     */
+    fun get(key: Long): Int {
+        var slot = slotOf(key)
+
+        while (occupied[slot]) {
+            if (keys[slot] == key) {
+                return values[slot]
+            }
+            slot = (slot + 1) and mask
+        }
+
+        return NO_VALUE
+    }
+
+    fun containsKey(key: Long): Boolean = get(key) != NO_VALUE
+
+    /**
+     * Maps the key to the given value, replacing any existing value for that key.
+     */
+    fun put(key: Long, value: Int) {
+        if (value < 0)
+            throw IllegalArgumentException("Value must not be negative: $value")
+
+        var slot = slotOf(key)
+
+        while (occupied[slot]) {
+            if (keys[slot] == key) {
+                values[slot] = value
+                return
+            }
+            slot = (slot + 1) and mask
+        }
+
+        keys[slot] = key
+        values[slot] = value
+        occupied[slot] = true
+
+        if (++size * 2 > keys.size) {
+            resize(keys.size shl 1)
+        }
+    }
+
+    /**
+     * Removes the mapping for the key if one exists.
+     */
+    fun remove(key: Long) {
+        var slot = slotOf(key)
+
+        while (occupied[slot]) {
+            if (keys[slot] == key) {
+                deleteSlot(slot)
+                --size
+                return
+            }
+            slot = (slot + 1) and mask
+        }
+    }
+
+    fun clear() {
+        occupied.fill(false)
+        size = 0
+    }
+
+    fun size(): Int = size
+
+    /*
+     * Empties the slot and moves later entries of the same probe sequence back, so that
+     * lookups never stop early at the freed slot.
+     */
+    private fun deleteSlot(freedSlot: Int) {
+        var gap = freedSlot
+        var slot = (gap + 1) and mask
+
+        while (occupied[slot]) {
+            val home = slotOf(keys[slot])
+
+            // Only move the entry if its home slot does not lie in (gap, slot]
+            val canMove = if (gap <= slot) (home <= gap || home > slot) else (home <= gap && home > slot)
+            if (canMove) {
+                keys[gap] = keys[slot]
+                values[gap] = values[slot]
+                gap = slot
+            }
+            slot = (slot + 1) and mask
+        }
+
+        occupied[gap] = false
+    }
+
+    private fun resize(capacity: Int) {
+        val oldKeys = keys
+        val oldValues = values
+        val oldOccupied = occupied
+
+        keys = LongArray(capacity)
+        values = IntArray(capacity)
+        occupied = BooleanArray(capacity)
+        mask = capacity - 1
+        size = 0
+
+        for (i in oldKeys.indices) {
+            if (oldOccupied[i]) {
+                put(oldKeys[i], oldValues[i])
+            }
+        }
+    }
+
+    private fun slotOf(key: Long): Int {
+        // Mix the bits as keys are not necessarily uniformly distributed in the low bits
+        var hash = key * -0x61c8864680b583ebL
+        hash = hash xor (hash ushr 32)
+        return hash.toInt() and mask
+    }
+
+    companion object {
+        const val NO_VALUE = -1
+    }
+}
@@ -0,0 +1,149 @@
+package yi.core.go
+
+/**
+ * Records the state hashes of the positions that led up to a node, which the game rules
+ * need to detect ko recaptures and repeated positions (superko).
+ *
+ * Only nodes of type [GameNodeType.MOVE_PLAYED] produce a unique state. Each of their
+ * hashes is recorded in path order, along with an index from the hash to its first
+ * occurrence so that repetitions can be found without searching the path.
+ *
+ * The history follows one node at a time, usually the current node of the [GameModel].
+ * Stepping to a child or to the parent node updates the history in constant time. Jumping
+ * elsewhere in the tree only revisits the nodes between the two nodes and their lowest
+ * common ancestor.
+ */
+internal class PositionHistory {
+
+    private var trackedNode: GameNode? = null
+    private var stateHashes = LongArray(64)
+    private var stateCount = 0
+    private var playedMoveCount = 0
+
+    // State hash -> index of its first occurrence in stateHashes
+    private val firstOccurrence = LongIntHashMap(64)
+
+    /**
+     * Updates the history to represent the path from the root to the given node.
+     */
+    fun moveTo(node: GameNode) {
+        val lastNode = trackedNode
+
+        when {
+            lastNode === node -> return
+            lastNode != null && node.parent === lastNode -> push(node)
+            lastNode != null && lastNode.parent === node -> pop(lastNode)
+            else -> {
+                var ancestor = lastNode?.getLowestCommonAncestor(node)
+
+                if (ancestor != null) {
+                    var nodeToRemove: GameNode? = lastNode
+                    while (nodeToRemove != null && nodeToRemove !== ancestor) {
+                        pop(nodeToRemove)
+                        nodeToRemove = nodeToRemove.parent
+                    }
+
+                    // The last node has since been detached from the tree
+                    if (nodeToRemove == null) {
+                        ancestor = null
+                    }
+                }
+
+                if (ancestor == null) {
+                    clear()
+                }
+
+                val nodesToAdd = ArrayList<GameNode>()
+                var nodeToAdd: GameNode? = node
+                while (nodeToAdd != null && nodeToAdd !== ancestor) {
+                    nodesToAdd.add(nodeToAdd)
+                    nodeToAdd = nodeToAdd.parent
+                }
+
+                for (i in nodesToAdd.lastIndex downTo 0) {
+                    push(nodesToAdd[i])
+                }
+            }
+        }
+
+        trackedNode = node
+    }
+
+    /**
+     * Discards the history so that it is rebuilt in full by the next [moveTo]. Must be
+     * called when the state hash of a node on the tracked path changes.
+     */
+    fun invalidate() {
+        trackedNode = null
+        clear()
+    }
+
+    /**
+     * @return Number of unique states on the path, that is the number of played moves.
+     */
+    fun getStateCount(): Int = stateCount
+
+    /**
+     * @return Number of played moves and passes on the path.
+     */
+    fun getPlayedMoveCount(): Int = playedMoveCount
+
+    /**
+     * @return Index of the first state on the path with the given hash, where 0 is the
+     * state after the first played move, or a negative value if no such state exists.
+     */
+    fun indexOf(stateHash: Long): Int = firstOccurrence.get(stateHash)
+
+    /**
+     * @return A copy of the state hashes on the path in order.
+     */
+    fun toList(): List<Long> {
+        val list = ArrayList<Long>(stateCount)
+        for (i in 0 until stateCount) {
+            list.add(stateHashes[i])
+        }
+        return list
+    }
+
+    private fun push(node: GameNode) {
+        val type = node.getType()
+
+        if (type == GameNodeType.MOVE_PLAYED) {
+            if (stateCount == stateHashes.size) {
+                stateHashes = stateHashes.copyOf(stateCount * 2)
+            }
+
+            val stateHash = node.getStateHash()
+            if (!firstOccurrence.containsKey(stateHash)) {
+                firstOccurrence.put(stateHash, stateCount)
+            }
+            stateHashes[stateCount++] = stateHash
+        }
+
+        if (type == GameNodeType.MOVE_PLAYED || type == GameNodeType.PASS) {
+            ++playedMoveCount
+        }
+    }
+
+    private fun pop(node: GameNode) {
+        val type = node.getType()
+
+        if (type == GameNodeType.MOVE_PLAYED) {
+            // Use the recorded hash as the one on the node may have changed since
+            val stateHash = stateHashes[--stateCount]
+            if (firstOccurrence.get(stateHash) == stateCount) {
+                firstOccurrence.remove(stateHash)
+            }
+        }
+
+        if (type == GameNodeType.MOVE_PLAYED || type == GameNodeType.PASS) {
+            --playedMoveCount
+        }
+    }
+
+    private fun clear() {
+        stateCount = 0
+        playedMoveCount = 0
+        firstOccurrence.clear()
+    }
+}
@@ -0,0 +1,34 @@
+package yi.core.go
+
+/**
+ * The SplitMix64 generator, used wherever hash values are derived from a fixed seed.
+ * Unlike [kotlin.random.Random], whose algorithm may change between library versions,
+ * it is defined here in full, so values derived from the same seed never change and can
+ * be stored and compared later.
+ */
+internal class SplitMix64(private var state: Long) {
+
+    /**
+     * @return The next value of the sequence.
+     */
+    fun nextLong(): Long {
+        state += GOLDEN_GAMMA
+        return mix(state)
+    }
+
+    companion object {
+
+        private const val GOLDEN_GAMMA = -0x61c8864680b583ebL
+
+        /**
+         * Finalizer of the generator, which spreads consecutive inputs over the whole
+         * 64-bit range. Useful on its own to derive one value from a seed and an index.
+         */
+        fun mix(value: Long): Long {
+            var z = value
+            z = (z xor (z ushr 30)) * -0x40a7b892e31b1a47L
+            z = (z xor (z ushr 27)) * -0x6b2fb644ecceee15L
+            return z xor (z ushr 31)
+        }
+    }
+}
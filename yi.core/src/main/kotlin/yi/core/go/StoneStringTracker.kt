@@ -0,0 +1,526 @@
+package yi.core.go
+
+/**
+ * Maintains the strings (groups of adjacently connected stones) of one board position,
+ * so that captures, suicide and ko can be evaluated without flood filling the board for
+ * every proposed move.
+ *
+ * Each string is a circular linked list threaded through [nextStone] and identified by
+ * the position of one of its stones, its head. Every occupied intersection records the
+ * head of its string in [stringHead], and the heads record the size and the exact number
+ * of liberties of the string. Playing a stone merges and removes strings in time
+ * proportional to the size of the strings involved.
+ *
+ * The tracker follows one node at a time, usually the current node of the [GameModel].
+ * Stepping to a child node replays that move onto the tracked strings, any other
+ * change of node rebuilds the strings from the [GameState] of the new node.
+ *
+ * While a savepoint is set with [pushSavepoint], every change to the strings is also
+ * recorded in a journal, so that [rollbackToSavepoint] can step back to the node of the
+ * savepoint in time proportional to the number of changes made since.
+ */
+internal class StoneStringTracker(private val boardWidth: Int, private val boardHeight: Int) {
+
+    private val intersectionCount = boardWidth * boardHeight
+
+    private var position = GamePosition(boardWidth, boardHeight)
+    private var trackedNode: GameNode? = null
+    private var trackedNodeStateHash = 0L
+
+    private val stringHead = IntArray(intersectionCount) { NO_STRING }
+    private val nextStone = IntArray(intersectionCount)
+    private val stringSize = IntArray(intersectionCount)
+    private val stringLiberties = IntArray(intersectionCount)
+
+    // Scratch space to de-duplicate intersections without allocating a set. An intersection
+    // is marked if its value equals the current generation.
+    private val marks = IntArray(intersectionCount)
+    private var markGeneration = 0
+
+    private val neighbours = IntArray(4)
+    private val adjacentHeads = IntArray(4)
+
+    // Pairs of (array * intersectionCount + index, previous value) for each change made
+    // while a savepoint is set. A rebuild cannot be undone, so savepoints set before the
+    // last rebuild are no longer valid.
+    private var journal = IntArray(256)
+    private var journalSize = 0
+    private var rebuildCount = 0
+    private val savepoints = ArrayList<Savepoint>()
+
+    /**
+     * Updates the tracked strings to represent the board position at the given node.
+     */
+    fun syncTo(gameModel: GameModel, node: GameNode) {
+        val lastNode = trackedNode
+
+        if (lastNode === node && trackedNodeStateHash == node.getStateHash()) {
+            return
+        }
+
+        val stepsForwardOneNode = lastNode != null
+                && node.parent === lastNode
+                && trackedNodeStateHash == lastNode.getStateHash()
+
+        if (!stepsForwardOneNode || !tryApply(node.delta)) {
+            rebuild(gameModel.getGameState(node).boardPosition)
+        }
+
+        trackedNode = node
+        trackedNodeStateHash = node.getStateHash()
+    }
+
+    /**
+     * Discards the tracked strings if the given node lies on the path from the root to the
+     * tracked node. Must be called whenever stone data on a node changes after the node
+     * has been submitted to the game tree.
+     */
+    fun invalidateIfAffectedBy(node: GameNode) {
+        val lastNode = trackedNode ?: return
+
+        if (lastNode === node || lastNode.isContinuationOf(node)) {
+            trackedNode = null
+        }
+    }
+
+    /**
+     * Sets a savepoint at the tracked node. Savepoints are nested, each one must be
+     * removed with a matching call to [rollbackToSavepoint].
+     */
+    fun pushSavepoint() {
+        savepoints.add(Savepoint(trackedNode, trackedNodeStateHash, journalSize, rebuildCount))
+    }
+
+    /**
+     * Removes the most recent savepoint and returns the tracked strings to the node the
+     * savepoint was set at, undoing the changes recorded since. If the strings have been
+     * rebuilt since the savepoint was set, they are instead rebuilt on the next [syncTo].
+     */
+    fun rollbackToSavepoint() {
+        check(savepoints.isNotEmpty()) { "No savepoint is set" }
+        val savepoint = savepoints.removeAt(savepoints.lastIndex)
+
+        if (savepoint.rebuildCount == rebuildCount) {
+            while (journalSize > savepoint.journalSize) {
+                val oldValue = journal[--journalSize]
+                val entry = journal[--journalSize]
+                undo(entry / intersectionCount, entry % intersectionCount, oldValue)
+            }
+            trackedNode = savepoint.trackedNode
+            trackedNodeStateHash = savepoint.trackedNodeStateHash
+        } else {
+            journalSize = savepoint.journalSize
+            trackedNode = null
+        }
+    }
+
+    /**
+     * @return The color of the stone at the one variable position on the tracked position.
+     */
+    fun getStoneColorAt(position: Int): StoneColor = this.position.getStoneColorAt(position)
+
+    /**
+     * @return A copy of the tracked board position.
+     */
+    fun copyPosition(): GamePosition = position.copy()
+
+    /**
+     * @return Number of liberties of the string occupying the intersection, or zero if
+     * the intersection is empty.
+     */
+    fun getLibertyCount(position: Int): Int {
+        val head = stringHead[position]
+        return if (head == NO_STRING) 0 else stringLiberties[head]
+    }
+
+    /**
+     * @return An identifier shared by all stones in the string occupying the intersection,
+     * or a negative value if the intersection is empty.
+     */
+    fun getStringId(position: Int): Int = stringHead[position]
+
+    /**
+     * Determines the stones that would be captured by playing a stone of [color] at the
+     * empty intersection [position]. The tracked position is not modified.
+     *
+     * Opponent strings whose only liberty is the played intersection are captured first.
+     * Only if no opponent stone is captured is the string formed by the played stone
+     * checked for suicide, in which case its stones (including the played stone) are the
+     * captures.
+     *
+     * @return true if the captured stones are the player's own stones.
+     */
+    fun findCaptures(position: Int, color: StoneColor, captures: MutableCollection<Stone>): Boolean {
+        check(this.position.getStoneColorAt(position) == StoneColor.NONE) {
+            "Intersection $position is not empty"
+        }
+
+        val headCount = collectAdjacentHeads(position)
+        val opponent = color.getOpponent()
+
+        for (i in 0 until headCount) {
+            val head = adjacentHeads[i]
+            if (this.position.getStoneColorAt(head) == opponent && stringLiberties[head] == 1) {
+                addStonesOfString(head, opponent, captures)
+            }
+        }
+
+        if (captures.isNotEmpty()) {
+            return false
+        }
+
+        val neighbourCount = collectNeighbours(position)
+        for (i in 0 until neighbourCount) {
+            if (this.position.getStoneColorAt(neighbours[i]) == StoneColor.NONE) {
+                return false
+            }
+        }
+
+        // Every friendly string must have a liberty other than the played intersection
+        for (i in 0 until headCount) {
+            val head = adjacentHeads[i]
+            if (this.position.getStoneColorAt(head) == color && stringLiberties[head] > 1) {
+                return false
+            }
+        }
+
+        captures.add(Stone(position % boardWidth, position / boardWidth, color))
+        for (i in 0 until headCount) {
+            val head = adjacentHeads[i]
+            if (this.position.getStoneColorAt(head) == color) {
+                addStonesOfString(head, color, captures)
+            }
+        }
+
+        return true
+    }
+
+    /*
+     * Attempts to replay the changes of a child node onto the tracked strings. Only
+     * changes that can be expressed as stones being played are supported, the caller
+     * should rebuild the strings if this method returns false.
+     */
+    private fun tryApply(delta: StateDelta): Boolean {
+        if (delta.stoneEdits.isEmpty() && delta.captures.isEmpty()) {
+            return true
+        }
+
+        val primaryMove = delta.primaryMove
+
+        if (delta.type == GameNodeType.MOVE_PLAYED && primaryMove != null) {
+            val movePosition = primaryMove.getPosition(boardWidth)
+
+            if (delta.stoneEdits.size != 1
+                    || delta.captures.contains(primaryMove)
+                    || position.getStoneColorAt(movePosition) != StoneColor.NONE) {
+                return false
+            }
+
+            return playStone(movePosition, primaryMove.color) == delta.captures.size
+        }
+
+        if (delta.type == GameNodeType.STONE_EDIT && delta.captures.isEmpty()) {
+            // Helper stones can be added without altering other strings, but removing
+            // them may split a string in two.
+            for (edit in delta.stoneEdits) {
+                if (edit.color == StoneColor.NONE
+                        || position.getStoneColorAt(edit.getPosition(boardWidth)) != StoneColor.NONE) {
+                    return false
+                }
+            }
+
+            delta.stoneEdits.forEach { placeStone(it.getPosition(boardWidth), it.color) }
+            return true
+        }
+
+        return false
+    }
+
+    /*
+     * Plays a stone under the capture rules described in findCaptures().
+     *
+     * Returns the number of stones captured.
+     */
+    private fun playStone(position: Int, color: StoneColor): Int {
+        placeStone(position, color)
+
+        val opponent = color.getOpponent()
+        val headCount = collectAdjacentHeads(position)
+        var captured = 0
+
+        for (i in 0 until headCount) {
+            val head = adjacentHeads[i]
+            if (this.position.getStoneColorAt(head) == opponent && stringLiberties[head] == 0) {
+                captured += removeString(head)
+            }
+        }
+
+        if (captured == 0) {
+            val head = stringHead[position]
+            if (stringLiberties[head] == 0) {
+                captured += removeString(head)
+            }
+        }
+
+        return captured
+    }
+
+    /*
+     * Places a stone without removing any strings left without liberties, merging it with
+     * adjacent friendly strings.
+     */
+    private fun placeStone(position: Int, color: StoneColor) {
+        setStoneColor(position, color)
+
+        // The intersection was a liberty of every adjacent string
+        val headCount = collectAdjacentHeads(position)
+        for (i in 0 until headCount) {
+            val adjacentHead = adjacentHeads[i]
+            set(STRING_LIBERTIES, stringLiberties, adjacentHead, stringLiberties[adjacentHead] - 1)
+        }
+
+        set(STRING_HEAD, stringHead, position, position)
+        set(NEXT_STONE, nextStone, position, position)
+        set(STRING_SIZE, stringSize, position, 1)
+
+        var head = position
+        for (i in 0 until headCount) {
+            val adjacentHead = adjacentHeads[i]
+            if (this.position.getStoneColorAt(adjacentHead) == color) {
+                head = mergeStrings(head, adjacentHead)
+            }
+        }
+
+        set(STRING_LIBERTIES, stringLiberties, head, countLiberties(head))
+    }
+
+    /*
+     * Joins two strings by relabelling the smaller one. Liberties are not updated.
+     *
+     * Returns the head of the merged string.
+     */
+    private fun mergeStrings(firstHead: Int, secondHead: Int): Int {
+        val head = if (stringSize[firstHead] >= stringSize[secondHead]) firstHead else secondHead
+        val absorbed = if (head == firstHead) secondHead else firstHead
+
+        var stone = absorbed
+        do {
+            set(STRING_HEAD, stringHead, stone, head)
+            stone = nextStone[stone]
+        } while (stone != absorbed)
+
+        // Splice the two circular lists together
+        val afterHead = nextStone[head]
+        set(NEXT_STONE, nextStone, head, nextStone[absorbed])
+        set(NEXT_STONE, nextStone, absorbed, afterHead)
+        set(STRING_SIZE, stringSize, head, stringSize[head] + stringSize[absorbed])
+
+        return head
+    }
+
+    /*
+     * Removes every stone of a string from the board, which gives a liberty back to
+     * each adjacent string.
+     *
+     * Returns the number of stones removed.
+     */
+    private fun removeString(head: Int): Int {
+        val size = stringSize[head]
+
+        var stone = head
+        do {
+            setStoneColor(stone, StoneColor.NONE)
+            set(STRING_HEAD, stringHead, stone, NO_STRING)
+            stone = nextStone[stone]
+        } while (stone != head)
+
+        do {
+            val headCount = collectAdjacentHeads(stone)
+            for (i in 0 until headCount) {
+                val adjacentHead = adjacentHeads[i]
+                set(STRING_LIBERTIES, stringLiberties, adjacentHead, stringLiberties[adjacentHead] + 1)
+            }
+            stone = nextStone[stone]
+        } while (stone != head)
+
+        return size
+    }
+
+    private fun countLiberties(head: Int): Int {
+        val generation = nextMarkGeneration()
+        var liberties = 0
+
+        var stone = head
+        do {
+            val neighbourCount = collectNeighbours(stone)
+            for (i in 0 until neighbourCount) {
+                val neighbour = neighbours[i]
+                if (stringHead[neighbour] == NO_STRING && marks[neighbour] != generation) {
+                    marks[neighbour] = generation
+                    liberties++
+                }
+            }
+            stone = nextStone[stone]
+        } while (stone != head)
+
+        return liberties
+    }
+
+    private fun addStonesOfString(head: Int, color: StoneColor, stones: MutableCollection<Stone>) {
+        var stone = head
+        do {
+            stones.add(Stone(stone % boardWidth, stone / boardWidth, color))
+            stone = nextStone[stone]
+        } while (stone != head)
+    }
+
+    /*
+     * Recomputes all strings from scratch, labelling each string with a flood fill.
+     */
+    private fun rebuild(boardPosition: GamePosition) {
+        ++rebuildCount
+
+        position = boardPosition.copy()
+        stringHead.fill(NO_STRING)
+
+        for (start in 0 until intersectionCount) {
+            val color = position.getStoneColorAt(start)
+
+            if (color == StoneColor.NONE || stringHead[start] != NO_STRING) {
+                continue
+            }
+
+            // Thread the string through nextStone while it is being filled, using the
+            // list itself as the work queue.
+            stringHead[start] = start
+            nextStone[start] = start
+            var size = 1
+            var last = start
+            var stone = start
+
+            do {
+                val neighbourCount = collectNeighbours(stone)
+                for (i in 0 until neighbourCount) {
+                    val neighbour = neighbours[i]
+                    if (stringHead[neighbour] == NO_STRING && position.getStoneColorAt(neighbour) == color) {
+                        stringHead[neighbour] = start
+                        nextStone[neighbour] = start
+                        nextStone[last] = neighbour
+                        last = neighbour
+                        size++
+                    }
+                }
+                stone = nextStone[stone]
+            } while (stone != start)
+
+            stringSize[start] = size
+        }
+
+        for (head in 0 until intersectionCount) {
+            if (stringHead[head] == head) {
+                stringLiberties[head] = countLiberties(head)
+            }
+        }
+    }
+
+    /*
+     * Writes one element of the string arrays, recording the previous value in the
+     * journal if a savepoint is set.
+     */
+    private fun set(array: Int, values: IntArray, index: Int, value: Int) {
+        if (savepoints.isNotEmpty()) {
+            record(array, index, values[index])
+        }
+        values[index] = value
+    }
+
+    private fun setStoneColor(position: Int, color: StoneColor) {
+        if (savepoints.isNotEmpty()) {
+            record(STONE_COLOR, position, this.position.getStoneColorAt(position).ordinal)
+        }
+        this.position.setStoneColorAt(position, color)
+    }
+
+    private fun record(array: Int, index: Int, oldValue: Int) {
+        if (journalSize + 2 > journal.size) {
+            journal = journal.copyOf(journal.size * 2)
+        }
+        journal[journalSize++] = array * intersectionCount + index
+        journal[journalSize++] = oldValue
+    }
+
+    private fun undo(array: Int, index: Int, oldValue: Int) {
+        when (array) {
+            STRING_HEAD -> stringHead[index] = oldValue
+            NEXT_STONE -> nextStone[index] = oldValue
+            STRING_SIZE -> stringSize[index] = oldValue
+            STRING_LIBERTIES -> stringLiberties[index] = oldValue
+            STONE_COLOR -> position.setStoneColorAt(index, STONE_COLORS[oldValue])
+        }
+    }
+
+    /*
+     * Stores the distinct heads of strings adjacent to the intersection in adjacentHeads.
+     */
+    private fun collectAdjacentHeads(position: Int): Int {
+        val neighbourCount = collectNeighbours(position)
+        var headCount = 0
+
+        outer@ for (i in 0 until neighbourCount) {
+            val head = stringHead[neighbours[i]]
+            if (head == NO_STRING) {
+                continue
+            }
+            for (j in 0 until headCount) {
+                if (adjacentHeads[j] == head) {
+                    continue@outer
+                }
+            }
+            adjacentHeads[headCount++] = head
+        }
+
+        return headCount
+    }
+
+    /*
+     * Stores the on-board intersections adjacent to the given one in neighbours.
+     */
+    private fun collectNeighbours(position: Int): Int {
+        val x = position % boardWidth
+        val y = position / boardWidth
+        var count = 0
+
+        if (y > 0) neighbours[count++] = position - boardWidth
+        if (y < boardHeight - 1) neighbours[count++] = position + boardWidth
+        if (x > 0) neighbours[count++] = position - 1
+        if (x < boardWidth - 1) neighbours[count++] = position + 1
+
+        return count
+    }
+
+    private fun nextMarkGeneration(): Int {
+        if (++markGeneration == Int.MAX_VALUE) {
+            marks.fill(0)
+            markGeneration = 1
+        }
+        return markGeneration
+    }
+
+    private class Savepoint(val trackedNode: GameNode?,
+                            val trackedNodeStateHash: Long,
+                            val journalSize: Int,
+                            val rebuildCount: Int)
+
+    private companion object {
+        const val NO_STRING = -1
+
+        // Arrays recorded in the journal
+        const val STRING_HEAD = 0
+        const val NEXT_STONE = 1
+        const val STRING_SIZE = 2
+        const val STRING_LIBERTIES = 3
+        const val STONE_COLOR = 4
+
+        val STONE_COLORS = StoneColor.values()
+    }
+}
@@ -0,0 +1,314 @@
+package yi.core.go
+
+/**
+ * A Zobrist hasher that, in addition to the hash of the position as played, keeps the hash
+ * of the position under every [BoardSymmetry] of the board and the hash of each
+ * [BoardRegion]. These are kept in a [SymmetricHashes] which is updated one stone at a
+ * time, so that shapes can be matched regardless of rotation or reflection without
+ * scanning the board again.
+ *
+ * As a [GameStateHasher], this behaves like [ZobristHasher] and hashes the position as
+ * played. [createHashes] and [update] take stones in the same way as [computeUpdateHash]:
+ * each stone in an update is added to the hashes if absent and removed if present.
+ *
+ * Like [ZobristHasher], the hash values are generated from a fixed seed, so hashes are
+ * the same for every hasher of the same board size and region size, and can be compared
+ * between game models.
+ *
+ * @param regionSize Depth of the corner and side regions from the edge of the board. See
+ * [BoardRegion] for how the board is divided.
+ */
+class SymmetricZobristHasher constructor(val boardWidth: Int,
+                                         val boardHeight: Int,
+                                         val regionSize: Int = getDefaultRegionSize(boardWidth, boardHeight))
+    : GameStateHasher {
+
+    private val intersectionCount = boardWidth * boardHeight
+    private val symmetries = BoardSymmetry.availableFor(boardWidth, boardHeight)
+
+    // Hash value of each color at each intersection, indexed by color * intersectionCount + position
+    private val hashLookup: LongArray
+
+    // Position each intersection is taken to by each symmetry, indexed by symmetry * intersectionCount + position
+    private val symmetryLookup = IntArray(symmetries.size * intersectionCount)
+
+    // Regions each intersection belongs to, and the hash values of its stones within that
+    // region as seen from both sides of the region. The regions of an intersection are
+    // regionLookupStart[position] until regionLookupStart[position + 1].
+    private val regionLookupStart = IntArray(intersectionCount + 1)
+    private val regionLookup: IntArray
+    private val regionHashLookup: LongArray
+    private val mirroredRegionHashLookup: LongArray
+
+    init {
+        if (regionSize < 1)
+            throw IllegalArgumentException("Invalid region size: $regionSize")
+
+        val random = SplitMix64(BOARD_SEED xor ((boardWidth.toLong() shl 32) or boardHeight.toLong()))
+        hashLookup = LongArray(StoneColor.values().size * intersectionCount) { random.nextLong() }
+
+        for ((symmetryIndex, symmetry) in symmetries.withIndex()) {
+            for (position in 0 until intersectionCount) {
+                symmetryLookup[symmetryIndex * intersectionCount + position] =
+                        symmetry.transform(position, boardWidth, boardHeight)
+            }
+        }
+
+        val regions = ArrayList<Int>()
+        val localPositions = ArrayList<Int>()
+        val mirroredLocalPositions = ArrayList<Int>()
+        for (position in 0 until intersectionCount) {
+            regionLookupStart[position] = regions.size
+
+            for (region in BoardRegion.values()) {
+                val localPosition = region.getLocalPosition(position, boardWidth, boardHeight, regionSize, false)
+                if (localPosition >= 0) {
+                    regions.add(region.ordinal)
+                    localPositions.add(localPosition)
+                    mirroredLocalPositions.add(region.getLocalPosition(position, boardWidth, boardHeight, regionSize, true))
+                }
+            }
+        }
+        regionLookupStart[intersectionCount] = regions.size
+
+        // Values depend only on the local position, so that the same shape hashes the same in every corner or side
+        regionLookup = regions.toIntArray()
+        regionHashLookup = LongArray(StoneColor.values().size * regions.size)
+        mirroredRegionHashLookup = LongArray(StoneColor.values().size * regions.size)
+        for (color in StoneColor.values()) {
+            for (i in regions.indices) {
+                val isCorner = BoardRegion.values()[regions[i]].isCorner
+                val lookupIndex = color.index * regions.size + i
+                regionHashLookup[lookupIndex] = getRegionHashValue(isCorner, localPositions[i], color)
+                mirroredRegionHashLookup[lookupIndex] = getRegionHashValue(isCorner, mirroredLocalPositions[i], color)
+            }
+        }
+    }
+
+    private val emptyPositionHash = createEmptyHashes().getHash(BoardSymmetry.IDENTITY)
+
+    override fun computeStateHash(state: GameState, boardWidth: Int, boardHeight: Int): Long {
+        return createHashes(state.boardPosition).getHash(BoardSymmetry.IDENTITY)
+    }
+
+    override fun computeUpdateHash(lastStateHash: Long, stoneUpdates: Set<Stone>): Long {
+        var newHash = lastStateHash
+
+        stoneUpdates.forEach { update ->
+            newHash = newHash xor hashLookup[update.color.index * intersectionCount + update.getPosition(boardWidth)]
+        }
+
+        return newHash
+    }
+
+    override fun computeEmptyPositionHash(boardWidth: Int, boardHeight: Int): Long {
+        if (boardWidth == this.boardWidth && boardHeight == this.boardHeight) {
+            return emptyPositionHash
+        }
+        return super.computeEmptyPositionHash(boardWidth, boardHeight)
+    }
+
+    /**
+     * @return Hashes of the empty board.
+     */
+    fun createEmptyHashes(): SymmetricHashes {
+        val hashes = SymmetricHashes(this, LongArray(symmetries.size), LongArray(BoardRegion.values().size * 2))
+
+        // Same as computeEmptyPositionHash(), every intersection starts out with no stone
+        for (position in 0 until intersectionCount) {
+            update(hashes, position, StoneColor.NONE)
+        }
+
+        return hashes
+    }
+
+    /**
+     * @return Hashes of the given board position, computed by scanning every intersection.
+     */
+    fun createHashes(position: GamePosition): SymmetricHashes {
+        val hashes = createEmptyHashes()
+
+        for (intersection in 0 until intersectionCount) {
+            val color = position.getStoneColorAt(intersection)
+            if (color != StoneColor.NONE) {
+                update(hashes, intersection, color)
+            }
+        }
+
+        return hashes
+    }
+
+    /**
+     * Updates the hashes in place with the stones that changed, in the same way as
+     * [computeUpdateHash] does for a single hash.
+     *
+     * @param hashes Hashes created by this hasher.
+     */
+    fun update(hashes: SymmetricHashes, stoneUpdates: Collection<Stone>) {
+        if (hashes.hasher !== this)
+            throw IllegalArgumentException("Hashes were created by a different hasher")
+
+        stoneUpdates.forEach { update(hashes, it.getPosition(boardWidth), it.color) }
+    }
+
+    internal fun isTracked(symmetry: BoardSymmetry): Boolean = symmetries.contains(symmetry)
+
+    internal fun getSymmetryIndex(symmetry: BoardSymmetry): Int = symmetries.indexOf(symmetry)
+
+    private fun update(hashes: SymmetricHashes, position: Int, color: StoneColor) {
+        val colorOffset = color.index * intersectionCount
+        val symmetryHashes = hashes.symmetryHashes
+        for (symmetryIndex in symmetryHashes.indices) {
+            val transformedPosition = symmetryLookup[symmetryIndex * intersectionCount + position]
+            symmetryHashes[symmetryIndex] = symmetryHashes[symmetryIndex] xor hashLookup[colorOffset + transformedPosition]
+        }
+
+        // An empty region hashes to 0 regardless of its size, so that regions of different lengths can match
+        if (color == StoneColor.NONE) {
+            return
+        }
+
+        val regionHashes = hashes.regionHashes
+        val regionColorOffset = color.index * regionLookup.size
+        for (i in regionLookupStart[position] until regionLookupStart[position + 1]) {
+            val region = regionLookup[i]
+            regionHashes[region * 2] = regionHashes[region * 2] xor regionHashLookup[regionColorOffset + i]
+            regionHashes[region * 2 + 1] = regionHashes[region * 2 + 1] xor mirroredRegionHashLookup[regionColorOffset + i]
+        }
+    }
+
+    companion object {
+
+        private const val BOARD_SEED = 0x2f6d_9c3e_55a1_7b04L
+        private const val CORNER_SEED = 0x6a1c_04d2_8e37_f519L
+        private const val SIDE_SEED = 0x13b7_e5f0_c946_2a8dL
+
+        /**
+         * @return Region size used when none is given, which is a little over a third of
+         * the shorter side of the board. This is 7 on a 19x19 board.
+         */
+        fun getDefaultRegionSize(boardWidth: Int, boardHeight: Int): Int {
+            return (minOf(boardWidth, boardHeight) * 3 / 8).coerceAtLeast(1)
+        }
+
+        private fun getRegionHashValue(isCorner: Boolean, localPosition: Int, color: StoneColor): Long {
+            val seed = if (isCorner) CORNER_SEED else SIDE_SEED
+            return SplitMix64.mix(seed + localPosition.toLong() * StoneColor.values().size + color.index)
+        }
+    }
+}
+
+/**
+ * Hashes of one board position kept by a [SymmetricZobristHasher]. Use
+ * [SymmetricZobristHasher.update] to keep them in step with the position.
+ */
+class SymmetricHashes internal constructor(internal val hasher: SymmetricZobristHasher,
+                                           internal val symmetryHashes: LongArray,
+                                           internal val regionHashes: LongArray) {
+
+    /**
+     * @return Hash of the position after applying the given symmetry to it. The hash of
+     * [BoardSymmetry.IDENTITY] is the same as the state hash computed by the hasher.
+     * @throws IllegalArgumentException If the symmetry is not available for the board.
+     */
+    fun getHash(symmetry: BoardSymmetry): Long {
+        if (!hasher.isTracked(symmetry))
+            throw IllegalArgumentException("$symmetry is not a symmetry of a " +
+                    "${hasher.boardWidth} x ${hasher.boardHeight} board")
+
+        return symmetryHashes[hasher.getSymmetryIndex(symmetry)]
+    }
+
+    /**
+     * @return The smallest hash among all symmetries of the board. Two positions have the
+     * same canonical hash if one can be rotated or reflected into the other.
+     */
+    fun getCanonicalHash(): Long = symmetryHashes.minOrNull()!!
+
+    /**
+     * @return The symmetry giving the [getCanonicalHash], which takes this position to its
+     * canonical orientation.
+     */
+    fun getCanonicalSymmetry(): BoardSymmetry {
+        val canonicalHash = getCanonicalHash()
+        return BoardSymmetry.availableFor(hasher.boardWidth, hasher.boardHeight)
+                .first { symmetryHashes[hasher.getSymmetryIndex(it)] == canonicalHash }
+    }
+
+    /**
+     * @return Hash of the stones within a region, independent of which corner or side it
+     * is and of reflection. The same shape in any corner, rotated or mirrored, has the same
+     * hash. An empty region has the hash 0.
+     */
+    fun getRegionHash(region: BoardRegion): Long {
+        return minOf(regionHashes[region.ordinal * 2], regionHashes[region.ordinal * 2 + 1])
+    }
+
+    /**
+     * @return An independent copy of these hashes.
+     */
+    fun copy(): SymmetricHashes = SymmetricHashes(hasher, symmetryHashes.copyOf(), regionHashes.copyOf())
+}
+
+/**
+ * A part of the board along its edges, hashed separately by [SymmetricZobristHasher] to
+ * find joseki and other local shapes.
+ *
+ * With a region size of n, each corner is the n x n square in that corner. Each side is
+ * the strip n lines deep between two corners, which is empty if the corners meet. Corners
+ * can overlap each other on boards smaller than twice the region size.
+ */
+enum class BoardRegion(internal val isCorner: Boolean) {
+
+    TOP_LEFT_CORNER(true),
+    TOP_RIGHT_CORNER(true),
+    BOTTOM_LEFT_CORNER(true),
+    BOTTOM_RIGHT_CORNER(true),
+    TOP_SIDE(false),
+    BOTTOM_SIDE(false),
+    LEFT_SIDE(false),
+    RIGHT_SIDE(false);
+
+    /*
+     * Position of an intersection within this region, measured from the edges of the board
+     * so that every corner, and every side, is laid out the same way. Returns -1 if the
+     * intersection is outside of the region.
+     */
+    internal fun getLocalPosition(position: Int, boardWidth: Int, boardHeight: Int, regionSize: Int,
+                                  mirrored: Boolean): Int {
+        val x = position % boardWidth
+        val y = position / boardWidth
+        val fromRight = boardWidth - 1 - x
+        val fromBottom = boardHeight - 1 - y
+
+        if (isCorner) {
+            // Distances from the vertical and horizontal edge of the corner
+            val (fromVerticalEdge, fromHorizontalEdge) = when (this) {
+                TOP_LEFT_CORNER -> Pair(x, y)
+                TOP_RIGHT_CORNER -> Pair(fromRight, y)
+                BOTTOM_LEFT_CORNER -> Pair(x, fromBottom)
+                else -> Pair(fromRight, fromBottom)
+            }
+            if (fromVerticalEdge >= regionSize || fromHorizontalEdge >= regionSize) {
+                return -1
+            }
+            return if (mirrored) fromHorizontalEdge + fromVerticalEdge * regionSize
+                   else fromVerticalEdge + fromHorizontalEdge * regionSize
+        }
+
+        // Distance along the side from its first corner, the length of the side, and distance from the edge
+        val horizontal = this == TOP_SIDE || this == BOTTOM_SIDE
+        val along = (if (horizontal) x else y) - regionSize
+        val length = (if (horizontal) boardWidth else boardHeight) - regionSize * 2
+        val depth = when (this) {
+            TOP_SIDE -> y
+            BOTTOM_SIDE -> fromBottom
+            LEFT_SIDE -> x
+            else -> fromRight
+        }
+        if (along < 0 || along >= length || depth >= regionSize) {
+            return -1
+        }
+        return (if (mirrored) length - 1 - along else along) * regionSize + depth
+    }
+}
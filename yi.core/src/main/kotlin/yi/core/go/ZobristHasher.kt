@@ -1,48 +1,28 @@
 package yi.core.go
 
-import kotlin.random.Random
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * A simple XOR state hasher for [GameState].
  * <p/>
  * See https://en.wikipedia.org/wiki/Zobrist_hashing for more information.
+ * <p/>
+ * The hash values are generated from a fixed seed once per board size and shared by
+ * every hasher of that size, so creating a hasher is cheap, and state hashes are the same
+ * between game models and between runs. This allows them to be stored and compared later.
  */
-class ZobristHasher constructor(private val boardWidth: Int, boardHeight: Int) : GameStateHasher {
+class ZobristHasher constructor(private val boardWidth: Int, private val boardHeight: Int) : GameStateHasher {
 
     private val intersectionCount = boardWidth * boardHeight
-    private var hashLookup = Array<Long>(intersectionCount * StoneColor.values().size) { 0 }
-
-    init {
-        val usedNumbers: HashSet<Long> = HashSet()
-
-        for (state in StoneColor.values().indices) {
-            for (index in 0 until intersectionCount) {
-                var uniqueStateHash = Random.nextLong()
-                var retries = 0
-
-                while (usedNumbers.contains(uniqueStateHash)) {
-                    uniqueStateHash = Random.nextLong()
-                    ++retries
-
-                    // Don't expect this to happen at all, but it's part of the core code and
-                    // we don't want any endless loops if something goes wrong.
-                    if (retries > 10)
-                        throw IllegalStateException("Too many collisions generating unique state hash")
-                }
-
-                val hashStateIndex = state.toByte() * intersectionCount + index
-                hashLookup[hashStateIndex] = uniqueStateHash
-                usedNumbers.add(uniqueStateHash)
-            }
-        }
-    }
+    private val table = getTable(boardWidth, boardHeight)
+    private val hashLookup = table.hashLookup
 
     override fun computeStateHash(state: GameState, boardWidth: Int, boardHeight: Int): Long {
         val position = state.boardPosition
         var hash = computeEmptyPositionHash(boardWidth, boardHeight)
 
-        position.intersectionState.forEachIndexed { stonePosition, stoneColor ->
-            val intersectionHash = getHashValue(stoneColor, stonePosition)
+        for (stonePosition in 0 until position.getIntersectionCount()) {
+            val intersectionHash = getHashValue(position.getStoneColorAt(stonePosition), stonePosition)
             hash = hash xor intersectionHash
         }
 
@@ -60,6 +40,13 @@ class ZobristHasher constructor(private val boardWidth: Int, boardHeight: Int) :
         return newHash
     }
 
+    override fun computeEmptyPositionHash(boardWidth: Int, boardHeight: Int): Long {
+        if (boardWidth == this.boardWidth && boardHeight == this.boardHeight) {
+            return table.emptyPositionHash
+        }
+        return super.computeEmptyPositionHash(boardWidth, boardHeight)
+    }
+
     private fun getHashValue(data: Stone): Long {
         return getHashValue(data.color, data.x + data.y * boardWidth)
     }
@@ -67,4 +54,61 @@ class ZobristHasher constructor(private val boardWidth: Int, boardHeight: Int) :
     private fun getHashValue(color: StoneColor, position: Int): Long {
         return hashLookup[color.index * intersectionCount + position]
     }
-}
\ No newline at end of file
+
+    /*
+     * Hash values for one board size, indexed by color * intersectionCount + position.
+     */
+    private class ZobristTable(val hashLookup: LongArray, val emptyPositionHash: Long)
+
+    private companion object {
+
+        private const val SEED = 0x7a0b_5d1e_39c4_86f2L
+
+        // Tables are never evicted as there are only as many as the board sizes in use
+        private val tables = ConcurrentHashMap<Long, ZobristTable>()
+
+        fun getTable(boardWidth: Int, boardHeight: Int): ZobristTable {
+            val size = (boardWidth.toLong() shl 32) or boardHeight.toLong()
+            return tables.computeIfAbsent(size) { createTable(boardWidth, boardHeight, it) }
+        }
+
+        private fun createTable(boardWidth: Int, boardHeight: Int, size: Long): ZobristTable {
+            val intersectionCount = boardWidth * boardHeight
+            val random = SplitMix64(SEED xor size)
+            val hashLookup = LongArray(intersectionCount * StoneColor.values().size) { random.nextLong() }
+
+            // Don't expect any repeated values, but replace them if there are. The random
+            // generator is seeded so this is deterministic too.
+            var retries = 0
+            while (hasRepeatedValues(hashLookup)) {
+                val seen = HashSet<Long>()
+                for (i in hashLookup.indices) {
+                    if (!seen.add(hashLookup[i])) {
+                        hashLookup[i] = random.nextLong()
+                    }
+                }
+
+                // Part of the core code, so avoid any endless loops if something goes wrong.
+                if (++retries > 10)
+                    throw IllegalStateException("Too many collisions generating unique state hash")
+            }
+
+            var emptyPositionHash = 0L
+            for (position in 0 until intersectionCount) {
+                emptyPositionHash = emptyPositionHash xor hashLookup[StoneColor.NONE.index * intersectionCount + position]
+            }
+
+            return ZobristTable(hashLookup, emptyPositionHash)
+        }
+
+        private fun hasRepeatedValues(values: LongArray): Boolean {
+            val sorted = values.sortedArray()
+            for (i in 1 until sorted.size) {
+                if (sorted[i] == sorted[i - 1]) {
+                    return true
+                }
+            }
+            return false
+        }
+    }
+}
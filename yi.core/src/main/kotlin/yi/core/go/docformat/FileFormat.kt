@@ -11,6 +11,14 @@ enum class FileFormat {
     SGF {
         private val handler = SgfFileFormatHandler()
         override fun getHandler(): FileFormatHandler = handler
+    },
+
+    /**
+     * Compact binary format for storing game records locally, see [YgrFileFormatHandler].
+     */
+    YGR {
+        private val handler = YgrFileFormatHandler()
+        override fun getHandler(): FileFormatHandler = handler
     };
 
     abstract fun getHandler(): FileFormatHandler
@@ -18,14 +26,12 @@ enum class FileFormat {
     /**
      *
      * @param fileExtension File extension to test, without leading period character.
-     * @return true if the file format denoted by this extension is supported.
+     * @return true if files with this extension are of this file format.
      */
     fun isSupportedFormat(fileExtension: String): Boolean {
         val realExtension = getRealExtension(fileExtension)
 
-        return Arrays.stream(values())
-                .map { enumValue -> enumValue.getHandler() }
-                .anyMatch { handler -> handler.getSupportedFileNameExtensions().contains(realExtension) }
+        return getHandler().getSupportedFileNameExtensions().contains(realExtension)
     }
 
     /**
@@ -2,11 +2,16 @@ package yi.core.go.docformat
 
 import yi.core.go.GameModel
 import java.io.BufferedReader
-import java.io.BufferedWriter
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
 
 /**
  * Specifies the contract for a supported file format that a [yi.core.go.GameModel]
- * can be saved and parsed from.
+ * can be saved and parsed from. Formats that store game data as text implement
+ * [TextFileFormatHandler] instead.
  */
 interface FileFormatHandler {
 
@@ -40,21 +45,63 @@ interface FileFormatHandler {
     fun isLikelyLoadable(reader: BufferedReader): Boolean
 
     /**
-     * Attempt to parse the specified file into a [GameModel], assuming the file is of this format.
+     * Parses game data from a stream of bytes, closing the stream afterwards.
      *
      * @apiNote Each format handler is a singleton accessible from [FileFormat],
      * therefore operations must be designed to be stateless.
      */
-    fun doImport(reader: BufferedReader): GameModel
+    fun doImport(inputStream: InputStream): GameModel
 
     /**
-     * Saves the game model to the destination file, replacing the original file if it exists.
+     * Parses the game data stored in a file.
      *
-     * This operation assumes that the write destination is available and has
-     * write access.
+     * The default implementation reads the file as a stream using [doImport]. Formats that
+     * can make use of random access to the file, such as through memory-mapping, should
+     * override this.
      *
      * @apiNote Each format handler is a singleton accessible from [FileFormat],
      * therefore operations must be designed to be stateless.
      */
-    fun doExport(gameModel: GameModel, writer: BufferedWriter)
-}
\ No newline at end of file
+    fun doImport(filePath: Path): GameModel {
+        return doImport(Files.newInputStream(filePath, StandardOpenOption.READ))
+    }
+
+    /**
+     * Parses the game data stored in a file, leaving parts of the game tree away from the
+     * main branch to be loaded once they are first accessed. See
+     * [yi.core.go.GameModelImporter.fromFileLazily].
+     *
+     * The default implementation loads the entire game tree using [doImport].
+     *
+     * @apiNote Each format handler is a singleton accessible from [FileFormat],
+     * therefore operations must be designed to be stateless.
+     */
+    fun doImportLazily(filePath: Path): GameModel {
+        return doImport(filePath)
+    }
+
+    /**
+     * Parses every game stored in the data, for formats that allow more than one game in
+     * one file. Games are parsed lazily as the collection is iterated, and the stream is
+     * closed once all of them have been read or when the collection is closed.
+     *
+     * The default implementation returns the single game parsed by [doImport].
+     *
+     * @apiNote Each format handler is a singleton accessible from [FileFormat],
+     * therefore operations must be designed to be stateless.
+     */
+    fun doImportCollection(inputStream: InputStream): GameCollection {
+        val games = sequence {
+            yield(doImport(inputStream))
+        }
+        return GameCollection(games.iterator(), inputStream)
+    }
+
+    /**
+     * Writes the game model to a stream of bytes. The stream is flushed but not closed.
+     *
+     * @apiNote Each format handler is a singleton accessible from [FileFormat],
+     * therefore operations must be designed to be stateless.
+     */
+    fun doExport(gameModel: GameModel, outputStream: OutputStream)
+}
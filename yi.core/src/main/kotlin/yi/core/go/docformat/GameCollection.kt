@@ -0,0 +1,43 @@
+package yi.core.go.docformat
+
+import yi.core.go.GameModel
+import java.io.Closeable
+
+/**
+ * The games stored in a collection, returned in the order they are stored as the sequence
+ * is iterated. The sequence can only be iterated once.
+ *
+ * The collection keeps its source open and may be parsing games ahead of the one returned
+ * last. Both are released once every game has been returned or a game fails to parse, so a
+ * caller that stops iterating before then must [close] the collection, usually through
+ * [use]:
+ *
+ * ```
+ * GameModelImporter.collectionFromFile(path, FileFormat.SGF).use { games ->
+ *     val firstGames = games.take(10).toList()
+ * }
+ * ```
+ *
+ * @param games Iterator over the games of the collection.
+ * @param source Closes the source of the games and stops any parsing in progress.
+ */
+class GameCollection(private val games: Iterator<GameModel>, private val source: Closeable)
+    : Sequence<GameModel>, Closeable {
+
+    private var iterated = false
+
+    override fun iterator(): Iterator<GameModel> {
+        check(!iterated) { "The game collection can only be iterated once" }
+        iterated = true
+        return games
+    }
+
+    /**
+     * Closes the source of the collection and stops parsing the games that are read ahead.
+     * The collection must not be iterated after it is closed. Closing it more than once has
+     * no further effect.
+     */
+    override fun close() {
+        source.close()
+    }
+}
@@ -0,0 +1,103 @@
+package yi.core.go.docformat
+
+import yi.core.go.GameModel
+import yi.core.go.GameParseException
+import java.io.Closeable
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+
+/**
+ * Parses the games of a collection on a [ForkJoinPool] and returns them in the order they
+ * appear in the collection.
+ *
+ * The data of each game is read on the calling thread, one game at a time, and parsed in
+ * the background. Only a bounded number of games are read ahead of the game that is
+ * returned next, so a collection of any size can be iterated without keeping all of its
+ * games in memory at once.
+ *
+ * The source is closed once the last game has been read, as soon as one of the games
+ * fails to parse, or when the iterator is closed.
+ *
+ * @param readNextGame Reads the data of the next game, or returns null at the end of the
+ * collection.
+ * @param parseGame Parses the data of one game. May be called from any thread.
+ */
+internal class GameCollectionIterator<T>(private val source: Closeable,
+                                         private val readNextGame: () -> T?,
+                                         private val parseGame: (T) -> GameModel,
+                                         private val pool: ForkJoinPool = ForkJoinPool.commonPool(),
+                                         private val readAhead: Int = pool.parallelism * 2)
+    : Iterator<GameModel>, Closeable {
+
+    private val pendingGames = ArrayDeque<ForkJoinTask<GameModel>>()
+    private var endOfCollection = false
+
+    override fun hasNext(): Boolean {
+        fillReadAhead()
+        return pendingGames.isNotEmpty()
+    }
+
+    /**
+     * @throws GameParseException If the game fails to parse. The games after it are
+     * not returned.
+     */
+    override fun next(): GameModel {
+        if (!hasNext()) {
+            throw NoSuchElementException()
+        }
+
+        val task = pendingGames.removeFirst()
+
+        try {
+            return task.get()
+        } catch (e: ExecutionException) {
+            cancel()
+
+            val cause = e.cause
+            if (cause is GameParseException) {
+                throw cause
+            }
+            throw GameParseException("Failed to parse game in collection", cause)
+        }
+    }
+
+    /**
+     * Cancels the games that are read ahead and closes the source. No more games are
+     * returned after this.
+     */
+    override fun close() {
+        cancel()
+    }
+
+    private fun fillReadAhead() {
+        while (!endOfCollection && pendingGames.size < readAhead.coerceAtLeast(1)) {
+            val gameData = try {
+                readNextGame()
+            } catch (e: Exception) {
+                cancel()
+                throw e
+            }
+
+            if (gameData == null) {
+                endOfCollection = true
+                source.close()
+                break
+            }
+
+            pendingGames.addLast(pool.submit(ForkJoinTask.adapt(Callable { parseGame(gameData) })))
+        }
+    }
+
+    private fun cancel() {
+        pendingGames.forEach { it.cancel(false) }
+        pendingGames.clear()
+
+        if (!endOfCollection) {
+            endOfCollection = true
+            source.close()
+        }
+    }
+}
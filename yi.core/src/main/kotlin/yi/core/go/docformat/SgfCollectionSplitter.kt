@@ -0,0 +1,130 @@
+package yi.core.go.docformat
+
+import yi.core.go.docformat.SgfFileFormatHandler.Companion.DELIM_BRANCH_END
+import yi.core.go.docformat.SgfFileFormatHandler.Companion.DELIM_BRANCH_START
+import yi.core.go.docformat.SgfFileFormatHandler.Companion.DELIM_NODE_START
+import yi.core.go.docformat.SgfFileFormatHandler.Companion.DELIM_TAG_VALUE_END
+import yi.core.go.docformat.SgfFileFormatHandler.Companion.DELIM_TAG_VALUE_START
+import java.io.Reader
+
+/**
+ * Splits an SGF collection, which is a file with one or more game trees one after another,
+ * into the data of each game tree. The data is read in a single pass, and only as far as
+ * needed to find the end of the game tree that is asked for.
+ *
+ * Game boundaries are found the same way [SgfTokenizer] reads the data: branch delimiters
+ * within property values are ignored, and a value ends at the first ']' that is not
+ * directly preceded by a backslash. Anything outside of a game tree is discarded.
+ */
+internal class SgfCollectionSplitter(private val reader: Reader, bufferSize: Int = DEFAULT_BUFFER_SIZE) {
+
+    private val buffer = CharArray(bufferSize.coerceAtLeast(1))
+    private var position = 0
+    private var limit = 0
+    private var endOfInput = false
+
+    /**
+     * Reads the next game tree, from its opening '(' to the matching ')'. If the input ends
+     * before the game tree is closed, the data read so far is returned so that the parser
+     * can report the error.
+     *
+     * @return Characters of the next game tree, or null if there are no more game trees.
+     */
+    fun nextGame(): CharArray? {
+        if (!skipToGameStart()) {
+            return null
+        }
+
+        val game = StringBuilder(DEFAULT_GAME_CAPACITY)
+        var depth = 0
+        var insideNode = false
+        var insideValue = false
+        var previousWasEscape = false
+
+        while (position < limit || fill()) {
+            val start = position
+
+            while (position < limit) {
+                val char = buffer[position++]
+
+                if (insideValue) {
+                    if (char == DELIM_TAG_VALUE_END && !previousWasEscape) {
+                        insideValue = false
+                    }
+                    previousWasEscape = char == ESCAPE
+                    continue
+                }
+
+                when (char) {
+                    DELIM_BRANCH_START -> {
+                        ++depth
+                        insideNode = false
+                    }
+                    DELIM_BRANCH_END -> {
+                        --depth
+                        insideNode = false
+
+                        if (depth == 0) {
+                            game.append(buffer, start, position - start)
+                            return toCharArray(game)
+                        }
+                    }
+                    DELIM_NODE_START -> insideNode = true
+                    DELIM_TAG_VALUE_START -> {
+                        if (insideNode) {
+                            insideValue = true
+                            previousWasEscape = false
+                        }
+                    }
+                }
+            }
+
+            game.append(buffer, start, position - start)
+        }
+
+        return toCharArray(game)
+    }
+
+    /*
+     * Skips to the next '(' outside of a game tree, leaving it as the next character.
+     *
+     * Returns false if the input ends first.
+     */
+    private fun skipToGameStart(): Boolean {
+        while (position < limit || fill()) {
+            if (buffer[position] == DELIM_BRANCH_START) {
+                return true
+            }
+            ++position
+        }
+        return false
+    }
+
+    private fun fill(): Boolean {
+        if (endOfInput) {
+            return false
+        }
+
+        val read = reader.read(buffer, 0, buffer.size)
+        if (read <= 0) {
+            endOfInput = true
+            return false
+        }
+
+        position = 0
+        limit = read
+        return true
+    }
+
+    private fun toCharArray(game: StringBuilder): CharArray {
+        val chars = CharArray(game.length)
+        game.getChars(0, game.length, chars, 0)
+        return chars
+    }
+
+    private companion object {
+        const val DEFAULT_BUFFER_SIZE = 64 * 1024
+        const val DEFAULT_GAME_CAPACITY = 4 * 1024
+        const val ESCAPE = '\\'
+    }
+}
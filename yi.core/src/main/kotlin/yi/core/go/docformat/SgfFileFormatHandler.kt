@@ -4,6 +4,11 @@ import yi.core.go.*
 import yi.core.go.Annotation
 import java.io.BufferedReader
 import java.io.BufferedWriter
+import java.io.CharArrayReader
+import java.io.Reader
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
 import java.util.*
 import kotlin.collections.ArrayList
 import kotlin.collections.HashMap
@@ -13,7 +18,7 @@ import kotlin.collections.HashMap
  *
  * See SGF format specification at: https://www.red-bean.com/sgf/user_guide/index.html
  */
-internal class SgfFileFormatHandler : FileFormatHandler {
+internal class SgfFileFormatHandler : TextFileFormatHandler {
 
     override fun getUserFriendlyName(): String {
         return "smart go file"
@@ -42,6 +47,18 @@ internal class SgfFileFormatHandler : FileFormatHandler {
         return SgfImporter.doImport(reader)
     }
 
+    override fun doImportLazily(filePath: Path): GameModel {
+        val inputStream = Files.newInputStream(filePath, StandardOpenOption.READ)
+        return inputStream.bufferedReader(Charsets.UTF_8).use { SgfImporter.doImportLazily(it) }
+    }
+
+    override fun doImportCollection(reader: BufferedReader): GameCollection {
+        val splitter = SgfCollectionSplitter(reader)
+        val games = GameCollectionIterator(reader, splitter::nextGame,
+                parseGame = { gameData -> SgfImporter.doImport(CharArrayReader(gameData)) })
+        return GameCollection(games, games)
+    }
+
     override fun doExport(gameModel: GameModel, writer: BufferedWriter) {
         return SgfExporter.doExport(gameModel, writer)
     }
@@ -89,52 +106,56 @@ internal class SgfFileFormatHandler : FileFormatHandler {
 
     private object SgfImporter {
 
-        fun doImport(reader: BufferedReader): GameModel {
-            var charCode: Int
-            var char: Char? = null
-            var gameModel: GameModel? = null
+        fun doImport(reader: Reader): GameModel {
+            return parseGameTree(SgfTokenizer(reader), Stack(), null, null, null)
+                    ?: throw GameParseException("Premature end of file")
+        }
+
+        /*
+         * Imports the game tree without its side variations. The data is kept in memory
+         * and each skipped variation is recorded as a range within it, to be parsed once
+         * the children of the node it branches from are accessed.
+         */
+        fun doImportLazily(reader: Reader): GameModel {
+            val data = reader.readText().toCharArray()
+            return parseGameTree(SgfTokenizer(data), Stack(), null, null, data)
+                    ?: throw GameParseException("Premature end of file")
+        }
 
-            val branchStack = Stack<SgfBranch>()
-            var readCharNextLoop = true
+        /*
+         * Parses nodes until the branch at the bottom of the branch stack ends, or the data
+         * ends. If no game model is given, the first node read is the root node from which
+         * the game model is created.
+         *
+         * If deferredData is given, every variation of a node other than the first one is
+         * skipped and left to be loaded later through GameNode.deferredChildren.
+         */
+        private fun parseGameTree(tokenizer: SgfTokenizer, branchStack: Stack<SgfBranch>,
+                                  existingModel: GameModel?, existingTreeBuilder: GameTreeBuilder?,
+                                  deferredData: CharArray?): GameModel? {
+            var gameModel = existingModel
+            var treeBuilder = existingTreeBuilder
+            val nodeData = SgfNodeData()
+            var readingNode = false
 
             do {
-                if (readCharNextLoop) {
-                    charCode = reader.read()
-                    char = charCode.toChar()
+                val token = tokenizer.next()
 
-                    if (charCode == -1) {
-                        break
-                    }
+                if (token == SgfTokenizer.Token.PROPERTY_VALUE) {
+                    // Some properties have multiple values in the following format:
+                    // AB[aa][bb][cc]
+                    // Each value is decoded individually as it is read.
+                    nodeData.read(tokenizer)
+                    continue
                 }
 
-                if (char == DELIM_BRANCH_START) {
-                    val parent = if (branchStack.isEmpty()) null else branchStack.peek().latestNode
-                    branchStack.push(SgfBranch(parent, parent))
-                    readCharNextLoop = true
-                } else if (char == DELIM_BRANCH_END) {
-                    branchStack.pop()
-                    if (branchStack.isEmpty()) {
-                        // The entire SGF record has been loaded
-                        // TODO: Some servers, such as FlyOrDie, may store multiple games in
-                        //       one SGF file. They are in the form of multiple self-contained
-                        //       SGF data. Right now we only load the first game, but we
-                        //       should load all of them eventually.
-                        break;
-                    } else {
-                        // Was only the end of a sub-branch, SGF record still continues
-                        readCharNextLoop = true
-                    }
-                } else if (char == DELIM_NODE_START) {
-                    val readResult = readUntil(reader, DELIM_BRANCH_START, DELIM_BRANCH_END, DELIM_NODE_START)
-
-                    val nodeData = readResult.first
-                    char = readResult.second
-
-                    val organizedNodeData = asKeyValuePairs(nodeData)
-                    removeMalformedData(organizedNodeData)
+                if (token == SgfTokenizer.Token.END && readingNode) {
+                    throw GameParseException("Premature end of file")
+                }
 
-                    // We're already at the next token, so we want the next loop to evaluate this.
-                    readCharNextLoop = false
+                // Every other token ends the node that is being read
+                if (readingNode) {
+                    readingNode = false
 
                     if (gameModel == null) {
                         if (branchStack.size != 1) {
@@ -142,26 +163,62 @@ internal class SgfFileFormatHandler : FileFormatHandler {
                         }
 
                         // Root node, create the model and setup the rest
-                        gameModel = createGameModel(organizedNodeData)
+                        gameModel = createGameModel(nodeData)
+                        treeBuilder = gameModel.editor.beginBulkConstruction()
 
                         branchStack.peek().parentNode = gameModel.getRootNode()
                         branchStack.peek().latestNode = gameModel.getRootNode()
-                        continue
                     } else {
                         // Standard node
                         val nodeParent = branchStack.peek().latestNode!!
-                        val node = parseNode(organizedNodeData, nodeParent, gameModel)
-                        gameModel.editor.appendNode(nodeParent, node)
+                        val node = parseNode(nodeData, nodeParent, gameModel, treeBuilder!!)
                         branchStack.peek().latestNode = node
                     }
                 }
 
+                when (token) {
+                    SgfTokenizer.Token.BRANCH_START -> {
+                        val enclosingBranch = if (branchStack.isEmpty()) null else branchStack.peek()
+                        val parent = enclosingBranch?.latestNode
+
+                        if (deferredData != null && parent != null && enclosingBranch.variationCount++ > 0) {
+                            // Only the first variation is the main branch, defer the rest
+                            val start = tokenizer.getPosition() - 1
+                            tokenizer.skipBranch()
+
+                            val deferredVariations = enclosingBranch.deferredVariations
+                                    ?: SgfDeferredVariations(deferredData, gameModel!!).also {
+                                        enclosingBranch.deferredVariations = it
+                                        parent.deferVariations(gameModel, it::load)
+                                    }
+                            deferredVariations.add(start, tokenizer.getPosition())
+                        } else {
+                            branchStack.push(SgfBranch(parent, parent))
+                            treeBuilder?.beginVariation()
+                        }
+                    }
+                    SgfTokenizer.Token.BRANCH_END -> {
+                        branchStack.pop()
+                        if (branchStack.isNotEmpty()) {
+                            treeBuilder?.endVariation()
+                        }
+                        if (branchStack.isEmpty()) {
+                            // The entire SGF record has been loaded. Some servers, such as
+                            // FlyOrDie, may store multiple games in one SGF file, in the form of
+                            // multiple self-contained SGF data. Only the first one is loaded
+                            // here, use doImportCollection() to load all of them.
+                            break
+                        }
+                        // Otherwise it was only the end of a sub-branch, SGF record still continues
+                    }
+                    SgfTokenizer.Token.NODE_START -> {
+                        nodeData.clear()
+                        readingNode = true
+                    }
+                    else -> break
+                }
             } while (true)
 
-            if (gameModel == null) {
-                throw GameParseException("Premature end of file")
-            }
-
             return gameModel
         }
 
@@ -191,7 +248,7 @@ internal class SgfFileFormatHandler : FileFormatHandler {
 
                 val gameRules = StandardGameRules.parse(ruleset[0]).orElse(StandardGameRules.CHINESE)
                 val gameModel = GameModel(width, height, gameRules)
-                val rootNode = parseNode(rootNodeData, null, gameModel)
+                val rootNode = parseRootNode(rootNodeData, gameModel)
                 gameModel._setRootNode(rootNode)
 
                 val pcValue = rootNodeData.getOrDefault(SGF_GAME_PLACE, listOf(""))
@@ -217,102 +274,90 @@ internal class SgfFileFormatHandler : FileFormatHandler {
 
         private fun processOgsModel(gameModel: GameModel, rootNode: GameNode) {
             // OGS is missing a HA[] value representing handicap stone count. So we have
-            // to manually count them through the number of AB[] tags on root.
-            gameModel.info.setHandicapCount(rootNode.getMetadataMultiValue(SGF_ADD_BLACK).size)
+            // to manually count them through the number of AB[] stones on root.
+            gameModel.info.setHandicapCount(rootNode.getStoneEdits().count { it.color == StoneColor.BLACK })
         }
 
-        private fun parseNode(nodeData: SgfNodeData, parentNode: GameNode?, gameModel: GameModel): GameNode {
-            val gameNode = parseNodeType(nodeData, parentNode, gameModel)
-            parseHelperStones(nodeData, gameNode, gameModel)
-            parseAnnotations(nodeData, gameNode, gameModel)
-
-            gameNode.delta.comments = nodeData.getOrDefault(SGF_COMMENT, listOf(""))[0]
-            gameNode.putMetadata(nodeData.getAsHashMap())
+        private fun parseRootNode(nodeData: SgfNodeData, gameModel: GameModel): GameNode {
+            val rootNode = GameMoveSubmitter.createRootNode(gameModel)
+            val stoneEdits = parseHelperStones(nodeData)
+            if (stoneEdits.isNotEmpty()) {
+                gameModel.editor.addStoneEdits(rootNode, stoneEdits)
+            }
+            parseNodeContent(nodeData, rootNode)
+            return rootNode
+        }
 
+        private fun parseNode(nodeData: SgfNodeData, parentNode: GameNode, gameModel: GameModel,
+                              treeBuilder: GameTreeBuilder): GameNode {
+            val stoneEdits = parseHelperStones(nodeData)
+            val gameNode = parseNodeType(nodeData, parentNode, stoneEdits, gameModel, treeBuilder)
+            parseNodeContent(nodeData, gameNode)
             return gameNode
         }
 
-        private fun parseAnnotations(nodeData: SgfNodeData, gameNode: GameNode, gameModel: GameModel) {
-            val annotations = ArrayList<Annotation>()
-
-            annotations.addAll(nodeData.getOrDefault(SGF_MARKUP_CROSS, listOf()).map {
-                val pos = convertCoordinates(it)
-                Annotation.Cross(pos[0], pos[1])
-            })
-            annotations.addAll(nodeData.getOrDefault(SGF_MARKUP_CIRCLE, listOf()).map {
-                val pos = convertCoordinates(it)
-                Annotation.Circle(pos[0], pos[1])
-            })
-            annotations.addAll(nodeData.getOrDefault(SGF_MARKUP_TRIANGLE, listOf()).map {
-                val pos = convertCoordinates(it)
-                Annotation.Triangle(pos[0], pos[1])
-            })
-            annotations.addAll(nodeData.getOrDefault(SGF_MARKUP_SQUARE, listOf()).map {
-                val pos = convertCoordinates(it)
-                Annotation.Square(pos[0], pos[1])
-            })
-            annotations.addAll(nodeData.getOrDefault(SGF_MARKUP_DIM, listOf()).map {
-                val pos = convertCoordinates(it)
-                Annotation.Fade(pos[0], pos[1])
-            })
-
-            val labels = nodeData.getOrDefault(SGF_MARKUP_LABEL, listOf())
-            for (label in labels) {
-                val data = label.split(":")
-                if (data.size == 2) {
-                    val pos = convertCoordinates(data[0])
-                    val text = data[1]
+        private fun parseNodeContent(nodeData: SgfNodeData, gameNode: GameNode) {
+            parseAnnotations(nodeData, gameNode)
+            gameNode.delta.comments = nodeData.comments ?: ""
+            gameNode.putMetadata(nodeData.metadata)
+        }
 
-                    annotations.add(Annotation.Label(pos[0], pos[1], text))
-                }
+        private fun parseAnnotations(nodeData: SgfNodeData, gameNode: GameNode) {
+            if (!nodeData.hasAnnotations()) {
+                return
             }
 
-            val twoPointAnnotationConverter = { data: String, positionConsumer: (Array<Int>, Array<Int>) -> Unit ->
-                val segments = data.split(":")
-                if (segments.size == 2) {
-                    val posFrom = convertCoordinates(segments[0])
-                    val posTo = convertCoordinates(segments[1])
-
-                    positionConsumer.invoke(posFrom, posTo)
-                }
-            }
+            val annotations = ArrayList<Annotation>()
 
-            nodeData.getOrDefault(SGF_MARKUP_LINE, listOf()).forEach { data ->
-                twoPointAnnotationConverter.invoke(data) { from, to -> annotations.add(Annotation.Line(from[0], from[1], to[0], to[1])) }
+            nodeData.crosses.forEach { x, y -> annotations.add(Annotation.Cross(x, y)) }
+            nodeData.circles.forEach { x, y -> annotations.add(Annotation.Circle(x, y)) }
+            nodeData.triangles.forEach { x, y -> annotations.add(Annotation.Triangle(x, y)) }
+            nodeData.squares.forEach { x, y -> annotations.add(Annotation.Square(x, y)) }
+            nodeData.fades.forEach { x, y -> annotations.add(Annotation.Fade(x, y)) }
+            annotations.addAll(nodeData.labels)
+
+            // Two-point annotations store the start and end positions as consecutive coordinates
+            for (i in 0 until nodeData.lines.size step 2) {
+                annotations.add(Annotation.Line(nodeData.lines.getX(i), nodeData.lines.getY(i),
+                        nodeData.lines.getX(i + 1), nodeData.lines.getY(i + 1)))
             }
-            nodeData.getOrDefault(SGF_MARKUP_ARROW, listOf()).forEach { data ->
-                twoPointAnnotationConverter.invoke(data) { from, to -> annotations.add(Annotation.Arrow(from[0], from[1], to[0], to[1])) }
+            for (i in 0 until nodeData.arrows.size step 2) {
+                annotations.add(Annotation.Arrow(nodeData.arrows.getX(i), nodeData.arrows.getY(i),
+                        nodeData.arrows.getX(i + 1), nodeData.arrows.getY(i + 1)))
             }
 
-            gameModel.editor.addAnnotations(gameNode, annotations)
+            // Added to the node directly, the game record may be loading deferred variations
+            // of a model that is already open, which must not look like an edit
+            gameNode.addAnnotations(annotations)
         }
 
         /*
-            Parses all the helper stone data (AB and AW) for the node
+            Parses all the helper stone data (AB, AW and AE) for the node
          */
-        private fun parseHelperStones(nodeData: SgfNodeData, gameNode: GameNode, gameModel: GameModel) {
-            val demoBlackStones = nodeData.getOrDefault(SGF_ADD_BLACK, listOf()).map { convertCoordinates(it) }
-            val demoWhiteStones = nodeData.getOrDefault(SGF_ADD_WHITE, listOf()).map { convertCoordinates(it) }
-            val eraseStones = nodeData.getOrDefault(SGF_ADD_ERASE, listOf()).map { convertCoordinates(it) }
-
-            demoBlackStones.forEach {
-                gameModel.editor.addStoneEdit(gameNode, Stone(it[0], it[1], StoneColor.BLACK))
+        private fun parseHelperStones(nodeData: SgfNodeData): Set<Stone> {
+            if (nodeData.blackStones.size == 0 && nodeData.whiteStones.size == 0 && nodeData.erasedStones.size == 0) {
+                return Collections.emptySet()
             }
 
-            demoWhiteStones.forEach {
-                gameModel.editor.addStoneEdit(gameNode, Stone(it[0], it[1], StoneColor.WHITE))
+            val stoneEdits = HashSet<Stone>()
+
+            nodeData.blackStones.forEach { x, y ->
+                stoneEdits.add(Stone(x, y, StoneColor.BLACK))
             }
 
-            eraseStones.forEach {
-                val x = it[0]
-                val y = it[1]
+            nodeData.whiteStones.forEach { x, y ->
+                stoneEdits.add(Stone(x, y, StoneColor.WHITE))
+            }
 
+            nodeData.erasedStones.forEach { x, y ->
                 // Remove existing helper stones first
-                gameModel.editor.removeStoneEdit(gameNode, Stone(x, y, StoneColor.BLACK))
-                gameModel.editor.removeStoneEdit(gameNode, Stone(x, y, StoneColor.WHITE))
+                stoneEdits.remove(Stone(x, y, StoneColor.BLACK))
+                stoneEdits.remove(Stone(x, y, StoneColor.WHITE))
 
-                gameModel.editor.addStoneEdit(gameNode, Stone(x, y, StoneColor.NONE))
+                stoneEdits.add(Stone(x, y, StoneColor.NONE))
             }
+
+            return stoneEdits
         }
 
         /*
@@ -322,401 +367,339 @@ internal class SgfFileFormatHandler : FileFormatHandler {
             This information is interpreted from the presence (or absence) of notable
             tag keys and values.
 
-            This step must be performed first before parsing other type of node
-            information as this will create the node itself.
+            This step creates the node and appends it to the game tree, so it must be
+            performed before parsing other type of node information.
          */
-        private fun parseNodeType(nodeData: SgfNodeData, parentNode: GameNode?, gameModel: GameModel): GameNode {
-            var gameNode: GameNode? = null
+        private fun parseNodeType(nodeData: SgfNodeData, parentNode: GameNode, stoneEdits: Set<Stone>,
+                                  gameModel: GameModel, treeBuilder: GameTreeBuilder): GameNode {
             var gamePrimaryMove: Stone? = null
             var gameNodeType: GameNodeType = GameNodeType.STONE_EDIT
 
-            if (parentNode == null) {
-                gameNodeType = GameNodeType.ROOT
-            } else if (nodeData.containsKey(SGF_BLACK_MOVE)) {
-                val sgfCoords = nodeData[SGF_BLACK_MOVE][0]
+            val move: Int
+            val moveColor: StoneColor
 
-                if (sgfCoords.isEmpty()) {
-                    gameNodeType = GameNodeType.PASS
-                } else {
-                    val realCoords = convertCoordinates(sgfCoords)
-                    gamePrimaryMove = Stone(realCoords[0], realCoords[1], StoneColor.BLACK)
-                    gameNodeType = if (isMoveWithinBounds(realCoords, gameModel)) GameNodeType.MOVE_PLAYED
-                                   else GameNodeType.PASS
-                }
-            } else if (nodeData.containsKey(SGF_WHITE_MOVE)) {
-                val sgfCoords = nodeData[SGF_WHITE_MOVE][0]
+            if (nodeData.blackMove != SgfNodeData.NO_MOVE) {
+                move = nodeData.blackMove
+                moveColor = StoneColor.BLACK
+            } else {
+                move = nodeData.whiteMove
+                moveColor = StoneColor.WHITE
+            }
 
-                if (sgfCoords.isEmpty()) {
-                    gameNodeType = GameNodeType.PASS
-                } else {
-                    val realCoords = convertCoordinates(sgfCoords)
-                    gamePrimaryMove = Stone(realCoords[0], realCoords[1], StoneColor.WHITE)
-                    gameNodeType = if (isMoveWithinBounds(realCoords, gameModel)) GameNodeType.MOVE_PLAYED
-                                   else GameNodeType.PASS
-                }
-            } else if (nodeData.containsKey(SGF_ADD_BLACK) || nodeData.containsKey(SGF_ADD_WHITE)) {
-                gameNodeType = GameNodeType.STONE_EDIT
+            if (move == SgfNodeData.PASS_MOVE) {
+                gameNodeType = GameNodeType.PASS
+            } else if (move != SgfNodeData.NO_MOVE) {
+                val x = SgfNodeData.getMoveX(move)
+                val y = SgfNodeData.getMoveY(move)
+                gamePrimaryMove = Stone(x, y, moveColor)
+                gameNodeType = if (isMoveWithinBounds(x, y, gameModel)) GameNodeType.MOVE_PLAYED
+                               else GameNodeType.PASS
             }
 
             // TODO: Probably unlikely given that we have a good coverage. But if we do get here then maybe just
             //      insert a generic node?
-            when (gameNodeType) {
-                GameNodeType.MOVE_PLAYED -> {
-                    val results = GameMoveSubmitter.createMoveNode(gameModel, parentNode!!, gamePrimaryMove!!, true)
-                    val validationResult = results.first
-                    assert(validationResult == MoveValidationResult.OK)
-                    gameNode = results.second!!
-                }
-                GameNodeType.STONE_EDIT -> {
-                    gameNode = GameMoveSubmitter.createStoneEditNode(parentNode!!)
-                }
+            return when (gameNodeType) {
+                GameNodeType.MOVE_PLAYED -> treeBuilder.appendMove(parentNode, gamePrimaryMove!!, stoneEdits)
                 GameNodeType.PASS -> {
-                    gameNode = GameMoveSubmitter.createPassNode(parentNode!!)
                     // TODO: There's actually no differentiation between passing and resigning. The resignation node is
                     //       handled as a pass, except that the root node game result is set to W+R or B+R.
+                    treeBuilder.appendPass(parentNode, stoneEdits)
                 }
-                GameNodeType.ROOT -> {
-                    gameNode = GameMoveSubmitter.createRootNode(gameModel)
-                }
+                else -> treeBuilder.appendStoneEdit(parentNode, stoneEdits)
             }
-
-            return gameNode
         }
 
-        private fun isMoveWithinBounds(coords: Array<Int>, gameModel: GameModel): Boolean {
-            val x = coords[0]
-            val y = coords[1]
+        private fun isMoveWithinBounds(x: Int, y: Int, gameModel: GameModel): Boolean {
             return !(x < 0 || x >= gameModel.boardWidth || y < 0 || y >= gameModel.boardHeight)
         }
 
+        /*
+         * Converts one SGF coordinate character to a board position, or -1 if it is not
+         * one of SGF_COORDINATES.
+         */
+        private fun convertCoordinate(value: Char): Int {
+            return if (value in 'a'..'z') value - 'a' else -1
+        }
+
         /**
-         * Interprets the raw node data by sorting them into a data structure
-         * that allows programmatic retrieval of individual key-value pairs.
+         * The data of the node being read. Each property value is decoded as soon as it is
+         * read, while it is still in the tokenizer buffer: moves, setup stones and markup
+         * become coordinates without creating a string for the value. Only comments, label
+         * text and the remaining properties, which are kept as node metadata, are read as
+         * strings.
+         *
+         * Values that do not conform to the expected format of their property are skipped
+         * so that the valid data of the node is still loaded. One instance is reused for
+         * every node of a game tree.
          */
-        private fun asKeyValuePairs(nodeData: String): SgfNodeData {
-            val result = HashMap<String, ArrayList<String>>()
-            var readingKeyRatherThanValue = true
+        private class SgfNodeData {
+
+            // First valid value of B and W, see packMove()
+            var blackMove = NO_MOVE
+            var whiteMove = NO_MOVE
+
+            val blackStones = SgfCoordinates()
+            val whiteStones = SgfCoordinates()
+            val erasedStones = SgfCoordinates()
+
+            val crosses = SgfCoordinates()
+            val circles = SgfCoordinates()
+            val triangles = SgfCoordinates()
+            val squares = SgfCoordinates()
+            val fades = SgfCoordinates()
+            val lines = SgfCoordinates()
+            val arrows = SgfCoordinates()
+            val labels = ArrayList<Annotation.Label>()
+
+            var comments: String? = null
+
+            // The map is reused, but each value list is handed to the game node
+            val metadata = HashMap<String, ArrayList<String>>()
+
+            fun clear() {
+                blackMove = NO_MOVE
+                whiteMove = NO_MOVE
+
+                blackStones.clear()
+                whiteStones.clear()
+                erasedStones.clear()
+
+                crosses.clear()
+                circles.clear()
+                triangles.clear()
+                squares.clear()
+                fades.clear()
+                lines.clear()
+                arrows.clear()
+                labels.clear()
+
+                comments = null
+                metadata.clear()
+            }
 
-            val tagKey = StringBuilder()
-            val tagValue = StringBuilder()
+            /**
+             * Decodes the current property value of the tokenizer into the node data.
+             */
+            fun read(tokenizer: SgfTokenizer) {
+                val buffer = tokenizer.getBuffer()
+                val start = tokenizer.getValueStart()
+                val length = tokenizer.getValueLength()
+
+                when (val key = tokenizer.getPropertyKey()) {
+                    SGF_BLACK_MOVE -> if (blackMove == NO_MOVE) blackMove = decodeMove(buffer, start, length)
+                    SGF_WHITE_MOVE -> if (whiteMove == NO_MOVE) whiteMove = decodeMove(buffer, start, length)
+
+                    SGF_ADD_BLACK -> decodePoint(buffer, start, length, blackStones)
+                    SGF_ADD_WHITE -> decodePoint(buffer, start, length, whiteStones)
+                    SGF_ADD_ERASE -> decodePoint(buffer, start, length, erasedStones)
+
+                    SGF_MARKUP_CROSS -> decodePoint(buffer, start, length, crosses)
+                    SGF_MARKUP_CIRCLE -> decodePoint(buffer, start, length, circles)
+                    SGF_MARKUP_TRIANGLE -> decodePoint(buffer, start, length, triangles)
+                    SGF_MARKUP_SQUARE -> decodePoint(buffer, start, length, squares)
+                    SGF_MARKUP_DIM -> decodePoint(buffer, start, length, fades)
+                    SGF_MARKUP_LINE -> decodeTwoPoints(buffer, start, length, lines)
+                    SGF_MARKUP_ARROW -> decodeTwoPoints(buffer, start, length, arrows)
+                    SGF_MARKUP_LABEL -> decodeLabel(tokenizer)
+
+                    SGF_COMMENT -> if (comments == null) comments = tokenizer.getValue()
+
+                    else -> readMetadata(key, tokenizer.getValue())
+                }
+            }
 
-            var skipNextChar = false
-            var index = 0
-            var incrementIndex = true
+            fun hasAnnotations(): Boolean {
+                return crosses.size > 0 || circles.size > 0 || triangles.size > 0 || squares.size > 0
+                        || fades.size > 0 || lines.size > 0 || arrows.size > 0 || labels.isNotEmpty()
+            }
 
-            while (index < nodeData.indices.last) {
-                val char = nodeData[index]
+            fun getOrDefault(key: String, defaultValue: List<String>): List<String> {
+                return metadata[key] ?: defaultValue
+            }
 
-                if (skipNextChar) {
-                    skipNextChar = false
-                    continue
+            private fun readMetadata(key: String, value: String) {
+                if (key == SGF_KOMI && !isNumerical(value)) {
+                    return
                 }
+                metadata.getOrPut(key) { ArrayList(1) }.add(value)
+            }
 
-                if (readingKeyRatherThanValue) {
-                    if (char == DELIM_TAG_VALUE_START) {
-                        readingKeyRatherThanValue = false
-                    } else {
-                        tagKey.append(char)
-                    }
-                } else {
-                    if (char == DELIM_TAG_VALUE_END) {
-                        if (tagValue.lastIndex >= 0 && tagValue[tagValue.lastIndex] == '\\') {
-                            // Tags such as comments may contain free-form text data
-                            // including the value-end delimiter ']'. When this is part
-                            // of the value itself, it is escaped with a leading forward
-                            // slash.
-                            tagValue.replace(tagValue.lastIndex, tagValue.lastIndex+1, char.toString())
-                            index++
-                            continue
-                        }
-
-                        // Some annotations have multi-part values in the following format:
-                        // AB[aa][bb][cc]
-                        // So if at the end of one value term we immediately encounter a new
-                        // value start symbol, don't clear the key value and parse another value.
-                        // We store each value individually under the same key.
-                        //
-                        // Other annotations value have two parts,
-                        // such as the arrow AR[aa:bb] where the values represent
-                        // start-to-end coordinates for the two-point annotation. In this case
-                        // we will store the values together as one entry.
-                        val key = tagKey.toString().trim()
-                        val value = tagValue.toString()
-
-                        result.putIfAbsent(key, ArrayList())
-                        result[key]!!.add(value)
-                        readingKeyRatherThanValue = true
-
-                        if (index < nodeData.length - 1) {
-                            val nextIndexToBeginReadingValueAt = findNextValueStart(nodeData, index)
-
-                            if (nextIndexToBeginReadingValueAt >= 0) {
-                                readingKeyRatherThanValue = false
-                                skipNextChar = true
-                                index = nextIndexToBeginReadingValueAt + 1
-                                // Don't increment again because we've already re-positioned
-                                // the index here.
-                                incrementIndex = false
-                            } else {
-                                tagKey.clear()
-                            }
-                        }
-
-                        tagValue.clear()
-                    } else {
-                        tagValue.append(char)
-                    }
+            // Format "aa", or an empty value for a pass
+            private fun decodeMove(buffer: CharArray, start: Int, length: Int): Int {
+                if (length == 0) {
+                    return PASS_MOVE
+                }
+                if (length != 2) {
+                    return NO_MOVE
                 }
 
-                if (incrementIndex) {
-                    index++
-                } else {
-                    incrementIndex = true
+                val x = convertCoordinate(buffer[start])
+                val y = convertCoordinate(buffer[start + 1])
+                return if (x < 0 || y < 0) NO_MOVE else packMove(x, y)
+            }
+
+            // Format "aa"
+            private fun decodePoint(buffer: CharArray, start: Int, length: Int, destination: SgfCoordinates) {
+                if (length == 2) {
+                    decodeCoordinates(buffer, start, destination)
                 }
             }
 
-            return SgfNodeData(result)
-        }
+            // Format "aa:bb"
+            private fun decodeTwoPoints(buffer: CharArray, start: Int, length: Int, destination: SgfCoordinates) {
+                if (length != 5 || buffer[start + 2] != DELIM_TAG_VALUE_SPLIT) {
+                    return
+                }
 
-        private fun findNextValueStart(nodeData: String, index: Int): Int {
-            var charIndex = index
-            while (charIndex + 1 < nodeData.lastIndex) {
-                charIndex++
-                val charHere = nodeData[charIndex]
+                val x = convertCoordinate(buffer[start])
+                val y = convertCoordinate(buffer[start + 1])
+                val xEnd = convertCoordinate(buffer[start + 3])
+                val yEnd = convertCoordinate(buffer[start + 4])
 
-                return if (charHere == '\n' || charHere == '\r' || charHere == '\t') {
-                    continue
-                } else if (charHere == DELIM_TAG_VALUE_START) {
-                    charIndex
-                } else {
-                    -1
+                if (x >= 0 && y >= 0 && xEnd >= 0 && yEnd >= 0) {
+                    destination.add(x, y)
+                    destination.add(xEnd, yEnd)
                 }
             }
-            return -1
-        }
 
-        /*
-            Removes tags with data that does not conform to the expected format so that
-            valid data tags are still loaded.
-         */
-        private fun removeMalformedData(organizedNodeData: SgfNodeData) {
-            for (formatConstraint in SgfTagFormatConstraints.values()) {
-                val tagKey = formatConstraint.tagKey
-                if (organizedNodeData.containsKey(tagKey)) {
-                    val valuesToRemove = ArrayList<String>()
-                    for (value in organizedNodeData[tagKey]) {
-                        if (!formatConstraint.isValueValid(value)) {
-                            valuesToRemove.add(value)
-                        }
-                    }
-                    for (value in valuesToRemove) {
-                        organizedNodeData.removeValueForKey(tagKey, value)
+            // Format "aa:Text", where the text is not empty and has no further separator
+            private fun decodeLabel(tokenizer: SgfTokenizer) {
+                val buffer = tokenizer.getBuffer()
+                val start = tokenizer.getValueStart()
+                val end = tokenizer.getValueEnd()
+
+                if (end - start < 4 || buffer[start + 2] != DELIM_TAG_VALUE_SPLIT) {
+                    return
+                }
+                for (i in start + 3 until end) {
+                    if (buffer[i] == DELIM_TAG_VALUE_SPLIT) {
+                        return
                     }
                 }
+
+                val x = convertCoordinate(buffer[start])
+                val y = convertCoordinate(buffer[start + 1])
+
+                if (x >= 0 && y >= 0) {
+                    labels.add(Annotation.Label(x, y, tokenizer.getValue(3)))
+                }
             }
-        }
 
-        /**
-         * Reads a sequence of characters from an input stream until one of the
-         * delimiters is reached.
-         *
-         * @return A result pair where the first element is the String that is read,
-         * including the terminal delimiter. The second element is the delimiter character
-         * the read operation stopped at, for quick access.
-         */
-        fun readUntil(reader: BufferedReader, vararg delimiters: Char): Pair<String, Char> {
-            var charCode: Int
-            var char: Char
-            val buffer = StringBuilder()
-            var readingTagValue = false
-            var readNextChar = true
+            private fun decodeCoordinates(buffer: CharArray, start: Int, destination: SgfCoordinates) {
+                val x = convertCoordinate(buffer[start])
+                val y = convertCoordinate(buffer[start + 1])
 
-            do {
-                charCode = reader.read()
-                if (charCode == -1) {
-                    throw GameParseException("Premature end of file")
+                if (x >= 0 && y >= 0) {
+                    destination.add(x, y)
                 }
-                char = charCode.toChar()
+            }
 
-                // Avoid parsing tag value as special delimiters
-                if (char == DELIM_TAG_VALUE_START) {
-                    readingTagValue = true
-                } else if (char == DELIM_TAG_VALUE_END) {
-                    readingTagValue = false
+            private fun isNumerical(value: String): Boolean {
+                return try {
+                    java.lang.Double.parseDouble(value)
+                    true
+                } catch (e: NumberFormatException) {
+                    false
                 }
+            }
 
-                buffer.append(char)
+            companion object {
+                const val NO_MOVE = -2
+                const val PASS_MOVE = -1
 
-                if (!readingTagValue && delimiters.contains(char)) {
-                    readNextChar = false
-                }
-            } while (readNextChar)
+                fun packMove(x: Int, y: Int): Int = (x shl 16) or y
 
-            return Pair(buffer.toString(), char)
-        }
+                fun getMoveX(move: Int): Int = move shr 16
 
-        fun convertCoordinates(sgfCoords: String): Array<Int> {
-            val x = SGF_COORDINATES.indexOf(sgfCoords.toLowerCase()[0])
-            val y = SGF_COORDINATES.indexOf(sgfCoords.toLowerCase()[1])
-            // TODO: If the co-ordinate data is malformed, x,y may be negative values. Handle this.
-            return arrayOf(x, y)
+                fun getMoveY(move: Int): Int = move and 0xFFFF
+            }
         }
 
-        /**
-         * A temporary object that maps SGF tag key/value pairs into an organised data structure.
-         * Each key can have multiple values, hence the list of strings for value.
+        /*
+         * A growable list of decoded (x, y) positions, reused between nodes.
          */
-        // This is essentially a wrapper for the layers of ugly generics so that we don't have to
-        // pass the raw generic types everywhere. Plus if we decide to change the data structure,
-        // the usage won't be affected.
-        private class SgfNodeData(private val data: HashMap<String, ArrayList<String>>) {
+        private class SgfCoordinates {
 
-            operator fun get(key: String): List<String> {
-                return data.getValue(key)
-            }
+            private var values = IntArray(16)
 
-            fun getOrDefault(key: String, defaultValue: List<String>): List<String> {
-                return if (defaultValue is ArrayList<String>) {
-                    data.getOrDefault(key, defaultValue)
-                } else {
-                    data.getOrDefault(key, ArrayList(defaultValue))
-                }
-            }
+            // Number of positions in the list
+            var size = 0
+                private set
 
-            fun containsKey(key: String): Boolean {
-                return data.containsKey(key)
+            fun add(x: Int, y: Int) {
+                if (size * 2 + 2 > values.size) {
+                    values = values.copyOf(values.size * 2)
+                }
+                values[size * 2] = x
+                values[size * 2 + 1] = y
+                size++
             }
 
-            /**
-             * Removes the key and all its values from the node data.
-             */
-            fun removeKey(tagKey: String) {
-                data.remove(tagKey)
-            }
+            fun getX(index: Int): Int = values[index * 2]
 
-            /**
-             * Removes the value for a key. If multiple values are equal to
-             * the value to be removed, then all of them are removed. If after
-             * this operation the key has no more values, then the key is
-             * removed also.
-             */
-            fun removeValueForKey(tagKey: String, valueToRemove: String) {
-                if (containsKey(tagKey)) {
-                    while (data[tagKey]!!.contains(valueToRemove)) {
-//                        println("Removed $valueToRemove")
-                        data[tagKey]!!.remove(valueToRemove)
-                    }
+            fun getY(index: Int): Int = values[index * 2 + 1]
 
-                    if (data[tagKey]!!.isEmpty()) {
-                        removeKey(tagKey)
-                    }
+            inline fun forEach(action: (Int, Int) -> Unit) {
+                for (i in 0 until size) {
+                    action(values[i * 2], values[i * 2 + 1])
                 }
             }
 
-            override fun toString(): String {
-                return data.toString()
-            }
-
-            fun getAsHashMap(): Map<String, List<String>> {
-                return data
+            fun clear() {
+                size = 0
             }
         }
 
-        private class SgfBranch(var parentNode: GameNode?, var latestNode: GameNode?)
+        private class SgfBranch(var parentNode: GameNode?, latestNode: GameNode?) {
 
+            var latestNode: GameNode? = latestNode
+                set(value) {
+                    field = value
+                    variationCount = 0
+                    deferredVariations = null
+                }
 
-        /*
-         * Defines the value format of some SGF tags so that its validity can be verified.
-         * Invalid SGF tags are skipped to avoid creating a bad game tree from malformed
-         * game file data.
-         */
-        private enum class SgfTagFormatConstraints(val tagKey: String, vararg val acceptableValueFormats: SgfTagValueConstraint) {
-
-            B("B", SgfTagValueConstraint.Empty, SgfTagValueConstraint.OnePointLocation),
-            W("W", SgfTagValueConstraint.Empty, SgfTagValueConstraint.OnePointLocation),
+            // Variations started from the latest node so far
+            var variationCount = 0
 
-            MA("MA", SgfTagValueConstraint.OnePointLocation),
-            SQ("SQ", SgfTagValueConstraint.OnePointLocation),
-            TR("TR", SgfTagValueConstraint.OnePointLocation),
-            CR("CR", SgfTagValueConstraint.OnePointLocation),
-            DD("DD", SgfTagValueConstraint.OnePointLocation),
-            LB("LB", SgfTagValueConstraint.LabelAnnotation),
+            // Variations of the latest node skipped by a lazy import
+            var deferredVariations: SgfDeferredVariations? = null
+        }
 
-            AR("AR", SgfTagValueConstraint.TwoPointLocation),
-            LN("LN", SgfTagValueConstraint.TwoPointLocation),
+        /*
+         * Side variations of one node skipped by a lazy import, recorded as ranges of the
+         * game record data that begin with the '(' of the variation and end after its ')'.
+         * Loading them also parses lazily, so their own side variations are deferred again.
+         */
+        private class SgfDeferredVariations(private val data: CharArray, private val gameModel: GameModel) {
 
-            KM("KM", SgfTagValueConstraint.Numerical);
+            private var ranges = IntArray(4)
+            private var rangesSize = 0
 
-            fun isValueValid(valueToTest: String): Boolean {
-                for (format in acceptableValueFormats) {
-                    if (format.isValueValid(valueToTest)) {
-                        return true
-                    }
+            fun add(start: Int, end: Int) {
+                if (rangesSize + 2 > ranges.size) {
+                    ranges = ranges.copyOf(ranges.size * 2)
                 }
-                return false
+                ranges[rangesSize++] = start
+                ranges[rangesSize++] = end
             }
-        }
 
-        private enum class SgfTagValueConstraint {
-            Empty {
-                override fun isValueValid(valueToTest: String): Boolean {
-                    return valueToTest.isEmpty()
-                }
-            },
-
-
-            OnePointLocation {
-                override fun isValueValid(valueToTest: String): Boolean {
-                    return valueToTest.length == 2 // format "aa"
-                            && isValidCoordinateValue(valueToTest[0])
-                            && isValidCoordinateValue(valueToTest[1])
-                }
-            },
-
-            TwoPointLocation {
-                override fun isValueValid(valueToTest: String): Boolean {
-                    return valueToTest.length == 5 // format "aa:bb"
-                            && isValidCoordinateValue(valueToTest[0])
-                            && isValidCoordinateValue(valueToTest[1])
-                            && valueToTest[2] == ':'
-                            && isValidCoordinateValue(valueToTest[3])
-                            && isValidCoordinateValue(valueToTest[4])
-
-                }
-            },
-
-            LabelAnnotation {
-                override fun isValueValid(valueToTest: String): Boolean {
-                    val dataSegments = valueToTest.split(":")
-                    return dataSegments.size == 2 // format "ab:TextData"
-                            && dataSegments[0].length == 2
-                            && isValidCoordinateValue(valueToTest[0])
-                            && isValidCoordinateValue(valueToTest[1])
-                            && valueToTest[2] == ':'
-                            && dataSegments[1].isNotEmpty()
-                }
-            },
-
-            Numerical {
-                override fun isValueValid(valueToTest: String): Boolean {
-                    return try {
-                        java.lang.Double.parseDouble(valueToTest)
-                        true
-                    } catch (e: NumberFormatException) {
-                        false
-                    }
-                }
-            };
+            fun load(parent: GameNode) {
+                val treeBuilder = GameTreeBuilder(gameModel, isLoadingDeferredNodes = true)
 
-            /*
-                Fields like "Comment" are purely textual, and have no format constraints,
-                so we don't list them here.
-             */
-
-            abstract fun isValueValid(valueToTest: String): Boolean
+                for (i in 0 until rangesSize step 2) {
+                    val tokenizer = SgfTokenizer(data, ranges[i], ranges[i + 1])
+                    val branchStack = Stack<SgfBranch>()
+                    branchStack.push(SgfBranch(parent, parent))
 
-            fun isValidCoordinateValue(value: Char): Boolean {
-                return SGF_COORDINATES.indexOf(value) >= 0
+                    try {
+                        parseGameTree(tokenizer, branchStack, gameModel, treeBuilder, data)
+                    } catch (e: GameParseException) {
+                        // The variation was checked to be complete when it was skipped,
+                        // this is only reached by malformed data within it
+                        throw IllegalStateException("Failed to load variation of move ${parent.moveNumber}", e)
+                    }
+                }
             }
         }
     }
@@ -725,263 +708,412 @@ internal class SgfFileFormatHandler : FileFormatHandler {
 
         internal const val SGF_EXPORTED_FILE_FORMAT_VERSION = 4
 
+        private const val ESCAPE = '\\'
+
         fun doExport(gameModel: GameModel, writer: BufferedWriter) {
-            exportBranch(gameModel, gameModel.getRootNode(), writer)
+            val nodeWriter = SgfNodeWriter(gameModel, writer)
+            exportTree(gameModel.getRootNode(), nodeWriter)
+            nodeWriter.flush()
         }
 
-        private fun exportBranch(gameModel: GameModel, branchStartNode: GameNode, writer: BufferedWriter) {
-            var currentNode = branchStartNode
-            var done = false
-            writer.write(DELIM_BRANCH_START.toString())
-            while (!done) {
-                exportNode(gameModel, currentNode, writer)
-
-                if (currentNode.hasAlternativeVariations()) {
-                    for (branchingChild in currentNode.getChildNodes()) {
-                        exportBranch(gameModel, branchingChild, writer)
+        /*
+         * Writes the tree in document order. Nodes with one child continue the current
+         * branch, nodes with multiple children open one branch per child. The stack holds
+         * the children that are yet to be written for each open branch point, so the depth
+         * of the tree is not limited by the call stack.
+         */
+        private fun exportTree(rootNode: GameNode, nodeWriter: SgfNodeWriter) {
+            val pendingBranches = ArrayDeque<Iterator<GameNode>>()
+            var currentNode: GameNode? = rootNode
+
+            nodeWriter.writeDelimiter(DELIM_BRANCH_START)
+
+            while (currentNode != null) {
+                nodeWriter.writeNode(currentNode)
+
+                val children = currentNode.getChildNodes()
+                currentNode = when {
+                    children.size == 1 -> children[0]
+                    children.size > 1 -> {
+                        val branches = children.iterator()
+                        pendingBranches.push(branches)
+                        nodeWriter.writeDelimiter(DELIM_BRANCH_START)
+                        branches.next()
                     }
-                    done = true
-                } else {
-                    if (!currentNode.isLastMoveInThisVariation()) {
-                        currentNode = currentNode.getChildNodeInMainBranch()!!
-                    } else {
-                        done = true
+                    else -> {
+                        // End of a variation, close every branch point that has no children left
+                        nodeWriter.writeDelimiter(DELIM_BRANCH_END)
+                        var nextBranch: GameNode? = null
+
+                        while (nextBranch == null && pendingBranches.isNotEmpty()) {
+                            val branches = pendingBranches.peek()
+                            if (branches.hasNext()) {
+                                nodeWriter.writeDelimiter(DELIM_BRANCH_START)
+                                nextBranch = branches.next()
+                            } else {
+                                pendingBranches.pop()
+                                nodeWriter.writeDelimiter(DELIM_BRANCH_END)
+                            }
+                        }
+
+                        nextBranch
                     }
                 }
             }
-            writer.write(DELIM_BRANCH_END.toString())
         }
 
-        private fun exportNode(gameModel: GameModel, currentNode: GameNode, writer: BufferedWriter) {
-            writer.write(DELIM_NODE_START.toString())
+        /*
+         * Writes the properties of each node straight to the output. The values of one
+         * property are collected in a buffer first, because the metadata of the node may
+         * add further values to the same property. All buffers are reused between nodes.
+         */
+        private class SgfNodeWriter(private val gameModel: GameModel, private val writer: BufferedWriter) {
 
-            val nodeData = ExportableNodeData()
+            private val output = CharArray(8 * 1024)
+            private var outputSize = 0
 
-            if (currentNode.isRoot()) {
-                mapRootNodeData(gameModel, nodeData)
-            }
+            private var propertyKey = ""
+            private var values = CharArray(256)
+            private var valuesSize = 0
+            private var valueEnds = IntArray(16)
+            private var valueCount = 0
 
-            mapPlayedMoveData(gameModel, currentNode, nodeData)
-            mapStoneEditData(currentNode, nodeData)
-            mapAnnotationData(currentNode, nodeData)
-            mapCommentData(currentNode, nodeData)
-            mapMetadata(currentNode, nodeData)
-            
-            nodeData.export(writer)
-        }
+            private val writtenKeys = HashSet<String>()
 
-        private fun mapMetadata(currentNode: GameNode, nodeData: ExportableNodeData) {
-            for (key in currentNode.getMetadataKeys()) {
-                val values = currentNode.getMetadataMultiValue(key)
+            fun writeNode(node: GameNode) {
+                writeDelimiter(DELIM_NODE_START)
+                writtenKeys.clear()
 
-                for (value in values) {
-                    if (!nodeData.contains(key, value)) {
-                        nodeData.append(key, value)
-                    }
+                if (node.isRoot()) {
+                    writeRootNodeData(node)
                 }
+
+                writePlayedMoveData(node)
+                writeStoneEditData(node)
+                writeAnnotationData(node)
+                writeCommentData(node)
+                writeMetadata(node)
             }
-        }
 
-        private fun mapRootNodeData(gameModel: GameModel, nodeData: ExportableNodeData) {
-            nodeData.put(SGF_GAME_TYPE, "1")
-            nodeData.put(SGF_FILE_FORMAT, SGF_EXPORTED_FILE_FORMAT_VERSION.toString())
+            fun writeDelimiter(delimiter: Char) {
+                if (outputSize == output.size) {
+                    flushOutput()
+                }
+                output[outputSize++] = delimiter
+            }
 
-            val appName = gameModel.info.getApplicationName()
-            if (appName.isNotBlank()) {
-                nodeData.put(SGF_APPLICATION, appName)
+            fun flush() {
+                flushOutput()
+                writer.flush()
             }
 
-            val boardSizeValue: String = if (gameModel.boardWidth == gameModel.boardHeight) {
-                gameModel.boardWidth.toString()
-            } else {
-                gameModel.boardWidth.toString() + DELIM_TAG_VALUE_SPLIT + gameModel.boardHeight.toString()
+            private fun writeRootNodeData(rootNode: GameNode) {
+                writeProperty(rootNode, SGF_GAME_TYPE, "1")
+                writeProperty(rootNode, SGF_FILE_FORMAT, SGF_EXPORTED_FILE_FORMAT_VERSION.toString())
+
+                val appName = gameModel.info.getApplicationName()
+                if (appName.isNotBlank()) {
+                    writeProperty(rootNode, SGF_APPLICATION, appName)
+                }
+
+                val boardSizeValue: String = if (gameModel.boardWidth == gameModel.boardHeight) {
+                    gameModel.boardWidth.toString()
+                } else {
+                    gameModel.boardWidth.toString() + DELIM_TAG_VALUE_SPLIT + gameModel.boardHeight.toString()
+                }
+                writeProperty(rootNode, SGF_BOARD_SIZE, boardSizeValue)
+                writeProperty(rootNode, SGF_KOMI, gameModel.info.getKomi().toString())
+                writeProperty(rootNode, SGF_RULESET, gameModel.rules.getInternalName())
+
+                if (gameModel.info.getHandicapCount() > 0) {
+                    writeProperty(rootNode, SGF_HANDICAP_COUNT, gameModel.info.getHandicapCount().toString())
+                }
             }
-            nodeData.put(SGF_BOARD_SIZE, boardSizeValue)
-            nodeData.put(SGF_KOMI, gameModel.info.getKomi().toString())
-            nodeData.put(SGF_RULESET, gameModel.rules.getInternalName())
 
-            if (gameModel.info.getHandicapCount() > 0) {
-                nodeData.put(SGF_HANDICAP_COUNT, gameModel.info.getHandicapCount().toString())
+            private fun writePlayedMoveData(node: GameNode) {
+                val moveType = node.getType()
+
+                if (moveType == GameNodeType.MOVE_PLAYED) {
+                    val move = node.getPrimaryMove()!!
+                    val key: String = when (val color = move.color) {
+                        StoneColor.BLACK -> SGF_BLACK_MOVE
+                        StoneColor.WHITE -> SGF_WHITE_MOVE
+                        else -> throw NotImplementedError("Unsupported stone color: $color")
+                    }
+
+                    beginProperty(key)
+                    appendCoordinates(move.x, move.y)
+                    endValue()
+                    endProperty(node)
+                } else if (moveType == GameNodeType.PASS) {
+                    val ruleset = gameModel.rules
+                    val key = when (val expectedColor =
+                            ruleset.getStoneColorForTurn(node.moveNumber-1, gameModel.info.getHandicapCount() > 0)) {
+                        StoneColor.BLACK -> SGF_BLACK_MOVE
+                        StoneColor.WHITE -> SGF_WHITE_MOVE
+                        else -> throw NotImplementedError("Unsupported stone color: $expectedColor")
+                    }
+
+                    beginProperty(key)
+                    endValue()
+                    endProperty(node)
+                }
             }
-        }
 
-        private fun mapAnnotationData(currentNode: GameNode, nodeData: ExportableNodeData) {
-            for (annotation in currentNode.getAnnotations()) {
-                @Suppress("ThrowableNotThrown") // Anticipating future additions
-                val key = when (annotation.type) {
-                    AnnotationType.CIRCLE -> SGF_MARKUP_CIRCLE
-                    AnnotationType.SQUARE -> SGF_MARKUP_SQUARE
-                    AnnotationType.TRIANGLE -> SGF_MARKUP_TRIANGLE
-                    AnnotationType.CROSS -> SGF_MARKUP_CROSS
-                    AnnotationType.LABEL -> SGF_MARKUP_LABEL
-                    AnnotationType.DIM -> SGF_MARKUP_DIM
-                    AnnotationType.ARROW -> SGF_MARKUP_ARROW
-                    AnnotationType.LINE -> SGF_MARKUP_LINE
-                    else -> throw NotImplementedError("Unimplemented annotation type for export: ${annotation.type}")
+            private fun writeStoneEditData(node: GameNode) {
+                val stoneEdits = node.getStoneEdits()
+                if (stoneEdits.isEmpty()) {
+                    return
                 }
 
-                when (annotation) {
-                    is Annotation.PointAnnotation -> {
-                        val x = annotation.x
-                        val y = annotation.y
-                        val coordinate = getSgfCoordinates(x, y)
-                        var data = coordinate
+                val primaryMove = node.getPrimaryMove()
+
+                for (color in STONE_EDIT_COLORS) {
+                    var propertyStarted = false
 
-                        if (annotation is Annotation.Label) {
-                            data += DELIM_TAG_VALUE_SPLIT + annotation.text
+                    for (stoneEdit in stoneEdits) {
+                        if (stoneEdit.color != color || stoneEdit == primaryMove) {
+                            continue
                         }
 
-                        nodeData.append(key, data)
-                    }
-                    is Annotation.DirectionalAnnotation -> {
-                        val xStart = annotation.x
-                        val yStart = annotation.y
-                        val xEnd = annotation.xEnd
-                        val yEnd = annotation.yEnd
-                        val coordinate = getSgfCoordinates(xStart, yStart) + DELIM_TAG_VALUE_SPLIT + getSgfCoordinates(xEnd, yEnd)
-
-                        nodeData.append(key, coordinate)
+                        if (!propertyStarted) {
+                            beginProperty(when (color) {
+                                StoneColor.BLACK -> SGF_ADD_BLACK
+                                StoneColor.WHITE -> SGF_ADD_WHITE
+                                StoneColor.NONE -> SGF_ADD_ERASE // Erase a stone from the position
+                            })
+                            propertyStarted = true
+                        }
+
+                        appendCoordinates(stoneEdit.x, stoneEdit.y)
+                        endValue()
                     }
-                    else -> {
-                        throw NotImplementedError("Unrecognised annotation type for export: " + annotation.javaClass)
+
+                    if (propertyStarted) {
+                        endProperty(node)
                     }
                 }
             }
-        }
 
-        private fun mapStoneEditData(currentNode: GameNode, nodeData: ExportableNodeData) {
-            for (stoneEdit in currentNode.getStoneEdits()) {
-                if (stoneEdit == currentNode.getPrimaryMove()) {
-                    continue
+            private fun writeAnnotationData(node: GameNode) {
+                val annotations = node.getAnnotations()
+                if (annotations.isEmpty()) {
+                    return
                 }
 
-                val color = stoneEdit.color
-                val x = stoneEdit.x
-                val y = stoneEdit.y
+                for (annotationType in EXPORTED_ANNOTATION_TYPES) {
+                    var propertyStarted = false
 
-                val key = when (color) {
-                    StoneColor.BLACK -> SGF_ADD_BLACK
-                    StoneColor.WHITE -> SGF_ADD_WHITE
-                    StoneColor.NONE -> SGF_ADD_ERASE // Erase a stone from the position
-                }
+                    for (annotation in annotations) {
+                        if (annotation.type != annotationType) {
+                            continue
+                        }
 
-                val coordinate = getSgfCoordinates(x, y)
-                nodeData.append(key, coordinate)
-            }
-        }
+                        if (!propertyStarted) {
+                            beginProperty(getAnnotationKey(annotationType))
+                            propertyStarted = true
+                        }
 
-        private fun mapPlayedMoveData(gameModel: GameModel, currentNode: GameNode, nodeData: ExportableNodeData) {
-            val moveType = currentNode.getType()
+                        when (annotation) {
+                            is Annotation.PointAnnotation -> {
+                                appendCoordinates(annotation.x, annotation.y)
 
-            if (moveType == GameNodeType.MOVE_PLAYED) {
-                currentNode.getPrimaryMove()!!.let {
-                    val coordinates = if (moveType == GameNodeType.MOVE_PLAYED) getSgfCoordinates(it) else ""
+                                if (annotation is Annotation.Label) {
+                                    appendValue(DELIM_TAG_VALUE_SPLIT)
+                                    appendValue(annotation.text)
+                                }
+                            }
+                            is Annotation.DirectionalAnnotation -> {
+                                appendCoordinates(annotation.x, annotation.y)
+                                appendValue(DELIM_TAG_VALUE_SPLIT)
+                                appendCoordinates(annotation.xEnd, annotation.yEnd)
+                            }
+                            else -> {
+                                throw NotImplementedError("Unrecognised annotation type for export: " + annotation.javaClass)
+                            }
+                        }
+                        endValue()
+                    }
 
-                    val key: String = when (val color = it.color) {
-                        StoneColor.BLACK -> SGF_BLACK_MOVE
-                        StoneColor.WHITE -> SGF_WHITE_MOVE
-                        else -> throw NotImplementedError("Unsupported stone color: $color")
+                    if (propertyStarted) {
+                        endProperty(node)
                     }
+                }
+            }
 
-                    nodeData.put(key, coordinates)
+            private fun getAnnotationKey(annotationType: AnnotationType): String {
+                return when (annotationType) {
+                    AnnotationType.CIRCLE -> SGF_MARKUP_CIRCLE
+                    AnnotationType.SQUARE -> SGF_MARKUP_SQUARE
+                    AnnotationType.TRIANGLE -> SGF_MARKUP_TRIANGLE
+                    AnnotationType.CROSS -> SGF_MARKUP_CROSS
+                    AnnotationType.LABEL -> SGF_MARKUP_LABEL
+                    AnnotationType.DIM -> SGF_MARKUP_DIM
+                    AnnotationType.ARROW -> SGF_MARKUP_ARROW
+                    AnnotationType.LINE -> SGF_MARKUP_LINE
+                    else -> throw NotImplementedError("Unimplemented annotation type for export: $annotationType")
                 }
-            } else if (moveType == GameNodeType.PASS) {
-                val ruleset = gameModel.rules
-                val key = when (val expectedColor =
-                        ruleset.getStoneColorForTurn(currentNode.moveNumber-1, gameModel.info.getHandicapCount() > 0)) {
-                    StoneColor.BLACK -> SGF_BLACK_MOVE
-                    StoneColor.WHITE -> SGF_WHITE_MOVE
-                    else -> throw NotImplementedError("Unsupported stone color: $expectedColor")
+            }
+
+            private fun writeCommentData(node: GameNode) {
+                val comments = node.getComments()
+
+                if (comments.isNotBlank()) {
+                    beginProperty(SGF_COMMENT)
+                    appendValue(comments)
+                    endValue()
+                    endProperty(node)
                 }
+            }
 
-                nodeData.put(key, "")
+            /*
+             * Writes the metadata of keys that have not been written as part of the
+             * data above.
+             */
+            private fun writeMetadata(node: GameNode) {
+                for (key in node.getMetadataKeys()) {
+                    if (!writtenKeys.contains(key)) {
+                        beginProperty(key)
+                        endProperty(node)
+                    }
+                }
             }
-        }
 
-        private fun mapCommentData(currentNode: GameNode, nodeData: ExportableNodeData) {
-            if (currentNode.getComments().isNotBlank()) {
-                nodeData.put(SGF_COMMENT, currentNode.getComments())
+            private fun writeProperty(node: GameNode, key: String, value: String) {
+                beginProperty(key)
+                appendValue(value)
+                endValue()
+                endProperty(node)
             }
-        }
 
+            private fun beginProperty(key: String) {
+                propertyKey = key
+                valuesSize = 0
+                valueCount = 0
+            }
 
+            private fun appendValue(char: Char) {
+                if (valuesSize == values.size) {
+                    values = values.copyOf(values.size * 2)
+                }
+                values[valuesSize++] = char
+            }
 
-        private fun writeDelimiter(delimiter: Char, writer: BufferedWriter) {
-            writer.write(delimiter.toString())
-        }
+            private fun appendValue(text: String) {
+                if (valuesSize + text.length > values.size) {
+                    values = values.copyOf(maxOf(values.size * 2, valuesSize + text.length))
+                }
+                text.toCharArray(values, valuesSize, 0, text.length)
+                valuesSize += text.length
+            }
 
-        private val reservedValueCharacters = arrayOf(DELIM_TAG_VALUE_END, DELIM_TAG_VALUE_START)
+            private fun appendCoordinates(x: Int, y: Int) {
+                if (x < 0 || y < 0 || x > SGF_COORDINATES.length - 1 || y > SGF_COORDINATES.length - 1) {
+                    throw IllegalArgumentException("Illegal SGF position: ($x, $y). Value should be between " +
+                            "0-${SGF_COORDINATES.length-1}")
+                }
+                appendValue(SGF_COORDINATES[x])
+                appendValue(SGF_COORDINATES[y])
+            }
 
-        private fun escapeDelimiters(value: String): String {
-            var result = value
-            for (reservedChar in reservedValueCharacters) {
-                result = result.replace(reservedChar.toString(), "\\$reservedChar", true)
+            private fun endValue() {
+                if (valueCount == valueEnds.size) {
+                    valueEnds = valueEnds.copyOf(valueEnds.size * 2)
+                }
+                valueEnds[valueCount++] = valuesSize
             }
-            return result
-        }
 
-        private fun getSgfCoordinates(move: Stone): String {
-            return getSgfCoordinates(move.x, move.y)
-        }
+            /*
+             * Adds the metadata values stored on the node under the same key which are not
+             * already part of the property, then writes the property if it has any values.
+             */
+            private fun endProperty(node: GameNode) {
+                for (metadataValue in node.getMetadataMultiValue(propertyKey)) {
+                    if (!containsValue(metadataValue)) {
+                        appendValue(metadataValue)
+                        endValue()
+                    }
+                }
 
-        private fun getSgfCoordinates(x: Int, y: Int): String {
-            if (x < 0 || y < 0 || x > SGF_COORDINATES.length - 1 || y > SGF_COORDINATES.length - 1) {
-                throw IllegalArgumentException("Illegal SGF position: ($x, $y). Value should be between " +
-                        "0-${SGF_COORDINATES.length-1}")
-            }
-            return SGF_COORDINATES[x].toString() + SGF_COORDINATES[y].toString()
-        }
+                writtenKeys.add(propertyKey)
 
-        private class ExportableNodeData {
+                if (valueCount == 0) {
+                    return
+                }
 
-            private val dataMap = HashMap<String, ArrayList<String>>()
+                writeText(propertyKey)
 
-            fun put(sgfTag: String, value: String) {
-                val singleValue = ArrayList<String>()
-                singleValue.add(value)
-                this.put(sgfTag, singleValue)
+                var valueStart = 0
+                for (i in 0 until valueCount) {
+                    val valueEnd = valueEnds[i]
+                    writeDelimiter(DELIM_TAG_VALUE_START)
+                    writeEscapedValue(valueStart, valueEnd)
+                    writeDelimiter(DELIM_TAG_VALUE_END)
+                    valueStart = valueEnd
+                }
             }
 
-            fun put(sgfTag: String, values: ArrayList<String>) {
-                dataMap[sgfTag] = values
-            }
+            private fun containsValue(value: String): Boolean {
+                var valueStart = 0
 
-            fun append(sgfTag: String, value: String) {
-                dataMap.putIfAbsent(sgfTag, ArrayList())
-                dataMap[sgfTag]!!.add(value)
-            }
+                for (i in 0 until valueCount) {
+                    val valueEnd = valueEnds[i]
 
-            fun contains(sgfTag: String, value: String?): Boolean {
-                return if (!dataMap.containsKey(sgfTag)) {
-                    false
-                } else if (value != null) {
-                    dataMap[sgfTag]!!.contains(value)
-                } else {
-                    return dataMap.containsKey(sgfTag)
+                    if (valueEnd - valueStart == value.length) {
+                        var matches = true
+                        for (j in value.indices) {
+                            if (values[valueStart + j] != value[j]) {
+                                matches = false
+                                break
+                            }
+                        }
+                        if (matches) {
+                            return true
+                        }
+                    }
+                    valueStart = valueEnd
                 }
-            }
 
-            fun export(writer: BufferedWriter) {
-                writeTags(dataMap, writer)
+                return false
             }
 
-            private fun writeTags(data: Map<String, List<String>>, writer: BufferedWriter) {
-                for (key in data.keys) {
-                    val value = data[key] ?: error("No value exists for key: $key")
-                    writeTag(key, value, writer)
+            private fun writeEscapedValue(start: Int, end: Int) {
+                for (i in start until end) {
+                    val char = values[i]
+
+                    if (outputSize + 2 > output.size) {
+                        flushOutput()
+                    }
+                    if (char == DELIM_TAG_VALUE_START || char == DELIM_TAG_VALUE_END) {
+                        output[outputSize++] = ESCAPE
+                    }
+                    output[outputSize++] = char
                 }
             }
 
-            private fun writeTag(tagKey: String, tagValues: List<String>, writer: BufferedWriter) {
-                assert(tagValues.isNotEmpty()) { "Cannot write empty values" }
-                writer.write(tagKey)
-                for (value in tagValues) {
-                    writeDelimiter(DELIM_TAG_VALUE_START, writer)
-                    val escapedValue = escapeDelimiters(value)
-                    writer.write(escapedValue)
-                    writeDelimiter(DELIM_TAG_VALUE_END, writer)
+            private fun writeText(text: String) {
+                if (outputSize + text.length > output.size) {
+                    flushOutput()
+                }
+                if (text.length > output.size) {
+                    writer.write(text)
+                    return
                 }
+                text.toCharArray(output, outputSize, 0, text.length)
+                outputSize += text.length
+            }
+
+            private fun flushOutput() {
+                writer.write(output, 0, outputSize)
+                outputSize = 0
             }
         }
+
+        private val STONE_EDIT_COLORS = arrayOf(StoneColor.BLACK, StoneColor.WHITE, StoneColor.NONE)
+
+        // Annotation types that are saved to file, in the order they are written
+        private val EXPORTED_ANNOTATION_TYPES = arrayOf(AnnotationType.CIRCLE, AnnotationType.SQUARE,
+                AnnotationType.TRIANGLE, AnnotationType.CROSS, AnnotationType.LABEL, AnnotationType.DIM,
+                AnnotationType.ARROW, AnnotationType.LINE)
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,334 @@
+package yi.core.go.docformat
+
+import yi.core.go.GameParseException
+import yi.core.go.docformat.SgfFileFormatHandler.Companion.DELIM_BRANCH_END
+import yi.core.go.docformat.SgfFileFormatHandler.Companion.DELIM_BRANCH_START
+import yi.core.go.docformat.SgfFileFormatHandler.Companion.DELIM_NODE_START
+import yi.core.go.docformat.SgfFileFormatHandler.Companion.DELIM_TAG_VALUE_END
+import yi.core.go.docformat.SgfFileFormatHandler.Companion.DELIM_TAG_VALUE_START
+import java.io.Reader
+
+/**
+ * Splits SGF data into a stream of tokens: branch delimiters, node delimiters and
+ * property values. The data is read from the reader in large blocks into one char buffer,
+ * and property values are reported as a range within that buffer so that no string is
+ * created unless the consumer asks for one.
+ *
+ * Usage: call [next] until it returns [Token.END]. After a [Token.PROPERTY_VALUE],
+ * [getPropertyKey] and the value accessors describe that value until the next call
+ * to [next]. A property with multiple values, such as AB[aa][bb], is reported as one
+ * [Token.PROPERTY_VALUE] per value, all with the same key.
+ *
+ * A value ends at the first ']' that is not directly preceded by a backslash. An escaped
+ * '\]' is read as ']', all other characters (including other backslashes) are kept as is.
+ *
+ * The tokenizer can also read a range of data that is already in memory, in which case
+ * [getPosition] is an offset into that data.
+ */
+internal class SgfTokenizer private constructor(private val reader: Reader?,
+                                                private var buffer: CharArray,
+                                                private var position: Int,
+                                                private var limit: Int,
+                                                private var endOfInput: Boolean) {
+
+    constructor(reader: Reader, bufferSize: Int = DEFAULT_BUFFER_SIZE)
+            : this(reader, CharArray(bufferSize.coerceAtLeast(MINIMUM_BUFFER_SIZE)), 0, 0, false)
+
+    /**
+     * Reads the characters of [data] from [start] up to [end].
+     */
+    constructor(data: CharArray, start: Int = 0, end: Int = data.size)
+            : this(null, data, start, end, true)
+
+    enum class Token {
+        BRANCH_START,
+        BRANCH_END,
+        NODE_START,
+        PROPERTY_VALUE,
+        END
+    }
+
+    // Start of the data that must be kept in the buffer when it is refilled, or -1
+    private var mark = -1
+
+    private var insideNode = false
+    private var propertyKey = ""
+    private var keyChars = CharArray(16)
+
+    private var valueStart = 0
+    private var valueEnd = 0
+    private var valueHasEscapes = false
+
+    /**
+     * Advances to the next token.
+     *
+     * @throws GameParseException If the input ends within a property value.
+     */
+    fun next(): Token {
+        while (true) {
+            if (position == limit && !fill()) {
+                return Token.END
+            }
+
+            val char = buffer[position]
+
+            when {
+                char == DELIM_BRANCH_START -> {
+                    ++position
+                    insideNode = false
+                    return Token.BRANCH_START
+                }
+                char == DELIM_BRANCH_END -> {
+                    ++position
+                    insideNode = false
+                    return Token.BRANCH_END
+                }
+                char == DELIM_NODE_START -> {
+                    ++position
+                    insideNode = true
+                    propertyKey = ""
+                    return Token.NODE_START
+                }
+                !insideNode || char.isWhitespace() -> {
+                    // Anything between branches and nodes carries no meaning
+                    ++position
+                }
+                char == DELIM_TAG_VALUE_START -> {
+                    ++position
+                    readValue()
+
+                    // A value without a key cannot be stored, skip it
+                    if (propertyKey.isNotEmpty()) {
+                        return Token.PROPERTY_VALUE
+                    }
+                }
+                else -> readKey()
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of a branch, positioned after its [Token.BRANCH_START], up to and
+     * including the matching [Token.BRANCH_END]. Nested branches are skipped along with it.
+     *
+     * @throws GameParseException If the input ends before the branch does.
+     */
+    fun skipBranch() {
+        var depth = 1
+        var insideValue = false
+        var previousWasEscape = false
+        insideNode = false
+
+        while (position < limit || fill()) {
+            val char = buffer[position++]
+
+            if (insideValue) {
+                if (char == DELIM_TAG_VALUE_END && !previousWasEscape) {
+                    insideValue = false
+                }
+                previousWasEscape = char == ESCAPE
+                continue
+            }
+
+            when (char) {
+                DELIM_BRANCH_START -> {
+                    ++depth
+                    insideNode = false
+                }
+                DELIM_BRANCH_END -> {
+                    insideNode = false
+                    if (--depth == 0) {
+                        return
+                    }
+                }
+                DELIM_NODE_START -> insideNode = true
+                DELIM_TAG_VALUE_START -> {
+                    if (insideNode) {
+                        insideValue = true
+                        previousWasEscape = false
+                    }
+                }
+            }
+        }
+
+        throw GameParseException("Premature end of file")
+    }
+
+    /**
+     * @return Position of the next character to be read within the buffer. For tokenizers
+     * reading data in memory, this is an offset into that data.
+     */
+    fun getPosition(): Int = position
+
+    /**
+     * @return Key of the current property value. Common keys are shared instances.
+     */
+    fun getPropertyKey(): String = propertyKey
+
+    /**
+     * @return Raw characters of the current property value including escape characters,
+     * valid between [getValueStart] and [getValueEnd] until the next call to [next].
+     */
+    fun getBuffer(): CharArray = buffer
+
+    fun getValueStart(): Int = valueStart
+
+    fun getValueEnd(): Int = valueEnd
+
+    fun getValueLength(): Int = valueEnd - valueStart
+
+    /**
+     * @param offset Number of characters to leave out from the start of the value.
+     * @return The current property value with escaped characters resolved.
+     */
+    fun getValue(offset: Int = 0): String {
+        val start = valueStart + offset
+        if (!valueHasEscapes) {
+            return String(buffer, start, valueEnd - start)
+        }
+
+        val result = StringBuilder(valueEnd - start)
+        for (i in start until valueEnd) {
+            val char = buffer[i]
+            if (char == ESCAPE && i + 1 < valueEnd && buffer[i + 1] == DELIM_TAG_VALUE_END) {
+                continue
+            }
+            result.append(char)
+        }
+        return result.toString()
+    }
+
+    /*
+     * Reads the characters of a property key up to its first value. Whitespace within
+     * the key is ignored.
+     */
+    private fun readKey() {
+        var length = 0
+
+        while (true) {
+            if (position == limit && !fill()) {
+                break
+            }
+
+            val char = buffer[position]
+            if (char == DELIM_TAG_VALUE_START || char == DELIM_NODE_START
+                    || char == DELIM_BRANCH_START || char == DELIM_BRANCH_END) {
+                break
+            }
+
+            if (!char.isWhitespace()) {
+                if (length == keyChars.size) {
+                    keyChars = keyChars.copyOf(length * 2)
+                }
+                keyChars[length++] = char
+            }
+            ++position
+        }
+
+        propertyKey = internKey(keyChars, length)
+    }
+
+    /*
+     * Reads a property value, positioned after its opening bracket.
+     */
+    private fun readValue() {
+        var previousWasEscape = false
+        valueHasEscapes = false
+        mark = position
+
+        while (true) {
+            if (position == limit && !fill()) {
+                mark = -1
+                throw GameParseException("Premature end of file")
+            }
+
+            val char = buffer[position]
+            if (char == DELIM_TAG_VALUE_END) {
+                if (!previousWasEscape) {
+                    break
+                }
+                valueHasEscapes = true
+            }
+
+            previousWasEscape = char == ESCAPE
+            ++position
+        }
+
+        valueStart = mark
+        valueEnd = position
+        mark = -1
+
+        // Skip the closing bracket
+        ++position
+    }
+
+    /*
+     * Reads more data into the buffer, keeping everything from the mark onwards.
+     *
+     * Returns false if there is no more data.
+     */
+    private fun fill(): Boolean {
+        if (endOfInput) {
+            return false
+        }
+
+        val keepFrom = if (mark >= 0) mark else position
+
+        if (keepFrom > 0) {
+            System.arraycopy(buffer, keepFrom, buffer, 0, limit - keepFrom)
+            limit -= keepFrom
+            position -= keepFrom
+            if (mark >= 0) {
+                mark -= keepFrom
+            }
+        } else if (limit == buffer.size) {
+            // A single value fills the entire buffer
+            buffer = buffer.copyOf(buffer.size * 2)
+        }
+
+        val read = reader!!.read(buffer, limit, buffer.size - limit)
+        if (read <= 0) {
+            endOfInput = true
+            return false
+        }
+
+        limit += read
+        return true
+    }
+
+    private companion object {
+        const val DEFAULT_BUFFER_SIZE = 64 * 1024
+        const val MINIMUM_BUFFER_SIZE = 16
+        const val ESCAPE = '\\'
+
+        // Shared instances of all one and two letter upper case keys, which covers every
+        // property defined by FF[4]
+        val COMMON_KEYS: Array<String> = Array(27 * 27) { index ->
+            val first = index / 27
+            val second = index % 27
+            when {
+                first == 0 -> ""
+                second == 0 -> ('A' + first - 1).toString()
+                else -> ('A' + first - 1).toString() + ('A' + second - 1)
+            }
+        }
+
+        fun internKey(chars: CharArray, length: Int): String {
+            if (length == 0) {
+                return ""
+            }
+
+            if (length <= 2) {
+                val first = chars[0]
+                val second = if (length == 2) chars[1] else null
+
+                if (first in 'A'..'Z' && (second == null || second in 'A'..'Z')) {
+                    val index = (first - 'A' + 1) * 27 + (if (second == null) 0 else second - 'A' + 1)
+                    return COMMON_KEYS[index]
+                }
+            }
+
+            return String(chars, 0, length)
+        }
+    }
+}
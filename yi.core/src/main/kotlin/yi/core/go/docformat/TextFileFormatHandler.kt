@@ -0,0 +1,66 @@
+package yi.core.go.docformat
+
+import yi.core.go.GameModel
+import java.io.BufferedReader
+import java.io.BufferedWriter
+import java.io.InputStream
+import java.io.OutputStream
+
+/**
+ * A [FileFormatHandler] for formats that store game data as text. Game data of these
+ * formats can also be read from a [String] through [yi.core.go.GameModelImporter.fromString].
+ *
+ * Streams of bytes are decoded and encoded as UTF-8 text.
+ */
+interface TextFileFormatHandler : FileFormatHandler {
+
+    /**
+     * Attempt to parse the specified file into a [GameModel], assuming the file is of this format.
+     *
+     * @apiNote Each format handler is a singleton accessible from [FileFormat],
+     * therefore operations must be designed to be stateless.
+     */
+    fun doImport(reader: BufferedReader): GameModel
+
+    override fun doImport(inputStream: InputStream): GameModel {
+        return inputStream.bufferedReader(Charsets.UTF_8).use { doImport(it) }
+    }
+
+    /**
+     * Parses every game stored in the text, in the same way as the [InputStream] version
+     * of this method. The reader is closed once all games have been read or when the
+     * collection is closed.
+     *
+     * The default implementation returns the single game parsed by [doImport].
+     *
+     * @apiNote Each format handler is a singleton accessible from [FileFormat],
+     * therefore operations must be designed to be stateless.
+     */
+    fun doImportCollection(reader: BufferedReader): GameCollection {
+        val games = sequence {
+            reader.use { yield(doImport(it)) }
+        }
+        return GameCollection(games.iterator(), reader)
+    }
+
+    override fun doImportCollection(inputStream: InputStream): GameCollection {
+        return doImportCollection(inputStream.bufferedReader(Charsets.UTF_8))
+    }
+
+    /**
+     * Saves the game model to the destination file, replacing the original file if it exists.
+     *
+     * This operation assumes that the write destination is available and has
+     * write access.
+     *
+     * @apiNote Each format handler is a singleton accessible from [FileFormat],
+     * therefore operations must be designed to be stateless.
+     */
+    fun doExport(gameModel: GameModel, writer: BufferedWriter)
+
+    override fun doExport(gameModel: GameModel, outputStream: OutputStream) {
+        val writer = outputStream.bufferedWriter(Charsets.UTF_8)
+        doExport(gameModel, writer)
+        writer.flush()
+    }
+}
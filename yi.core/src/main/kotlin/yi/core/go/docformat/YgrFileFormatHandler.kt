@@ -0,0 +1,788 @@
+package yi.core.go.docformat
+
+import yi.core.go.*
+import yi.core.go.Annotation
+import java.io.*
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.*
+import kotlin.collections.ArrayList
+import kotlin.collections.HashMap
+import kotlin.collections.HashSet
+
+/**
+ * Reads and writes game models in the Yi game record format (YGR), a compact binary
+ * format intended for storing large numbers of game records locally. Every piece of
+ * node data that survives an SGF round trip is preserved, including the metadata kept
+ * through [GameNode.putMetadata].
+ *
+ * All numbers are stored big-endian. The file begins with a header:
+ *
+ *  - Magic bytes "YiGR", followed by the format version and a reserved short.
+ *  - Board width, board height and the number of nodes in the game tree.
+ *  - The empty position hash of the [GameStateHasher] that produced the stored state
+ *    hashes, used to tell whether they can be used as they are.
+ *  - An offset table with the absolute position and length of every section.
+ *
+ * The sections that follow are:
+ *
+ *  - [SECTION_STRINGS]: every metadata key, stored once and referred to by its index.
+ *  - [SECTION_GAME_INFO]: ruleset, komi, handicap, application and player information.
+ *  - [SECTION_PARENTS], [SECTION_TYPES], [SECTION_MOVES] and [SECTION_STATE_HASHES]:
+ *    one fixed-size entry per node, in document order (each node is followed by its
+ *    descendants, children in order). The root has no parent, indicated by -1.
+ *  - [SECTION_NODE_DATA_OFFSETS]: position of each node's record in [SECTION_NODE_DATA],
+ *    or -1 for nodes without captures, stone edits, annotations, comments or metadata.
+ *  - [SECTION_NODE_DATA]: the variable-length records of those nodes.
+ *
+ * Within the string table and the node records, counts, lengths and co-ordinates are
+ * stored as variable-length integers (7 bits per byte, least significant group first),
+ * and stones as their board position followed by two bits for the color.
+ *
+ * Because every section is located through the offset table, files are memory-mapped
+ * and the node columns read directly from the mapped buffer. A lazy import reads only the
+ * main branch of each variation, and finds the nodes of the other variations through the
+ * parent column once they are accessed.
+ */
+internal class YgrFileFormatHandler : FileFormatHandler {
+
+    override fun getUserFriendlyName(): String {
+        return "yi game record"
+    }
+
+    override fun getAbbreviatedName(): String {
+        return "ygr"
+    }
+
+    override fun getSupportedFileNameExtensions(): Set<String> {
+        return setOf("ygr")
+    }
+
+    override fun isLikelyLoadable(reader: BufferedReader): Boolean {
+        val charArray = CharArray(MAGIC.length)
+        val read = reader.read(charArray, 0, charArray.size)
+        return read == MAGIC.length && String(charArray) == MAGIC
+    }
+
+    override fun doImport(inputStream: InputStream): GameModel {
+        val data = inputStream.use { it.readBytes() }
+        return YgrImporter.doImport(ByteBuffer.wrap(data))
+    }
+
+    override fun doImport(filePath: Path): GameModel {
+        FileChannel.open(filePath, StandardOpenOption.READ).use { channel ->
+            val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            return YgrImporter.doImport(buffer)
+        }
+    }
+
+    override fun doImportLazily(filePath: Path): GameModel {
+        // The data is kept until every variation is loaded. It is read into memory rather
+        // than mapped so that the file is not held open, and can still be saved over.
+        return YgrImporter.doImport(ByteBuffer.wrap(Files.readAllBytes(filePath)), lazily = true)
+    }
+
+    override fun doExport(gameModel: GameModel, outputStream: OutputStream) {
+        YgrExporter.doExport(gameModel, outputStream)
+    }
+
+    companion object {
+        internal const val MAGIC = "YiGR"
+        internal const val FORMAT_VERSION: Short = 1
+
+        internal const val SECTION_STRINGS = 0
+        internal const val SECTION_GAME_INFO = 1
+        internal const val SECTION_PARENTS = 2
+        internal const val SECTION_TYPES = 3
+        internal const val SECTION_MOVES = 4
+        internal const val SECTION_STATE_HASHES = 5
+        internal const val SECTION_NODE_DATA_OFFSETS = 6
+        internal const val SECTION_NODE_DATA = 7
+        internal const val SECTION_COUNT = 8
+
+        // Magic, version, reserved, width, height, node count, empty position hash and
+        // the offset table (section count, then offset and length of each section)
+        internal const val HEADER_SIZE = 4 + 2 + 2 + 4 + 4 + 4 + 8 + 4 + SECTION_COUNT * 8
+
+        // Sections start on an 8-byte boundary so that columns stay aligned when mapped
+        private const val SECTION_ALIGNMENT = 8
+
+        private const val NO_PARENT = -1
+        private const val NO_MOVE = -1
+        private const val NO_NODE_DATA = -1
+        private const val NO_NODE = -1
+
+        private val MAGIC_BYTES = MAGIC.toByteArray(Charsets.US_ASCII)
+        private val NODE_TYPES = GameNodeType.values()
+        private val STONE_COLORS = StoneColor.values()
+        private val ANNOTATION_TYPES = AnnotationType.values()
+
+        /*
+         * Packs a stone into one int: the color in the top byte, followed by 12 bits each
+         * for the y and x co-ordinates.
+         */
+        private fun encodeStone(stone: Stone): Int {
+            return (stone.color.ordinal shl 24) or (stone.y shl 12) or stone.x
+        }
+
+        private fun decodeStone(value: Int): Stone {
+            return Stone(value and 0xFFF, (value shr 12) and 0xFFF, getStoneColor(value ushr 24))
+        }
+
+        /*
+         * Packs a stone in the node data, where most stones fit in two bytes.
+         */
+        private fun packStone(stone: Stone, boardWidth: Int): Int {
+            return (stone.getPosition(boardWidth) shl 2) or stone.color.ordinal
+        }
+
+        private fun unpackStone(value: Int, boardWidth: Int): Stone {
+            val position = value ushr 2
+            return Stone(position % boardWidth, position / boardWidth, getStoneColor(value and 0x3))
+        }
+
+        private fun getStoneColor(colorIndex: Int): StoneColor {
+            if (colorIndex >= STONE_COLORS.size) {
+                throw GameParseException("Invalid stone color: $colorIndex")
+            }
+            return STONE_COLORS[colorIndex]
+        }
+    }
+
+    /*
+     * Writes each section into its own buffer first, so that the offset table can be
+     * filled in before anything is written to the output stream.
+     */
+    private object YgrExporter {
+
+        fun doExport(gameModel: GameModel, outputStream: OutputStream) {
+            val nodes = collectNodesInDocumentOrder(gameModel.getRootNode())
+            val nodeCount = nodes.size
+
+            val nodeIndices = IdentityHashMap<GameNode, Int>(nodeCount * 2)
+            for (i in 0 until nodeCount) {
+                nodeIndices[nodes[i]] = i
+            }
+
+            val parents = SectionWriter(nodeCount * 4)
+            val types = SectionWriter(nodeCount)
+            val moves = SectionWriter(nodeCount * 4)
+            val stateHashes = SectionWriter(nodeCount * 8)
+            val nodeDataOffsets = SectionWriter(nodeCount * 4)
+            val nodeData = SectionWriter(DEFAULT_BUFFER_SIZE)
+            val strings = StringTable()
+
+            for (node in nodes) {
+                parents.writeInt(node.parent?.let { nodeIndices.getValue(it) } ?: NO_PARENT)
+                types.writeByte(node.getType().ordinal)
+                moves.writeInt(node.getPrimaryMove()?.let { encodeStone(it) } ?: NO_MOVE)
+                stateHashes.writeLong(node.getStateHash())
+
+                if (hasNodeData(node)) {
+                    nodeDataOffsets.writeInt(nodeData.size())
+                    writeNodeData(node, gameModel.boardWidth, nodeData, strings)
+                } else {
+                    nodeDataOffsets.writeInt(NO_NODE_DATA)
+                }
+            }
+
+            val gameInfo = SectionWriter(256)
+            writeGameInfo(gameModel, gameInfo)
+
+            val sections = arrayOfNulls<SectionWriter>(SECTION_COUNT)
+            sections[SECTION_STRINGS] = strings.toSection()
+            sections[SECTION_GAME_INFO] = gameInfo
+            sections[SECTION_PARENTS] = parents
+            sections[SECTION_TYPES] = types
+            sections[SECTION_MOVES] = moves
+            sections[SECTION_STATE_HASHES] = stateHashes
+            sections[SECTION_NODE_DATA_OFFSETS] = nodeDataOffsets
+            sections[SECTION_NODE_DATA] = nodeData
+
+            val header = SectionWriter(HEADER_SIZE)
+            header.write(MAGIC_BYTES)
+            header.writeShort(FORMAT_VERSION.toInt())
+            header.writeShort(0)
+            header.writeInt(gameModel.boardWidth)
+            header.writeInt(gameModel.boardHeight)
+            header.writeInt(nodeCount)
+            header.writeLong(gameModel.stateHasher.computeEmptyPositionHash(gameModel.boardWidth, gameModel.boardHeight))
+            header.writeInt(SECTION_COUNT)
+
+            var offset = align(HEADER_SIZE)
+            for (section in sections) {
+                header.writeInt(offset)
+                header.writeInt(section!!.size())
+                offset = align(offset + section.size())
+            }
+
+            val output = BufferedOutputStream(outputStream)
+            var written = header.writeTo(output)
+            for (section in sections) {
+                written = writePadding(output, written)
+                written += section!!.writeTo(output)
+            }
+            output.flush()
+        }
+
+        /*
+         * Lists every node such that each node is followed by all of its descendants.
+         * Children are pushed in reverse so that they are visited in order.
+         */
+        private fun collectNodesInDocumentOrder(rootNode: GameNode): ArrayList<GameNode> {
+            val nodes = ArrayList<GameNode>()
+            val stack = ArrayDeque<GameNode>()
+            stack.push(rootNode)
+
+            while (stack.isNotEmpty()) {
+                val node = stack.pop()
+                nodes.add(node)
+
+                val children = node.children
+                for (i in children.size - 1 downTo 0) {
+                    stack.push(children[i])
+                }
+            }
+
+            return nodes
+        }
+
+        private fun hasNodeData(node: GameNode): Boolean {
+            val delta = node.delta
+            val primaryMoveOnly = delta.stoneEdits.size == 1 && delta.primaryMove != null
+
+            return delta.captures.isNotEmpty()
+                    || (delta.stoneEdits.isNotEmpty() && !primaryMoveOnly)
+                    || delta.annotations.isNotEmpty()
+                    || delta.comments.isNotEmpty()
+                    || delta.metadata.isNotEmpty()
+        }
+
+        private fun writeNodeData(node: GameNode, boardWidth: Int, output: SectionWriter, strings: StringTable) {
+            val delta = node.delta
+
+            output.writeVarInt(delta.captures.size)
+            for (capture in delta.captures) {
+                output.writeVarInt(packStone(capture, boardWidth))
+            }
+
+            // The primary move is already stored in its own column
+            val primaryMove = delta.primaryMove
+            val stoneEditCount = delta.stoneEdits.size - if (primaryMove != null && delta.stoneEdits.contains(primaryMove)) 1 else 0
+            output.writeVarInt(stoneEditCount)
+            for (stoneEdit in delta.stoneEdits) {
+                if (stoneEdit != primaryMove) {
+                    output.writeVarInt(packStone(stoneEdit, boardWidth))
+                }
+            }
+
+            output.writeVarInt(delta.annotations.size)
+            for (annotation in delta.annotations) {
+                output.writeByte(annotation.type.ordinal)
+                output.writeVarInt(annotation.x)
+                output.writeVarInt(annotation.y)
+
+                if (annotation is Annotation.DirectionalAnnotation) {
+                    output.writeVarInt(annotation.xEnd)
+                    output.writeVarInt(annotation.yEnd)
+                } else if (annotation is Annotation.Label) {
+                    output.writeString(annotation.text)
+                }
+            }
+
+            output.writeString(delta.comments)
+
+            output.writeVarInt(delta.metadata.size)
+            for ((key, values) in delta.metadata) {
+                output.writeVarInt(strings.indexOf(key))
+                output.writeVarInt(values.size)
+                for (value in values) {
+                    output.writeString(value)
+                }
+            }
+        }
+
+        private fun writeGameInfo(gameModel: GameModel, output: SectionWriter) {
+            val info = gameModel.info
+
+            output.writeString(gameModel.rules.getInternalName())
+            output.writeFloat(info.getKomi())
+            output.writeInt(info.getHandicapCount())
+            output.writeString(info.getApplicationName())
+            output.writeString(info.getPlayerBlackName())
+            output.writeString(info.getPlayerBlackRank())
+            output.writeString(info.getPlayerWhiteName())
+            output.writeString(info.getPlayerWhiteRank())
+        }
+
+        private fun writePadding(output: OutputStream, written: Int): Int {
+            val padding = align(written) - written
+            for (i in 0 until padding) {
+                output.write(0)
+            }
+            return written + padding
+        }
+
+        private fun align(offset: Int): Int {
+            return (offset + SECTION_ALIGNMENT - 1) / SECTION_ALIGNMENT * SECTION_ALIGNMENT
+        }
+    }
+
+    /*
+     * Growable byte buffer for one section of the file.
+     */
+    private class SectionWriter(initialCapacity: Int) {
+
+        private val bytes = object : ByteArrayOutputStream(maxOf(initialCapacity, 16)) {
+            fun copyTo(output: OutputStream): Int {
+                output.write(buf, 0, count)
+                return count
+            }
+        }
+        private val data = DataOutputStream(bytes)
+
+        fun size(): Int = bytes.size()
+
+        fun write(value: ByteArray) = data.write(value)
+        fun writeByte(value: Int) = data.writeByte(value)
+        fun writeShort(value: Int) = data.writeShort(value)
+        fun writeInt(value: Int) = data.writeInt(value)
+        fun writeLong(value: Long) = data.writeLong(value)
+        fun writeFloat(value: Float) = data.writeFloat(value)
+
+        fun writeVarInt(value: Int) {
+            var remaining = value
+            while (remaining and 0x7F.inv() != 0) {
+                data.writeByte((remaining and 0x7F) or 0x80)
+                remaining = remaining ushr 7
+            }
+            data.writeByte(remaining)
+        }
+
+        fun writeString(value: String) {
+            val encoded = value.toByteArray(Charsets.UTF_8)
+            writeVarInt(encoded.size)
+            data.write(encoded)
+        }
+
+        fun writeTo(output: OutputStream): Int = bytes.copyTo(output)
+    }
+
+    /*
+     * Interns metadata keys so that each key is only stored once per file.
+     */
+    private class StringTable {
+
+        private val indices = HashMap<String, Int>()
+        private val values = ArrayList<String>()
+
+        fun indexOf(value: String): Int {
+            return indices.getOrPut(value) {
+                values.add(value)
+                values.size - 1
+            }
+        }
+
+        fun toSection(): SectionWriter {
+            val section = SectionWriter(values.size * 8 + 4)
+            section.writeVarInt(values.size)
+            values.forEach { section.writeString(it) }
+            return section
+        }
+    }
+
+    private object YgrImporter {
+
+        fun doImport(buffer: ByteBuffer, lazily: Boolean = false): GameModel {
+            try {
+                return YgrReader(buffer.duplicate()).read(lazily)
+            } catch (e: BufferUnderflowException) {
+                throw GameParseException("Unexpected end of game record data", e)
+            } catch (e: IndexOutOfBoundsException) {
+                throw GameParseException("Game record data is corrupted", e)
+            }
+        }
+    }
+
+    /*
+     * Reads one game record from a buffer. Sections are read using absolute positions
+     * taken from the offset table, so the buffer is never scanned from start to end.
+     *
+     * When reading lazily, the reader is kept by the nodes whose variations are deferred
+     * and reads them from the same buffer once they are accessed.
+     */
+    private class YgrReader(private val buffer: ByteBuffer) {
+
+        private val sectionOffsets = IntArray(SECTION_COUNT)
+        private val sectionLengths = IntArray(SECTION_COUNT)
+        private lateinit var strings: Array<String>
+
+        private lateinit var gameModel: GameModel
+        private var useStoredStateHashes = false
+
+        // Index of the next sibling of every node, only used when reading lazily
+        private lateinit var nextSiblings: IntArray
+
+        fun read(lazily: Boolean): GameModel {
+            val magic = ByteArray(MAGIC_BYTES.size)
+            buffer.position(0)
+            buffer.get(magic)
+            if (!magic.contentEquals(MAGIC_BYTES)) {
+                throw GameParseException("Not a Yi game record")
+            }
+
+            val version = buffer.short
+            if (version < 1 || version > FORMAT_VERSION) {
+                throw GameParseException("Unsupported game record version: $version")
+            }
+            buffer.short // Reserved
+
+            val width = buffer.int
+            val height = buffer.int
+            val nodeCount = buffer.int
+            val storedEmptyPositionHash = buffer.long
+
+            if (width < 1 || height < 1 || width > 0xFFF || height > 0xFFF) {
+                throw GameParseException("Invalid board size values: $width x $height")
+            }
+            if (nodeCount < 1) {
+                throw GameParseException("Game record has no root node")
+            }
+
+            readOffsetTable()
+            strings = readStrings()
+
+            gameModel = createGameModel(width, height)
+            val emptyPositionHash = gameModel.stateHasher.computeEmptyPositionHash(width, height)
+            useStoredStateHashes = storedEmptyPositionHash == emptyPositionHash
+
+            checkColumnLength(SECTION_PARENTS, nodeCount, 4)
+            checkColumnLength(SECTION_TYPES, nodeCount, 1)
+            checkColumnLength(SECTION_MOVES, nodeCount, 4)
+            checkColumnLength(SECTION_STATE_HASHES, nodeCount, 8)
+            checkColumnLength(SECTION_NODE_DATA_OFFSETS, nodeCount, 4)
+
+            if (lazily) {
+                readNodesLazily(nodeCount)
+            } else {
+                readNodes(nodeCount)
+            }
+
+            return gameModel
+        }
+
+        private fun readOffsetTable() {
+            val sectionCount = buffer.int
+            if (sectionCount < SECTION_COUNT) {
+                throw GameParseException("Game record is missing sections")
+            }
+
+            // Later versions may append sections we do not know about, skip them
+            for (section in 0 until sectionCount) {
+                val offset = buffer.int
+                val length = buffer.int
+                if (offset < 0 || length < 0 || offset.toLong() + length > buffer.limit()) {
+                    throw GameParseException("Game record section $section is out of bounds")
+                }
+                if (section < SECTION_COUNT) {
+                    sectionOffsets[section] = offset
+                    sectionLengths[section] = length
+                }
+            }
+        }
+
+        private fun readStrings(): Array<String> {
+            buffer.position(sectionOffsets[SECTION_STRINGS])
+            val count = readVarInt()
+            if (count < 0 || count > buffer.remaining()) {
+                throw GameParseException("Invalid string table size: $count")
+            }
+            return Array(count) { readString() }
+        }
+
+        private fun createGameModel(width: Int, height: Int): GameModel {
+            buffer.position(sectionOffsets[SECTION_GAME_INFO])
+
+            val ruleset = readString()
+            val gameRules = StandardGameRules.parse(ruleset).orElse(StandardGameRules.CHINESE)
+            val gameModel = GameModel(width, height, gameRules)
+
+            val info = gameModel.info
+            info.setKomi(buffer.float)
+            info.setHandicapCount(buffer.int)
+            info.setApplicationName(readString())
+            info.setPlayerBlackName(readString())
+            info.setPlayerBlackRank(readString())
+            info.setPlayerWhiteName(readString())
+            info.setPlayerWhiteRank(readString())
+
+            return gameModel
+        }
+
+        private fun readNodes(nodeCount: Int) {
+            val nodes = arrayOfNulls<GameNode>(nodeCount)
+
+            for (i in 0 until nodeCount) {
+                // Nodes are stored in document order, so the parent is always read first
+                val parent = if (i == 0) null else nodes[getParentIndex(i)]!!
+                nodes[i] = readNode(i, parent)
+            }
+        }
+
+        /*
+         * Reads the first child of every node that is read, which is the main branch of
+         * the variation. The other children of a node are read once they are accessed,
+         * through GameNode.deferredChildren.
+         *
+         * In document order the first child of a node is always the node after it. The
+         * other children are found from the next sibling of each node, which is worked
+         * out up front from the parent column without reading any node.
+         */
+        private fun readNodesLazily(nodeCount: Int) {
+            nextSiblings = IntArray(nodeCount) { NO_NODE }
+            val lastChildren = IntArray(nodeCount) { NO_NODE }
+
+            for (i in 1 until nodeCount) {
+                val parentIndex = getParentIndex(i)
+                val previousSibling = lastChildren[parentIndex]
+                if (previousSibling != NO_NODE) {
+                    nextSiblings[previousSibling] = i
+                }
+                lastChildren[parentIndex] = i
+            }
+
+            readBranch(0, null)
+        }
+
+        /*
+         * Reads the node at the index and its descendants along the first child of each,
+         * deferring the other children of every node read.
+         */
+        private fun readBranch(index: Int, parent: GameNode?) {
+            var nodeIndex = index
+            var node = readNode(index, parent)
+
+            while (true) {
+                val firstChild = nodeIndex + 1
+                if (firstChild >= nextSiblings.size || getParentIndex(firstChild) != nodeIndex) {
+                    break
+                }
+
+                val child = readNode(firstChild, node)
+
+                // Only set once the first child is appended, appending to the children of
+                // the node would load its deferred children first
+                if (nextSiblings[firstChild] != NO_NODE) {
+                    node.deferVariations(gameModel) { loadVariations(it, firstChild) }
+                }
+
+                nodeIndex = firstChild
+                node = child
+            }
+        }
+
+        private fun loadVariations(parent: GameNode, firstChild: Int) {
+            try {
+                var child = nextSiblings[firstChild]
+                while (child != NO_NODE) {
+                    readBranch(child, parent)
+                    child = nextSiblings[child]
+                }
+            } catch (e: GameParseException) {
+                throw IllegalStateException("Failed to load variation of move ${parent.moveNumber}", e)
+            } catch (e: BufferUnderflowException) {
+                throw IllegalStateException("Failed to load variation of move ${parent.moveNumber}", e)
+            } catch (e: IndexOutOfBoundsException) {
+                throw IllegalStateException("Failed to load variation of move ${parent.moveNumber}", e)
+            }
+        }
+
+        private fun getParentIndex(index: Int): Int {
+            val parentIndex = buffer.getInt(sectionOffsets[SECTION_PARENTS] + index * 4)
+            if (index == 0) {
+                if (parentIndex != NO_PARENT) {
+                    throw GameParseException("First node of the game record is not a root node")
+                }
+            } else if (parentIndex < 0 || parentIndex >= index) {
+                throw GameParseException("Invalid parent for node $index: $parentIndex")
+            }
+            return parentIndex
+        }
+
+        /*
+         * Reads one node and appends it to the parent, or sets it as the root node if there
+         * is no parent.
+         */
+        private fun readNode(index: Int, parent: GameNode?): GameNode {
+            val typeIndex = buffer.get(sectionOffsets[SECTION_TYPES] + index).toInt()
+            if (typeIndex < 0 || typeIndex >= NODE_TYPES.size) {
+                throw GameParseException("Invalid node type: $typeIndex")
+            }
+            val type = NODE_TYPES[typeIndex]
+            val encodedMove = buffer.getInt(sectionOffsets[SECTION_MOVES] + index * 4)
+            val primaryMove = if (encodedMove == NO_MOVE) null else decodeStone(encodedMove)
+
+            val captures = HashSet<Stone>()
+            val stoneEdits = HashSet<Stone>()
+            val annotations = HashSet<Annotation>()
+            val nodeDataOffset = buffer.getInt(sectionOffsets[SECTION_NODE_DATA_OFFSETS] + index * 4)
+
+            if (nodeDataOffset != NO_NODE_DATA) {
+                if (nodeDataOffset < 0 || nodeDataOffset >= sectionLengths[SECTION_NODE_DATA]) {
+                    throw GameParseException("Node data of node $index is out of bounds")
+                }
+                buffer.position(sectionOffsets[SECTION_NODE_DATA] + nodeDataOffset)
+                readStones(captures, gameModel.boardWidth)
+                readStones(stoneEdits, gameModel.boardWidth)
+                readAnnotations(annotations)
+            }
+
+            val delta = StateDelta(type, primaryMove, captures, 0L, stoneEdits, annotations)
+            if (nodeDataOffset != NO_NODE_DATA) {
+                delta.comments = readString()
+                readMetadata(delta.metadata)
+            }
+
+            val node = GameNode(delta)
+
+            if (parent == null) {
+                if (type != GameNodeType.ROOT) {
+                    throw GameParseException("First node of the game record is not a root node")
+                }
+            } else {
+                if (type == GameNodeType.ROOT) {
+                    throw GameParseException("Invalid root node at $index")
+                }
+                gameModel.gameTree.appendNode(parent, node)
+            }
+
+            delta.stateHash = if (useStoredStateHashes) {
+                buffer.getLong(sectionOffsets[SECTION_STATE_HASHES] + index * 8)
+            } else {
+                computeStateHash(node, gameModel.stateHasher, gameModel)
+            }
+
+            if (parent == null) {
+                // The root becomes the current node, its state hash must be known by then
+                gameModel._setRootNode(node)
+            }
+
+            return node
+        }
+
+        /*
+         * State hashes are only comparable when produced by the same hasher. If the hasher
+         * of the new model differs from the one that wrote the file, the hashes are derived
+         * again from the parent in the same way the node was originally created.
+         */
+        private fun computeStateHash(node: GameNode, stateHasher: GameStateHasher, gameModel: GameModel): Long {
+            val delta = node.delta
+            val parent = node.parent
+                    ?: return stateHasher.computeUpdateHash(
+                            stateHasher.computeEmptyPositionHash(gameModel.boardWidth, gameModel.boardHeight),
+                            delta.stoneEdits)
+
+            val parentHash = parent.getStateHash()
+            val primaryMove = delta.primaryMove
+
+            if (primaryMove == null || delta.stoneEdits.size > 1) {
+                // Nodes with stone edits are hashed from their edits alone, see GameNode.addStoneEdits()
+                return if (delta.stoneEdits.isEmpty()) parentHash
+                       else stateHasher.computeUpdateHash(parentHash, delta.stoneEdits)
+            }
+
+            // A suicidal move captures itself, in which case only the captures change the position
+            val stoneUpdates = HashSet<Stone>(delta.captures)
+            val moveIsSuicidal = delta.captures.any { it.x == primaryMove.x && it.y == primaryMove.y }
+            if (!moveIsSuicidal) {
+                stoneUpdates.add(primaryMove)
+            }
+            return stateHasher.computeUpdateHash(parentHash, stoneUpdates)
+        }
+
+        private fun readStones(stones: MutableSet<Stone>, boardWidth: Int) {
+            val count = readVarInt()
+            for (i in 0 until count) {
+                stones.add(unpackStone(readVarInt(), boardWidth))
+            }
+        }
+
+        private fun readAnnotations(annotations: MutableSet<Annotation>) {
+            val count = readVarInt()
+            for (i in 0 until count) {
+                val typeIndex = buffer.get().toInt()
+                if (typeIndex < 0 || typeIndex >= ANNOTATION_TYPES.size) {
+                    throw GameParseException("Invalid annotation type: $typeIndex")
+                }
+                val type = ANNOTATION_TYPES[typeIndex]
+                val x = readVarInt()
+                val y = readVarInt()
+                var xEnd = -1
+                var yEnd = -1
+                var text = ""
+
+                if (AnnotationType.isDirectionalAnnotation(type)) {
+                    xEnd = readVarInt()
+                    yEnd = readVarInt()
+                } else if (type == AnnotationType.LABEL) {
+                    text = readString()
+                }
+
+                annotations.add(Annotation.createFromType(type, x, y, xEnd, yEnd, text))
+            }
+        }
+
+        private fun readMetadata(metadata: MutableMap<String, List<String>>) {
+            val count = readVarInt()
+            for (i in 0 until count) {
+                val keyIndex = readVarInt()
+                if (keyIndex < 0 || keyIndex >= strings.size) {
+                    throw GameParseException("Invalid metadata key index: $keyIndex")
+                }
+                val valueCount = readVarInt()
+                if (valueCount < 0 || valueCount > buffer.remaining()) {
+                    throw GameParseException("Invalid metadata value count: $valueCount")
+                }
+                val values = ArrayList<String>(valueCount)
+                for (j in 0 until valueCount) {
+                    values.add(readString())
+                }
+                metadata[strings[keyIndex]] = values
+            }
+        }
+
+        private fun readVarInt(): Int {
+            var value = 0
+            var shift = 0
+            while (shift < 32) {
+                val byte = buffer.get().toInt()
+                value = value or ((byte and 0x7F) shl shift)
+                if (byte and 0x80 == 0) {
+                    return value
+                }
+                shift += 7
+            }
+            throw GameParseException("Malformed variable-length integer")
+        }
+
+        private fun readString(): String {
+            val length = readVarInt()
+            if (length < 0 || length > buffer.remaining()) {
+                throw GameParseException("Invalid string length: $length")
+            }
+            val bytes = ByteArray(length)
+            buffer.get(bytes)
+            return String(bytes, Charsets.UTF_8)
+        }
+
+        private fun checkColumnLength(section: Int, nodeCount: Int, entrySize: Int) {
+            if (sectionLengths[section].toLong() < nodeCount.toLong() * entrySize) {
+                throw GameParseException("Game record section $section is too short for $nodeCount nodes")
+            }
+        }
+    }
+}
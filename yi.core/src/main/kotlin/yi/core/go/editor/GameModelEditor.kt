@@ -148,6 +148,19 @@ class GameModelEditor(private val model: GameModel) {
         return MoveSubmitResult(MoveValidationResult.OK, newNode, true)
     }
 
+    /**
+     * Returns a builder to append a large number of nodes to the game tree without rule
+     * validation, such as when constructing the tree from a game file. Unlike
+     * [addMoveWithoutValidation], the cost of appending a node does not grow with its
+     * depth in the tree. The current node is not changed.
+     *
+     * @see GameTreeBuilder
+     */
+    internal fun beginBulkConstruction(): GameTreeBuilder {
+        checkModelEditable()
+        return GameTreeBuilder(model)
+    }
+
     /**
      * Play a pass for the next turn.
      */
@@ -249,6 +262,7 @@ class GameModelEditor(private val model: GameModel) {
     fun addStoneEdits(nodeToEdit: GameNode, stoneEdits: Collection<Stone>) {
         checkModelEditable()
         nodeToEdit.addStoneEdits(stoneEdits, model.stateHasher, model.boardWidth, model.boardHeight)
+        model.invalidateStateData(nodeToEdit)
         model.onNodeDataUpdate().fireEvent(NodeEvent(nodeToEdit))
         model.isModified = true
     }
@@ -262,6 +276,7 @@ class GameModelEditor(private val model: GameModel) {
     fun removeStoneEdit(nodeToEdit: GameNode, stoneEdit: Stone) {
         checkModelEditable()
         nodeToEdit.removeStoneEdit(stoneEdit, model.stateHasher, model.boardWidth, model.boardHeight)
+        model.invalidateStateData(nodeToEdit)
         model.onNodeDataUpdate().fireEvent(NodeEvent(nodeToEdit))
         model.isModified = true
     }
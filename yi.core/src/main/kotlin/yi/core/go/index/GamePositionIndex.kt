@@ -0,0 +1,397 @@
+package yi.core.go.index
+
+import yi.core.go.BatchImportListener
+import yi.core.go.GameModel
+import yi.core.go.GameNode
+import java.io.BufferedInputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.IOException
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardOpenOption
+
+/**
+ * An on-disk index of every board position reached in a library of game records, which
+ * answers where a given position has occurred without opening the games. Every node of
+ * every variation is indexed. Use [update] to build or refresh the index from a library
+ * directory, and [open] to use an existing one.
+ *
+ * Positions are stored by their [PositionKey] in a table of fixed-size entries sorted by
+ * key, so a lookup is a binary search over the memory-mapped table and only reads the
+ * entries it visits. This takes well under a millisecond even for libraries of hundreds
+ * of thousands of games. Positions are matched by stone placement only, regardless of the
+ * player to move or the number of captured stones.
+ *
+ * All numbers are stored big-endian. The file begins with a fixed-size header:
+ *
+ *  - Magic bytes "YiPX", followed by the format version and a reserved short.
+ *  - Number of games, number of entries, and the offsets of the game table, the path data
+ *    (followed by its length) and the entry table.
+ *
+ * The sections that follow are:
+ *
+ *  - Game table: the library directory, then for each game its path relative to the
+ *    library, file size, last modified time, the start and length of its path data, and
+ *    its number of positions. Games are sorted by path. Files that could not be imported
+ *    are kept with no positions, so that they are not read again until they change.
+ *  - Path data: the node path of each position, stored as variable-length integers (7
+ *    bits per byte, least significant group first). A node path is the depth of the node,
+ *    the number of nodes along the path that are not the first child of their parent,
+ *    then for each of those the depth since the last one and its child index.
+ *  - Entry table: the key, game index and path data offset (relative to the start of the
+ *    game's path data) of every position, sorted by key.
+ *
+ * An index is only valid while the file it was opened from is not replaced, so close it
+ * before calling [update] again with the same file.
+ */
+class GamePositionIndex private constructor(val indexFile: Path,
+                                            val libraryDirectory: Path,
+                                            internal val games: List<IndexedGame>,
+                                            private val channel: FileChannel,
+                                            internal val pathDataOffset: Long,
+                                            private val pathData: MappedByteBuffer?,
+                                            internal val entryCount: Long,
+                                            private val entryChunks: Array<MappedByteBuffer>) : Closeable {
+
+    /**
+     * @return Number of game record files in the index, including those that could not be
+     * imported.
+     */
+    fun getGameCount(): Int = games.size
+
+    /**
+     * @return Number of positions in the index, counting each node of each game.
+     */
+    fun getPositionCount(): Long = entryCount
+
+    /**
+     * Finds every node in the library with the same board position as the current node of
+     * a game model.
+     *
+     * @return Matches sorted by game file, then in document order within each game.
+     * @throws IOException If the index file cannot be read.
+     */
+    @Throws(IOException::class)
+    fun find(gameModel: GameModel): List<PositionMatch> {
+        return find(gameModel, gameModel.currentNode)
+    }
+
+    /**
+     * Finds every node in the library with the same board position as the given node of
+     * a game model.
+     *
+     * @return Matches sorted by game file, then in document order within each game.
+     * @throws IOException If the index file cannot be read.
+     */
+    @Throws(IOException::class)
+    fun find(gameModel: GameModel, node: GameNode): List<PositionMatch> {
+        val position = gameModel.getGameState(node).boardPosition
+        return find(PositionKey.of(position, gameModel.boardWidth, gameModel.boardHeight))
+    }
+
+    @Throws(IOException::class)
+    internal fun find(key: Long): List<PositionMatch> {
+        // Lower bound of the key
+        var low = 0L
+        var high = entryCount
+        while (low < high) {
+            val middle = (low + high) ushr 1
+            if (getKey(middle) < key) low = middle + 1 else high = middle
+        }
+
+        val entries = ArrayList<Long>()
+        var entry = low
+        while (entry < entryCount && getKey(entry) == key) {
+            entries.add(getValue(entry))
+            ++entry
+        }
+
+        // Game indices are assigned in path order, and path offsets in document order
+        entries.sort()
+        return entries.map { readMatch((it ushr 32).toInt(), it.toInt()) }
+    }
+
+    /**
+     * Releases the index file. The index cannot be used afterwards.
+     */
+    @Throws(IOException::class)
+    override fun close() {
+        channel.close()
+    }
+
+    internal fun getKey(entry: Long): Long {
+        return getEntryChunk(entry).getLong(getEntryOffset(entry))
+    }
+
+    /*
+     * Game index in the upper 32 bits and path data offset in the lower, as stored.
+     */
+    internal fun getValue(entry: Long): Long {
+        return getEntryChunk(entry).getLong(getEntryOffset(entry) + 8)
+    }
+
+    /*
+     * Copies the path data of one game into the channel of an index being written.
+     */
+    @Throws(IOException::class)
+    internal fun transferPathData(game: IndexedGame, target: FileChannel) {
+        transferFully(channel, pathDataOffset + game.pathDataStart, game.pathDataLength.toLong(), target)
+    }
+
+    private fun getEntryChunk(entry: Long) = entryChunks[(entry ushr ENTRIES_PER_CHUNK_SHIFT).toInt()]
+
+    private fun getEntryOffset(entry: Long) = (entry and ENTRIES_PER_CHUNK_MASK).toInt() * ENTRY_SIZE
+
+    @Throws(IOException::class)
+    private fun readMatch(gameIndex: Int, pathOffset: Int): PositionMatch {
+        val game = games[gameIndex]
+        val buffer = if (pathData != null) {
+            pathData.duplicate().position((game.pathDataStart + pathOffset).toInt()) as ByteBuffer
+        } else {
+            val pathLength = game.pathDataLength - pathOffset
+            val buffer = ByteBuffer.allocate(pathLength.coerceAtMost(MAX_PATH_READ))
+            channel.read(buffer, pathDataOffset + game.pathDataStart + pathOffset)
+            buffer.flip() as ByteBuffer
+        }
+
+        try {
+            val depth = readVarInt(buffer)
+            val nodePath = IntArray(depth)
+            val branchCount = readVarInt(buffer)
+            var branchDepth = 0
+            for (i in 0 until branchCount) {
+                branchDepth += readVarInt(buffer)
+                nodePath[branchDepth - 1] = readVarInt(buffer)
+            }
+            return PositionMatch(libraryDirectory.resolve(game.relativePath), nodePath)
+        } catch (e: RuntimeException) {
+            // Underflow or a depth out of bounds
+            throw IOException("Corrupt node path in position index: $indexFile", e)
+        }
+    }
+
+    private fun readVarInt(buffer: ByteBuffer): Int {
+        var value = 0
+        var shift = 0
+        while (shift < 32) {
+            val byte = buffer.get().toInt()
+            value = value or ((byte and 0x7F) shl shift)
+            if (byte and 0x80 == 0) {
+                return value
+            }
+            shift += 7
+        }
+        throw IOException("Malformed variable-length integer in position index: $indexFile")
+    }
+
+    companion object {
+
+        internal const val MAGIC = 0x59695058 // YiPX
+        internal const val FORMAT_VERSION = 1
+        internal const val HEADER_SIZE = 52
+        internal const val ENTRY_SIZE = 16
+
+        // Entries are mapped in chunks since a single mapping is limited to 2 GB
+        private const val ENTRIES_PER_CHUNK_SHIFT = 26
+        private const val ENTRIES_PER_CHUNK_MASK = (1L shl ENTRIES_PER_CHUNK_SHIFT) - 1
+
+        // Longer than any node path encoding for the largest supported tree depth
+        private const val MAX_PATH_READ = 1 shl 20
+
+        /**
+         * Opens an existing position index.
+         *
+         * @param indexFile Index file previously written by [update].
+         * @return The opened index, which must be closed after use.
+         * @throws IOException If the file cannot be read, or is not a position index of the
+         * current format version.
+         */
+        @Throws(IOException::class)
+        fun open(indexFile: Path): GamePositionIndex {
+            val channel = FileChannel.open(indexFile, StandardOpenOption.READ)
+            try {
+                return read(indexFile, channel)
+            } catch (e: Exception) {
+                channel.close()
+                throw e
+            }
+        }
+
+        /**
+         * Brings the position index of a library directory up to date, creating it if it
+         * does not exist. Game record files in the directory and its sub-directories are
+         * imported in parallel through a [yi.core.go.GameModelBatchImport]. Only files
+         * that are new, or whose size or last modified time has changed, are imported.
+         * Positions of files that no longer exist are removed.
+         *
+         * The new index is written next to the index file and then moved over it, so the
+         * existing index stays valid if the update fails. Memory use is bounded regardless
+         * of the size of the library.
+         *
+         * @param indexFile Index file to update or create.
+         * @param libraryDirectory Directory containing the game records to index.
+         * @param parallelism Maximum number of files to import at the same time.
+         * @param listener Receives the result of each imported file, or null if not needed.
+         * @return The updated index, which must be closed after use.
+         * @throws IOException If the library cannot be scanned or the index cannot be
+         * written. Files that cannot be imported do not cause the update to fail.
+         */
+        @Throws(IOException::class)
+        fun update(indexFile: Path, libraryDirectory: Path, parallelism: Int,
+                   listener: BatchImportListener?): GamePositionIndex {
+            val library = libraryDirectory.toAbsolutePath().normalize()
+            val previous = openIfCompatible(indexFile, library)
+
+            previous.use {
+                GamePositionIndexBuilder(indexFile, library, it).build(parallelism, listener)
+            }
+
+            return open(indexFile)
+        }
+
+        /*
+         * Returns null instead of failing if the existing index cannot be reused, so that
+         * it is rebuilt.
+         */
+        private fun openIfCompatible(indexFile: Path, libraryDirectory: Path): GamePositionIndex? {
+            if (!Files.exists(indexFile)) {
+                return null
+            }
+
+            val index = try {
+                open(indexFile)
+            } catch (e: IOException) {
+                return null
+            }
+
+            if (index.libraryDirectory != libraryDirectory) {
+                index.close()
+                return null
+            }
+
+            return index
+        }
+
+        @Throws(IOException::class)
+        private fun read(indexFile: Path, channel: FileChannel): GamePositionIndex {
+            val header = ByteBuffer.allocate(HEADER_SIZE)
+            while (header.hasRemaining() && channel.read(header, header.position().toLong()) >= 0) { }
+            header.flip()
+
+            try {
+                if (header.int != MAGIC) {
+                    throw IOException("Not a position index: $indexFile")
+                }
+                val version = header.short.toInt()
+                if (version != FORMAT_VERSION) {
+                    throw IOException("Unsupported position index version $version: $indexFile")
+                }
+                header.short // Reserved
+
+                val gameCount = header.int
+                val entryCount = header.long
+                val gameTableOffset = header.long
+                val pathDataOffset = header.long
+                val pathDataLength = header.long
+                val entriesOffset = header.long
+
+                if (gameCount < 0 || entryCount < 0 || entriesOffset + entryCount * ENTRY_SIZE > channel.size()) {
+                    throw IOException("Truncated position index: $indexFile")
+                }
+
+                channel.position(gameTableOffset)
+                val input = DataInputStream(BufferedInputStream(Channels.newInputStream(channel)))
+                val libraryDirectory = Paths.get(input.readUTF())
+                val games = ArrayList<IndexedGame>(gameCount)
+                for (i in 0 until gameCount) {
+                    games.add(IndexedGame(input.readUTF(), input.readLong(), input.readLong(), input.readLong(),
+                            input.readInt(), input.readInt()))
+                }
+
+                val chunkCount = ((entryCount + ENTRIES_PER_CHUNK_MASK) ushr ENTRIES_PER_CHUNK_SHIFT).toInt()
+                val entryChunks = Array(chunkCount) { chunk ->
+                    val firstEntry = chunk.toLong() shl ENTRIES_PER_CHUNK_SHIFT
+                    val entries = (entryCount - firstEntry).coerceAtMost(1L shl ENTRIES_PER_CHUNK_SHIFT)
+                    channel.map(FileChannel.MapMode.READ_ONLY, entriesOffset + firstEntry * ENTRY_SIZE,
+                            entries * ENTRY_SIZE)
+                }
+
+                // Node paths are read from the file instead if they are too large to map at once
+                val pathData = if (pathDataLength <= Int.MAX_VALUE) {
+                    channel.map(FileChannel.MapMode.READ_ONLY, pathDataOffset, pathDataLength)
+                } else null
+
+                return GamePositionIndex(indexFile, libraryDirectory, games, channel, pathDataOffset, pathData,
+                        entryCount, entryChunks)
+            } catch (e: BufferUnderflowException) {
+                throw IOException("Truncated position index: $indexFile", e)
+            }
+        }
+
+        @Throws(IOException::class)
+        internal fun transferFully(source: FileChannel, position: Long, count: Long, target: FileChannel) {
+            var transferred = 0L
+            while (transferred < count) {
+                val bytes = source.transferTo(position + transferred, count - transferred, target)
+                if (bytes <= 0) {
+                    throw IOException("Unexpected end of file while copying index data")
+                }
+                transferred += bytes
+            }
+        }
+    }
+}
+
+/**
+ * A game record file in a [GamePositionIndex].
+ *
+ * @param relativePath Path of the file relative to the library directory.
+ * @param pathDataStart Start of the node paths of this game, relative to the path data.
+ */
+internal class IndexedGame(val relativePath: String,
+                           val fileSize: Long,
+                           val lastModified: Long,
+                           val pathDataStart: Long,
+                           val pathDataLength: Int,
+                           val positionCount: Int)
+
+/**
+ * A node in a game record of a [GamePositionIndex] that has the position searched for.
+ *
+ * @param gameFile Game record file containing the node.
+ */
+class PositionMatch internal constructor(val gameFile: Path, private val nodePath: IntArray) {
+
+    /**
+     * @return Index of the child taken at each step from the root to the node, as in
+     * [GameNode.getChildNodes]. The length of the path is the depth of the node.
+     */
+    fun getNodePath(): IntArray = nodePath.copyOf()
+
+    /**
+     * Follows the node path in a game model imported from [gameFile].
+     *
+     * @return The matched node, or null if the game tree does not have the path, such as
+     * when the file has changed since it was indexed.
+     */
+    fun findNode(gameModel: GameModel): GameNode? {
+        var node = gameModel.getRootNode()
+        for (childIndex in nodePath) {
+            val children = node.getChildNodes()
+            if (childIndex >= children.size) {
+                return null
+            }
+            node = children[childIndex]
+        }
+        return node
+    }
+
+    override fun toString(): String = "$gameFile ${nodePath.contentToString()}"
+}
@@ -0,0 +1,410 @@
+package yi.core.go.index
+
+import yi.core.go.*
+import java.io.*
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.file.*
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.*
+
+/**
+ * Writes a new [GamePositionIndex] file for a library directory, reusing the positions of
+ * unchanged games from the previous index. See [GamePositionIndex.update].
+ *
+ * Positions of imported games are collected into runs of [RUN_CAPACITY] entries, each
+ * sorted and written to a temporary file once full. The entry table of the new index is
+ * then produced by merging those runs with the already sorted entries of the previous
+ * index, so that memory use does not depend on the size of the library.
+ */
+internal class GamePositionIndexBuilder(private val indexFile: Path,
+                                        private val libraryDirectory: Path,
+                                        private val previous: GamePositionIndex?) {
+
+    private val temporaryFiles = ArrayList<Path>()
+
+    // Entries of the run being collected, as keys and values stored in the entry table
+    private var runKeys = LongArray(1024)
+    private var runValues = LongArray(1024)
+    private var runSize = 0
+    private val runFiles = ArrayList<Path>()
+
+    private lateinit var importedPathData: FileChannel
+    private var importError: IOException? = null
+
+    @Throws(IOException::class)
+    fun build(parallelism: Int, listener: BatchImportListener?) {
+        try {
+            val libraryFiles = scanLibrary()
+            val games = arrayOfNulls<IndexedGame>(libraryFiles.size)
+            val previousGameIndices = IntArray(libraryFiles.size) { -1 }
+            val newGameIndices = IntArray(previous?.games?.size ?: 0) { -1 }
+            val filesToImport = ArrayList<Path>()
+            val gameIndicesToImport = HashMap<Path, Int>()
+
+            val previousGames = HashMap<String, Int>()
+            previous?.games?.forEachIndexed { index, game -> previousGames[game.relativePath] = index }
+
+            for ((gameIndex, file) in libraryFiles.withIndex()) {
+                val previousIndex = previousGames[file.relativePath]
+                val previousGame = previousIndex?.let { previous!!.games[it] }
+
+                if (previousGame != null && previousGame.fileSize == file.fileSize
+                        && previousGame.lastModified == file.lastModified) {
+                    games[gameIndex] = previousGame
+                    previousGameIndices[gameIndex] = previousIndex
+                    newGameIndices[previousIndex] = gameIndex
+                } else {
+                    val filePath = libraryDirectory.resolve(file.relativePath)
+                    filesToImport.add(filePath)
+                    gameIndicesToImport[filePath] = gameIndex
+                }
+            }
+
+            importedPathData = openTemporaryFile("paths")
+            importGames(filesToImport, gameIndicesToImport, libraryFiles, games, parallelism, listener)
+            writeRun()
+
+            @Suppress("UNCHECKED_CAST")
+            writeIndex(games as Array<IndexedGame>, previousGameIndices, newGameIndices)
+        } finally {
+            if (this::importedPathData.isInitialized) {
+                importedPathData.close()
+            }
+            temporaryFiles.forEach { Files.deleteIfExists(it) }
+        }
+    }
+
+    @Throws(IOException::class)
+    private fun scanLibrary(): List<LibraryFile> {
+        val files = ArrayList<LibraryFile>()
+
+        Files.walkFileTree(libraryDirectory, object : SimpleFileVisitor<Path>() {
+            override fun visitFile(file: Path, attributes: BasicFileAttributes): FileVisitResult {
+                if (attributes.isRegularFile && GameModelImporter.isSupportedFile(file)) {
+                    files.add(LibraryFile(libraryDirectory.relativize(file).toString(), attributes.size(),
+                            attributes.lastModifiedTime().toMillis()))
+                }
+                return FileVisitResult.CONTINUE
+            }
+
+            override fun visitFileFailed(file: Path, exception: IOException): FileVisitResult {
+                if (file == libraryDirectory) {
+                    throw exception
+                }
+                // Unreadable entries are left out, and picked up by a later update once readable
+                return FileVisitResult.CONTINUE
+            }
+        })
+        files.sortBy { it.relativePath }
+
+        return files
+    }
+
+    @Throws(IOException::class)
+    private fun importGames(filesToImport: List<Path>, gameIndices: Map<Path, Int>, libraryFiles: List<LibraryFile>,
+                            games: Array<IndexedGame?>, parallelism: Int, listener: BatchImportListener?) {
+        val indexingListener = object : BatchImportListener {
+            override fun onFileImported(result: BatchImportResult, progress: BatchImportProgress) {
+                val gameIndex = gameIndices.getValue(result.filePath)
+                val file = libraryFiles[gameIndex]
+
+                // Files that fail to import are kept without positions
+                val gameData = try {
+                    result.getGameModel().map { IndexedGameWalker(it).walk() }.orElse(null)
+                } catch (e: RuntimeException) {
+                    // Stones outside the board that the importer did not reject
+                    null
+                }
+                games[gameIndex] = addGame(gameIndex, file, gameData)
+
+                listener?.onFileImported(result, progress)
+            }
+
+            override fun onFinished(progress: BatchImportProgress, cancelled: Boolean) {
+                listener?.onFinished(progress, cancelled)
+            }
+        }
+
+        // Each model is walked as soon as it is imported, so the batch need not keep them
+        GameModelBatchImport(filesToImport, Collections.emptyList(), parallelism, indexingListener, false)
+                .awaitResults()
+
+        importError?.let { throw it }
+    }
+
+    private fun addGame(gameIndex: Int, file: LibraryFile, gameData: IndexedGameData?): IndexedGame {
+        if (gameData == null || importError != null) {
+            return IndexedGame(file.relativePath, file.fileSize, file.lastModified, 0, 0, 0)
+        }
+
+        try {
+            val pathDataStart = importedPathData.position()
+            importedPathData.write(ByteBuffer.wrap(gameData.pathData))
+
+            for (i in 0 until gameData.positionCount) {
+                addEntry(gameData.keys[i], (gameIndex.toLong() shl 32) or gameData.pathOffsets[i].toLong())
+            }
+
+            return IndexedGame(file.relativePath, file.fileSize, file.lastModified, pathDataStart,
+                    gameData.pathData.size, gameData.positionCount)
+        } catch (e: IOException) {
+            // Thrown once the batch is complete, since this runs on an import thread
+            importError = e
+            return IndexedGame(file.relativePath, file.fileSize, file.lastModified, 0, 0, 0)
+        }
+    }
+
+    @Throws(IOException::class)
+    private fun addEntry(key: Long, value: Long) {
+        if (runSize == runKeys.size) {
+            if (runSize == RUN_CAPACITY) {
+                writeRun()
+            } else {
+                runKeys = runKeys.copyOf(runSize * 2)
+                runValues = runValues.copyOf(runSize * 2)
+            }
+        }
+
+        runKeys[runSize] = key
+        runValues[runSize] = value
+        ++runSize
+    }
+
+    @Throws(IOException::class)
+    private fun writeRun() {
+        if (runSize == 0) {
+            return
+        }
+
+        sortEntries(runKeys, runValues, 0, runSize - 1)
+
+        val runFile = createTemporaryFile("run")
+        DataOutputStream(BufferedOutputStream(Files.newOutputStream(runFile))).use {
+            for (i in 0 until runSize) {
+                it.writeLong(runKeys[i])
+                it.writeLong(runValues[i])
+            }
+        }
+        runFiles.add(runFile)
+        runSize = 0
+    }
+
+    @Throws(IOException::class)
+    private fun writeIndex(games: Array<IndexedGame>, previousGameIndices: IntArray, newGameIndices: IntArray) {
+        val newIndexFile = createTemporaryFile("index")
+
+        FileChannel.open(newIndexFile, StandardOpenOption.WRITE).use { channel ->
+            channel.position(GamePositionIndex.HEADER_SIZE.toLong())
+            val gameTableOffset = channel.position()
+            val output = DataOutputStream(BufferedOutputStream(Channels.newOutputStream(channel)))
+
+            output.writeUTF(libraryDirectory.toString())
+            var pathDataStart = 0L
+            for (game in games) {
+                output.writeUTF(game.relativePath)
+                output.writeLong(game.fileSize)
+                output.writeLong(game.lastModified)
+                output.writeLong(pathDataStart)
+                output.writeInt(game.pathDataLength)
+                output.writeInt(game.positionCount)
+                pathDataStart += game.pathDataLength
+            }
+            output.flush()
+
+            val pathDataOffset = channel.position()
+            for ((gameIndex, game) in games.withIndex()) {
+                if (previousGameIndices[gameIndex] >= 0) {
+                    previous!!.transferPathData(game, channel)
+                } else {
+                    GamePositionIndex.transferFully(importedPathData, game.pathDataStart,
+                            game.pathDataLength.toLong(), channel)
+                }
+            }
+
+            val entriesOffset = channel.position()
+            val entryCount = mergeEntries(output, newGameIndices)
+            output.flush()
+
+            val header = ByteBuffer.allocate(GamePositionIndex.HEADER_SIZE)
+            header.putInt(GamePositionIndex.MAGIC)
+            header.putShort(GamePositionIndex.FORMAT_VERSION.toShort())
+            header.putShort(0)
+            header.putInt(games.size)
+            header.putLong(entryCount)
+            header.putLong(gameTableOffset)
+            header.putLong(pathDataOffset)
+            header.putLong(pathDataStart)
+            header.putLong(entriesOffset)
+            header.flip()
+            while (header.hasRemaining()) {
+                channel.write(header, header.position().toLong())
+            }
+            channel.force(false)
+        }
+
+        Files.move(newIndexFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        temporaryFiles.remove(newIndexFile)
+    }
+
+    /*
+     * Writes the entries of the previous index that are still valid together with the
+     * entries of every run, in key order.
+     */
+    @Throws(IOException::class)
+    private fun mergeEntries(output: DataOutputStream, newGameIndices: IntArray): Long {
+        val sources = PriorityQueue<EntrySource>(compareBy { it.key })
+        val openedSources = ArrayList<EntrySource>()
+
+        try {
+            previous?.let { openedSources.add(PreviousIndexSource(it, newGameIndices)) }
+            runFiles.forEach { openedSources.add(RunFileSource(it)) }
+            openedSources.filterTo(sources) { it.next() }
+
+            var entryCount = 0L
+            while (sources.isNotEmpty()) {
+                val source = sources.poll()
+                output.writeLong(source.key)
+                output.writeLong(source.value)
+                ++entryCount
+
+                if (source.next()) {
+                    sources.add(source)
+                }
+            }
+
+            return entryCount
+        } finally {
+            openedSources.forEach { it.close() }
+        }
+    }
+
+    @Throws(IOException::class)
+    private fun openTemporaryFile(name: String): FileChannel {
+        return FileChannel.open(createTemporaryFile(name), StandardOpenOption.READ, StandardOpenOption.WRITE)
+    }
+
+    @Throws(IOException::class)
+    private fun createTemporaryFile(name: String): Path {
+        val directory = indexFile.toAbsolutePath().parent
+        val file = Files.createTempFile(directory, "${indexFile.fileName}.$name", ".tmp")
+        temporaryFiles.add(file)
+        return file
+    }
+
+    private class LibraryFile(val relativePath: String, val fileSize: Long, val lastModified: Long)
+
+    /*
+     * A sorted sequence of entries, positioned before the first entry until next() is called.
+     */
+    private abstract class EntrySource : Closeable {
+        var key = 0L
+        var value = 0L
+
+        @Throws(IOException::class)
+        abstract fun next(): Boolean
+
+        override fun close() { }
+    }
+
+    /*
+     * Entries of the previous index, skipping those of games that were removed or changed
+     * and renumbering the rest.
+     */
+    private class PreviousIndexSource(private val index: GamePositionIndex,
+                                      private val newGameIndices: IntArray) : EntrySource() {
+        private var entry = 0L
+
+        override fun next(): Boolean {
+            while (entry < index.entryCount) {
+                val storedValue = index.getValue(entry)
+                val newGameIndex = newGameIndices[(storedValue ushr 32).toInt()]
+
+                if (newGameIndex >= 0) {
+                    key = index.getKey(entry)
+                    value = (newGameIndex.toLong() shl 32) or (storedValue and 0xFFFFFFFFL)
+                    ++entry
+                    return true
+                }
+                ++entry
+            }
+            return false
+        }
+    }
+
+    private class RunFileSource(runFile: Path) : EntrySource() {
+        private val input = DataInputStream(BufferedInputStream(Files.newInputStream(runFile)))
+
+        override fun next(): Boolean {
+            return try {
+                key = input.readLong()
+                value = input.readLong()
+                true
+            } catch (e: EOFException) {
+                false
+            }
+        }
+
+        override fun close() {
+            input.close()
+        }
+    }
+
+    internal companion object {
+        private const val RUN_CAPACITY = 1 shl 20
+
+        /*
+         * Sorts both arrays by key within the inclusive range, using quicksort with the
+         * middle element as pivot and insertion sort for short ranges.
+         */
+        fun sortEntries(keys: LongArray, values: LongArray, from: Int, to: Int) {
+            var low = from
+            var high = to
+
+            while (high - low > 16) {
+                val pivot = keys[(low + high) ushr 1]
+                var i = low
+                var j = high
+                while (i <= j) {
+                    while (keys[i] < pivot) ++i
+                    while (keys[j] > pivot) --j
+                    if (i <= j) {
+                        swap(keys, values, i++, j--)
+                    }
+                }
+
+                // Recurse into the smaller half to bound the stack depth
+                if (j - low < high - i) {
+                    sortEntries(keys, values, low, j)
+                    low = i
+                } else {
+                    sortEntries(keys, values, i, high)
+                    high = j
+                }
+            }
+
+            for (i in low + 1..high) {
+                val key = keys[i]
+                val value = values[i]
+                var j = i - 1
+                while (j >= low && keys[j] > key) {
+                    keys[j + 1] = keys[j]
+                    values[j + 1] = values[j]
+                    --j
+                }
+                keys[j + 1] = key
+                values[j + 1] = value
+            }
+        }
+
+        private fun swap(keys: LongArray, values: LongArray, i: Int, j: Int) {
+            val key = keys[i]
+            keys[i] = keys[j]
+            keys[j] = key
+            val value = values[i]
+            values[i] = values[j]
+            values[j] = value
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package yi.core.go.index
+
+import yi.core.go.GameModel
+import yi.core.go.GameNode
+import yi.core.go.Stone
+import yi.core.go.StoneColor
+
+/**
+ * Visits every node of a game tree in document order and collects the [PositionKey] and
+ * encoded node path of each one, for the game to be added to a [GamePositionIndex].
+ *
+ * The board is kept as one byte per intersection and updated from the node deltas as the
+ * walk descends, then restored from an undo log as it returns, so the position of each
+ * node is never resolved from the root.
+ */
+internal class IndexedGameWalker(private val gameModel: GameModel) {
+
+    private val boardWidth = gameModel.boardWidth
+    private val board = ByteArray(boardWidth * gameModel.boardHeight)
+    private var key = PositionKey.forEmptyBoard(boardWidth, gameModel.boardHeight)
+
+    // Intersections changed by the nodes on the current path, as (position shl 2) or old color
+    private var undoLog = IntArray(64)
+    private var undoLogSize = 0
+
+    // Non-main-branch choices on the current path, as pairs of depth and child index
+    private var branches = IntArray(16)
+    private var branchesSize = 0
+
+    private var keys = LongArray(256)
+    private var pathOffsets = IntArray(256)
+    private var positionCount = 0
+    private val pathData = PathDataWriter()
+
+    /**
+     * Walks the whole game tree. Call once only.
+     */
+    fun walk(): IndexedGameData {
+        val frames = ArrayList<Frame>()
+        frames.add(enter(gameModel.getRootNode(), 0, 0))
+
+        while (frames.isNotEmpty()) {
+            val frame = frames[frames.size - 1]
+            val children = frame.node.children
+
+            if (frame.nextChild < children.size) {
+                val childIndex = frame.nextChild++
+                frames.add(enter(children[childIndex], frame.depth + 1, childIndex))
+            } else {
+                frames.removeAt(frames.size - 1)
+                leave(frame)
+            }
+        }
+
+        return IndexedGameData(keys, pathOffsets, positionCount, pathData.toByteArray())
+    }
+
+    private fun enter(node: GameNode, depth: Int, childIndex: Int): Frame {
+        val frame = Frame(node, depth, undoLogSize, branchesSize)
+
+        if (childIndex != 0) {
+            if (branchesSize + 2 > branches.size) {
+                branches = branches.copyOf(branches.size * 2)
+            }
+            branches[branchesSize++] = depth
+            branches[branchesSize++] = childIndex
+        }
+
+        // Same order as GamePosition.apply()
+        val delta = node.delta
+        delta.captures.forEach { setColor(it, StoneColor.NONE.index) }
+        delta.stoneEdits.forEach { setColor(it, it.color.index) }
+        delta.primaryMove?.let {
+            if (delta.captures.contains(it)) {
+                setColor(it, StoneColor.NONE.index)
+            }
+        }
+
+        addPosition(depth)
+        return frame
+    }
+
+    private fun leave(frame: Frame) {
+        while (undoLogSize > frame.undoLogMark) {
+            val change = undoLog[--undoLogSize]
+            setColor(change ushr 2, (change and 3).toByte(), false)
+        }
+        branchesSize = frame.branchesMark
+    }
+
+    private fun setColor(stone: Stone, color: Byte) {
+        setColor(stone.getPosition(boardWidth), color, true)
+    }
+
+    private fun setColor(position: Int, color: Byte, recordUndo: Boolean) {
+        val oldColor = board[position]
+        if (oldColor == color) {
+            return
+        }
+
+        if (oldColor != StoneColor.NONE.index) {
+            key = key xor PositionKey.forStone(position, oldColor)
+        }
+        if (color != StoneColor.NONE.index) {
+            key = key xor PositionKey.forStone(position, color)
+        }
+        board[position] = color
+
+        if (recordUndo) {
+            if (undoLogSize == undoLog.size) {
+                undoLog = undoLog.copyOf(undoLog.size * 2)
+            }
+            undoLog[undoLogSize++] = (position shl 2) or oldColor.toInt()
+        }
+    }
+
+    private fun addPosition(depth: Int) {
+        if (positionCount == keys.size) {
+            keys = keys.copyOf(keys.size * 2)
+            pathOffsets = pathOffsets.copyOf(pathOffsets.size * 2)
+        }
+
+        keys[positionCount] = key
+        pathOffsets[positionCount] = pathData.size()
+        ++positionCount
+
+        // See GamePositionIndex for the node path encoding
+        pathData.writeVarInt(depth)
+        pathData.writeVarInt(branchesSize / 2)
+        var lastDepth = 0
+        for (i in 0 until branchesSize step 2) {
+            pathData.writeVarInt(branches[i] - lastDepth)
+            pathData.writeVarInt(branches[i + 1])
+            lastDepth = branches[i]
+        }
+    }
+
+    private class Frame(val node: GameNode, val depth: Int, val undoLogMark: Int, val branchesMark: Int) {
+        var nextChild = 0
+    }
+
+    private class PathDataWriter : java.io.ByteArrayOutputStream(256) {
+
+        fun writeVarInt(value: Int) {
+            var remaining = value
+            while (remaining and 0x7F.inv() != 0) {
+                write((remaining and 0x7F) or 0x80)
+                remaining = remaining ushr 7
+            }
+            write(remaining)
+        }
+    }
+}
+
+/**
+ * Positions collected from one game by [IndexedGameWalker]. Only the first
+ * [positionCount] entries of [keys] and [pathOffsets] are used.
+ */
+internal class IndexedGameData(val keys: LongArray,
+                               val pathOffsets: IntArray,
+                               val positionCount: Int,
+                               val pathData: ByteArray)
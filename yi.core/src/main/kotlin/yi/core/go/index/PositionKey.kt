@@ -0,0 +1,53 @@
+package yi.core.go.index
+
+import yi.core.go.GamePosition
+import yi.core.go.SplitMix64.Companion.mix
+import yi.core.go.StoneColor
+
+/**
+ * Computes the 64-bit key under which a board position is stored in a
+ * [GamePositionIndex].
+ *
+ * Like [yi.core.go.ZobristHasher], the key of a position is the key of the empty board
+ * combined through XOR with one value per stone, so that it can be updated one stone at a
+ * time. Unlike the state hashes of a game model, keys depend only on the stones on the
+ * board, whereas state hashes follow the stone edits of each node as they were made, and
+ * the values are derived from a fixed function so that keys never change between
+ * versions. The board dimensions are part of the empty board key, so that the same
+ * stones on different board sizes do not share a key.
+ */
+internal object PositionKey {
+
+    private const val SEED = 0x5969_5158_2d70_6f73L
+
+    /**
+     * @return Key of the empty board with the given dimensions.
+     */
+    fun forEmptyBoard(boardWidth: Int, boardHeight: Int): Long {
+        return mix(SEED xor ((boardWidth.toLong() shl 32) or boardHeight.toLong()))
+    }
+
+    /**
+     * @return Value to combine with the position key when a stone of the given color is
+     * placed at, or removed from, the one variable position.
+     */
+    fun forStone(position: Int, color: Byte): Long {
+        return mix(SEED + position.toLong() * 3 + color)
+    }
+
+    /**
+     * Computes the key of a position by scanning every intersection.
+     */
+    fun of(position: GamePosition, boardWidth: Int, boardHeight: Int): Long {
+        var key = forEmptyBoard(boardWidth, boardHeight)
+
+        for (intersection in 0 until position.getIntersectionCount()) {
+            val color = position.getStoneColorAt(intersection)
+            if (color != StoneColor.NONE) {
+                key = key xor forStone(intersection, color.index)
+            }
+        }
+
+        return key
+    }
+}
@@ -0,0 +1,174 @@
+package yi.core.go
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class GameModelBatchImportTest {
+
+    @Test
+    fun `import directory, all game records are imported in path order`() {
+        withTempDirectory { directory ->
+            writeGame(directory.resolve("b.sgf"), "(;GM[1]SZ[9];B[bb])")
+            writeGame(directory.resolve("a.sgf"), "(;GM[1]SZ[13];B[aa])")
+            writeGame(directory.resolve("round2/c.sgf"), "(;GM[1]SZ[19];B[cc])")
+            writeGame(directory.resolve("notes.txt"), "Not a game record")
+
+            val results = GameModelImporter.batchFromDirectory(directory, 2, null).awaitResults()
+
+            Assertions.assertEquals(listOf("a.sgf", "b.sgf", "c.sgf"), results.map { it.filePath.fileName.toString() })
+            Assertions.assertTrue(results.all { it.isSuccessful() })
+            Assertions.assertEquals(listOf(13, 9, 19), results.map { it.getGameModel().get().boardWidth })
+        }
+    }
+
+    @Test
+    fun `import corrupt file, error is reported and batch continues`() {
+        withTempDirectory { directory ->
+            val goodFile = directory.resolve("good.sgf")
+            val corruptFile = directory.resolve("corrupt.sgf")
+            val missingFile = directory.resolve("missing.sgf")
+            writeGame(goodFile, "(;GM[1]SZ[9];B[aa])")
+            writeGame(corruptFile, "(;GM[1]SZ[9];B[aa]")
+
+            val batch = GameModelImporter.batchFromFiles(listOf(corruptFile, missingFile, goodFile), 2, null)
+            val results = batch.awaitResults()
+
+            Assertions.assertEquals(3, results.size)
+            Assertions.assertTrue(results[0].getError().get() is GameParseException)
+            Assertions.assertTrue(results[1].getError().get() is IOException)
+            Assertions.assertTrue(results[2].isSuccessful())
+            Assertions.assertFalse(results[2].getError().isPresent)
+            Assertions.assertEquals(1, batch.getProgress().filesImported)
+            Assertions.assertEquals(2, batch.getProgress().filesFailed)
+        }
+    }
+
+    @Test
+    fun `import files with listener, progress is reported for each file`() {
+        withTempDirectory { directory ->
+            val files = (0 until 10).map { directory.resolve("game$it.sgf") }
+            files.forEach { writeGame(it, "(;GM[1]SZ[19];B[aa];W[bb];B[cc])") }
+            val completedCounts = ArrayList<Int>()
+            var finalProgress: BatchImportProgress? = null
+
+            val batch = GameModelImporter.batchFromFiles(files, 4, object : BatchImportListener {
+                override fun onFileImported(result: BatchImportResult, progress: BatchImportProgress) {
+                    completedCounts.add(progress.getFilesCompleted())
+                }
+
+                override fun onFinished(progress: BatchImportProgress, cancelled: Boolean) {
+                    finalProgress = progress
+                }
+            })
+            batch.awaitResults()
+
+            Assertions.assertTrue(batch.isDone())
+            Assertions.assertEquals(10, completedCounts.size)
+            Assertions.assertEquals(10, finalProgress!!.filesImported)
+            Assertions.assertEquals(10, finalProgress!!.totalFiles)
+            Assertions.assertEquals(files.map { Files.size(it) }.sum(), finalProgress!!.bytesRead)
+            Assertions.assertTrue(finalProgress!!.getFilesPerSecond() > 0)
+            Assertions.assertTrue(finalProgress!!.getBytesPerSecond() > 0)
+        }
+    }
+
+    @Test
+    fun `cancel batch, remaining files are skipped`() {
+        withTempDirectory { directory ->
+            val files = (0 until 20).map { directory.resolve("game$it.sgf") }
+            files.forEach { writeGame(it, "(;GM[1]SZ[19];B[aa])") }
+            val firstFileImported = CountDownLatch(1)
+            val resume = CountDownLatch(1)
+            var cancelledOnFinish = false
+
+            val batch = GameModelImporter.batchFromFiles(files, 1, object : BatchImportListener {
+                override fun onFileImported(result: BatchImportResult, progress: BatchImportProgress) {
+                    firstFileImported.countDown()
+                    resume.await()
+                }
+
+                override fun onFinished(progress: BatchImportProgress, cancelled: Boolean) {
+                    cancelledOnFinish = cancelled
+                }
+            })
+            Assertions.assertTrue(firstFileImported.await(10, TimeUnit.SECONDS))
+            batch.cancel()
+            resume.countDown()
+            val results = batch.awaitResults()
+
+            Assertions.assertTrue(batch.isCancelled())
+            Assertions.assertTrue(cancelledOnFinish)
+            Assertions.assertEquals(1, results.size)
+            Assertions.assertEquals(files[0], results[0].filePath)
+        }
+    }
+
+    @Test
+    fun `import throws error, file fails and batch still finishes`() {
+        withTempDirectory { directory ->
+            val files = listOf("a.sgf", "overflow.sgf", "b.sgf", "init.sgf").map { directory.resolve(it) }
+            files.forEach { writeGame(it, "(;GM[1]SZ[9];B[aa])") }
+            var finishedProgress: BatchImportProgress? = null
+
+            val listener = object : BatchImportListener {
+                override fun onFileImported(result: BatchImportResult, progress: BatchImportProgress) { }
+
+                override fun onFinished(progress: BatchImportProgress, cancelled: Boolean) {
+                    finishedProgress = progress
+                }
+            }
+            val batch = GameModelBatchImport(files, Collections.emptyList(), 2, listener) { file ->
+                when (file.fileName.toString()) {
+                    "overflow.sgf" -> throw StackOverflowError()
+                    "init.sgf" -> throw ExceptionInInitializerError()
+                    else -> GameModelImporter.fromFile(file)
+                }
+            }
+
+            Assertions.assertTrue(batch.await(10, TimeUnit.SECONDS), "Batch did not finish")
+            val results = batch.awaitResults()
+
+            Assertions.assertEquals(4, results.size)
+            Assertions.assertTrue(results[0].isSuccessful())
+            Assertions.assertTrue(results[1].getError().get().cause is StackOverflowError)
+            Assertions.assertTrue(results[2].isSuccessful())
+            Assertions.assertTrue(results[3].getError().get().cause is ExceptionInInitializerError)
+            Assertions.assertEquals(2, finishedProgress!!.filesImported)
+            Assertions.assertEquals(2, finishedProgress!!.filesFailed)
+        }
+    }
+
+    @Test
+    fun `import empty directory, batch finishes with no results`() {
+        withTempDirectory { directory ->
+            val batch = GameModelImporter.batchFromDirectory(directory, 2, null)
+
+            Assertions.assertTrue(batch.await(10, TimeUnit.SECONDS))
+            Assertions.assertTrue(batch.awaitResults().isEmpty())
+        }
+    }
+
+    private fun writeGame(file: Path, data: String) {
+        Files.createDirectories(file.parent)
+        Files.write(file, data.toByteArray(Charsets.UTF_8))
+    }
+
+    /*
+     * Runs the test against a new temporary directory, which is deleted with its contents
+     * afterwards.
+     */
+    private fun withTempDirectory(test: (Path) -> Unit) {
+        val directory = Files.createTempDirectory("batch")
+        try {
+            test(directory)
+        } finally {
+            Files.walk(directory).sorted(Comparator.reverseOrder()).forEach { Files.deleteIfExists(it) }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package yi.core.go
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import yi.core.go.TestGameRules.TestingGameRulesNoSuicide
+import java.util.*
+
+class GameStateResolverTest {
+
+    @Test
+    fun `resolved states match states replayed from the root`() {
+        val model = GameModel(9, 9, StandardGameRules.CHINESE)
+        val random = Random(3)
+        val nodes = ArrayList<GameNode>()
+
+        // Grow a few branches off random points of the main line
+        for (branch in 0 until 5) {
+            if (nodes.isNotEmpty()) {
+                model.currentNode = nodes[random.nextInt(nodes.size)]
+            }
+
+            var attempts = 0
+            var played = 0
+            while (played < 60 && attempts < 3000) {
+                val result = model.editor.addMove(random.nextInt(9), random.nextInt(9))
+                if (result.isPlayed) {
+                    nodes.add(result.moveNode!!)
+                    ++played
+                }
+                ++attempts
+            }
+        }
+
+        val resolver = GameStateResolver(model, 8, 4)
+        nodes.shuffle(random)
+        nodes.forEach { assertStateMatchesReplay(model, resolver.resolve(it)) }
+    }
+
+    @Test
+    fun `transpositions keep their own prisoner count`() {
+        val model = GameModel(3, 3, TestingGameRulesNoSuicide())
+
+        // Variation 1: black stone at the corner is captured, then black plays elsewhere
+        model.beginMoveSequence()
+                .playMove(0, 0)
+                .playMove(1, 0)
+                .pass()
+                .playMove(0, 1)
+        val captureVariation = model.currentNode
+
+        // Variation 2: same position without any capture
+        model.currentNode = model.getRootNode()
+        model.beginMoveSequence()
+                .pass()
+                .playMove(1, 0)
+                .pass()
+                .playMove(0, 1)
+        val quietVariation = model.currentNode
+
+        Assertions.assertEquals(captureVariation.getStateHash(), quietVariation.getStateHash())
+        Assertions.assertEquals(1, model.getGameState(captureVariation).prisonersWhite)
+        Assertions.assertEquals(0, model.getGameState(quietVariation).prisonersWhite)
+    }
+
+    @Test
+    fun `resolving deep node applies at most checkpoint interval deltas once checkpoints exist`() {
+        val model = GameModel(19, 19, StandardGameRules.CHINESE)
+        val interval = 16
+        val resolver = GameStateResolver(model, interval, 2)
+
+        for (i in 0 until 400) {
+            model.editor.addPass()
+        }
+
+        resolver.resolve(model.currentNode)
+        resolver.resetStatistics()
+
+        var node = model.currentNode
+        for (i in 0 until 100) {
+            node = node.parent!!
+            val before = resolver.getStatistics().deltasApplied
+            resolver.resolve(node)
+            val applied = resolver.getStatistics().deltasApplied - before
+
+            Assertions.assertTrue(applied <= interval, "Applied $applied deltas to resolve move ${node.moveNumber}")
+        }
+
+        Assertions.assertEquals(0, resolver.getStatistics().misses)
+    }
+
+    @Test
+    fun `repeated request is a cache hit`() {
+        val model = GameModel(5, 5, TestingGameRulesNoSuicide())
+        model.beginMoveSequence()
+                .playMove(0, 0)
+                .playMove(1, 1)
+
+        model.resetGameStateStatistics()
+        val first = model.getCurrentGameState()
+        val second = model.getCurrentGameState()
+        val statistics = model.getGameStateStatistics()
+
+        Assertions.assertSame(first, second)
+        Assertions.assertEquals(1, statistics.cacheHits)
+        Assertions.assertEquals(2, statistics.getRequestCount())
+        Assertions.assertEquals(0.5, statistics.getCacheHitRate())
+    }
+
+    @Test
+    fun `stone edit on ancestor updates resolved descendant state`() {
+        val model = GameModel(5, 5, TestingGameRulesNoSuicide())
+        model.beginMoveSequence()
+                .playMove(0, 0)
+                .playMove(1, 1)
+                .playMove(2, 2)
+
+        Assertions.assertEquals(StoneColor.NONE, model.getCurrentGameState().boardPosition.getStoneColorAt(4, 4))
+
+        model.editor.addStoneEdit(model.getRootNode(), Stone(4, 4, StoneColor.WHITE))
+
+        Assertions.assertEquals(StoneColor.WHITE, model.getCurrentGameState().boardPosition.getStoneColorAt(4, 4))
+    }
+
+    private fun assertStateMatchesReplay(model: GameModel, state: GameState) {
+        val expectedPosition = GamePosition(model.boardWidth, model.boardHeight)
+        var expectedPrisonersWhite = 0
+        var expectedPrisonersBlack = 0
+
+        state.representedNode.getMoveHistory().forEach { node ->
+            expectedPosition.apply(node.delta)
+            expectedPrisonersWhite += node.getCapturesThisTurn().count { it.color == StoneColor.BLACK }
+            expectedPrisonersBlack += node.getCapturesThisTurn().count { it.color == StoneColor.WHITE }
+        }
+
+        for (i in 0 until model.getIntersectionCount()) {
+            Assertions.assertEquals(expectedPosition.getStoneColorAt(i), state.boardPosition.getStoneColorAt(i))
+        }
+        Assertions.assertEquals(expectedPrisonersWhite, state.prisonersWhite)
+        Assertions.assertEquals(expectedPrisonersBlack, state.prisonersBlack)
+    }
+}
@@ -0,0 +1,99 @@
+package yi.core.go
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import yi.core.go.LargeGameTrees.DEEP_TREE_SIZE
+import yi.core.go.LargeGameTrees.WIDE_TREE_BRANCHES
+import yi.core.go.LargeGameTrees.countNodes
+import yi.core.go.LargeGameTrees.createDeepModel
+import yi.core.go.LargeGameTrees.createWideModel
+import yi.core.go.LargeGameTrees.getLastNodeInMainBranch
+import yi.core.go.docformat.FileFormat
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+
+/**
+ * Walks game trees that are far deeper and wider than regular game records on a thread
+ * with a small stack, so that any walk recursing once per node or per variation fails.
+ * The time taken by the walks is checked in [GameTreeStressTest].
+ */
+class GameTreeDeepWalkTest {
+
+    @Test
+    fun `remove subtree 100k nodes deep`() {
+        val gameModel = createDeepModel(DEEP_TREE_SIZE)
+        val firstMove = gameModel.getRootNode().getChildNodeInMainBranch()!!
+
+        TreeWalks.runOnSmallStack { gameModel.editor.removeNodeSubtree(firstMove) }
+
+        Assertions.assertTrue(gameModel.getRootNode().isLastMoveInThisVariation())
+    }
+
+    @Test
+    fun `remove subtree 10k branches wide`() {
+        val gameModel = createWideModel(WIDE_TREE_BRANCHES)
+        val firstMove = gameModel.getRootNode().getChildNodeInMainBranch()!!
+
+        TreeWalks.runOnSmallStack { gameModel.editor.removeNodeSubtree(firstMove) }
+
+        Assertions.assertEquals(1, gameModel.getRootNode().getChildNodes().size)
+    }
+
+    @Test
+    fun `dispose subtree 100k nodes deep`() {
+        val gameModel = createDeepModel(DEEP_TREE_SIZE)
+        val firstMove = gameModel.getRootNode().getChildNodeInMainBranch()!!
+        gameModel.gameTree.removeNodeShallow(firstMove)
+
+        TreeWalks.runOnSmallStack { firstMove.dispose() }
+
+        Assertions.assertTrue(firstMove.isLastMoveInThisVariation())
+    }
+
+    @Test
+    fun `append subtree 100k nodes deep`() {
+        val gameModel = createDeepModel(DEEP_TREE_SIZE)
+        val root = gameModel.getRootNode()
+        val secondMove = root.getChildNodeInMainBranch()!!.getChildNodeInMainBranch()!!
+        val lastMove = getLastNodeInMainBranch(root)
+        gameModel.editor.removeNode(secondMove)
+
+        // Moves the subtree up by one move, so every move number has to be updated
+        TreeWalks.runOnSmallStack { gameModel.editor.appendNode(root, secondMove) }
+
+        Assertions.assertEquals(DEEP_TREE_SIZE - 2, lastMove.moveNumber)
+        Assertions.assertTrue(lastMove.isContinuationOf(secondMove))
+        Assertions.assertEquals(DEEP_TREE_SIZE - 1, lastMove.getMoveHistory().size)
+    }
+
+    @Test
+    fun `SGF round trip 100k nodes deep`() {
+        assertRoundTrip(createDeepModel(DEEP_TREE_SIZE), FileFormat.SGF)
+    }
+
+    @Test
+    fun `SGF round trip 10k branches wide`() {
+        assertRoundTrip(createWideModel(WIDE_TREE_BRANCHES), FileFormat.SGF)
+    }
+
+    @Test
+    fun `YGR round trip 100k nodes deep`() {
+        assertRoundTrip(createDeepModel(DEEP_TREE_SIZE), FileFormat.YGR)
+    }
+
+    @Test
+    fun `YGR round trip 10k branches wide`() {
+        assertRoundTrip(createWideModel(WIDE_TREE_BRANCHES), FileFormat.YGR)
+    }
+
+    private fun assertRoundTrip(gameModel: GameModel, format: FileFormat) {
+        val exported = TreeWalks.runOnSmallStack {
+            val output = ByteArrayOutputStream()
+            GameModelExporter.toOutputStream(gameModel, output, format)
+            output.toByteArray()
+        }
+        val imported = TreeWalks.runOnSmallStack { format.getHandler().doImport(ByteArrayInputStream(exported)) }
+
+        Assertions.assertEquals(countNodes(gameModel.getRootNode()), countNodes(imported.getRootNode()))
+    }
+}
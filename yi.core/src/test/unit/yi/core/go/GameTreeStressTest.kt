@@ -0,0 +1,98 @@
+package yi.core.go
+
+import org.junit.jupiter.api.Tag
+import org.junit.jupiter.api.Test
+import yi.core.go.LargeGameTrees.DEEP_TREE_SIZE
+import yi.core.go.LargeGameTrees.WIDE_TREE_BRANCHES
+import yi.core.go.LargeGameTrees.countNodes
+import yi.core.go.LargeGameTrees.createDeepModel
+import yi.core.go.LargeGameTrees.createWideModel
+import yi.core.go.docformat.FileFormat
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+
+/**
+ * Checks the time taken by walks over game trees that are far deeper and wider than
+ * regular game records, and the heap they leave behind. The same walks are checked for
+ * their results in [GameTreeDeepWalkTest].
+ *
+ * Run with the performanceTest task, the timings are too noisy for the regular test run.
+ */
+@Tag("performance")
+class GameTreeStressTest {
+
+    @Test
+    fun `remove subtree 100k nodes deep`() {
+        val gameModel = createDeepModel(DEEP_TREE_SIZE)
+        val firstMove = gameModel.getRootNode().getChildNodeInMainBranch()!!
+
+        TreeWalks.measure { gameModel.editor.removeNodeSubtree(firstMove) }.assertWithin(500, 4)
+    }
+
+    @Test
+    fun `remove subtree 10k branches wide`() {
+        val gameModel = createWideModel(WIDE_TREE_BRANCHES)
+        val firstMove = gameModel.getRootNode().getChildNodeInMainBranch()!!
+
+        TreeWalks.measure { gameModel.editor.removeNodeSubtree(firstMove) }.assertWithin(500, 4)
+    }
+
+    @Test
+    fun `dispose subtree 100k nodes deep`() {
+        val gameModel = createDeepModel(DEEP_TREE_SIZE)
+        val firstMove = gameModel.getRootNode().getChildNodeInMainBranch()!!
+        gameModel.gameTree.removeNodeShallow(firstMove)
+
+        TreeWalks.measure { firstMove.dispose() }.assertWithin(500, 4)
+    }
+
+    @Test
+    fun `append subtree 100k nodes deep`() {
+        val gameModel = createDeepModel(DEEP_TREE_SIZE)
+        val root = gameModel.getRootNode()
+        val secondMove = root.getChildNodeInMainBranch()!!.getChildNodeInMainBranch()!!
+        gameModel.editor.removeNode(secondMove)
+
+        TreeWalks.measure { gameModel.editor.appendNode(root, secondMove) }.assertWithin(1000, 4)
+    }
+
+    @Test
+    fun `SGF round trip 100k nodes deep`() {
+        assertRoundTripWithin(createDeepModel(DEEP_TREE_SIZE), FileFormat.SGF, 3000)
+    }
+
+    @Test
+    fun `SGF round trip 10k branches wide`() {
+        assertRoundTripWithin(createWideModel(WIDE_TREE_BRANCHES), FileFormat.SGF, 3000)
+    }
+
+    @Test
+    fun `YGR round trip 100k nodes deep`() {
+        assertRoundTripWithin(createDeepModel(DEEP_TREE_SIZE), FileFormat.YGR, 3000)
+    }
+
+    @Test
+    fun `YGR round trip 10k branches wide`() {
+        assertRoundTripWithin(createWideModel(WIDE_TREE_BRANCHES), FileFormat.YGR, 3000)
+    }
+
+    private fun assertRoundTripWithin(gameModel: GameModel, format: FileFormat, maxMillis: Long) {
+        val nodeCount = countNodes(gameModel.getRootNode())
+
+        val export = TreeWalks.measure {
+            val output = ByteArrayOutputStream()
+            GameModelExporter.toOutputStream(gameModel, output, format)
+            output.toByteArray()
+        }
+        // Only the exported data is kept
+        export.assertWithin(maxMillis, 4L + export.result.size / BYTES_PER_MB)
+
+        val import = TreeWalks.measure { format.getHandler().doImport(ByteArrayInputStream(export.result)) }
+        import.assertWithin(maxMillis, nodeCount.toLong() * MAX_BYTES_PER_IMPORTED_NODE / BYTES_PER_MB)
+    }
+
+    private companion object {
+        const val BYTES_PER_MB = 1024 * 1024
+        const val MAX_BYTES_PER_IMPORTED_NODE = 1024
+    }
+}
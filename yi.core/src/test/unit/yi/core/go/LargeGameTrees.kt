@@ -0,0 +1,59 @@
+package yi.core.go
+
+/**
+ * Game trees that are far deeper and wider than regular game records, such as those
+ * generated by analysis tools.
+ */
+object LargeGameTrees {
+
+    const val DEEP_TREE_SIZE = 100_000
+    const val WIDE_TREE_BRANCHES = 10_000
+
+    /**
+     * @return A game with a single variation of passes.
+     */
+    fun createDeepModel(nodeCount: Int): GameModel {
+        val gameModel = GameModel(19, 19, TestGameRules.TestingGameRulesNoSuicide())
+        val builder = gameModel.editor.beginBulkConstruction()
+        var node = gameModel.getRootNode()
+
+        for (i in 1 until nodeCount) {
+            node = builder.appendPass(node)
+        }
+
+        return gameModel
+    }
+
+    /**
+     * Every move on the main variation has a one move variation. The branch points are
+     * nested in each other in the SGF format, as the rest of the main variation is
+     * enclosed in a variation of its own.
+     */
+    fun createWideModel(branchCount: Int): GameModel {
+        val gameModel = GameModel(19, 19, TestGameRules.TestingGameRulesNoSuicide())
+        val builder = gameModel.editor.beginBulkConstruction()
+        var node = gameModel.getRootNode()
+
+        for (i in 0 until branchCount) {
+            val nextNode = builder.appendPass(node)
+            gameModel.gameTree.appendNode(node, GameMoveSubmitter.createPassNode(node))
+            node = nextNode
+        }
+
+        return gameModel
+    }
+
+    fun getLastNodeInMainBranch(node: GameNode): GameNode {
+        var lastNode = node
+        while (!lastNode.isLastMoveInThisVariation()) {
+            lastNode = lastNode.getChildNodeInMainBranch()!!
+        }
+        return lastNode
+    }
+
+    fun countNodes(root: GameNode): Int {
+        var count = 0
+        GameTree.traverseSubtree(root) { ++count }
+        return count
+    }
+}
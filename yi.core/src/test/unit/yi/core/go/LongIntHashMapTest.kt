@@ -0,0 +1,48 @@
+package yi.core.go
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.util.*
+
+class LongIntHashMapTest {
+
+    @Test
+    fun `random operations agree with HashMap`() {
+        val map = LongIntHashMap()
+        val expected = HashMap<Long, Int>()
+        val random = Random(11)
+
+        for (i in 0 until 20000) {
+            // Small key range so that keys collide and get removed often
+            val key = random.nextInt(512).toLong() * 1024
+            when (random.nextInt(3)) {
+                0 -> {
+                    val value = random.nextInt(1000)
+                    map.put(key, value)
+                    expected[key] = value
+                }
+                1 -> {
+                    map.remove(key)
+                    expected.remove(key)
+                }
+                else -> Assertions.assertEquals(expected[key] ?: LongIntHashMap.NO_VALUE, map.get(key))
+            }
+        }
+
+        Assertions.assertEquals(expected.size, map.size())
+        expected.forEach { (key, value) -> Assertions.assertEquals(value, map.get(key)) }
+    }
+
+    @Test
+    fun `clear removes all entries`() {
+        val map = LongIntHashMap()
+        for (i in 0 until 100) {
+            map.put(i.toLong(), i)
+        }
+
+        map.clear()
+
+        Assertions.assertEquals(0, map.size())
+        Assertions.assertFalse(map.containsKey(5L))
+    }
+}
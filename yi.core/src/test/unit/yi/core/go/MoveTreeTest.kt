@@ -199,4 +199,73 @@ class MoveTreeTest {
         Assertions.assertEquals(1, child1.moveNumber)
         Assertions.assertEquals(1, child1.moveNumber)
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `ancestor queries agree with path to root on random tree`() {
+        val tree = GameTree(0)
+        val nodes = arrayListOf(tree.rootNode)
+        val random = java.util.Random(13)
+
+        // Mostly extend recent nodes so that the tree has long branches
+        for (i in 0 until 2000) {
+            val parentIndex = if (random.nextInt(10) == 0) random.nextInt(nodes.size)
+                              else nodes.size - 1 - random.nextInt(minOf(3, nodes.size))
+            val child = node()
+            tree.appendNode(nodes[parentIndex], child)
+            nodes.add(child)
+        }
+
+        for (i in 0 until 500) {
+            val a = nodes[random.nextInt(nodes.size)]
+            val b = nodes[random.nextInt(nodes.size)]
+            val historyA = a.getMoveHistory()
+            val historyB = b.getMoveHistory()
+
+            Assertions.assertEquals(historyA.contains(b), a.isContinuationOf(b))
+
+            val generations = random.nextInt(a.moveNumber + 1)
+            Assertions.assertSame(historyA[historyA.size - 1 - generations], a.getAncestor(generations))
+            Assertions.assertNull(a.getAncestor(a.moveNumber + 1))
+
+            var commonDepth = 0
+            while (commonDepth + 1 < minOf(historyA.size, historyB.size)
+                    && historyA[commonDepth + 1] === historyB[commonDepth + 1]) {
+                ++commonDepth
+            }
+            Assertions.assertSame(historyA[commonDepth], a.getLowestCommonAncestor(b))
+        }
+    }
+
+    @Test
+    fun `nodes in different trees have no common ancestor`() {
+        val treeA = GameTree(0)
+        val treeB = GameTree(0)
+        val childA = node()
+        val childB = node()
+        treeA.appendNewNodeToRoot(childA)
+        treeB.appendNewNodeToRoot(childB)
+
+        Assertions.assertNull(childA.getLowestCommonAncestor(childB))
+        Assertions.assertFalse(childA.isContinuationOf(childB))
+    }
+
+    @Test
+    fun `re-attached subtree has updated move numbers and ancestors`() {
+        val tree = GameTree(0)
+        val first = node()
+        val second = node()
+        val third = node()
+        tree.appendNewNodeToRoot(first)
+        tree.appendNode(first, second)
+        tree.appendNode(second, third)
+
+        tree.removeNodeShallow(second)
+        tree.appendNewNodeToRoot(second)
+
+        Assertions.assertEquals(1, second.moveNumber)
+        Assertions.assertEquals(2, third.moveNumber)
+        Assertions.assertFalse(third.isContinuationOf(first))
+        Assertions.assertSame(tree.rootNode, third.getAncestor(2))
+        Assertions.assertSame(tree.rootNode, third.getLowestCommonAncestor(first))
+    }
+}
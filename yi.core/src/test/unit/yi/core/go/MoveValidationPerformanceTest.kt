@@ -0,0 +1,65 @@
+package yi.core.go
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+// TODO: Move me into a performance test source set
+class MoveValidationPerformanceTest {
+
+    @Test
+    fun `random 250 move games on 19x19 board validate fast enough`() {
+        testPerformance(19, 250, 150)
+    }
+
+    @Test
+    fun `random 500 move games on 25x25 board validate fast enough`() {
+        testPerformance(25, 500, 300)
+    }
+
+    private fun testPerformance(boardSize: Int, movesPerGame: Int, expectedDurationMillis: Long) {
+        // Warm up the VM by doing a few dry runs.
+        for (i in 0 until 3) {
+            playRandomGame(boardSize, movesPerGame, i.toLong())
+        }
+
+        var total = 0L
+        val trials = 5
+
+        for (i in 0 until trials) {
+            val startTime = System.nanoTime()
+            playRandomGame(boardSize, movesPerGame, i.toLong())
+            val endTime = System.nanoTime()
+
+            total += TimeUnit.NANOSECONDS.toMillis(endTime - startTime)
+        }
+
+        val averageTime = total / trials
+
+        Assertions.assertTrue(averageTime <= expectedDurationMillis,
+                "Averaged ${averageTime}ms out of $trials runs to play $movesPerGame moves, " +
+                        "expected ${expectedDurationMillis}ms")
+    }
+
+    /*
+     * Submits random moves until the requested number of moves have been played. Illegal
+     * submissions are part of the workload as they go through the same validation.
+     */
+    private fun playRandomGame(boardSize: Int, movesToPlay: Int, seed: Long): GameModel {
+        val model = GameModel(boardSize, boardSize, StandardGameRules.CHINESE)
+        val random = Random(seed)
+        var movesPlayed = 0
+        var attempts = 0
+
+        while (movesPlayed < movesToPlay && attempts < movesToPlay * 50) {
+            val result = model.editor.addMove(random.nextInt(boardSize), random.nextInt(boardSize))
+            if (result.validationResult == MoveValidationResult.OK) {
+                ++movesPlayed
+            }
+            ++attempts
+        }
+
+        return model
+    }
+}
@@ -190,6 +190,17 @@ class PlayMoveTest {
         Assertions.assertEquals(MoveValidationResult.OK, submitResult.validationResult)
     }
 
+    @Test
+    fun `suicidal move removes the entire string including itself`() {
+        val model = GameModel(1, 1, TestingGameRulesSuicideAllowed(), TestingFourIntersectionXORHasher())
+
+        model.editor.addMove(0, 0)
+
+        val gameState = model.getCurrentGameState()
+        Assertions.assertEquals(StoneColor.NONE, gameState.boardPosition.getStoneColorAt(0, 0))
+        Assertions.assertEquals(1, gameState.prisonersWhite)
+    }
+
     @Test
     fun `board position repeat is illegal on 1x1`() {
         val model = GameModel(1, 1, TestingGameRulesSuicideAllowed(), TestingFourIntersectionXORHasher())
@@ -0,0 +1,80 @@
+package yi.core.go
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import yi.core.go.TestGameRules.TestingGameRulesNoSuicide
+import java.util.*
+
+class PositionHistoryTest {
+
+    @Test
+    fun `history matches path to root while navigating a branched tree`() {
+        val model = GameModel(9, 9, StandardGameRules.CHINESE)
+        val random = Random(7)
+        val nodes = ArrayList<GameNode>()
+        nodes.add(model.getRootNode())
+
+        for (i in 0 until 400) {
+            when (random.nextInt(5)) {
+                0 -> model.currentNode = nodes[random.nextInt(nodes.size)]
+                1 -> model.toPreviousNode()
+                2 -> model.editor.addPass().moveNode?.let { nodes.add(it) }
+                else -> model.editor.addMove(random.nextInt(9), random.nextInt(9)).moveNode?.let { nodes.add(it) }
+            }
+
+            assertHistoryMatchesPath(model)
+        }
+    }
+
+    @Test
+    fun `repeated state keeps index of its first occurrence`() {
+        val history = PositionHistory()
+        val model = GameModel(3, 3, TestingGameRulesNoSuicide())
+        val root = model.getRootNode()
+
+        // Craft moves with fixed state hashes so that the first state repeats
+        val first = GameNode(StateDelta.forProposedMove(Stone(0, 0, StoneColor.BLACK), HashSet(), 10L))
+        val second = GameNode(StateDelta.forProposedMove(Stone(1, 0, StoneColor.WHITE), HashSet(), 20L))
+        val third = GameNode(StateDelta.forProposedMove(Stone(2, 0, StoneColor.BLACK), HashSet(), 10L))
+        model.editor.appendNode(root, first)
+        model.editor.appendNode(first, second)
+        model.editor.appendNode(second, third)
+
+        history.moveTo(third)
+        Assertions.assertEquals(0, history.indexOf(10L))
+        Assertions.assertEquals(1, history.indexOf(20L))
+        Assertions.assertEquals(3, history.getStateCount())
+
+        history.moveTo(second)
+        Assertions.assertEquals(0, history.indexOf(10L))
+
+        history.moveTo(root)
+        Assertions.assertTrue(history.indexOf(10L) < 0)
+        Assertions.assertTrue(history.indexOf(20L) < 0)
+        Assertions.assertEquals(0, history.getStateCount())
+    }
+
+    @Test
+    fun `stone edit on current path updates recorded state hash`() {
+        val model = GameModel(5, 5, TestingGameRulesNoSuicide())
+        model.beginMoveSequence()
+                .playMove(0, 0)
+                .playMove(1, 1)
+
+        model.editor.addStoneEdit(model.currentNode, Stone(3, 3, StoneColor.BLACK))
+
+        assertHistoryMatchesPath(model)
+    }
+
+    private fun assertHistoryMatchesPath(model: GameModel) {
+        val path = model.currentNode.getMoveHistory()
+        val expectedHashes = path.filter { it.getType() == GameNodeType.MOVE_PLAYED }.map { it.getStateHash() }
+        val expectedPlayedMoves = path.count { it.getType() == GameNodeType.MOVE_PLAYED || it.getType() == GameNodeType.PASS }
+
+        Assertions.assertEquals(expectedHashes, model.getStateHashHistory())
+        Assertions.assertEquals(expectedPlayedMoves, model.positionHistory.getPlayedMoveCount())
+        expectedHashes.forEach {
+            Assertions.assertEquals(expectedHashes.indexOf(it), model.positionHistory.indexOf(it))
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package yi.core.go
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import yi.core.go.TestGameRules.TestingGameRulesNoSuicide
+import java.util.*
+
+class StoneStringTrackerTest {
+
+    @Test
+    fun `liberties match board position throughout a random game`() {
+        val model = GameModel(9, 9, StandardGameRules.CHINESE)
+        val random = Random(1)
+        var attempts = 0
+
+        while (model.getCurrentMoveNumber() < 120 && attempts < 5000) {
+            model.editor.addMove(random.nextInt(9), random.nextInt(9))
+            assertTrackerMatches(model, model.currentNode)
+            ++attempts
+        }
+    }
+
+    @Test
+    fun `liberties match board position after navigating to other variations`() {
+        val model = GameModel(5, 5, TestingGameRulesNoSuicide())
+
+        model.beginMoveSequence()
+                .playMove(0, 0)
+                .playMove(1, 0)
+                .playMove(2, 0)
+                .playMove(0, 1)
+        assertTrackerMatches(model, model.currentNode)
+
+        // White captures the corner stone on this variation only
+        model.toPreviousNode(2)
+        model.beginMoveSequence()
+                .playMove(1, 1)
+                .playMove(2, 2)
+        assertTrackerMatches(model, model.currentNode)
+
+        model.toPreviousNode(3)
+        model.editor.addMove(4, 4)
+        assertTrackerMatches(model, model.currentNode)
+    }
+
+    @Test
+    fun `captured string gives liberties back to adjacent strings`() {
+        val model = GameModel(3, 3, TestingGameRulesNoSuicide())
+
+        model.beginMoveSequence()
+                .playMove(0, 0)
+                .playMove(1, 0)
+                .pass()
+                .playMove(0, 1)
+
+        val tracker = model.stoneStringTracker
+        tracker.syncTo(model, model.currentNode)
+
+        Assertions.assertEquals(StoneColor.NONE, tracker.getStoneColorAt(0))
+        Assertions.assertEquals(3, tracker.getLibertyCount(1))
+        Assertions.assertEquals(3, tracker.getLibertyCount(3))
+    }
+
+    @Test
+    fun `adjacent stones share one string`() {
+        val model = GameModel(5, 5, TestingGameRulesNoSuicide())
+
+        model.beginMoveSequence()
+                .playMove(1, 1)
+                .pass()
+                .playMove(2, 1)
+                .pass()
+                .playMove(1, 2)
+
+        val tracker = model.stoneStringTracker
+        tracker.syncTo(model, model.currentNode)
+
+        val stringId = tracker.getStringId(1 + 5)
+        Assertions.assertEquals(stringId, tracker.getStringId(2 + 5))
+        Assertions.assertEquals(stringId, tracker.getStringId(1 + 2 * 5))
+        Assertions.assertEquals(7, tracker.getLibertyCount(1 + 5))
+    }
+
+    @Test
+    fun `helper stones on stone edit node are tracked`() {
+        val model = GameModel(5, 5, TestingGameRulesNoSuicide())
+
+        model.editor.addMove(0, 0)
+        assertTrackerMatches(model, model.currentNode)
+
+        val editNode = model.editor.addStoneEditNode()
+        model.editor.addStoneEdits(editNode, listOf(Stone(1, 0, StoneColor.WHITE), Stone(0, 1, StoneColor.WHITE)))
+        assertTrackerMatches(model, editNode)
+
+        model.editor.removeStoneEdit(editNode, Stone(0, 1, StoneColor.WHITE))
+        assertTrackerMatches(model, editNode)
+    }
+
+    @Test
+    fun `stone edit on ancestor node is reflected in tracked position`() {
+        val model = GameModel(5, 5, TestingGameRulesNoSuicide())
+
+        model.beginMoveSequence()
+                .playMove(0, 0)
+                .playMove(4, 4)
+                .playMove(2, 2)
+        assertTrackerMatches(model, model.currentNode)
+
+        val ancestor = model.currentNode.parent!!.parent!!
+        model.editor.addStoneEdit(ancestor, Stone(1, 0, StoneColor.WHITE))
+
+        val tracker = model.stoneStringTracker
+        tracker.syncTo(model, model.currentNode)
+        Assertions.assertEquals(StoneColor.WHITE, tracker.getStoneColorAt(1))
+        Assertions.assertEquals(1, tracker.getLibertyCount(0))
+    }
+
+    @Test
+    fun `rollback to savepoint restores position before captures`() {
+        val model = GameModel(3, 3, TestingGameRulesNoSuicide())
+
+        model.editor.addMove(0, 0)
+        val branchPoint = model.currentNode
+        val tracker = model.stoneStringTracker
+        tracker.syncTo(model, branchPoint)
+
+        tracker.pushSavepoint()
+        model.editor.addMove(1, 0)
+        tracker.syncTo(model, model.currentNode)
+        model.editor.addPass()
+        tracker.syncTo(model, model.currentNode)
+        model.editor.addMove(0, 1)
+        tracker.syncTo(model, model.currentNode)
+        Assertions.assertEquals(StoneColor.NONE, tracker.getStoneColorAt(0))
+
+        tracker.rollbackToSavepoint()
+        Assertions.assertEquals(StoneColor.BLACK, tracker.getStoneColorAt(0))
+        Assertions.assertEquals(2, tracker.getLibertyCount(0))
+        assertTrackerMatches(model, branchPoint)
+    }
+
+    /*
+     * Compares the tracked strings against strings found by flood filling the position
+     * resolved by the game model.
+     */
+    private fun assertTrackerMatches(model: GameModel, node: GameNode) {
+        val tracker = model.stoneStringTracker
+        tracker.syncTo(model, node)
+
+        val position = model.getGameState(node).boardPosition
+        val width = model.boardWidth
+        val height = model.boardHeight
+
+        for (intersection in 0 until model.getIntersectionCount()) {
+            val color = position.getStoneColorAt(intersection)
+            Assertions.assertEquals(color, tracker.getStoneColorAt(intersection), "Color at $intersection")
+
+            if (color == StoneColor.NONE) {
+                Assertions.assertTrue(tracker.getStringId(intersection) < 0)
+                continue
+            }
+
+            val string = HashSet<Int>()
+            val liberties = HashSet<Int>()
+            val toVisit = Stack<Int>()
+            toVisit.push(intersection)
+
+            while (toVisit.isNotEmpty()) {
+                val stone = toVisit.pop()
+                if (!string.add(stone)) {
+                    continue
+                }
+
+                val x = stone % width
+                val y = stone / width
+                val neighbours = ArrayList<Int>()
+                if (x > 0) neighbours.add(stone - 1)
+                if (x < width - 1) neighbours.add(stone + 1)
+                if (y > 0) neighbours.add(stone - width)
+                if (y < height - 1) neighbours.add(stone + width)
+
+                neighbours.forEach {
+                    when (position.getStoneColorAt(it)) {
+                        StoneColor.NONE -> liberties.add(it)
+                        color -> toVisit.push(it)
+                        else -> { }
+                    }
+                }
+            }
+
+            Assertions.assertEquals(liberties.size, tracker.getLibertyCount(intersection), "Liberties at $intersection")
+            string.forEach {
+                Assertions.assertEquals(tracker.getStringId(intersection), tracker.getStringId(it), "String at $it")
+            }
+        }
+    }
+}
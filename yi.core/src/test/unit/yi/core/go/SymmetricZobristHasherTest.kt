@@ -0,0 +1,156 @@
+package yi.core.go
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.util.*
+
+class SymmetricZobristHasherTest {
+
+    // Stones of a 3-3 invasion in the top-left corner, with the shape not being symmetrical
+    private val shape = listOf(Stone(3, 3, StoneColor.BLACK), Stone(2, 2, StoneColor.WHITE),
+            Stone(3, 2, StoneColor.BLACK), Stone(2, 3, StoneColor.WHITE), Stone(2, 4, StoneColor.BLACK))
+
+    @Test
+    fun `rotate or reflect position, canonical hash is the same`() {
+        val hasher = SymmetricZobristHasher(19, 19)
+        val expected = hashesOf(hasher, shape)
+
+        for (symmetry in BoardSymmetry.values()) {
+            val transformed = hashesOf(hasher, shape.map { symmetry.transform(it, 19, 19) })
+
+            Assertions.assertEquals(expected.getCanonicalHash(), transformed.getCanonicalHash(), symmetry.name)
+            Assertions.assertEquals(expected.getHash(symmetry), transformed.getHash(BoardSymmetry.IDENTITY), symmetry.name)
+        }
+    }
+
+    @Test
+    fun `different positions, canonical hash is different`() {
+        val hasher = SymmetricZobristHasher(19, 19)
+        val moved = shape.map { Stone(it.x + 1, it.y, it.color) }
+        val recolored = shape.map { Stone(it.x, it.y, it.color.getOpponent()) }
+
+        val hash = hashesOf(hasher, shape).getCanonicalHash()
+
+        Assertions.assertNotEquals(hash, hashesOf(hasher, moved).getCanonicalHash())
+        Assertions.assertNotEquals(hash, hashesOf(hasher, recolored).getCanonicalHash())
+    }
+
+    @Test
+    fun `canonical symmetry, takes position to canonical orientation`() {
+        val hasher = SymmetricZobristHasher(19, 19)
+        val hashes = hashesOf(hasher, shape.map { BoardSymmetry.ROTATE_90.transform(it, 19, 19) })
+
+        val canonicalSymmetry = hashes.getCanonicalSymmetry()
+        val canonical = hashesOf(hasher, shape.map {
+            canonicalSymmetry.transform(BoardSymmetry.ROTATE_90.transform(it, 19, 19), 19, 19)
+        })
+
+        Assertions.assertEquals(hashes.getCanonicalHash(), canonical.getHash(BoardSymmetry.IDENTITY))
+    }
+
+    @Test
+    fun `update incrementally, hashes are the same as scanning the position`() {
+        val hasher = SymmetricZobristHasher(9, 9)
+        val model = GameModel(9, 9, StandardGameRules.CHINESE.rulesHandler, hasher)
+        val hashes = hasher.createEmptyHashes()
+        val random = Random(1234L)
+
+        for (move in 0 until 60) {
+            val submitResult = model.editor.addMove(random.nextInt(9), random.nextInt(9))
+            if (!submitResult.isPlayed) {
+                continue
+            }
+
+            val node = model.currentNode
+            val stoneUpdates = HashSet<Stone>(node.getCapturesThisTurn())
+            stoneUpdates.add(node.getPrimaryMove()!!)
+            hasher.update(hashes, stoneUpdates)
+
+            val expected = hasher.createHashes(model.getCurrentGameState().boardPosition)
+            for (symmetry in BoardSymmetry.values()) {
+                Assertions.assertEquals(expected.getHash(symmetry), hashes.getHash(symmetry), "$move, $symmetry")
+            }
+            for (region in BoardRegion.values()) {
+                Assertions.assertEquals(expected.getRegionHash(region), hashes.getRegionHash(region), "$move, $region")
+            }
+            Assertions.assertEquals(node.getStateHash(), hashes.getHash(BoardSymmetry.IDENTITY), "$move")
+        }
+    }
+
+    @Test
+    fun `play joseki in every corner, corner region hashes are the same`() {
+        val hasher = SymmetricZobristHasher(19, 19)
+        val hashes = hashesOf(hasher, shape)
+        val expected = hashes.getRegionHash(BoardRegion.TOP_LEFT_CORNER)
+
+        val corners = mapOf(BoardSymmetry.ROTATE_90 to BoardRegion.TOP_RIGHT_CORNER,
+                BoardSymmetry.ROTATE_180 to BoardRegion.BOTTOM_RIGHT_CORNER,
+                BoardSymmetry.ROTATE_270 to BoardRegion.BOTTOM_LEFT_CORNER,
+                BoardSymmetry.FLIP_HORIZONTAL to BoardRegion.TOP_RIGHT_CORNER,
+                BoardSymmetry.FLIP_VERTICAL to BoardRegion.BOTTOM_LEFT_CORNER,
+                BoardSymmetry.TRANSPOSE to BoardRegion.TOP_LEFT_CORNER)
+
+        for ((symmetry, corner) in corners) {
+            val transformed = hashesOf(hasher, shape.map { symmetry.transform(it, 19, 19) })
+
+            Assertions.assertEquals(expected, transformed.getRegionHash(corner), symmetry.name)
+            Assertions.assertEquals(0L, transformed.getRegionHash(BoardRegion.TOP_SIDE), symmetry.name)
+        }
+        Assertions.assertEquals(0L, hashes.getRegionHash(BoardRegion.BOTTOM_RIGHT_CORNER))
+    }
+
+    @Test
+    fun `play joseki on different board sizes, corner region hashes are the same`() {
+        val largeBoard = hashesOf(SymmetricZobristHasher(19, 19, 7), shape)
+        val smallBoard = hashesOf(SymmetricZobristHasher(13, 13, 7), shape.map { Stone(12 - it.x, it.y, it.color) })
+
+        Assertions.assertEquals(largeBoard.getRegionHash(BoardRegion.TOP_LEFT_CORNER),
+                smallBoard.getRegionHash(BoardRegion.TOP_RIGHT_CORNER))
+    }
+
+    @Test
+    fun `play shape on each side, side region hashes are the same`() {
+        val hasher = SymmetricZobristHasher(19, 19)
+        val sideShape = listOf(Stone(9, 2, StoneColor.BLACK), Stone(10, 3, StoneColor.WHITE), Stone(8, 3, StoneColor.BLACK))
+        val expected = hashesOf(hasher, sideShape).getRegionHash(BoardRegion.TOP_SIDE)
+
+        val sides = mapOf(BoardSymmetry.ROTATE_90 to BoardRegion.RIGHT_SIDE,
+                BoardSymmetry.ROTATE_180 to BoardRegion.BOTTOM_SIDE,
+                BoardSymmetry.ROTATE_270 to BoardRegion.LEFT_SIDE,
+                BoardSymmetry.FLIP_HORIZONTAL to BoardRegion.TOP_SIDE)
+
+        for ((symmetry, side) in sides) {
+            val transformed = hashesOf(hasher, sideShape.map { symmetry.transform(it, 19, 19) })
+
+            Assertions.assertNotEquals(0L, expected)
+            Assertions.assertEquals(expected, transformed.getRegionHash(side), symmetry.name)
+        }
+    }
+
+    @Test
+    fun `hash on rectangular board, only symmetries keeping the dimensions are available`() {
+        val hasher = SymmetricZobristHasher(13, 9)
+        val hashes = hashesOf(hasher, listOf(Stone(2, 2, StoneColor.BLACK)))
+
+        Assertions.assertEquals(listOf(BoardSymmetry.IDENTITY, BoardSymmetry.ROTATE_180, BoardSymmetry.FLIP_HORIZONTAL,
+                BoardSymmetry.FLIP_VERTICAL), BoardSymmetry.availableFor(13, 9))
+        Assertions.assertEquals(hashes.getCanonicalHash(),
+                hashesOf(hasher, listOf(Stone(10, 6, StoneColor.BLACK))).getCanonicalHash())
+        Assertions.assertThrows(IllegalArgumentException::class.java) { hashes.getHash(BoardSymmetry.ROTATE_90) }
+    }
+
+    @Test
+    fun `create hasher twice, hashes are the same`() {
+        val first = hashesOf(SymmetricZobristHasher(19, 19), shape)
+        val second = hashesOf(SymmetricZobristHasher(19, 19), shape)
+
+        Assertions.assertEquals(first.getHash(BoardSymmetry.IDENTITY), second.getHash(BoardSymmetry.IDENTITY))
+        Assertions.assertEquals(first.getRegionHash(BoardRegion.TOP_LEFT_CORNER), second.getRegionHash(BoardRegion.TOP_LEFT_CORNER))
+    }
+
+    private fun hashesOf(hasher: SymmetricZobristHasher, stones: Collection<Stone>): SymmetricHashes {
+        val hashes = hasher.createEmptyHashes()
+        hasher.update(hashes, stones)
+        return hashes
+    }
+}
@@ -0,0 +1,86 @@
+package yi.core.go
+
+import org.junit.jupiter.api.Assertions
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs walks over game trees that are far deeper and wider than regular game records on a
+ * thread with a small stack, so that any walk recursing once per node or per variation
+ * fails. Shared by the tests of every module that walks the game tree.
+ */
+object TreeWalks {
+
+    // Far below the default, recursing once per node or variation overflows it
+    private const val WALK_STACK_SIZE = 256 * 1024L
+
+    private const val BYTES_PER_MB = 1024 * 1024L
+    private const val MAX_GC_ROUNDS = 5
+
+    /**
+     * Runs the work on a thread with a small stack.
+     *
+     * @return The result of the work.
+     */
+    fun <T> runOnSmallStack(work: () -> T): T {
+        var result: Result<T>? = null
+
+        val thread = Thread(null, { result = runCatching(work) }, "Tree walk", WALK_STACK_SIZE)
+        thread.start()
+        thread.join()
+
+        return result!!.getOrElse { throw AssertionError("Tree walk failed", it) }
+    }
+
+    /**
+     * Runs the work on a thread with a small stack, recording its duration and the growth
+     * of the heap until it has finished, which includes the result.
+     *
+     * The heap is only measured after asking for a garbage collection, which the virtual
+     * machine is free to skip. Only use this in tests tagged as performance tests, which
+     * are left out of the regular test run.
+     */
+    fun <T> measure(work: () -> T): Measurement<T> {
+        return runOnSmallStack {
+            val usedBefore = getUsedMemory()
+            val startTime = System.nanoTime()
+            val result = work()
+            val duration = System.nanoTime() - startTime
+
+            Measurement(result, duration, getUsedMemory() - usedBefore)
+        }
+    }
+
+    /*
+     * Collects garbage until the heap in use stops shrinking, as a single request may
+     * not free everything that is unreachable.
+     */
+    private fun getUsedMemory(): Long {
+        val runtime = Runtime.getRuntime()
+        var used = Long.MAX_VALUE
+
+        for (i in 0 until MAX_GC_ROUNDS) {
+            System.gc()
+            val usedNow = runtime.totalMemory() - runtime.freeMemory()
+            if (usedNow >= used) {
+                break
+            }
+            used = usedNow
+        }
+
+        return used
+    }
+
+    /**
+     * Outcome of a walk run through [measure].
+     */
+    class Measurement<T>(val result: T, val durationNanos: Long, val retainedBytes: Long) {
+
+        fun assertWithin(maxMillis: Long, maxRetainedMb: Long) {
+            val durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos)
+            Assertions.assertTrue(durationMillis <= maxMillis,
+                    "Too slow. Expected <= ${maxMillis}ms, got ${durationMillis}ms")
+            Assertions.assertTrue(retainedBytes <= maxRetainedMb * BYTES_PER_MB,
+                    "Too much memory. Expected <= ${maxRetainedMb}MB, got ${retainedBytes / BYTES_PER_MB}MB")
+        }
+    }
+}
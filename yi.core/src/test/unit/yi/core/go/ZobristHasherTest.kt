@@ -48,7 +48,7 @@ class ZobristHasherTest {
                 }
 
                 // Manually manipulate the intersection state,
-                gamePosition.intersectionState[position] = color
+                gamePosition.setStoneColorAt(position, color)
             }
         }
 
@@ -61,4 +61,38 @@ class ZobristHasherTest {
         Assertions.assertEquals(firstHash, secondHash)
     }
 
-}
\ No newline at end of file
+    @Test
+    fun `separate models of same size, state hashes are identical`() {
+        val firstModel = GameModel(19, 19, StandardGameRules.CHINESE)
+        val secondModel = GameModel(19, 19, StandardGameRules.NEW_ZEALAND)
+
+        firstModel.beginMoveSequence().playMove(3, 3).playMove(15, 15).playMove(2, 16)
+        secondModel.beginMoveSequence().playMove(3, 3).playMove(15, 15).playMove(2, 16)
+
+        Assertions.assertEquals(firstModel.getRootNode().getStateHash(), secondModel.getRootNode().getStateHash())
+        Assertions.assertEquals(firstModel.currentNode.getStateHash(), secondModel.currentNode.getStateHash())
+    }
+
+    @Test
+    fun `precomputed empty position hash, same as hashing every empty intersection`() {
+        val zobrist = ZobristHasher(19, 13)
+        val emptyStones = HashSet<Stone>()
+        for (x in 0 until 19) {
+            for (y in 0 until 13) {
+                emptyStones.add(Stone(x, y, StoneColor.NONE))
+            }
+        }
+
+        Assertions.assertEquals(zobrist.computeUpdateHash(0, emptyStones), zobrist.computeEmptyPositionHash(19, 13))
+        Assertions.assertNotEquals(zobrist.computeEmptyPositionHash(19, 13), ZobristHasher(13, 19).computeEmptyPositionHash(13, 19))
+    }
+
+    @Test
+    fun `hash values, same as the reference SplitMix64 sequence`() {
+        // Stored state hashes rely on these never changing between versions
+        val zobrist = ZobristHasher(19, 19)
+
+        Assertions.assertEquals(920072018404684501L, zobrist.computeEmptyPositionHash(19, 19))
+        Assertions.assertEquals(-399157110546288538L, zobrist.computeUpdateHash(0L, setOf(Stone(3, 3, StoneColor.BLACK))))
+    }
+}
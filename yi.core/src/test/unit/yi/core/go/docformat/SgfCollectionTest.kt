@@ -0,0 +1,164 @@
+package yi.core.go.docformat
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import yi.core.go.GameModelImporter
+import yi.core.go.GameParseException
+import yi.core.go.StoneColor
+import java.io.ByteArrayInputStream
+import java.io.Reader
+import java.io.StringReader
+
+class SgfCollectionTest {
+
+    private val sgfHandler = FileFormat.SGF.getHandler() as TextFileFormatHandler
+
+    @Test
+    fun `import collection, returns every game in order`() {
+        val data = "(;GM[1]SZ[9];B[aa])\n(;GM[1]SZ[13];B[bb];W[cc])\r\n(;GM[1]SZ[19])"
+
+        val games = GameModelImporter.collectionFromString(data, FileFormat.SGF).toList()
+
+        Assertions.assertEquals(listOf(9, 13, 19), games.map { it.boardWidth })
+        Assertions.assertEquals(1, games[0].getRootNode().children.size)
+        Assertions.assertEquals(StoneColor.WHITE, games[1].getRootNode().children[0].children[0].getPrimaryMove()!!.color)
+    }
+
+    @Test
+    fun `import collection with text between games, ignores the text`() {
+        val data = "Games from the club, 2 games\n(;GM[1]SZ[9]) ; separator [x] \n(;GM[1]SZ[13])\ntrailer"
+
+        val games = GameModelImporter.collectionFromString(data, FileFormat.SGF).toList()
+
+        Assertions.assertEquals(listOf(9, 13), games.map { it.boardWidth })
+    }
+
+    @Test
+    fun `import collection with branch delimiters in tag values, does not split the game`() {
+        val data = "(;GM[1]SZ[9]C[(;a) \\] )];B[aa](;W[bb]C[)])(;W[cc]))(;GM[1]SZ[13])"
+
+        val games = GameModelImporter.collectionFromString(data, FileFormat.SGF).toList()
+
+        Assertions.assertEquals(2, games.size)
+        Assertions.assertEquals("(;a) ] )", games[0].getRootNode().getComments())
+        Assertions.assertEquals(2, games[0].getRootNode().children[0].children.size)
+    }
+
+    @Test
+    fun `import single game sgf as collection, returns the same game`() {
+        val data = javaClass.getResourceAsStream("/sgf/branches.sgf").bufferedReader().readText()
+
+        val games = GameModelImporter.collectionFromString(data, FileFormat.SGF).toList()
+        val game = GameModelImporter.fromString(data, FileFormat.SGF)
+
+        Assertions.assertEquals(1, games.size)
+        Assertions.assertEquals(game.getRootNode().children.size, games[0].getRootNode().children.size)
+        Assertions.assertEquals(game.getRootNode().getChildNodeInMainBranch()!!.getPrimaryMove(),
+                games[0].getRootNode().getChildNodeInMainBranch()!!.getPrimaryMove())
+    }
+
+    @Test
+    fun `import collection with corrupt game, returns earlier games then throws`() {
+        val data = "(;GM[1]SZ[9])(;GM[1]SZ[13])(;GM[1]SZ[abc])(;GM[1]SZ[19])"
+        val games = GameModelImporter.collectionFromString(data, FileFormat.SGF).iterator()
+
+        Assertions.assertEquals(9, games.next().boardWidth)
+        Assertions.assertEquals(13, games.next().boardWidth)
+        Assertions.assertThrows(GameParseException::class.java) {
+            games.next()
+        }
+        Assertions.assertFalse(games.hasNext())
+    }
+
+    @Test
+    fun `import collection with unclosed last game, throws GameParseException`() {
+        val data = "(;GM[1]SZ[9])(;GM[1]SZ[13];B[aa]C[unfinished"
+        val games = GameModelImporter.collectionFromString(data, FileFormat.SGF).iterator()
+
+        Assertions.assertEquals(9, games.next().boardWidth)
+        Assertions.assertThrows(GameParseException::class.java) {
+            games.next()
+        }
+    }
+
+    @Test
+    fun `import unbounded collection, games are read lazily`() {
+        val reader = EndlessCollectionReader()
+
+        val games = sgfHandler.doImportCollection(reader.buffered()).use { it.take(5).toList() }
+
+        Assertions.assertEquals(5, games.size)
+        Assertions.assertTrue(reader.gamesRead < 10_000, "Read ${reader.gamesRead} games to return 5")
+    }
+
+    @Test
+    fun `stop iterating collection early and close it, reader is closed and no more games are returned`() {
+        val reader = EndlessCollectionReader()
+        val collection = sgfHandler.doImportCollection(reader.buffered())
+        val games = collection.iterator()
+
+        games.next()
+        games.next()
+        collection.close()
+
+        Assertions.assertTrue(reader.closed, "Reader not closed")
+        Assertions.assertFalse(games.hasNext())
+
+        val gamesRead = reader.gamesRead
+        collection.close()
+        Assertions.assertEquals(gamesRead, reader.gamesRead)
+    }
+
+    @Test
+    fun `close collection before iterating single game format, stream is closed`() {
+        var closed = false
+        val inputStream = object : ByteArrayInputStream(ByteArray(0)) {
+            override fun close() {
+                closed = true
+            }
+        }
+
+        FileFormat.YGR.getHandler().doImportCollection(inputStream).close()
+
+        Assertions.assertTrue(closed, "Stream not closed")
+    }
+
+    @Test
+    fun `split collection with small buffer, games spanning buffer refills are intact`() {
+        val firstGame = "(;GM[1]C[" + "x".repeat(100) + "\\])]" + ";B[aa])"
+        val secondGame = "(;GM[1](;B[bb])(;B[cc]))"
+        val splitter = SgfCollectionSplitter(StringReader("$firstGame\n\n$secondGame\n"), 8)
+
+        Assertions.assertEquals(firstGame, String(splitter.nextGame()!!))
+        Assertions.assertEquals(secondGame, String(splitter.nextGame()!!))
+        Assertions.assertNull(splitter.nextGame())
+    }
+
+    /*
+     * Supplies an unlimited number of small games.
+     */
+    private class EndlessCollectionReader : Reader() {
+
+        var gamesRead = 0
+        var closed = false
+        private var game = ""
+        private var position = 0
+
+        override fun read(buffer: CharArray, offset: Int, length: Int): Int {
+            if (position == game.length) {
+                game = "(;GM[1]SZ[19]GN[Game $gamesRead];B[pd];W[dp];B[pp];W[dd])\n"
+                position = 0
+                ++gamesRead
+            }
+
+            val count = minOf(length, game.length - position)
+            game.toCharArray(buffer, offset, position, position + count)
+            position += count
+            return count
+        }
+
+        override fun close() {
+            closed = true
+        }
+    }
+}
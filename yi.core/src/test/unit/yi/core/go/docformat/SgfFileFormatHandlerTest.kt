@@ -571,6 +571,22 @@ class SgfFileFormatHandlerTest {
         }
     }
 
+    @Test
+    fun `import node data, not duplicated as metadata`() {
+        val data = "(;GM[1]FF[4]SZ[19]AB[aa][bb];B[cc]TR[dd]LB[ee:A]C[old comment])"
+        val model = GameModelImporter.fromString(data, FileFormat.SGF)
+        val root = model.getRootNode()
+        val child = root.getChildNodeInMainBranch()!!
+
+        Assertions.assertFalse(root.getMetadataKeys().contains("AB"))
+        Assertions.assertEquals(setOf("B", "TR", "LB", "C").intersect(child.getMetadataKeys()), emptySet<String>())
+
+        child.setComments("new comment")
+        val exportedChild = exportModel(model).split(SgfFileFormatHandler.DELIM_NODE_START)[2]
+        Assertions.assertTrue(exportedChild.contains("C[new comment]"), "Edited comment not exported: $exportedChild")
+        Assertions.assertFalse(exportedChild.contains("old comment"), "Original comment exported: $exportedChild")
+    }
+
     @Test
     fun `treats out of bounds move coordinates as pass`() {
         /*
@@ -0,0 +1,173 @@
+package yi.core.go.docformat
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import yi.core.go.*
+import java.io.ByteArrayOutputStream
+import java.nio.file.Files
+
+class SgfLazyImportTest {
+
+    @Test
+    fun `import lazily, only main branch is loaded`() {
+        val model = importLazily("(;GM[1]SZ[9](;B[aa];W[bb](;B[cc])(;B[dd]))(;B[ee])(;B[ff]))")
+        val root = model.getRootNode()
+
+        Assertions.assertNotNull(root.deferredChildren)
+        Assertions.assertTrue(root.hasAlternativeVariations())
+        Assertions.assertEquals(Stone(0, 0, StoneColor.BLACK), root.getChildNodeInMainBranch()!!.getPrimaryMove())
+
+        val branchingNode = root.getChildNodeInMainBranch()!!.getChildNodeInMainBranch()!!
+        Assertions.assertNotNull(branchingNode.deferredChildren)
+        Assertions.assertNotNull(root.deferredChildren, "Navigating the main branch loaded variations")
+    }
+
+    @Test
+    fun `access children of lazily imported node, loads the variations in order`() {
+        val model = importLazily("(;GM[1]SZ[9](;B[aa];W[bb](;B[cc])(;B[dd]))(;B[ee];W[ff](;B[gg])(;B[hh]))(;B[ii]))")
+        val root = model.getRootNode()
+
+        val children = root.getChildNodes()
+
+        Assertions.assertNull(root.deferredChildren)
+        Assertions.assertEquals(listOf(Stone(0, 0, StoneColor.BLACK), Stone(4, 4, StoneColor.BLACK), Stone(8, 8, StoneColor.BLACK)),
+                children.map { it.getPrimaryMove() })
+
+        // Variations within a loaded variation are deferred again
+        val nestedBranchingNode = children[1].getChildNodeInMainBranch()!!
+        Assertions.assertNotNull(nestedBranchingNode.deferredChildren)
+        Assertions.assertEquals(2, nestedBranchingNode.getChildNodes().size)
+    }
+
+    @Test
+    fun `import lazily with delimiters in tag values, skips variations correctly`() {
+        val model = importLazily("(;GM[1]SZ[9];B[aa](;W[bb]C[main])(;W[cc]C[)(\\](];B[dd](;W[ee])(;W[ff]))(;W[gg]))")
+        val branchingNode = model.getRootNode().getChildNodeInMainBranch()!!
+
+        val variations = branchingNode.getChildNodes()
+
+        Assertions.assertEquals(3, variations.size)
+        Assertions.assertEquals(")(](", variations[1].getComments())
+        Assertions.assertEquals(2, variations[1].getChildNodeInMainBranch()!!.getChildNodes().size)
+        Assertions.assertEquals(Stone(6, 6, StoneColor.WHITE), variations[2].getPrimaryMove())
+    }
+
+    @Test
+    fun `import every bundled sgf lazily, game tree and positions are the same as eager import`() {
+        for (gameRecord in listOf("branches.sgf", "1000_nodes.sgf", "escapedSymbols.sgf", "handicap.sgf", "standard.sgf")) {
+            val data = javaClass.getResourceAsStream("/sgf/$gameRecord").bufferedReader().readText()
+            val expected = GameModelImporter.fromString(data, FileFormat.SGF)
+            val actual = importLazily(data)
+
+            assertSameGame(expected, actual, gameRecord)
+        }
+    }
+
+    @Test
+    fun `load deferred variations, model is not modified and node add is emitted for each variation`() {
+        val model = importLazily("(;GM[1]SZ[9](;B[aa])(;B[bb])(;B[cc]))")
+        model.isModified = false
+        val addedNodes = ArrayList<GameNode>()
+
+        model.onNodeAdd().addListener(object : EventListener<NodeEvent> {
+            override fun onEvent(event: NodeEvent) {
+                addedNodes.add(event.node)
+            }
+        })
+        val children = model.getRootNode().getChildNodes()
+
+        Assertions.assertFalse(model.isModified)
+        Assertions.assertEquals(children.subList(1, children.size), addedNodes)
+    }
+
+    @Test
+    fun `query loaded children of lazily imported node, variations are not loaded`() {
+        val model = importLazily("(;GM[1]SZ[9](;B[aa])(;B[bb])(;B[cc]))")
+        val root = model.getRootNode()
+
+        Assertions.assertTrue(root.hasUnloadedVariations())
+        Assertions.assertEquals(listOf(root.getChildNodeInMainBranch()), root.getLoadedChildNodes())
+        Assertions.assertTrue(root.hasUnloadedVariations())
+
+        root.getChildNodes()
+
+        Assertions.assertFalse(root.hasUnloadedVariations())
+        Assertions.assertEquals(3, root.getLoadedChildNodes().size)
+    }
+
+    @Test
+    fun `play move in lazily loaded variation, continues from its position`() {
+        val model = importLazily("(;GM[1]SZ[3](;B[ba])(;B[aa];W[ba];B[cc];W[ab]))")
+        val variation = model.getRootNode().getChildNodes()[1]
+        var lastNode = variation
+        while (lastNode.getChildNodeInMainBranch() != null) {
+            lastNode = lastNode.getChildNodeInMainBranch()!!
+        }
+        model.currentNode = lastNode
+
+        // White captured the black stone at 0,0 so black cannot retake it as it is not a ko
+        Assertions.assertEquals(StoneColor.NONE, model.getCurrentGameState().boardPosition.getStoneColorAt(0, 0))
+        Assertions.assertEquals(MoveValidationResult.ERROR_MOVE_SUICIDAL, model.editor.addMove(0, 0).validationResult)
+    }
+
+    @Test
+    fun `export lazily imported model, all variations are written`() {
+        val data = javaClass.getResourceAsStream("/sgf/branches.sgf").bufferedReader().readText()
+        val model = importLazily(data)
+
+        val output = ByteArrayOutputStream()
+        GameModelExporter.toOutputStream(model, output, FileFormat.SGF)
+        val exported = GameModelImporter.fromString(output.toString(Charsets.UTF_8.name()), FileFormat.SGF)
+
+        assertSameGame(GameModelImporter.fromString(data, FileFormat.SGF), exported, "branches.sgf")
+    }
+
+    @Test
+    fun `import lazily with unterminated variation, throws GameParseException`() {
+        Assertions.assertThrows(GameParseException::class.java) {
+            importLazily("(;GM[1]SZ[9](;B[aa])(;B[bb];W[cc]")
+        }
+    }
+
+    private fun importLazily(data: String): GameModel {
+        val file = Files.createTempFile("lazy", ".sgf")
+        try {
+            Files.write(file, data.toByteArray(Charsets.UTF_8))
+            return GameModelImporter.fromFileLazily(file, FileFormat.SGF)
+        } finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    /*
+     * Compares both game trees node by node, including the board position at every node.
+     */
+    private fun assertSameGame(expected: GameModel, actual: GameModel, gameRecord: String) {
+        val expectedNodes = ArrayDeque<GameNode>()
+        val actualNodes = ArrayDeque<GameNode>()
+        expectedNodes.add(expected.getRootNode())
+        actualNodes.add(actual.getRootNode())
+
+        while (expectedNodes.isNotEmpty()) {
+            val expectedNode = expectedNodes.removeLast()
+            val actualNode = actualNodes.removeLast()
+            val message = "$gameRecord, move ${expectedNode.moveNumber}"
+
+            Assertions.assertEquals(expectedNode.getType(), actualNode.getType(), message)
+            Assertions.assertEquals(expectedNode.getPrimaryMove(), actualNode.getPrimaryMove(), message)
+            Assertions.assertEquals(expectedNode.getStateHash(), actualNode.getStateHash(), message)
+            Assertions.assertEquals(expectedNode.getStoneEdits().toSet(), actualNode.getStoneEdits().toSet(), message)
+            Assertions.assertEquals(expectedNode.getComments(), actualNode.getComments(), message)
+            Assertions.assertEquals(expectedNode.getChildNodes().size, actualNode.getChildNodes().size, message)
+
+            val expectedPosition = expected.getGameState(expectedNode).boardPosition
+            val actualPosition = actual.getGameState(actualNode).boardPosition
+            for (position in 0 until expectedPosition.getIntersectionCount()) {
+                Assertions.assertEquals(expectedPosition.getStoneColorAt(position), actualPosition.getStoneColorAt(position), message)
+            }
+
+            expectedNodes.addAll(expectedNode.getChildNodes())
+            actualNodes.addAll(actualNode.getChildNodes())
+        }
+    }
+}
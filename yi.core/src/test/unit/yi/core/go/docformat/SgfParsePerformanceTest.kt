@@ -0,0 +1,129 @@
+package yi.core.go.docformat
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import yi.core.go.GameModelImporter
+import java.io.StringReader
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+// TODO: Move me into a performance test source set
+class SgfParsePerformanceTest {
+
+    @Test
+    fun `tokenize multi-megabyte review SGF, throughput is high enough`() {
+        val document = createReviewDocument(250, 20, 8000)
+        val minimumMegabytesPerSecond = 50.0
+
+        val averageNanos = measure {
+            val tokenizer = SgfTokenizer(StringReader(document))
+            var valueChars = 0L
+            while (true) {
+                val token = tokenizer.next()
+                if (token == SgfTokenizer.Token.END) {
+                    break
+                }
+                if (token == SgfTokenizer.Token.PROPERTY_VALUE) {
+                    valueChars += tokenizer.getValueLength()
+                }
+            }
+            Assertions.assertTrue(valueChars > 0)
+        }
+
+        val megabytesPerSecond = toMegabytesPerSecond(document.length, averageNanos)
+        Assertions.assertTrue(megabytesPerSecond >= minimumMegabytesPerSecond,
+                "Tokenized ${document.length} chars at ${"%.1f".format(megabytesPerSecond)}MB/s, " +
+                        "expected at least ${minimumMegabytesPerSecond}MB/s")
+    }
+
+    @Test
+    fun `import multi-megabyte review SGF, throughput is high enough`() {
+        val document = createReviewDocument(250, 20, 8000)
+        val minimumMegabytesPerSecond = 2.0
+
+        val averageNanos = measure {
+            val gameModel = GameModelImporter.fromString(document, FileFormat.SGF)
+            Assertions.assertEquals(19, gameModel.boardWidth)
+        }
+
+        val megabytesPerSecond = toMegabytesPerSecond(document.length, averageNanos)
+        Assertions.assertTrue(megabytesPerSecond >= minimumMegabytesPerSecond,
+                "Imported ${document.length} chars at ${"%.1f".format(megabytesPerSecond)}MB/s, " +
+                        "expected at least ${minimumMegabytesPerSecond}MB/s")
+    }
+
+    private fun measure(work: () -> Unit): Long {
+        // Warm up the VM by doing a few dry runs.
+        for (i in 0 until 3) {
+            work()
+        }
+
+        var total = 0L
+        val trials = 5
+
+        for (i in 0 until trials) {
+            val startTime = System.nanoTime()
+            work()
+            total += System.nanoTime() - startTime
+        }
+
+        return total / trials
+    }
+
+    private fun toMegabytesPerSecond(chars: Int, nanos: Long): Double {
+        val seconds = nanos.toDouble() / TimeUnit.SECONDS.toNanos(1)
+        return chars / (1024.0 * 1024.0) / seconds
+    }
+
+    /*
+     * Creates a document shaped like an engine review: a main line where every move has a
+     * long comment and a short variation with labels, which is typical of files exported
+     * from analysis tools and servers. Moves are only played on intersections that have
+     * not been played on before in the same line.
+     */
+    private fun createReviewDocument(mainLineMoves: Int, variationMoves: Int, commentLength: Int): String {
+        val random = Random(0)
+        val comment = buildString {
+            while (length < commentLength) {
+                append("Win rate 52.3% \\] score lead 1.5, visits 1600. ")
+            }
+        }
+        val mainLineOccupied = BooleanArray(19 * 19)
+
+        return buildString {
+            append("(;GM[1]FF[4]CA[UTF-8]SZ[19]KM[6.5]RU[Japanese]PB[Black]PW[White]\n")
+            for (move in 0 until mainLineMoves) {
+                val color = if (move % 2 == 0) "B" else "W"
+                append(';').append(color).append('[').append(randomCoordinates(random, mainLineOccupied)).append(']')
+                append("C[").append(comment).append("]\n(")
+
+                val variationOccupied = mainLineOccupied.copyOf()
+                for (variationMove in 0 until variationMoves) {
+                    val variationColor = if ((move + variationMove) % 2 == 0) "W" else "B"
+                    append(';').append(variationColor).append('[').append(randomCoordinates(random, variationOccupied)).append(']')
+                    append("LB[").append(randomCoordinates(random, null)).append(':').append(variationMove + 1).append(']')
+                }
+
+                // The main line continues in the second branch
+                append(")\n(")
+            }
+            // Close the nested main line branches
+            for (move in 0 until mainLineMoves) {
+                append(')')
+            }
+            append(")\n")
+        }
+    }
+
+    private fun randomCoordinates(random: Random, occupied: BooleanArray?): String {
+        var position: Int
+        do {
+            position = random.nextInt(19 * 19)
+        } while (occupied != null && occupied[position])
+
+        occupied?.set(position, true)
+
+        val coordinates = SgfFileFormatHandler.SGF_COORDINATES
+        return "" + coordinates[position % 19] + coordinates[position / 19]
+    }
+}
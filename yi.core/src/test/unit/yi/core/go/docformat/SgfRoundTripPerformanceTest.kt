@@ -0,0 +1,124 @@
+package yi.core.go.docformat
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import yi.core.go.GameModel
+import yi.core.go.GameModelExporter
+import yi.core.go.GameModelImporter
+import yi.core.go.GameNode
+import java.io.ByteArrayOutputStream
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+// TODO: Move me into a performance test source set
+class SgfRoundTripPerformanceTest {
+
+    @Test
+    fun `round trip 10k node SGF, is fast enough`() {
+        val document = createBranchingDocument(5000)
+        val maxAverageMs = 500L
+
+        val averageNanos = measure {
+            val gameModel = GameModelImporter.fromString(document, FileFormat.SGF)
+            val exported = export(gameModel)
+            val reimported = GameModelImporter.fromString(exported, FileFormat.SGF)
+
+            Assertions.assertEquals(countNodes(gameModel.getRootNode()), countNodes(reimported.getRootNode()))
+        }
+
+        Assertions.assertTrue(averageNanos < TimeUnit.MILLISECONDS.toNanos(maxAverageMs),
+                "Too slow. Expected < ${maxAverageMs}ms, got ${TimeUnit.NANOSECONDS.toMillis(averageNanos)}ms")
+    }
+
+    @Test
+    fun `export 10k node SGF, is fast enough`() {
+        val gameModel = GameModelImporter.fromString(createBranchingDocument(5000), FileFormat.SGF)
+        val maxAverageMs = 150L
+
+        val averageNanos = measure {
+            Assertions.assertTrue(export(gameModel).isNotEmpty())
+        }
+
+        Assertions.assertTrue(averageNanos < TimeUnit.MILLISECONDS.toNanos(maxAverageMs),
+                "Too slow. Expected < ${maxAverageMs}ms, got ${TimeUnit.NANOSECONDS.toMillis(averageNanos)}ms")
+    }
+
+    private fun measure(work: () -> Unit): Long {
+        // Warm up the VM by doing a few dry runs.
+        for (i in 0 until 3) {
+            work()
+        }
+
+        var total = 0L
+        val trials = 5
+
+        for (i in 0 until trials) {
+            val startTime = System.nanoTime()
+            work()
+            total += System.nanoTime() - startTime
+        }
+
+        return total / trials
+    }
+
+    private fun export(gameModel: GameModel): String {
+        val output = ByteArrayOutputStream()
+        GameModelExporter.toOutputStream(gameModel, output, FileFormat.SGF)
+        return output.toString(Charsets.UTF_8)
+    }
+
+    private fun countNodes(root: GameNode): Int {
+        val toVisit = Stack<GameNode>()
+        toVisit.push(root)
+        var count = 0
+
+        while (toVisit.isNotEmpty()) {
+            val node = toVisit.pop()
+            ++count
+            node.getChildNodes().forEach { toVisit.push(it) }
+        }
+
+        return count
+    }
+
+    /*
+     * Creates a document where every move on the main line has a one move variation, so
+     * the variations are nested as deep as the main line is long. Every node carries a
+     * comment and an annotation, and passes are played once the board has been filled up
+     * so that no move is played on an occupied intersection.
+     */
+    private fun createBranchingDocument(mainLineMoves: Int): String {
+        val coordinates = SgfFileFormatHandler.SGF_COORDINATES
+        val occupied = BooleanArray(19 * 19)
+        val random = Random(0)
+
+        fun nextMove(): String {
+            val free = occupied.indexOfFirst { !it }
+            if (free < 0) {
+                return ""
+            }
+            var position: Int
+            do {
+                position = random.nextInt(19 * 19)
+            } while (occupied[position])
+            occupied[position] = true
+            return "" + coordinates[position % 19] + coordinates[position / 19]
+        }
+
+        return buildString {
+            append("(;GM[1]FF[4]CA[UTF-8]SZ[19]KM[6.5]PB[Black]PW[White]")
+            for (move in 0 until mainLineMoves) {
+                val color = if (move % 2 == 0) "B" else "W"
+                val variationColor = if (move % 2 == 0) "W" else "B"
+                append("\n;").append(color).append('[').append(nextMove()).append(']')
+                append("C[Move ").append(move + 1).append(", see \\[variation\\]]")
+                append("(;").append(variationColor).append("[]TR[aa][bb]C[Variation ").append(move + 1).append("])")
+                append('(')
+            }
+            for (move in 0 until mainLineMoves) {
+                append(')')
+            }
+            append(")\n")
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package yi.core.go.docformat
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import yi.core.go.GameParseException
+import java.io.StringReader
+
+class SgfTokenizerTest {
+
+    @Test
+    fun `tokenize simple document, emits tokens in order`() {
+        val tokens = tokenize("(;FF[4]GM[1];B[aa](;W[bb])(;W[cc]))")
+
+        Assertions.assertEquals(listOf(
+                "(", ";", "FF=4", "GM=1", ";", "B=aa",
+                "(", ";", "W=bb", ")",
+                "(", ";", "W=cc", ")",
+                ")"), tokens)
+    }
+
+    @Test
+    fun `property with multiple values, emits one value per entry under the same key`() {
+        val tokens = tokenize("(;AB[aa][bb]\n[cc] [dd]AW[ee])")
+
+        Assertions.assertEquals(listOf("(", ";", "AB=aa", "AB=bb", "AB=cc", "AB=dd", "AW=ee", ")"), tokens)
+    }
+
+    @Test
+    fun `whitespace around keys is ignored`() {
+        val tokens = tokenize("(;\n  GM[1]\r\n\tSZ [19]\n;B[aa])")
+
+        Assertions.assertEquals(listOf("(", ";", "GM=1", "SZ=19", ";", "B=aa", ")"), tokens)
+    }
+
+    @Test
+    fun `delimiters inside values are part of the value`() {
+        val tokens = tokenize("(;C[(;a[b)]LB[aa:x;y])")
+
+        Assertions.assertEquals(listOf("(", ";", "C=(;a[b)", "LB=aa:x;y", ")"), tokens)
+    }
+
+    @Test
+    fun `escaped value end, is unescaped and other backslashes are kept`() {
+        val tokens = tokenize("(;C[a \\] b \\[ c \\\\]]D[\\\\n])")
+
+        Assertions.assertEquals(listOf("(", ";", "C=a ] b \\[ c \\]", "D=\\\\n", ")"), tokens)
+    }
+
+    @Test
+    fun `data outside of nodes is ignored`() {
+        val tokens = tokenize("header text (\n;GM[1] ) trailing [text]")
+
+        Assertions.assertEquals(listOf("(", ";", "GM=1", ")"), tokens)
+    }
+
+    @Test
+    fun `value without key is skipped`() {
+        val tokens = tokenize("(;[orphan]GM[1])")
+
+        Assertions.assertEquals(listOf("(", ";", "GM=1", ")"), tokens)
+    }
+
+    @Test
+    fun `small buffer, values spanning buffer refills are read intact`() {
+        val longComment = "x".repeat(1000) + "\\]" + "y".repeat(100)
+        val data = "(;GM[1]C[$longComment];B[aa]C[short];W[bb])"
+
+        val tokens = tokenize(data, 16)
+
+        Assertions.assertEquals(listOf(
+                "(", ";", "GM=1", "C=" + "x".repeat(1000) + "]" + "y".repeat(100),
+                ";", "B=aa", "C=short", ";", "W=bb", ")"), tokens)
+    }
+
+    @Test
+    fun `small buffer, tokenizes the same as the default buffer`() {
+        val data = buildString {
+            append("(;GM[1]FF[4]SZ[19]")
+            for (i in 0 until 200) {
+                append(";B[").append('a' + i % 19).append('a' + i / 19 % 19).append("]C[move \\] $i]")
+                if (i % 10 == 0) {
+                    append("(;W[aa]TR[bb][cc])")
+                }
+            }
+            append(")")
+        }
+
+        Assertions.assertEquals(tokenize(data), tokenize(data, 16))
+    }
+
+    @Test
+    fun `common keys, are shared instances`() {
+        val tokenizer = SgfTokenizer(StringReader("(;AB[aa];AB[bb])"))
+        val keys = ArrayList<String>()
+
+        while (true) {
+            val token = tokenizer.next()
+            if (token == SgfTokenizer.Token.END) {
+                break
+            }
+            if (token == SgfTokenizer.Token.PROPERTY_VALUE) {
+                keys.add(tokenizer.getPropertyKey())
+            }
+        }
+
+        Assertions.assertEquals(2, keys.size)
+        Assertions.assertSame(keys[0], keys[1])
+    }
+
+    @Test
+    fun `value range, refers to raw characters in the buffer`() {
+        val tokenizer = SgfTokenizer(StringReader("(;C[a\\]b])"))
+
+        Assertions.assertEquals(SgfTokenizer.Token.BRANCH_START, tokenizer.next())
+        Assertions.assertEquals(SgfTokenizer.Token.NODE_START, tokenizer.next())
+        Assertions.assertEquals(SgfTokenizer.Token.PROPERTY_VALUE, tokenizer.next())
+
+        val raw = String(tokenizer.getBuffer(), tokenizer.getValueStart(), tokenizer.getValueLength())
+        Assertions.assertEquals("a\\]b", raw)
+        Assertions.assertEquals("a]b", tokenizer.getValue())
+    }
+
+    @Test
+    fun `input ends within a value, throws GameParseException`() {
+        val tokenizer = SgfTokenizer(StringReader("(;GM[1]C[unfinished"))
+
+        Assertions.assertEquals(SgfTokenizer.Token.BRANCH_START, tokenizer.next())
+        Assertions.assertEquals(SgfTokenizer.Token.NODE_START, tokenizer.next())
+        Assertions.assertEquals(SgfTokenizer.Token.PROPERTY_VALUE, tokenizer.next())
+
+        Assertions.assertThrows(GameParseException::class.java) {
+            tokenizer.next()
+        }
+    }
+
+    private fun tokenize(data: String, bufferSize: Int = 64 * 1024): List<String> {
+        val tokenizer = SgfTokenizer(StringReader(data), bufferSize)
+        val result = ArrayList<String>()
+
+        while (true) {
+            when (tokenizer.next()) {
+                SgfTokenizer.Token.BRANCH_START -> result.add("(")
+                SgfTokenizer.Token.BRANCH_END -> result.add(")")
+                SgfTokenizer.Token.NODE_START -> result.add(";")
+                SgfTokenizer.Token.PROPERTY_VALUE -> result.add(tokenizer.getPropertyKey() + "=" + tokenizer.getValue())
+                SgfTokenizer.Token.END -> return result
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package yi.core.go.docformat
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import yi.core.go.*
+import yi.core.go.Annotation
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.nio.file.Files
+
+class YgrFileFormatHandlerTest {
+
+    private val gameRecords = listOf("1000_nodes.sgf", "blink.sgf", "branches.sgf", "escapedSymbols.sgf",
+            "handicap.sgf", "igsGame.sgf", "linear.sgf", "ogsHandicap.sgf", "ogsLinear.sgf",
+            "spaceInTagData.sgf", "standard.sgf", "twoPasses.sgf")
+
+    @Test
+    fun `round trip every bundled sgf, game data is unchanged`() {
+        for (gameRecord in gameRecords) {
+            val original = GameModelImporter.fromInternalResources("/sgf/$gameRecord", FileFormat.SGF, this::class.java)
+            val imported = roundTrip(original)
+
+            assertSameGame(original, imported, gameRecord)
+        }
+    }
+
+    @Test
+    fun `round trip through sgf and ygr, sgf output is unchanged`() {
+        val original = GameModelImporter.fromInternalResources("/sgf/escapedSymbols.sgf", FileFormat.SGF, this::class.java)
+        val expected = GameModelImporter.fromString(exportToString(original, FileFormat.SGF), FileFormat.SGF)
+
+        val imported = roundTrip(original)
+        val actual = GameModelImporter.fromString(exportToString(imported, FileFormat.SGF), FileFormat.SGF)
+
+        assertSameGame(expected, actual, "escapedSymbols.sgf")
+    }
+
+    @Test
+    fun `round trip metadata, annotations and comments, all are preserved`() {
+        val model = GameModel(9, 9, StandardGameRules.NEW_ZEALAND)
+        model.info.setKomi(6.5f)
+        model.info.setPlayerBlackName("黒")
+        model.info.setPlayerWhiteRank("3d")
+        model.getRootNode().putMetadata("GN", "Test game")
+        model.getRootNode().putMetadata("XX", listOf("a", "", "b]c"))
+
+        model.beginMoveSequence().playMove(2, 2).pass().playMove(3, 3)
+        val node = model.currentNode
+        model.editor.setComment(node, "First line\nSecond line")
+        node.putMetadata("GN", "Same key, different node")
+        model.editor.addAnnotations(node, listOf(Annotation.Label(1, 1, "A:B"), Annotation.Arrow(0, 0, 8, 8),
+                Annotation.Triangle(4, 4)))
+        model.editor.addStoneEdits(node, setOf(Stone(5, 5, StoneColor.WHITE), Stone(2, 2, StoneColor.NONE)))
+
+        val imported = roundTrip(model)
+
+        assertSameGame(model, imported, "generated")
+        Assertions.assertEquals(model.rules.getInternalName(), imported.rules.getInternalName())
+        Assertions.assertEquals(6.5f, imported.info.getKomi())
+        Assertions.assertEquals("黒", imported.info.getPlayerBlackName())
+        Assertions.assertEquals("3d", imported.info.getPlayerWhiteRank())
+        Assertions.assertEquals(listOf("a", "", "b]c"), imported.getRootNode().getMetadataMultiValue("XX"))
+    }
+
+    @Test
+    fun `import game with ko, recapture is still illegal`() {
+        val model = GameModel(3, 3, StandardGameRules.CHINESE)
+        model.beginMoveSequence()
+                .playMove(0, 0)
+                .playMove(1, 0)
+                .playMove(1, 1)
+                .playMove(0, 1) // white captures black at 0,0
+                .playMove(2, 0) // black sets up atari on 1,0 stone
+                .pass()
+                .playMove(0, 0) // black captures and starts ko
+
+        val imported = roundTrip(model)
+        var lastNode = imported.getRootNode()
+        while (lastNode.getChildNodeInMainBranch() != null) {
+            lastNode = lastNode.getChildNodeInMainBranch()!!
+        }
+        imported.currentNode = lastNode
+
+        val submitResult = imported.editor.addMove(1, 0)
+
+        Assertions.assertEquals(MoveValidationResult.ERROR_KO_RECAPTURE, submitResult.validationResult)
+    }
+
+    @Test
+    fun `import from file, reads the memory-mapped file`() {
+        val model = GameModelImporter.fromInternalResources("/sgf/branches.sgf", FileFormat.SGF, this::class.java)
+        val file = Files.createTempFile("branches", ".ygr")
+
+        try {
+            GameModelExporter.toFile(model, file, FileFormat.YGR)
+            val imported = GameModelImporter.fromFile(file)
+
+            assertSameGame(model, imported, "branches.sgf")
+        } finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    @Test
+    fun `import from file lazily, only main branches are read until variations are accessed`() {
+        val model = GameModelImporter.fromInternalResources("/sgf/branches.sgf", FileFormat.SGF, this::class.java)
+        val file = Files.createTempFile("branches", ".ygr")
+
+        try {
+            GameModelExporter.toFile(model, file, FileFormat.YGR)
+            val imported = GameModelImporter.fromFileLazily(file)
+
+            var branchingNode: GameNode? = imported.getRootNode()
+            while (branchingNode != null && !branchingNode.hasAlternativeVariations()) {
+                branchingNode = branchingNode.getChildNodeInMainBranch()
+            }
+            Assertions.assertNotNull(branchingNode!!.deferredChildren, "Variations were read up front")
+
+            assertSameGame(model, imported, "branches.sgf")
+            Assertions.assertNull(branchingNode.deferredChildren)
+        } finally {
+            Files.deleteIfExists(file)
+        }
+    }
+
+    @Test
+    fun `import every bundled sgf lazily, game tree is the same as eager import`() {
+        for (gameRecord in gameRecords) {
+            val original = GameModelImporter.fromInternalResources("/sgf/$gameRecord", FileFormat.SGF, this::class.java)
+            val file = Files.createTempFile("lazy", ".ygr")
+
+            try {
+                GameModelExporter.toFile(original, file, FileFormat.YGR)
+                assertSameGame(original, GameModelImporter.fromFileLazily(file), gameRecord)
+            } finally {
+                Files.deleteIfExists(file)
+            }
+        }
+    }
+
+    @Test
+    fun `import data with wrong magic, throws GameParseException`() {
+        val data = export(GameModel(19, 19, StandardGameRules.CHINESE))
+        data[0] = 'X'.toByte()
+
+        Assertions.assertThrows(GameParseException::class.java) { import(data) }
+    }
+
+    @Test
+    fun `import data of newer version, throws GameParseException`() {
+        val data = export(GameModel(19, 19, StandardGameRules.CHINESE))
+        ByteBuffer.wrap(data).putShort(4, (YgrFileFormatHandler.FORMAT_VERSION + 1).toShort())
+
+        Assertions.assertThrows(GameParseException::class.java) { import(data) }
+    }
+
+    @Test
+    fun `import truncated data, throws GameParseException`() {
+        val model = GameModelImporter.fromInternalResources("/sgf/branches.sgf", FileFormat.SGF, this::class.java)
+        val data = export(model)
+
+        Assertions.assertThrows(GameParseException::class.java) { import(data.copyOf(data.size / 2)) }
+        Assertions.assertThrows(GameParseException::class.java) { import(data.copyOf(20)) }
+    }
+
+    @Test
+    fun `import from string, throws GameParseException`() {
+        Assertions.assertFalse(FileFormat.YGR.getHandler() is TextFileFormatHandler)
+        Assertions.assertThrows(GameParseException::class.java) {
+            GameModelImporter.fromString("YiGR", FileFormat.YGR)
+        }
+        Assertions.assertThrows(GameParseException::class.java) {
+            GameModelImporter.collectionFromString("YiGR", FileFormat.YGR)
+        }
+    }
+
+    private fun roundTrip(model: GameModel): GameModel {
+        return import(export(model))
+    }
+
+    private fun export(model: GameModel): ByteArray {
+        val output = ByteArrayOutputStream()
+        GameModelExporter.toOutputStream(model, output, FileFormat.YGR)
+        return output.toByteArray()
+    }
+
+    private fun import(data: ByteArray): GameModel {
+        return FileFormat.YGR.getHandler().doImport(ByteArrayInputStream(data))
+    }
+
+    private fun exportToString(model: GameModel, format: FileFormat): String {
+        val output = ByteArrayOutputStream()
+        GameModelExporter.toOutputStream(model, output, format)
+        return output.toString(Charsets.UTF_8.name())
+    }
+
+    /*
+     * Compares both game trees node by node.
+     */
+    private fun assertSameGame(expected: GameModel, actual: GameModel, gameRecord: String) {
+        Assertions.assertEquals(expected.boardWidth, actual.boardWidth, gameRecord)
+        Assertions.assertEquals(expected.boardHeight, actual.boardHeight, gameRecord)
+        Assertions.assertEquals(expected.rules.getInternalName(), actual.rules.getInternalName(), gameRecord)
+        Assertions.assertEquals(expected.info.getKomi(), actual.info.getKomi(), gameRecord)
+        Assertions.assertEquals(expected.info.getHandicapCount(), actual.info.getHandicapCount(), gameRecord)
+        Assertions.assertEquals(expected.info.getPlayerBlackName(), actual.info.getPlayerBlackName(), gameRecord)
+        Assertions.assertEquals(expected.info.getPlayerWhiteName(), actual.info.getPlayerWhiteName(), gameRecord)
+
+        val expectedNodes = ArrayDeque<GameNode>()
+        val actualNodes = ArrayDeque<GameNode>()
+        expectedNodes.add(expected.getRootNode())
+        actualNodes.add(actual.getRootNode())
+
+        while (expectedNodes.isNotEmpty()) {
+            val expectedNode = expectedNodes.removeLast()
+            val actualNode = actualNodes.removeLast()
+            val message = "$gameRecord, move ${expectedNode.moveNumber}"
+
+            Assertions.assertEquals(expectedNode.getType(), actualNode.getType(), message)
+            Assertions.assertEquals(expectedNode.getPrimaryMove(), actualNode.getPrimaryMove(), message)
+            Assertions.assertEquals(expectedNode.getStateHash(), actualNode.getStateHash(), message)
+            Assertions.assertEquals(expectedNode.getCapturesThisTurn().toSet(), actualNode.getCapturesThisTurn().toSet(), message)
+            Assertions.assertEquals(expectedNode.getStoneEdits().toSet(), actualNode.getStoneEdits().toSet(), message)
+            Assertions.assertEquals(expectedNode.getAnnotations().toSet(), actualNode.getAnnotations().toSet(), message)
+            Assertions.assertEquals(expectedNode.getComments(), actualNode.getComments(), message)
+            Assertions.assertEquals(expectedNode.delta.metadata, actualNode.delta.metadata, message)
+            Assertions.assertEquals(expectedNode.children.size, actualNode.children.size, message)
+
+            expectedNodes.addAll(expectedNode.children)
+            actualNodes.addAll(actualNode.children)
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package yi.core.go.index
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import yi.core.go.*
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+
+class GamePositionIndexTest {
+
+    @Test
+    fun `find position, every game and node that reached it is returned`() {
+        withLibrary { library, indexFile ->
+            writeGame(library.resolve("a.sgf"), "(;GM[1]SZ[9];B[cc];W[gg];B[cg])")
+            writeGame(library.resolve("b.sgf"), "(;GM[1]SZ[9];B[dd](;W[ee])(;W[gg];B[cc];W[aa])(;W[ff]))")
+            writeGame(library.resolve("tournament/c.sgf"), "(;GM[1]SZ[9];B[cg];W[gg];B[cc])")
+
+            GamePositionIndex.update(indexFile, library, 2, null).use { index ->
+                val model = GameModel(9, 9, StandardGameRules.CHINESE)
+                model.beginMoveSequence().playMove(2, 2).playMove(6, 6)
+
+                val matches = index.find(model)
+
+                Assertions.assertEquals(listOf("a.sgf"), matches.map { it.gameFile.fileName.toString() })
+                Assertions.assertArrayEquals(intArrayOf(0, 0), matches[0].getNodePath())
+
+                model.beginMoveSequence().playMove(2, 6)
+                val transpositions = index.find(model)
+
+                Assertions.assertEquals(listOf("a.sgf", "c.sgf"), transpositions.map { it.gameFile.fileName.toString() })
+                Assertions.assertEquals(library.resolve("tournament/c.sgf"), transpositions[1].gameFile)
+            }
+        }
+    }
+
+    @Test
+    fun `find position in variation, node path leads to the matching node`() {
+        withLibrary { library, indexFile ->
+            val gameFile = library.resolve("variations.sgf")
+            writeGame(gameFile, "(;GM[1]SZ[9];B[dd](;W[ee])(;W[gg];B[cc](;W[aa])(;W[bb]))(;W[ff]))")
+
+            GamePositionIndex.update(indexFile, library, 1, null).use { index ->
+                val model = GameModel(9, 9, StandardGameRules.CHINESE)
+                model.beginMoveSequence().playMove(3, 3).playMove(6, 6).playMove(2, 2).playMove(1, 1)
+
+                val matches = index.find(model)
+
+                Assertions.assertEquals(1, matches.size)
+                Assertions.assertArrayEquals(intArrayOf(0, 1, 0, 1), matches[0].getNodePath())
+
+                val indexedModel = GameModelImporter.fromFile(gameFile)
+                val node = matches[0].findNode(indexedModel)!!
+                Assertions.assertEquals(Stone(1, 1, StoneColor.WHITE), node.getPrimaryMove())
+            }
+        }
+    }
+
+    @Test
+    fun `find position after captures, matches the same stones`() {
+        withLibrary { library, indexFile ->
+            // White captures black at aa, black then plays elsewhere
+            writeGame(library.resolve("capture.sgf"), "(;GM[1]SZ[9];B[aa];W[ba];B[ee];W[ab];B[ff])")
+
+            GamePositionIndex.update(indexFile, library, 1, null).use { index ->
+                val model = GameModel(9, 9, StandardGameRules.CHINESE)
+                model.beginMoveSequence().playMove(4, 4).playMove(1, 0).playMove(5, 5).playMove(0, 1)
+
+                Assertions.assertArrayEquals(intArrayOf(0, 0, 0, 0, 0), index.find(model).single().getNodePath())
+            }
+        }
+    }
+
+    @Test
+    fun `find position of different board size, nothing is returned`() {
+        withLibrary { library, indexFile ->
+            writeGame(library.resolve("small.sgf"), "(;GM[1]SZ[9];B[aa])")
+
+            GamePositionIndex.update(indexFile, library, 1, null).use { index ->
+                val model = GameModel(13, 13, StandardGameRules.CHINESE)
+                model.beginMoveSequence().playMove(0, 0)
+
+                Assertions.assertTrue(index.find(model).isEmpty())
+            }
+        }
+    }
+
+    @Test
+    fun `update library, only changed files are imported and removed files are dropped`() {
+        withLibrary { library, indexFile ->
+            val unchangedFile = library.resolve("unchanged.sgf")
+            val changedFile = library.resolve("changed.sgf")
+            val removedFile = library.resolve("removed.sgf")
+            writeGame(unchangedFile, "(;GM[1]SZ[9];B[aa])")
+            writeGame(changedFile, "(;GM[1]SZ[9];B[bb])")
+            writeGame(removedFile, "(;GM[1]SZ[9];B[cc])")
+            GamePositionIndex.update(indexFile, library, 1, null).close()
+
+            writeGame(changedFile, "(;GM[1]SZ[9];B[dd];W[ee])")
+            Files.setLastModifiedTime(changedFile, FileTime.fromMillis(Files.getLastModifiedTime(changedFile).toMillis() + 2000))
+            Files.delete(removedFile)
+            writeGame(library.resolve("added.sgf"), "(;GM[1]SZ[9];B[ff])")
+            val importedFiles = ArrayList<Path>()
+
+            GamePositionIndex.update(indexFile, library, 2, recordingListener(importedFiles)).use { index ->
+                Assertions.assertEquals(setOf("added.sgf", "changed.sgf"), importedFiles.map { it.fileName.toString() }.toSet())
+                Assertions.assertEquals(3, index.getGameCount())
+                // One root and move per game, plus the extra move of the changed game
+                Assertions.assertEquals(7, index.getPositionCount())
+
+                Assertions.assertEquals(listOf(unchangedFile), index.find(gameWithMoves(0 to 0)).map { it.gameFile })
+                Assertions.assertTrue(index.find(gameWithMoves(1 to 1)).isEmpty())
+                Assertions.assertTrue(index.find(gameWithMoves(2 to 2)).isEmpty())
+                Assertions.assertEquals(listOf(changedFile), index.find(gameWithMoves(3 to 3, 4 to 4)).map { it.gameFile })
+                Assertions.assertEquals(3, index.find(GameModel(9, 9, StandardGameRules.CHINESE)).size)
+            }
+        }
+    }
+
+    @Test
+    fun `update library with corrupt file, other files are indexed`() {
+        withLibrary { library, indexFile ->
+            writeGame(library.resolve("corrupt.sgf"), "(;GM[1]SZ[9];B[aa]")
+            writeGame(library.resolve("good.sgf"), "(;GM[1]SZ[9];B[aa])")
+            val importedFiles = ArrayList<Path>()
+
+            GamePositionIndex.update(indexFile, library, 2, recordingListener(importedFiles)).close()
+
+            GamePositionIndex.update(indexFile, library, 2, recordingListener(importedFiles)).use { index ->
+                Assertions.assertEquals(2, importedFiles.size, "Corrupt file was imported again")
+                Assertions.assertEquals(2, index.getGameCount())
+                Assertions.assertEquals(listOf("good.sgf"), index.find(gameWithMoves(0 to 0)).map { it.gameFile.fileName.toString() })
+            }
+        }
+    }
+
+    @Test
+    fun `open corrupt index, throws IOException`() {
+        withLibrary { _, indexFile ->
+            Files.write(indexFile, "Not an index".toByteArray())
+
+            Assertions.assertThrows(IOException::class.java) { GamePositionIndex.open(indexFile) }
+        }
+    }
+
+    @Test
+    fun `sort more entries than fit in one run, entries are in key order`() {
+        val random = java.util.Random(7)
+        val keys = LongArray(10_000) { random.nextLong() % 100 }
+        val values = LongArray(keys.size) { keys[it] * 31 }
+
+        GamePositionIndexBuilder.sortEntries(keys, values, 0, keys.size - 1)
+
+        for (i in 1 until keys.size) {
+            Assertions.assertTrue(keys[i - 1] <= keys[i])
+        }
+        Assertions.assertTrue(keys.indices.all { values[it] == keys[it] * 31 })
+    }
+
+    private fun gameWithMoves(vararg moves: Pair<Int, Int>): GameModel {
+        val model = GameModel(9, 9, StandardGameRules.CHINESE)
+        val sequence = model.beginMoveSequence()
+        moves.forEach { sequence.playMove(it.first, it.second) }
+        return model
+    }
+
+    private fun recordingListener(importedFiles: MutableList<Path>): BatchImportListener {
+        return object : BatchImportListener {
+            override fun onFileImported(result: BatchImportResult, progress: BatchImportProgress) {
+                importedFiles.add(result.filePath)
+            }
+        }
+    }
+
+    private fun writeGame(file: Path, data: String) {
+        Files.createDirectories(file.parent)
+        Files.write(file, data.toByteArray(Charsets.UTF_8))
+    }
+
+    /*
+     * Runs the test against a new temporary library directory and an index file outside of
+     * it, both deleted afterwards.
+     */
+    private fun withLibrary(test: (Path, Path) -> Unit) {
+        val directory = Files.createTempDirectory("positionIndex")
+        try {
+            test(Files.createDirectory(directory.resolve("library")), directory.resolve("positions.idx"))
+        } finally {
+            Files.walk(directory).sorted(Comparator.reverseOrder()).forEach { Files.deleteIfExists(it) }
+        }
+    }
+}
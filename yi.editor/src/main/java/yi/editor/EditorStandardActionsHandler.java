@@ -86,7 +86,7 @@ final class EditorStandardActionsHandler implements EditorStandardActions.Action
         File selectedFile = fileChooser.showOpenDialog(window.getStage());
         if (selectedFile != null) {
             try {
-                var importedModel = GameModelImporter.INSTANCE.fromFile(selectedFile.toPath());
+                var importedModel = GameModelImporter.INSTANCE.fromFileLazily(selectedFile.toPath());
                 window.setGameModel(importedModel);
             } catch (GameParseException | IOException e) {
                 // TODO: Error handling
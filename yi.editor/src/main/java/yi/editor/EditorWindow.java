@@ -101,6 +101,7 @@ public class EditorWindow extends YiWindow {
         });
 
         treeViewer.addPreviewNodeChangeListener(boardArea::onHighlightedNodeChange);
+        boardArea.addShowRenderMetricsValueListener(treeViewer::setShowRenderMetrics);
         boardArea.getGameBoardViewer().addPreviewNodeChangeListener(newPreview -> {
             if (newPreview != treeViewer.getHighlightedNode()) {
                 treeViewer.setHighlightedNodePathAndCenterCamera(newPreview);
@@ -171,7 +172,7 @@ public class EditorWindow extends YiWindow {
             if (files.size() == 1) {
                 var file = files.get(0);
                 try {
-                    var importedGameModel = GameModelImporter.INSTANCE.fromFile(file.toPath());
+                    var importedGameModel = GameModelImporter.INSTANCE.fromFileLazily(file.toPath());
                     setGameModel(importedGameModel);
                     success = true;
                 } catch (GameParseException | IOException e) {
@@ -4,6 +4,8 @@ import javafx.scene.layout.*;
 import org.jetbrains.annotations.Nullable;
 import yi.component.boardviewer.GameBoardViewer;
 import yi.component.shared.audio.CommonAudioSets;
+import yi.component.shared.property.BooleanProperty;
+import yi.component.shared.property.BooleanPropertyListener;
 import yi.core.go.GameModel;
 import yi.core.go.GameNode;
 import yi.editor.framework.EditorHelper;
@@ -28,6 +30,10 @@ public class EditorBoardArea implements EditorComponent<Pane> {
     private final EditorReviewToolsToolBar toolBar;
 
     private final EditorToggleAction actionToggleCoordinates;
+    private final EditorToggleAction actionToggleRenderMetrics;
+
+    // Shared by every component that can draw its render metrics
+    private final BooleanProperty showRenderMetrics = new BooleanProperty(false);
 
     public EditorBoardArea() {
         board = new GameBoardViewer();
@@ -55,6 +61,14 @@ public class EditorBoardArea implements EditorComponent<Pane> {
             actionToggleCoordinates.setAccelerator(EditorAccelerator.TOGGLE_BOARD_COORDINATES);
             board.addShowCoordinatesValueListener(actionToggleCoordinates::setSelected);
         }
+        {
+            actionToggleRenderMetrics = new EditorToggleAction(EditorTextResources.MENUITEM_TOGGLE_RENDER_METRICS,
+                    context -> showRenderMetrics.set(!showRenderMetrics.get())
+            );
+            actionToggleRenderMetrics.setInMenuBar(EditorMainMenuType.DEBUG, 0.000d);
+            showRenderMetrics.addListener(board::setShowRenderMetrics);
+            showRenderMetrics.addListener(actionToggleRenderMetrics::setSelected);
+        }
 
         EditorSettings.applySavedBoardSettings(board);
     }
@@ -85,10 +99,21 @@ public class EditorBoardArea implements EditorComponent<Pane> {
         return board;
     }
 
+    /**
+     * Add a listener to respond to the render metrics shown status, which is toggled for
+     * the game board and any other component that draws its render metrics at once.
+     *
+     * @param listener Listener to add.
+     */
+    public void addShowRenderMetricsValueListener(BooleanPropertyListener listener) {
+        showRenderMetrics.addListener(listener);
+    }
+
     @Override
     public EditorAction[] getActions(EditorActionManager actionManager) {
         var actions = new HashSet<EditorAction>();
         actions.add(actionToggleCoordinates);
+        actions.add(actionToggleRenderMetrics);
         actions.addAll(toolBar.getAllActions());
 
         return actions.toArray(new EditorAction[0]);
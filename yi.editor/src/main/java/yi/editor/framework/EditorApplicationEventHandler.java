@@ -148,7 +148,7 @@ public final class EditorApplicationEventHandler {
     private static boolean loadGameModel(File file) {
         boolean loadedSomething = false;
         try {
-            GameModel gameModel = GameModelImporter.INSTANCE.fromFile(file.toPath());
+            GameModel gameModel = GameModelImporter.INSTANCE.fromFileLazily(file.toPath());
             loadedSomething = true;
             Platform.runLater(() -> {
                 var window = new EditorWindow(gameModel);
@@ -40,6 +40,7 @@ public final class EditorTextResources {
     public static final TextResource MENUITEM_SAVE_GAME = standardResource("menuItem.saveGame");
     public static final TextResource MENUITEM_SAVE_AS_GAME = standardResource("menuItem.saveAsGame");
     public static final TextResource MENUITEM_TOGGLE_COORDINATES = standardResource("menuItem.toggleCoordinates");
+    public static final TextResource MENUITEM_TOGGLE_RENDER_METRICS = standardResource("menuItem.toggleRenderMetrics");
 
     public static final TextResource UNDO = standardResource("undo");
     public static final TextResource REDO = standardResource("redo");